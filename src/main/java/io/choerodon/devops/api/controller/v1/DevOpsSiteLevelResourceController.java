@@ -10,16 +10,21 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import springfox.documentation.annotations.ApiIgnore;
 
 import io.choerodon.core.domain.Page;
 import io.choerodon.core.iam.InitRoleCode;
 import io.choerodon.core.iam.ResourceLevel;
 import io.choerodon.devops.api.vo.AppServiceRepVO;
 import io.choerodon.devops.api.vo.ClusterOverViewVO;
+import io.choerodon.devops.api.vo.DevopsWebHookEventVO;
 import io.choerodon.devops.api.vo.UserAttrVO;
 import io.choerodon.devops.app.service.AppServiceService;
 import io.choerodon.devops.app.service.DevopsClusterService;
+import io.choerodon.devops.app.service.DevopsWebHookEventService;
 import io.choerodon.devops.app.service.UserAttrService;
+import io.choerodon.mybatis.pagehelper.domain.PageRequest;
+import io.choerodon.swagger.annotation.CustomPageRequest;
 import io.choerodon.swagger.annotation.Permission;
 
 /**
@@ -37,6 +42,8 @@ public class DevOpsSiteLevelResourceController {
     private UserAttrService userAttrService;
     @Autowired
     private AppServiceService appServiceService;
+    @Autowired
+    private DevopsWebHookEventService devopsWebHookEventService;
 
     @Permission(level = ResourceLevel.SITE, roles = InitRoleCode.SITE_ADMINISTRATOR)
     @GetMapping("/clusters/overview")
@@ -77,4 +84,35 @@ public class DevOpsSiteLevelResourceController {
             @RequestBody Set<Long> gitlabUserIds) {
         return new ResponseEntity<>(userAttrService.listUsersByGitlabUserIds(gitlabUserIds), HttpStatus.OK);
     }
+
+    @Permission(level = ResourceLevel.SITE, roles = InitRoleCode.SITE_ADMINISTRATOR)
+    @ApiOperation(value = "分页查询gitlab webhook事件")
+    @CustomPageRequest
+    @GetMapping(value = "/webhook_events")
+    public ResponseEntity<Page<DevopsWebHookEventVO>> pageWebHookEvents(
+            @ApiParam(value = "状态: pending/processing/success/failed/dead")
+            @RequestParam(value = "status", required = false) String status,
+            @ApiParam(value = "事件类型")
+            @RequestParam(value = "object_kind", required = false) String objectKind,
+            @ApiIgnore PageRequest pageRequest) {
+        return new ResponseEntity<>(devopsWebHookEventService.pageEvents(status, objectKind, pageRequest), HttpStatus.OK);
+    }
+
+    @Permission(level = ResourceLevel.SITE, roles = InitRoleCode.SITE_ADMINISTRATOR)
+    @ApiOperation(value = "重新处理gitlab webhook事件")
+    @PostMapping(value = "/webhook_events/{event_id}/replay")
+    public ResponseEntity<Void> replayWebHookEvent(
+            @Encrypt
+            @ApiParam(value = "事件id", required = true)
+            @PathVariable(value = "event_id") Long eventId) {
+        devopsWebHookEventService.replay(eventId);
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
+    @Permission(level = ResourceLevel.SITE, roles = InitRoleCode.SITE_ADMINISTRATOR)
+    @ApiOperation(value = "重新处理所有死信的gitlab webhook事件, 返回事件数量")
+    @PostMapping(value = "/webhook_events/replay_dead")
+    public ResponseEntity<Integer> replayDeadWebHookEvents() {
+        return new ResponseEntity<>(devopsWebHookEventService.replayDeadEvents(), HttpStatus.OK);
+    }
 }
@@ -16,7 +16,9 @@ import io.choerodon.core.exception.CommonException;
 import io.choerodon.core.iam.InitRoleCode;
 import io.choerodon.core.iam.ResourceLevel;
 import io.choerodon.devops.api.vo.DevopsEnvPodVO;
+import io.choerodon.devops.api.vo.ResourceMetricsVO;
 import io.choerodon.devops.app.service.DevopsEnvPodService;
+import io.choerodon.devops.app.service.ResourceMetricsService;
 import io.choerodon.mybatis.pagehelper.domain.PageRequest;
 import io.choerodon.swagger.annotation.CustomPageRequest;
 import io.choerodon.swagger.annotation.Permission;
@@ -30,6 +32,8 @@ public class DevopsEnvPodController {
 
     @Autowired
     private DevopsEnvPodService devopsEnvPodService;
+    @Autowired
+    private ResourceMetricsService resourceMetricsService;
 
     /**
      * 分页查询环境下pod
@@ -129,4 +133,36 @@ public class DevopsEnvPodController {
         devopsEnvPodService.deleteEnvPodById(projectId, envId, podId);
         return ResponseEntity.noContent().build();
     }
+
+    /**
+     * 查询pod一段时间内的cpu和内存使用量
+     *
+     * @param envId      环境id
+     * @param podId      pod id
+     * @param startTime  开始时间
+     * @param endTime    结束时间
+     * @param resolution 精度
+     * @return 使用量
+     */
+    @Permission(level = ResourceLevel.ORGANIZATION,
+            roles = {InitRoleCode.PROJECT_OWNER, InitRoleCode.PROJECT_MEMBER})
+    @ApiOperation(value = "查询pod一段时间内的cpu和内存使用量")
+    @GetMapping("/{pod_id}/metrics")
+    public ResponseEntity<ResourceMetricsVO> queryPodMetrics(
+            @ApiParam(value = "项目id")
+            @PathVariable(value = "project_id") Long projectId,
+            @Encrypt
+            @ApiParam(value = "podId")
+            @PathVariable(value = "pod_id") Long podId,
+            @Encrypt
+            @ApiParam(value = "环境id", required = true)
+            @RequestParam(value = "env_id") Long envId,
+            @ApiParam(value = "开始时间, 单位: 毫秒, 默认为结束时间前一小时")
+            @RequestParam(value = "start_time", required = false) Long startTime,
+            @ApiParam(value = "结束时间, 单位: 毫秒, 默认为当前时间")
+            @RequestParam(value = "end_time", required = false) Long endTime,
+            @ApiParam(value = "精度: raw/1m/5m/1h, 默认按时间范围选择")
+            @RequestParam(value = "resolution", required = false) String resolution) {
+        return ResponseEntity.ok(resourceMetricsService.queryPodMetrics(projectId, envId, podId, startTime, endTime, resolution));
+    }
 }
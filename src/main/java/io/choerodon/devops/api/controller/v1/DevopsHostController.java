@@ -9,6 +9,7 @@ import io.choerodon.devops.api.vo.host.DevopsDockerInstanceVO;
 import io.choerodon.devops.api.vo.host.DevopsJavaInstanceVO;
 import io.choerodon.devops.api.vo.host.ResourceUsageInfoVO;
 import io.choerodon.devops.app.service.DevopsHostService;
+import io.choerodon.devops.app.service.ResourceMetricsService;
 import io.choerodon.mybatis.pagehelper.annotation.PageableDefault;
 import io.choerodon.mybatis.pagehelper.annotation.SortDefault;
 import io.choerodon.mybatis.pagehelper.domain.PageRequest;
@@ -41,6 +42,8 @@ import java.util.Set;
 public class DevopsHostController {
     @Autowired
     private DevopsHostService devopsHostService;
+    @Autowired
+    private ResourceMetricsService resourceMetricsService;
 
     @ApiOperation("创建主机")
     @Permission(level = ResourceLevel.ORGANIZATION)
@@ -329,6 +332,23 @@ public class DevopsHostController {
         return ResponseEntity.ok(devopsHostService.queryResourceUsageInfo(projectId, hostId));
     }
 
+    @ApiOperation("查询主机一段时间内的cpu和内存使用率")
+    @Permission(level = ResourceLevel.ORGANIZATION)
+    @GetMapping("/{host_id}/resource_usage_history")
+    public ResponseEntity<ResourceMetricsVO> queryResourceUsageHistory(@ApiParam(value = "项目id", required = true)
+                                                                       @PathVariable("project_id") Long projectId,
+                                                                       @ApiParam(value = "主机id", required = true)
+                                                                       @Encrypt
+                                                                       @PathVariable("host_id") Long hostId,
+                                                                       @ApiParam(value = "开始时间, 单位: 毫秒, 默认为结束时间前一小时")
+                                                                       @RequestParam(value = "start_time", required = false) Long startTime,
+                                                                       @ApiParam(value = "结束时间, 单位: 毫秒, 默认为当前时间")
+                                                                       @RequestParam(value = "end_time", required = false) Long endTime,
+                                                                       @ApiParam(value = "精度: raw/1m/5m/1h, 默认按时间范围选择")
+                                                                       @RequestParam(value = "resolution", required = false) String resolution) {
+        return ResponseEntity.ok(resourceMetricsService.queryHostMetrics(projectId, hostId, startTime, endTime, resolution));
+    }
+
     @ApiOperation("下载创建主机脚本")
     @Permission(permissionPublic = true)
     @GetMapping("/{host_id}/download_file/{token}")
@@ -15,6 +15,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import io.choerodon.devops.app.service.AppServiceInstanceService;
+import io.choerodon.devops.app.service.DevopsWebHookEventService;
 import io.choerodon.devops.app.service.GitlabWebHookService;
 import io.choerodon.swagger.annotation.Permission;
 
@@ -26,12 +27,14 @@ public class GitlabWebHookController {
     private GitlabWebHookService gitlabWebHookService;
     @Autowired
     private AppServiceInstanceService appServiceInstanceService;
+    @Autowired
+    private DevopsWebHookEventService devopsWebHookEventService;
 
     @Permission(permissionPublic = true)
     @ApiOperation(value = "webhook转发")
     @PostMapping
     public ResponseEntity<Void> forwardGitlabWebHook(HttpServletRequest httpServletRequest, @RequestBody String body) {
-        gitlabWebHookService.forwardingEventToPortal(body, httpServletRequest.getHeader("X-Gitlab-Token"));
+        devopsWebHookEventService.accept(body, httpServletRequest.getHeader("X-Gitlab-Token"), httpServletRequest.getHeader("X-Gitlab-Event-UUID"));
         return new ResponseEntity<>(HttpStatus.NO_CONTENT);
     }
 
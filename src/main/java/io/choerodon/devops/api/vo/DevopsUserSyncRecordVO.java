@@ -48,6 +48,9 @@ public class DevopsUserSyncRecordVO {
     @ApiModelProperty("当前的已经处理的用户")
     private Long current;
 
+    @ApiModelProperty("预计剩余的同步时间, 单位: 秒 / 可为空")
+    private Long etaSeconds;
+
     public Long getId() {
         return id;
     }
@@ -127,4 +130,12 @@ public class DevopsUserSyncRecordVO {
     public void setCurrent(Long current) {
         this.current = current;
     }
+
+    public Long getEtaSeconds() {
+        return etaSeconds;
+    }
+
+    public void setEtaSeconds(Long etaSeconds) {
+        this.etaSeconds = etaSeconds;
+    }
 }
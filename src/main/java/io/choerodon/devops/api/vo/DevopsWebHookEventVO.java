@@ -0,0 +1,116 @@
+package io.choerodon.devops.api.vo;
+
+import java.util.Date;
+
+import io.swagger.annotations.ApiModelProperty;
+import org.hzero.starter.keyencrypt.core.Encrypt;
+
+/**
+ * gitlab webhook事件的处理记录
+ *
+ * @author zmf
+ * @since 2021/8/10
+ */
+public class DevopsWebHookEventVO {
+    @Encrypt
+    @ApiModelProperty("事件id")
+    private Long id;
+    @ApiModelProperty("去重的key")
+    private String eventKey;
+    @ApiModelProperty("事件类型")
+    private String objectKind;
+    @ApiModelProperty("gitlab项目id")
+    private Long partitionKey;
+    @ApiModelProperty("状态 pending/processing/success/failed/dead")
+    private String status;
+    @ApiModelProperty("失败的次数")
+    private Integer attempts;
+    @ApiModelProperty("下次处理的时间")
+    private Date nextAttemptAt;
+    @ApiModelProperty("最近一次失败的原因")
+    private String errorMessage;
+    @ApiModelProperty("接收的时间")
+    private Date creationDate;
+    @ApiModelProperty("最近更新的时间")
+    private Date lastUpdateDate;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getEventKey() {
+        return eventKey;
+    }
+
+    public void setEventKey(String eventKey) {
+        this.eventKey = eventKey;
+    }
+
+    public String getObjectKind() {
+        return objectKind;
+    }
+
+    public void setObjectKind(String objectKind) {
+        this.objectKind = objectKind;
+    }
+
+    public Long getPartitionKey() {
+        return partitionKey;
+    }
+
+    public void setPartitionKey(Long partitionKey) {
+        this.partitionKey = partitionKey;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public Date getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(Date nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public Date getCreationDate() {
+        return creationDate;
+    }
+
+    public void setCreationDate(Date creationDate) {
+        this.creationDate = creationDate;
+    }
+
+    public Date getLastUpdateDate() {
+        return lastUpdateDate;
+    }
+
+    public void setLastUpdateDate(Date lastUpdateDate) {
+        this.lastUpdateDate = lastUpdateDate;
+    }
+}
@@ -0,0 +1,42 @@
+package io.choerodon.devops.api.vo;
+
+import java.util.Date;
+
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * 资源指标的一个数据点
+ *
+ * @author zmf
+ * @since 2021/8/9
+ */
+public class MetricPointVO {
+    @ApiModelProperty("采集时间, 汇总的数据为时间桶的开始时间")
+    private Date time;
+    @ApiModelProperty("值, 汇总的数据为时间桶内的平均值")
+    private Double value;
+
+    public MetricPointVO() {
+    }
+
+    public MetricPointVO(Date time, Double value) {
+        this.time = time;
+        this.value = value;
+    }
+
+    public Date getTime() {
+        return time;
+    }
+
+    public void setTime(Date time) {
+        this.time = time;
+    }
+
+    public Double getValue() {
+        return value;
+    }
+
+    public void setValue(Double value) {
+        this.value = value;
+    }
+}
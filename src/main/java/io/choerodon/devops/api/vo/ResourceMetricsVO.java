@@ -0,0 +1,44 @@
+package io.choerodon.devops.api.vo;
+
+import java.util.List;
+
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * pod或者主机一段时间内的cpu和内存使用量
+ *
+ * @author zmf
+ * @since 2021/8/9
+ */
+public class ResourceMetricsVO {
+    @ApiModelProperty("数据的精度: raw/1m/5m/1h")
+    private String resolution;
+    @ApiModelProperty("cpu使用量, pod的单位为核, 主机为上报的使用率")
+    private List<MetricPointVO> cpu;
+    @ApiModelProperty("内存使用量, pod的单位为字节, 主机为上报的使用率")
+    private List<MetricPointVO> memory;
+
+    public String getResolution() {
+        return resolution;
+    }
+
+    public void setResolution(String resolution) {
+        this.resolution = resolution;
+    }
+
+    public List<MetricPointVO> getCpu() {
+        return cpu;
+    }
+
+    public void setCpu(List<MetricPointVO> cpu) {
+        this.cpu = cpu;
+    }
+
+    public List<MetricPointVO> getMemory() {
+        return memory;
+    }
+
+    public void setMemory(List<MetricPointVO> memory) {
+        this.memory = memory;
+    }
+}
@@ -12,6 +12,8 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.WebSocketSession;
 
+import io.choerodon.devops.api.ws.relay.WebSocketRelay;
+
 /**
  * Created by Sheep on 2019/8/19.
  */
@@ -21,6 +23,8 @@ public class AgentExecAndLogSocketHandler {
 
     @Autowired
     RedisTemplate<String, Object> redisTemplate;
+    @Autowired
+    private WebSocketRelay webSocketRelay;
 
     public boolean beforeHandshake(ServerHttpRequest serverHttpRequest, ServerHttpResponse serverHttpResponse, Map<String, Object> attributes) {
 
@@ -36,9 +40,11 @@ public class AgentExecAndLogSocketHandler {
         String group = WebSocketTool.getGroup(webSocketSession);
         String processor = WebSocketTool.getProcessor(webSocketSession);
         LOGGER.info("Connection established from agent. The group is {} and the processor is {}", group, processor);
+        webSocketRelay.register(webSocketSession);
     }
 
     public void afterConnectionClosed(WebSocketSession webSocketSession, CloseStatus closeStatus) {
+        webSocketRelay.unregister(webSocketSession);
         // 关闭前端的web socket Session
         WebSocketTool.closeFrontSessionByKey(WebSocketTool.getKey(webSocketSession));
         WebSocketTool.closeSessionQuietly(webSocketSession);
@@ -14,6 +14,7 @@ import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.WebSocketSession;
 
 import io.choerodon.devops.api.vo.PipeRequestVO;
+import io.choerodon.devops.api.ws.relay.WebSocketRelay;
 import io.choerodon.devops.app.service.AgentCommandService;
 import io.choerodon.devops.app.service.DevopsEnvPodService;
 
@@ -28,6 +29,8 @@ public class DevopsExecAndLogSocketHandler {
     private DevopsEnvPodService devopsEnvPodService;
     @Resource
     private AgentCommandService agentCommandService;
+    @Resource
+    private WebSocketRelay webSocketRelay;
 
 
     public boolean beforeHandshake(ServerHttpRequest serverHttpRequest, ServerHttpResponse serverHttpResponse, Map<String, Object> attributes) {
@@ -64,6 +67,7 @@ public class DevopsExecAndLogSocketHandler {
         String processor = WebSocketTool.getProcessor(webSocketSession);
 
         logger.info("Connection established from client. The sessionGroup is {} and the processor is {}", frontSessionGroup, processor);
+        webSocketRelay.register(webSocketSession);
 
         // 通过GitOps的ws连接，通知agent建立与前端对应的ws连接
         PipeRequestVO pipeRequest = new PipeRequestVO(
@@ -84,6 +88,7 @@ public class DevopsExecAndLogSocketHandler {
     }
 
     public void afterConnectionClosed(WebSocketSession webSocketSession, CloseStatus closeStatus) {
+        webSocketRelay.unregister(webSocketSession);
         // 关闭agent那边的web socket Session
         WebSocketTool.closeAgentSessionByKey(WebSocketTool.getKey(webSocketSession));
         WebSocketTool.closeSessionQuietly(webSocketSession);
@@ -5,14 +5,13 @@ import static io.choerodon.devops.infra.constant.DevOpsWebSocketConstants.FRONT_
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
-import org.hzero.websocket.helper.KeySocketSendHelper;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import io.choerodon.devops.api.ws.WebSocketTool;
+import io.choerodon.devops.api.ws.relay.WebSocketRelay;
 
 /**
  * Created by Sheep on 2019/8/19.
@@ -22,16 +21,17 @@ public class ExecMessageHandler {
     private static final String AGENT_EXEC = "AgentExec";
 
     @Autowired
-    @Lazy
-    private KeySocketSendHelper keySocketSendHelper;
+    private WebSocketRelay webSocketRelay;
 
     public void handle(WebSocketSession webSocketSession, BinaryMessage message) {
-
         ByteBuffer buffer = message.getPayload();
-        byte[] bytesArray = new byte[buffer.remaining()];
-        buffer.get(bytesArray, 0, bytesArray.length);
-
-        String msg = WebSocketTool.replaceR(new StringBuilder(new String(bytesArray, StandardCharsets.UTF_8)), 0);
+        if (containsCarriageReturn(buffer)) {
+            // 只有包含\r的帧才需要解码替换
+            byte[] bytesArray = new byte[buffer.remaining()];
+            buffer.get(bytesArray, 0, bytesArray.length);
+            String msg = WebSocketTool.replaceR(new StringBuilder(new String(bytesArray, StandardCharsets.UTF_8)), 0);
+            buffer = ByteBuffer.wrap(msg.getBytes(StandardCharsets.UTF_8));
+        }
 
         String key = WebSocketTool.getKey(webSocketSession);
         String processor = WebSocketTool.getProcessor(webSocketSession);
@@ -46,6 +46,18 @@ public class ExecMessageHandler {
         }
 
         //发送二进制消息
-        keySocketSendHelper.sendByGroup(toSessionGroup, AGENT_EXEC, msg.getBytes(StandardCharsets.UTF_8));
+        webSocketRelay.relay(toSessionGroup, processor, AGENT_EXEC, buffer);
+    }
+
+    /**
+     * UTF-8中多字节字符的每个字节都不小于0x80, 可以直接按字节查找\r
+     */
+    private static boolean containsCarriageReturn(ByteBuffer buffer) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\r') {
+                return true;
+            }
+        }
+        return false;
     }
 }
@@ -5,11 +5,13 @@ import static io.choerodon.devops.infra.constant.DevOpsWebSocketConstants.AGENT_
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.WebSocketSession;
 
 import io.choerodon.devops.api.ws.AbstractSocketHandler;
 import io.choerodon.devops.api.ws.AgentExecAndLogSocketHandler;
 import io.choerodon.devops.api.ws.exec.ExecMessageHandler;
+import io.choerodon.devops.api.ws.relay.WebSocketRelay;
 
 /**
  * @author zmf
@@ -21,6 +23,8 @@ public class AgentExecSocketHandler extends AbstractSocketHandler {
     private ExecMessageHandler execMessageHandler;
     @Autowired
     private AgentExecAndLogSocketHandler agentExecAndLogSocketHandler;
+    @Autowired
+    private WebSocketRelay webSocketRelay;
 
     @Override
     public String processor() {
@@ -36,4 +40,9 @@ public class AgentExecSocketHandler extends AbstractSocketHandler {
     public void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
         execMessageHandler.handle(session, message);
     }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        webSocketRelay.unregister(session);
+    }
 }
@@ -0,0 +1,192 @@
+package io.choerodon.devops.api.ws.gitops;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.devops.infra.enums.HelmType;
+
+/**
+ * Agent GitOps消息的分发器
+ * 同一个集群的消息总是被分配到同一个单线程的通道(lane)中顺序处理, 以保证集群内消息的顺序,
+ * 不同集群的消息在不同的通道中并行处理, 避免某个集群的大量消息阻塞WebSocket的读取线程
+ * <p>
+ * 通道的队列满了之后, 投递的线程(也就是WebSocket容器读取该agent消息的线程)会阻塞等待,
+ * 从而不再读取这个agent后续的消息, 通过TCP的流控对agent形成背压
+ *
+ * @author zmf
+ * @since 2021/8/2
+ */
+@Component
+public class AgentGitOpsMsgDispatcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AgentGitOpsMsgDispatcher.class);
+
+    private static final String THREAD_NAME_PREFIX = "agent-msg-lane-";
+    private static final String METRIC_QUEUE_LAG = "devops.agent.msg.queue.lag";
+    private static final String METRIC_QUEUE_SIZE = "devops.agent.msg.queue.size";
+    private static final String METRIC_BLOCKED = "devops.agent.msg.enqueue.blocked";
+    private static final String TAG_TYPE = "type";
+    private static final String TAG_LANE = "lane";
+
+    /**
+     * 是否开启异步分发, 关闭时在WebSocket的线程上同步处理(旧的逻辑)
+     */
+    @Value("${devops.agent.message.dispatch.enabled:true}")
+    private Boolean enabled;
+    /**
+     * 通道数量, 也就是同时处理agent消息的最大线程数
+     */
+    @Value("${devops.agent.message.dispatch.lanes:8}")
+    private Integer laneCount;
+    /**
+     * 每个通道的队列深度
+     */
+    @Value("${devops.agent.message.dispatch.queueCapacity:1000}")
+    private Integer queueCapacity;
+    /**
+     * 队列满时, 投递线程每次等待的时间, 超过这个时间会打印警告日志并继续等待, 单位: 毫秒
+     */
+    @Value("${devops.agent.message.dispatch.blockWarnMilliSeconds:5000}")
+    private Long blockWarnMilliSeconds;
+    /**
+     * 服务停止时等待通道中剩余消息处理完成的时间, 单位: 秒
+     */
+    @Value("${devops.agent.message.dispatch.shutdownAwaitSeconds:30}")
+    private Long shutdownAwaitSeconds;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor[] lanes;
+    private final Map<HelmType, Timer> queueLagTimers = new EnumMap<>(HelmType.class);
+    private Counter blockedCounter;
+
+    @PostConstruct
+    void init() {
+        if (!Boolean.TRUE.equals(enabled)) {
+            LOGGER.info("Agent message dispatcher is disabled. Agent messages are handled on the WebSocket thread.");
+            return;
+        }
+        LOGGER.info("Create agent message dispatcher. The lane count is {} and the queue capacity of each lane is {}", laneCount, queueCapacity);
+        lanes = new ThreadPoolExecutor[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = newLane(i);
+            BlockingQueue<Runnable> queue = lanes[i].getQueue();
+            Gauge.builder(METRIC_QUEUE_SIZE, queue, BlockingQueue::size)
+                    .tag(TAG_LANE, String.valueOf(i))
+                    .description("Pending agent messages of the lane")
+                    .register(meterRegistry);
+        }
+        for (HelmType helmType : HelmType.values()) {
+            queueLagTimers.put(helmType, Timer.builder(METRIC_QUEUE_LAG)
+                    .tag(TAG_TYPE, helmType.toValue())
+                    .description("Time between receiving the agent message and starting to handle it")
+                    .register(meterRegistry));
+        }
+        blockedCounter = Counter.builder(METRIC_BLOCKED)
+                .description("Times the WebSocket thread was blocked because the lane queue was full")
+                .register(meterRegistry);
+    }
+
+    private ThreadPoolExecutor newLane(int index) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread thread = new Thread(r, THREAD_NAME_PREFIX + index + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * 分发agent的消息
+     *
+     * @param clusterId 集群id, 作为顺序键, 同一集群的消息按到达顺序处理
+     * @param helmType  消息类型
+     * @param handler   消息处理逻辑
+     */
+    public void dispatch(Long clusterId, HelmType helmType, Runnable handler) {
+        if (lanes == null) {
+            handler.run();
+            return;
+        }
+
+        long receivedAt = System.nanoTime();
+        Runnable task = () -> {
+            queueLagTimers.get(helmType).record(System.nanoTime() - receivedAt, TimeUnit.NANOSECONDS);
+            try {
+                handler.run();
+                // 将异常捕获, 以免影响这个通道后续消息的处理
+            } catch (Exception ex) {
+                LOGGER.warn("Handle Agent Message: an unexpected exception occurred. The cluster id is {} and the type is {}", clusterId, helmType.toValue(), ex);
+            }
+        };
+
+        ThreadPoolExecutor lane = lanes[laneIndex(clusterId)];
+        // 线程池只有一个线程, 直接放入队列即可保证先进先出
+        // 先保证线程已经启动
+        lane.prestartCoreThread();
+        BlockingQueue<Runnable> queue = lane.getQueue();
+        try {
+            if (queue.offer(task)) {
+                return;
+            }
+            blockedCounter.increment();
+            while (!queue.offer(task, blockWarnMilliSeconds, TimeUnit.MILLISECONDS)) {
+                if (lane.isShutdown()) {
+                    LOGGER.warn("Agent message dispatcher is shut down. Drop message of type {} from cluster {}", helmType.toValue(), clusterId);
+                    return;
+                }
+                LOGGER.warn("Agent message lane of cluster {} is full. The WebSocket thread has been blocked for more than {} ms", clusterId, blockWarnMilliSeconds);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while dispatching message of type {} from cluster {}", helmType.toValue(), clusterId);
+        }
+    }
+
+    private int laneIndex(Long clusterId) {
+        long key = clusterId == null ? 0L : clusterId;
+        return (int) Math.floorMod(key ^ (key >>> 32), (long) lanes.length);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (lanes == null) {
+            return;
+        }
+        LOGGER.info("Agent message dispatcher is to be shut down.");
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        for (ExecutorService lane : lanes) {
+            try {
+                if (!lane.awaitTermination(shutdownAwaitSeconds, TimeUnit.SECONDS)) {
+                    LOGGER.warn("Agent message lane is not terminated in {} seconds, the remaining messages are dropped", shutdownAwaitSeconds);
+                    lane.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                lane.shutdownNow();
+            }
+        }
+    }
+}
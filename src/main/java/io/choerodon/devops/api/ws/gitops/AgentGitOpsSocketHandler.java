@@ -6,6 +6,7 @@ import static org.hzero.websocket.constant.WebSocketConstant.Attributes.GROUP;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import org.hzero.websocket.redis.BrokerSessionRedis;
 import org.hzero.websocket.registry.GroupSessionRegistry;
@@ -32,6 +33,7 @@ import io.choerodon.devops.infra.enums.CommandStatus;
 import io.choerodon.devops.infra.enums.HelmType;
 import io.choerodon.devops.infra.enums.InstanceStatus;
 import io.choerodon.devops.infra.handler.ClusterConnectionHandler;
+import io.choerodon.devops.infra.handler.ClusterSessionRegistry;
 import io.choerodon.devops.infra.util.JsonHelper;
 import io.choerodon.devops.infra.util.KeyParseUtil;
 import io.choerodon.devops.infra.util.TypeUtil;
@@ -55,6 +57,9 @@ public class AgentGitOpsSocketHandler extends AbstractSocketHandler {
     @Autowired
     private ClusterConnectionHandler clusterConnectionHandler;
 
+    @Autowired
+    private ClusterSessionRegistry clusterSessionRegistry;
+
     @Autowired
     private AgentCommandService agentCommandService;
 
@@ -64,6 +69,9 @@ public class AgentGitOpsSocketHandler extends AbstractSocketHandler {
     @Autowired
     private AgentMsgHandlerService agentMsgHandlerService;
 
+    @Autowired
+    private AgentGitOpsMsgDispatcher agentGitOpsMsgDispatcher;
+
     @Override
     public String processor() {
         return DevOpsWebSocketConstants.AGENT;
@@ -82,9 +90,10 @@ public class AgentGitOpsSocketHandler extends AbstractSocketHandler {
         clusterSession.setVersion(WebSocketTool.getVersion(session));
         clusterSession.setRegisterKey(group);
         redisTemplate.opsForHash().put(CLUSTER_SESSION, clusterSession.getRegisterKey(), clusterSession);
+        clusterSessionRegistry.notifyChanged();
 
         // 连接成功之后,如果agent版本不匹配则提示升级agent,匹配则返回集群下关联环境的ssh信息
-        List<Long> unnecessaryToUpgrade = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> unnecessaryToUpgrade = clusterConnectionHandler.getUpdatedClusterSet();
         if (!unnecessaryToUpgrade.contains(clusterId)) {
             DevopsClusterDTO devopsClusterDTO = devopsClusterService.baseQuery(clusterId);
             LOGGER.info("New Upgrade agent: upgrade agent with cluster id {} from version {}", clusterId, clusterSession.getVersion());
@@ -136,6 +145,11 @@ public class AgentGitOpsSocketHandler extends AbstractSocketHandler {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug(msg.toString());
         }
+        // 同一集群的消息按顺序处理, 不同集群的消息并行处理, 不在WebSocket的线程上处理
+        agentGitOpsMsgDispatcher.dispatch(TypeUtil.objToLong(msg.getClusterId()), helmType, () -> handleAgentMsg(helmType, msg));
+    }
+
+    private void handleAgentMsg(HelmType helmType, AgentMsgVO msg) {
         // TODO 可以用策略模式改造
         switch (helmType) {
             // JOB的相关信息
@@ -326,6 +340,7 @@ public class AgentGitOpsSocketHandler extends AbstractSocketHandler {
                 if (Objects.equals(sessionId, clusterSessionVO.getWebSocketSessionId())) {
                     //移除关联关系
                     redisTemplate.opsForHash().delete(CLUSTER_SESSION, registerKey);
+                    clusterSessionRegistry.notifyChanged();
                 } else {
                     LOGGER.info("This is an elder session whose registerKey value was updated by a new session. the session cluster id is {}", clusterId);
                 }
@@ -333,6 +348,7 @@ public class AgentGitOpsSocketHandler extends AbstractSocketHandler {
                 // 这个逻辑不应该进的
                 LOGGER.warn("Value of register key is not of Class 'io.choerodon.devops.api.vo.ClusterSessionVO', and its real class is {}", registerKeyValue.getClass());
                 redisTemplate.opsForHash().delete(CLUSTER_SESSION, registerKey);
+                clusterSessionRegistry.notifyChanged();
             }
         }
     }
@@ -5,16 +5,15 @@ import static io.choerodon.devops.infra.constant.DevOpsWebSocketConstants.FRONT_
 
 import java.nio.ByteBuffer;
 
-import org.hzero.websocket.helper.KeySocketSendHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import io.choerodon.devops.api.ws.WebSocketTool;
+import io.choerodon.devops.api.ws.relay.WebSocketRelay;
 
 /**
  * Created by Sheep on 2019/7/26.
@@ -27,8 +26,7 @@ public class LogMessageHandler {
     private static final String AGENT_LOG = "AgentLog";
 
     @Autowired
-    @Lazy
-    private KeySocketSendHelper keySocketSendHelper;
+    private WebSocketRelay webSocketRelay;
 
     public void handle(WebSocketSession webSocketSession, BinaryMessage message, String type) {
         // 获取rawKey， 用于拼接转发的目的地group
@@ -36,28 +34,24 @@ public class LogMessageHandler {
         String destinationGroup;
 
         ByteBuffer buffer = message.getPayload();
-        byte[] bytesArray = new byte[buffer.remaining()];
-        buffer.get(bytesArray, 0, bytesArray.length);
-
         String processor = WebSocketTool.getProcessor(webSocketSession);
 
         switch (type) {
             case "viewLog":
                 if (FRONT_LOG.equals(processor)) {
-                    LOGGER.info("Received message from front. The processor is {} and the byte array length is {}", processor, bytesArray.length);
                     destinationGroup = WebSocketTool.buildAgentGroup(rawKey);
                 } else {
-                    LOGGER.info("Received message from agent. The processor is {} and the byte array length is {}", processor, bytesArray.length);
                     destinationGroup = WebSocketTool.buildFrontGroup(rawKey);
                 }
-                keySocketSendHelper.sendByGroup(destinationGroup, AGENT_LOG, bytesArray);
                 break;
             case "downloadLog":
-                LOGGER.info("Received message from agent. The processor is {} and the byte array length is {}", processor, bytesArray.length);
                 destinationGroup = WebSocketTool.buildFrontGroup(rawKey);
-                keySocketSendHelper.sendByGroup(destinationGroup, AGENT_LOG, bytesArray);
                 break;
+            default:
+                return;
         }
+        LOGGER.debug("Received message. The processor is {} and the byte array length is {}", processor, buffer.remaining());
+        webSocketRelay.relay(destinationGroup, processor, AGENT_LOG, buffer);
     }
 
 }
@@ -5,11 +5,13 @@ import static io.choerodon.devops.infra.constant.DevOpsWebSocketConstants.AGENT_
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.WebSocketSession;
 
 import io.choerodon.devops.api.ws.AbstractSocketHandler;
 import io.choerodon.devops.api.ws.AgentExecAndLogSocketHandler;
 import io.choerodon.devops.api.ws.log.LogMessageHandler;
+import io.choerodon.devops.api.ws.relay.WebSocketRelay;
 
 /**
  * @author zmf
@@ -21,6 +23,8 @@ public class AgentLogSocketHandler extends AbstractSocketHandler {
     private AgentExecAndLogSocketHandler agentExecAndLogSocketHandler;
     @Autowired
     private LogMessageHandler logMessageHandler;
+    @Autowired
+    private WebSocketRelay webSocketRelay;
 
     @Override
     public String processor() {
@@ -36,4 +40,9 @@ public class AgentLogSocketHandler extends AbstractSocketHandler {
     public void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
         logMessageHandler.handle(session, message, LogMessageHandler.VIEW_LOG);
     }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        webSocketRelay.unregister(session);
+    }
 }
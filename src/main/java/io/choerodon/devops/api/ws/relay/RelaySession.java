@@ -0,0 +1,173 @@
+package io.choerodon.devops.api.ws.relay;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * 中继的目的会话, 带有发送缓冲
+ * 小的帧先追加到缓冲中, 在合并窗口结束或者缓冲达到单帧上限时合并成一帧发送;
+ * 大的帧不经过缓冲, 直接包装原始的ByteBuffer发送, 不复制
+ * <p>
+ * 发送在 sendLock 下进行, 缓冲的交换也在 sendLock 下, 以保证帧的顺序;
+ * 追加缓冲只需要对象锁, 发送慢的客户端不会阻塞追加, 缓冲超过上限时按溢出策略处理
+ *
+ * @author zmf
+ * @since 2021/8/7
+ */
+class RelaySession {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RelaySession.class);
+    private static final int INITIAL_BUFFER_CAPACITY = 4096;
+
+    private final WebSocketSession session;
+    private final WebSocketRelay.OverflowPolicy overflowPolicy;
+    private final ScheduledExecutorService flushScheduler;
+    private final long coalesceMillis;
+    private final int maxFrameBytes;
+    private final int bufferLimitBytes;
+    private final Counter sentFramesCounter;
+    private final Counter droppedCounter;
+
+    private final Object sendLock = new Object();
+    private ByteBuffer pending;
+    private ScheduledFuture<?> scheduledFlush;
+
+    private long relayedBytes;
+    private long sentFrames;
+    private long droppedFrames;
+
+    RelaySession(WebSocketSession session, WebSocketRelay.OverflowPolicy overflowPolicy, ScheduledExecutorService flushScheduler,
+                 long coalesceMillis, int maxFrameBytes, int bufferLimitBytes,
+                 Counter sentFramesCounter, Counter droppedCounter) {
+        this.session = session;
+        this.overflowPolicy = overflowPolicy;
+        this.flushScheduler = flushScheduler;
+        this.coalesceMillis = coalesceMillis;
+        this.maxFrameBytes = maxFrameBytes;
+        this.bufferLimitBytes = bufferLimitBytes;
+        this.sentFramesCounter = sentFramesCounter;
+        this.droppedCounter = droppedCounter;
+    }
+
+    boolean isOpen() {
+        return session.isOpen();
+    }
+
+    /**
+     * 中继一帧数据, 方法返回后不会再访问 payload
+     *
+     * @param payload 源会话收到的数据
+     */
+    void offer(ByteBuffer payload) {
+        int length = payload.remaining();
+        if (length == 0) {
+            return;
+        }
+        if (coalesceMillis <= 0 || length >= maxFrameBytes) {
+            // 不合并或者大的帧, 先发出缓冲中已有的数据再直接发送, 不复制
+            synchronized (sendLock) {
+                sendLocked(swapPending());
+                sendLocked(payload);
+            }
+            return;
+        }
+
+        synchronized (this) {
+            int pendingSize = pending == null ? 0 : pending.position();
+            if (pendingSize + length <= bufferLimitBytes) {
+                appendAndSchedule(payload, pendingSize + length);
+                return;
+            }
+            if (overflowPolicy == WebSocketRelay.OverflowPolicy.DROP) {
+                droppedFrames++;
+                droppedCounter.increment();
+                return;
+            }
+        }
+
+        // 缓冲已满, 在当前线程上等待发送完成, 阻塞源会话的读取, 形成背压
+        flush();
+        synchronized (this) {
+            appendAndSchedule(payload, (pending == null ? 0 : pending.position()) + length);
+        }
+    }
+
+    /**
+     * 发送缓冲中的数据
+     */
+    void flush() {
+        synchronized (sendLock) {
+            sendLocked(swapPending());
+        }
+    }
+
+    /**
+     * 会话关闭时, 发送剩余的数据并取消定时的发送
+     */
+    void close() {
+        synchronized (this) {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+        }
+        if (session.isOpen()) {
+            flush();
+        }
+        LOGGER.debug("Relay to session {} closed. Relayed {} bytes in {} frames, dropped {} frames", session.getId(), relayedBytes, sentFrames, droppedFrames);
+    }
+
+    private void appendAndSchedule(ByteBuffer payload, int requiredSize) {
+        if (pending == null) {
+            pending = ByteBuffer.allocate(Math.max(INITIAL_BUFFER_CAPACITY, requiredSize));
+        } else if (pending.capacity() < requiredSize) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, requiredSize));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        pending.put(payload.duplicate());
+
+        if (pending.position() >= maxFrameBytes) {
+            flushScheduler.execute(this::flush);
+        } else if (scheduledFlush == null) {
+            scheduledFlush = flushScheduler.schedule(this::flush, coalesceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized ByteBuffer swapPending() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        ByteBuffer data = pending;
+        pending = null;
+        if (data != null) {
+            data.flip();
+        }
+        return data;
+    }
+
+    private void sendLocked(ByteBuffer data) {
+        if (data == null || !data.hasRemaining() || !session.isOpen()) {
+            return;
+        }
+        int length = data.remaining();
+        try {
+            session.sendMessage(new BinaryMessage(data));
+            relayedBytes += length;
+            sentFrames++;
+            sentFramesCounter.increment();
+        } catch (IOException | IllegalStateException ex) {
+            LOGGER.debug("Failed to relay {} bytes to session {}", length, session.getId(), ex);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package io.choerodon.devops.api.ws.relay;
+
+import static io.choerodon.devops.infra.constant.DevOpsWebSocketConstants.FRONT_LOG;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hzero.websocket.helper.KeySocketSendHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import io.choerodon.devops.api.ws.WebSocketTool;
+
+/**
+ * 日志和exec的WebSocket数据中继
+ * 前端和agent的会话在同一个实例上时, 数据直接写到目的会话, 不经过 {@link KeySocketSendHelper}:
+ * 大的帧直接转发原始的ByteBuffer, 小的帧在合并窗口内合并成一帧, 每个目的会话有独立的发送缓冲;
+ * 目的会话不在本实例时, 回退到 {@link KeySocketSendHelper#sendByGroup(String, String, byte[])}
+ *
+ * @author zmf
+ * @since 2021/8/7
+ */
+@Component
+public class WebSocketRelay {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebSocketRelay.class);
+
+    private static final String METRIC_BYTES = "devops.ws.relay.bytes";
+    private static final String METRIC_RECEIVED_FRAMES = "devops.ws.relay.frames.received";
+    private static final String METRIC_SENT_FRAMES = "devops.ws.relay.frames.sent";
+    private static final String METRIC_DROPPED = "devops.ws.relay.dropped";
+    private static final String METRIC_SESSIONS = "devops.ws.relay.sessions";
+    private static final String TAG_PROCESSOR = "processor";
+    private static final String TAG_PATH = "path";
+    private static final String PATH_LOCAL = "local";
+    private static final String PATH_BROKER = "broker";
+
+    /**
+     * 缓冲溢出策略
+     */
+    public enum OverflowPolicy {
+        /**
+         * 丢弃新的帧
+         */
+        DROP,
+        /**
+         * 阻塞源会话的读取, 直到缓冲中的数据发送完成
+         */
+        BLOCK
+    }
+
+    /**
+     * 是否开启本地中继, 关闭时所有数据通过 KeySocketSendHelper 转发(旧的逻辑)
+     */
+    @Value("${devops.ws.relay.enabled:true}")
+    private Boolean enabled;
+    /**
+     * 小帧的合并窗口, 单位: 毫秒, 小于等于0表示不合并
+     */
+    @Value("${devops.ws.relay.coalesceMilliSeconds:5}")
+    private Long coalesceMilliSeconds;
+    /**
+     * 合并后单帧的最大字节数, 不小于这个大小的帧直接转发
+     */
+    @Value("${devops.ws.relay.maxFrameBytes:65536}")
+    private Integer maxFrameBytes;
+    /**
+     * 每个目的会话的发送缓冲上限, 单位: 字节
+     */
+    @Value("${devops.ws.relay.bufferLimitBytes:1048576}")
+    private Integer bufferLimitBytes;
+    /**
+     * 查看日志的缓冲溢出策略, exec和下载日志的数据不能丢弃, 总是阻塞
+     */
+    @Value("${devops.ws.relay.logOverflowPolicy:DROP}")
+    private OverflowPolicy logOverflowPolicy;
+    /**
+     * 发送合并后数据的线程数
+     */
+    @Value("${devops.ws.relay.flushThreads:4}")
+    private Integer flushThreads;
+
+    @Autowired
+    @Lazy
+    private KeySocketSendHelper keySocketSendHelper;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * group -> 本实例上的目的会话
+     */
+    private final Map<String, RelaySession> sessions = new ConcurrentHashMap<>();
+    /**
+     * processor:path -> 接收的指标, 每帧都要计数, 避免每次都到MeterRegistry中查找
+     */
+    private final Map<String, ReceivedCounters> receivedCounters = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flushScheduler;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        flushScheduler = Executors.newScheduledThreadPool(flushThreads, r -> {
+            Thread thread = new Thread(r, "ws-relay-flush-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder(METRIC_SESSIONS, sessions, Map::size)
+                .description("Log and exec sessions that can be relayed to locally")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void destroy() {
+        flushScheduler.shutdownNow();
+    }
+
+    /**
+     * 登记本实例上的会话, 作为中继的目的会话
+     *
+     * @param session 前端或agent的日志/exec会话
+     */
+    public void register(WebSocketSession session) {
+        if (!Boolean.TRUE.equals(enabled)) {
+            return;
+        }
+        String group = WebSocketTool.getGroup(session);
+        String processor = WebSocketTool.getProcessor(session);
+        OverflowPolicy overflowPolicy = FRONT_LOG.equals(processor) ? logOverflowPolicy : OverflowPolicy.BLOCK;
+        RelaySession previous = sessions.put(group, new RelaySession(session, overflowPolicy, flushScheduler,
+                coalesceMilliSeconds, maxFrameBytes, bufferLimitBytes,
+                counter(METRIC_SENT_FRAMES, processor, PATH_LOCAL),
+                counter(METRIC_DROPPED, processor, PATH_LOCAL)));
+        if (previous != null) {
+            LOGGER.debug("Relay session of group {} is replaced", group);
+            previous.close();
+        }
+    }
+
+    /**
+     * 移除会话的登记, 并发送缓冲中剩余的数据
+     *
+     * @param session 会话
+     */
+    public void unregister(WebSocketSession session) {
+        String group = WebSocketTool.getGroup(session);
+        if (group == null) {
+            return;
+        }
+        RelaySession relaySession = sessions.get(group);
+        if (relaySession != null && sessions.remove(group, relaySession)) {
+            relaySession.close();
+        }
+    }
+
+    /**
+     * 转发数据到目的group
+     *
+     * @param destinationGroup 目的会话的group
+     * @param processor        源会话的processor, 用于指标
+     * @param sendKey          回退到 KeySocketSendHelper 时的消息key
+     * @param payload          数据, 方法返回后不会再访问
+     */
+    public void relay(String destinationGroup, String processor, String sendKey, ByteBuffer payload) {
+        int length = payload.remaining();
+        RelaySession relaySession = sessions.get(destinationGroup);
+        if (relaySession != null) {
+            if (relaySession.isOpen()) {
+                countReceived(processor, PATH_LOCAL, length);
+                relaySession.offer(payload);
+                return;
+            }
+            sessions.remove(destinationGroup, relaySession);
+        }
+
+        countReceived(processor, PATH_BROKER, length);
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        keySocketSendHelper.sendByGroup(destinationGroup, sendKey, bytes);
+    }
+
+    private void countReceived(String processor, String path, int length) {
+        ReceivedCounters counters = receivedCounters.computeIfAbsent(processor + ":" + path,
+                key -> new ReceivedCounters(counter(METRIC_BYTES, processor, path), counter(METRIC_RECEIVED_FRAMES, processor, path)));
+        counters.bytes.increment(length);
+        counters.frames.increment();
+    }
+
+    private Counter counter(String name, String processor, String path) {
+        // 注册过的指标会被复用
+        return Counter.builder(name)
+                .tag(TAG_PROCESSOR, processor)
+                .tag(TAG_PATH, path)
+                .register(meterRegistry);
+    }
+
+    private static final class ReceivedCounters {
+        private final Counter bytes;
+        private final Counter frames;
+
+        private ReceivedCounters(Counter bytes, Counter frames) {
+            this.bytes = bytes;
+            this.frames = frames;
+        }
+    }
+}
@@ -32,6 +32,7 @@ import io.choerodon.devops.infra.dto.iam.ProjectDTO;
 import io.choerodon.devops.infra.enums.HostDeployType;
 import io.choerodon.devops.infra.exception.NoTraceException;
 import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator;
+import io.choerodon.devops.infra.handler.IamLookupCache;
 import io.choerodon.devops.infra.mapper.DevopsCdJobRecordMapper;
 import io.choerodon.devops.infra.util.ArrayUtil;
 import io.choerodon.devops.infra.util.JsonHelper;
@@ -72,6 +73,8 @@ public class SagaHandler {
     @Autowired
     private BaseServiceClientOperator baseServiceClientOperator;
     @Autowired
+    private IamLookupCache iamLookupCache;
+    @Autowired
     private DevopsCdJobRecordMapper devopsCdJobRecordMapper;
     @Autowired
     private DevopsCdPipelineRecordService devopsCdPipelineRecordService;
@@ -127,6 +130,7 @@ public class SagaHandler {
     public String handleUpdateGitOpsGroupEvent(String msg) {
         LOGGER.info(">>>>>>>>>start sync project devops category,playLoad={}", msg);
         ProjectPayload projectPayload = gson.fromJson(msg, ProjectPayload.class);
+        iamLookupCache.evictProject(projectPayload.getProjectId());
         //不包含devops项目类型不做同步
         if (CollectionUtils.isEmpty(projectPayload.getProjectCategoryVOS())) {
             return msg;
@@ -263,6 +267,7 @@ public class SagaHandler {
     public String handleUpdateUserEvent(String payload) {
         GitlabUserVO gitlabUserVO = gson.fromJson(payload, GitlabUserVO.class);
         loggerInfo(gitlabUserVO);
+        iamLookupCache.evictUser(TypeUtil.objToLong(gitlabUserVO.getId()));
 
         GitlabUserRequestVO gitlabUserReqDTO = new GitlabUserRequestVO();
         gitlabUserReqDTO.setProvider("oauth2_generic");
@@ -288,6 +293,7 @@ public class SagaHandler {
     public String handleIsEnabledUserEvent(String payload) {
         GitlabUserVO gitlabUserVO = gson.fromJson(payload, GitlabUserVO.class);
         loggerInfo(gitlabUserVO);
+        iamLookupCache.evictUser(TypeUtil.objToLong(gitlabUserVO.getId()));
 
         gitlabUserService.isEnabledGitlabUser(TypeUtil.objToLong(gitlabUserVO.getId()));
         return payload;
@@ -303,6 +309,7 @@ public class SagaHandler {
     public String handleDisEnabledUserEvent(String payload) {
         GitlabUserVO gitlabUserVO = gson.fromJson(payload, GitlabUserVO.class);
         loggerInfo(gitlabUserVO);
+        iamLookupCache.evictUser(TypeUtil.objToLong(gitlabUserVO.getId()));
 
         gitlabUserService.disEnabledGitlabUser(TypeUtil.objToLong(gitlabUserVO.getId()));
         return payload;
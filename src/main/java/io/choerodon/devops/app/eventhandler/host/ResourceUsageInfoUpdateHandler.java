@@ -1,6 +1,7 @@
 package io.choerodon.devops.app.eventhandler.host;
 
 import io.choerodon.devops.api.vo.host.ResourceUsageInfoVO;
+import io.choerodon.devops.app.service.ResourceMetricsService;
 import io.choerodon.devops.infra.constant.DevopsHostConstants;
 import io.choerodon.devops.infra.enums.host.HostMsgEventEnum;
 import io.choerodon.devops.infra.util.JsonHelper;
@@ -20,11 +21,14 @@ public class ResourceUsageInfoUpdateHandler implements HostMsgHandler {
 
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private ResourceMetricsService resourceMetricsService;
 
     @Override
     public void handler(String hostId, Long commandId, String payload) {
         ResourceUsageInfoVO resourceUsageInfoVO = JsonHelper.unmarshalByJackson(payload, ResourceUsageInfoVO.class);
         stringRedisTemplate.opsForValue().set(String.format(DevopsHostConstants.HOST_RESOURCE_INFO_KEY, hostId), JsonHelper.marshalByJackson(resourceUsageInfoVO));
+        resourceMetricsService.recordHostMetrics(hostId, resourceUsageInfoVO);
     }
 
     @Override
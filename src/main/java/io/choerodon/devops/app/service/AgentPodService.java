@@ -1,6 +1,8 @@
 package io.choerodon.devops.app.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import io.choerodon.devops.api.vo.PodMetricsRedisInfoVO;
 import org.springframework.lang.Nullable;
@@ -36,4 +38,14 @@ public interface AgentPodService {
      */
     @Nullable
     PodMetricsRedisInfoVO queryLatestPodSnapshot(String podName, String namespace, String clusterCode);
+
+    /**
+     * 在一次往返中查询同一namespace下多个Pod最新的实时数据
+     *
+     * @param podNames    pod名称
+     * @param namespace   kubernetes namespace
+     * @param clusterCode 集群编码
+     * @return pod名称 -> 最新的实时数据, 没有实时数据的pod不在结果中
+     */
+    Map<String, PodMetricsRedisInfoVO> queryLatestPodSnapshots(Collection<String> podNames, String namespace, String clusterCode);
 }
@@ -0,0 +1,54 @@
+package io.choerodon.devops.app.service;
+
+import java.util.Collection;
+import javax.annotation.Nullable;
+
+import io.choerodon.devops.infra.enums.ChartBlobType;
+
+/**
+ * 应用服务版本的values和readme按内容去重存储
+ * 相同的内容只保存一条记录, 记录的引用数等于引用它的版本数量;
+ * 版本删除时减少引用数, 引用数为0的记录由定时任务清理
+ *
+ * @author zmf
+ * @since 2021/8/10
+ */
+public interface AppServiceVersionBlobService {
+    /**
+     * 引用内容对应的记录, 没有时新建, 引用数加一
+     * 需要和保存版本在同一个事务中调用
+     *
+     * @param type    内容类型
+     * @param content 内容
+     * @return 记录id, 内容为null时为null
+     */
+    @Nullable
+    Long acquire(ChartBlobType type, @Nullable String content);
+
+    /**
+     * 释放版本对记录的引用, 需要和删除版本在同一个事务中调用
+     *
+     * @param type 内容类型
+     * @param ids  记录id, 同一个id出现多次时减少多次引用, null会被忽略
+     */
+    void release(ChartBlobType type, Collection<Long> ids);
+
+    /**
+     * 删除没有被引用的记录
+     *
+     * @param type 内容类型
+     * @return 删除的记录数量
+     */
+    int collectGarbage(ChartBlobType type);
+
+    /**
+     * 对还没有去重的旧记录去重, 一次处理一批
+     * 与已有记录内容相同的旧记录合并到已有记录, 版本改为引用已有记录
+     *
+     * @param type    内容类型
+     * @param afterId 从这个id之后开始处理
+     * @return 这一批最后一条记录的id, 没有需要处理的记录时为null
+     */
+    @Nullable
+    Long deduplicate(ChartBlobType type, Long afterId);
+}
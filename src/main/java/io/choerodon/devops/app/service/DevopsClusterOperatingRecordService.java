@@ -1,7 +1,9 @@
 package io.choerodon.devops.app.service;
 
+import java.util.List;
 import javax.annotation.Nullable;
 
+import io.choerodon.devops.infra.dto.DevopsClusterDTO;
 import io.choerodon.devops.infra.dto.DevopsClusterOperationRecordDTO;
 import io.choerodon.devops.infra.enums.ClusterOperationStatusEnum;
 
@@ -21,4 +23,12 @@ public interface DevopsClusterOperatingRecordService {
     void updateStatusInNewTrans(Long operationRecordId, ClusterOperationStatusEnum statusEnum, String errorMsg);
 
     DevopsClusterOperationRecordDTO queryById(Long operationRecordId);
+
+    /**
+     * 在一个事务中批量更新操作记录的状态、错误信息以及集群的状态
+     *
+     * @param records  操作记录
+     * @param clusters 集群
+     */
+    void batchUpdateStatus(List<DevopsClusterOperationRecordDTO> records, List<DevopsClusterDTO> clusters);
 }
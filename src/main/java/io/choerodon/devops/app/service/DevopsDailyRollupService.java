@@ -0,0 +1,77 @@
+package io.choerodon.devops.app.service;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import javax.annotation.Nullable;
+
+import io.choerodon.devops.api.vo.CountVO;
+import io.choerodon.devops.infra.dto.DevopsDailyRollupDTO;
+import io.choerodon.devops.infra.dto.DevopsEnvCommandDTO;
+import io.choerodon.devops.infra.dto.DevopsGitlabCommitDTO;
+import io.choerodon.devops.infra.dto.DevopsPipelineRecordRelDTO;
+import io.choerodon.devops.infra.enums.DailyRollupMetric;
+
+/**
+ * 项目概览和统计图表的按天汇总
+ * 在写入原始记录的事务中累加当天的数量, 图表只按日期范围查询汇总表
+ *
+ * @author zmf
+ * @since 2021/8/8
+ */
+public interface DevopsDailyRollupService {
+    /**
+     * 新增提交记录后累加, 按提交时间统计
+     *
+     * @param devopsGitlabCommitDTO 已插入的提交记录
+     */
+    void increaseCommit(DevopsGitlabCommitDTO devopsGitlabCommitDTO);
+
+    /**
+     * 批量新增提交记录后累加, 同一个应用服务、用户和日期的提交合并为一次累加
+     *
+     * @param devopsGitlabCommitDTOS 已插入的提交记录
+     */
+    void increaseCommits(List<DevopsGitlabCommitDTO> devopsGitlabCommitDTOS);
+
+    /**
+     * 新增环境指令后累加, 只统计实例的创建和更新
+     *
+     * @param devopsEnvCommandDTO 已插入的指令
+     */
+    void increaseDeploy(DevopsEnvCommandDTO devopsEnvCommandDTO);
+
+    /**
+     * 新增流水线记录关系(流水线触发一次)后累加
+     *
+     * @param devopsPipelineRecordRelDTO 已插入的关系
+     */
+    void increaseCi(DevopsPipelineRecordRelDTO devopsPipelineRecordRelDTO);
+
+    /**
+     * 查询项目下日期范围内每天的数量, 没有数据的日期不返回
+     *
+     * @param projectId 项目id
+     * @param metric    统计项
+     * @param startDate 开始日期(包含)
+     * @param endDate   结束日期(包含)
+     * @return 日期升序
+     */
+    CountVO countByDate(Long projectId, DailyRollupMetric metric, Date startDate, Date endDate);
+
+    /**
+     * 查询日期范围内每个用户每天的数量
+     *
+     * @param appServiceIds 应用服务id, 为空时查询项目下所有的应用服务
+     * @return 日期升序
+     */
+    List<DevopsDailyRollupDTO> listDailyCountByUser(Long projectId, DailyRollupMetric metric, @Nullable Collection<Long> appServiceIds, Date startDate, Date endDate);
+
+    /**
+     * 从原始记录重新汇总日期范围内所有统计项的数据
+     *
+     * @param startDate 开始日期(包含)
+     * @param endDate   结束日期(包含)
+     */
+    void rebuild(Date startDate, Date endDate);
+}
@@ -1,6 +1,8 @@
 package io.choerodon.devops.app.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import io.choerodon.core.domain.Page;
 import io.choerodon.devops.api.vo.DevopsEnvFileErrorVO;
@@ -46,6 +48,22 @@ public interface DevopsEnvFileService {
 
     List<DevopsEnvFileDTO> baseListByEnvIdAndPath(Long envId, String path);
 
+    /**
+     * 批量更新环境下文件的devops提交, 不存在的文件纪录会被创建
+     *
+     * @param envId       环境id
+     * @param fileCommits 文件路径 -> 文件的最新提交
+     */
+    void batchUpdateDevopsCommit(Long envId, Map<String, String> fileCommits);
+
+    /**
+     * 批量删除环境下指定路径的文件纪录
+     *
+     * @param envId     环境id
+     * @param filePaths 文件路径
+     */
+    void batchDeleteByEnvIdAndPaths(Long envId, Collection<String> filePaths);
+
     /**
      * 根据环境id删除相应的纪录
      * 删除环境时使用
@@ -1,5 +1,6 @@
 package io.choerodon.devops.app.service;
 
+import java.util.Collection;
 import java.util.List;
 
 import io.choerodon.devops.api.vo.DevopsEnvResourceVO;
@@ -68,6 +69,17 @@ public interface DevopsEnvResourceService {
      */
     List<DevopsEnvResourceDTO> listEnvResourceByOptions(Long envId, String type, List<String> names);
 
+    /**
+     * 批量查询环境下的资源关联的实例id, 只查询id, kind, name和instance_id
+     * 结果中可能包含类型和名称不对应的资源, 需要调用方过滤
+     *
+     * @param envId 环境id
+     * @param kinds 资源类型
+     * @param names 资源名称
+     * @return 按id升序排列的资源
+     */
+    List<DevopsEnvResourceDTO> listInstanceIdsByKindsAndNames(Long envId, Collection<String> kinds, Collection<String> names);
+
     List<PodEventVO> listPodEventBycommandId(Long commandId);
 
     String getResourceDetailByEnvIdAndKindAndName(Long envId, String name, ResourceType pod);
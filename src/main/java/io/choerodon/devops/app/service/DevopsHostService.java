@@ -62,6 +62,15 @@ public interface DevopsHostService {
      */
     String asyncBatchCorrectStatusWithProgress(Long projectId, Set<Long> hostIds);
 
+    /**
+     * 异步批量校准主机状态, 并将每个主机的校验结果记录到校验进度中
+     *
+     * @param projectId  项目id
+     * @param correctKey 校验进度的key
+     * @param hostIds    主机id
+     */
+    void asyncBatchCorrectStatus(Long projectId, String correctKey, Set<Long> hostIds);
+
     /**
      * 异步批量更新超时的主机为失败
      *
@@ -79,13 +88,6 @@ public interface DevopsHostService {
      */
     void correctStatus(Long projectId, Long hostId, Long updaterId);
 
-    /**
-     * 校正一个主机的状态
-     *
-     * @param projectId 项目id
-     * @param hostId    主机id
-     */
-    void correctStatus(Long projectId, String correctKey, Long hostId);
 
     /**
      * 更新主机
@@ -0,0 +1,48 @@
+package io.choerodon.devops.app.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+import io.choerodon.devops.infra.dto.AppServiceDTO;
+
+/**
+ * 模糊搜索的三元组倒排索引
+ * 索引和应用服务在同一个事务中写入; 搜索时先从索引得到候选的id, 再由原有的LIKE条件在候选中精确过滤
+ *
+ * @author zmf
+ * @since 2021/8/8
+ */
+public interface DevopsSearchIndexService {
+    /**
+     * 新建或者更新应用服务的名称和编码后, 重建这个应用服务的索引
+     *
+     * @param appServiceDTO 需要有id, projectId, name, code
+     */
+    void indexAppService(AppServiceDTO appServiceDTO);
+
+    /**
+     * 删除应用服务的索引
+     *
+     * @param appServiceId 应用服务id
+     */
+    void removeAppService(Long appServiceId);
+
+    /**
+     * 根据搜索条件从索引中查询可能匹配的应用服务id
+     * searchParam 中的 code 和 name 取交集, params 之间取并集, 与原有的LIKE条件一致
+     *
+     * @param projectId   项目id
+     * @param searchParam 搜索条件
+     * @param params      模糊搜索的参数
+     * @return 为空表示不能使用索引(没有搜索词, 搜索词太短或者候选太多, 索引未建完), 需要全表过滤
+     */
+    @Nullable
+    Set<Long> resolveAppServiceIds(Long projectId, @Nullable Map<String, Object> searchParam, @Nullable List<String> params);
+
+    /**
+     * 重建所有应用服务的索引, 完成后搜索才会使用索引
+     */
+    void rebuildAppServices();
+}
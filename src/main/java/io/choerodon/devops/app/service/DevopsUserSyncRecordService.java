@@ -24,6 +24,32 @@ public interface DevopsUserSyncRecordService {
      */
     DevopsUserSyncRecordDTO initRecord(UserSyncType userSyncType);
 
+    /**
+     * 继续上次未结束的同步记录, 没有未结束的记录时初始化记录
+     * 只应该在持有同步用户的分布式锁时调用, 此时处于同步中的记录都是之前中断的
+     *
+     * @param userSyncType 用户同步类型
+     * @return 同步记录
+     */
+    DevopsUserSyncRecordDTO resumeOrInitRecord(UserSyncType userSyncType);
+
+    /**
+     * 记录本次要同步的用户数量
+     *
+     * @param recordId     记录id
+     * @param pendingCount 本次要同步的用户数量
+     */
+    void start(Long recordId, long pendingCount);
+
+    /**
+     * 累加一个分片的同步结果
+     *
+     * @param recordId     记录id
+     * @param successCount 分片中同步成功的数量
+     * @param failCount    分片中同步失败的数量
+     */
+    void checkpoint(Long recordId, long successCount, long failCount);
+
     /**
      * 结束一次同步
      *
@@ -34,6 +60,14 @@ public interface DevopsUserSyncRecordService {
      */
     void finish(Long recordId, Long successCount, Long failCount, String errorInformationCsv);
 
+    /**
+     * 结束一次同步, 同步数和失败数使用记录中累加的数量
+     *
+     * @param recordId            记录id
+     * @param errorInformationCsv 错误信息
+     */
+    void finish(Long recordId, String errorInformationCsv);
+
     /**
      * 记录一次未同步用户的记录
      *
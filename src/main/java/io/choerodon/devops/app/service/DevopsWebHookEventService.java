@@ -0,0 +1,66 @@
+package io.choerodon.devops.app.service;
+
+import javax.annotation.Nullable;
+
+import io.choerodon.core.domain.Page;
+import io.choerodon.devops.api.vo.DevopsWebHookEventVO;
+import io.choerodon.mybatis.pagehelper.domain.PageRequest;
+
+/**
+ * gitlab webhook事件的异步处理队列
+ * 事件先保存再返回, 之后按gitlab项目分区异步处理, 同一个项目的事件按接收顺序处理;
+ * 处理失败的事件延迟重试, 重试次数用完后进入死信, 可以手动重放
+ *
+ * @author zmf
+ * @since 2021/8/10
+ */
+public interface DevopsWebHookEventService {
+    /**
+     * 接收webhook事件, 相同的事件只保存一次
+     * 队列未启用时直接同步处理
+     *
+     * @param body      webhook的请求体
+     * @param token     webhook的token
+     * @param eventUuid gitlab的事件uuid, 旧版本的gitlab没有
+     */
+    void accept(String body, String token, @Nullable String eventUuid);
+
+    /**
+     * 分发到期的待处理和待重试的事件
+     */
+    void dispatchDueEvents();
+
+    /**
+     * 处理中超时的事件按失败处理
+     */
+    void failStaleEvents();
+
+    /**
+     * 删除过了保留时间的成功和死信事件
+     */
+    void cleanup();
+
+    /**
+     * 分页查询事件
+     *
+     * @param status      状态, 可以为空
+     * @param objectKind  事件类型, 可以为空
+     * @param pageRequest 分页参数
+     * @return 事件
+     */
+    Page<DevopsWebHookEventVO> pageEvents(@Nullable String status, @Nullable String objectKind, PageRequest pageRequest);
+
+    /**
+     * 重新处理一个事件
+     *
+     * @param eventId 事件id
+     */
+    void replay(Long eventId);
+
+    /**
+     * 重新处理所有死信事件
+     *
+     * @return 事件数量
+     */
+    int replayDeadEvents();
+}
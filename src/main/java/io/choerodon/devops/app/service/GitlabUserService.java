@@ -1,13 +1,11 @@
 package io.choerodon.devops.app.service;
 
-import java.util.Iterator;
 import java.util.List;
 
 import io.choerodon.devops.api.vo.GitlabUserRequestVO;
-import io.choerodon.devops.infra.dto.DevopsUserSyncRecordDTO;
 import io.choerodon.devops.infra.dto.UserAttrDTO;
+import io.choerodon.devops.infra.dto.iam.IamUserDTO;
 import io.choerodon.devops.infra.enums.UserSyncType;
-import io.choerodon.devops.infra.util.UserSyncErrorBuilder;
 
 /**
  * Created by Zenger on 2018/3/28.
@@ -40,24 +38,11 @@ public interface GitlabUserService {
     void asyncHandleAllUsers(UserSyncType userSyncType);
 
     /**
-     * 同步所有用户
+     * 在新事务中同步单个用户到gitlab, 失败时抛出异常
      *
-     * @param userSyncType      触发同步的来源类型
-     * @param userSyncRecordDTO 用户同步记录
+     * @param user iam的用户信息
      */
-    void syncAllUsers(UserSyncType userSyncType, DevopsUserSyncRecordDTO userSyncRecordDTO);
-
-    /**
-     * 分批同步用户
-     *
-     * @param iamUserIds              总的用户id的迭代器
-     * @param batchSize               一批该处理的数量，例如1000
-     * @param processedSize           已经处理的用户数量
-     * @param totalSize               所有的用户总数
-     * @param devopsUserSyncRecordDTO 同步记录
-     * @param userSyncErrorBuilder    同步用户的错误信息
-     */
-    void batchSyncUsersInNewTx(Iterator<Long> iamUserIds, int batchSize, int processedSize, int totalSize, DevopsUserSyncRecordDTO devopsUserSyncRecordDTO, UserSyncErrorBuilder userSyncErrorBuilder);
+    void syncUserInNewTx(IamUserDTO user);
 
     void isEnabledGitlabUser(Long userId);
 
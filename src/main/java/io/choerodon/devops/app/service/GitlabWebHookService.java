@@ -4,5 +4,14 @@ public interface GitlabWebHookService {
 
     void forwardingEventToPortal(String body, String token);
 
+    /**
+     * 处理已知类型的webhook事件
+     *
+     * @param objectKind 事件类型
+     * @param body       webhook的请求体
+     * @param token      webhook的token
+     */
+    void processEvent(String objectKind, String body, String token);
+
     void gitOpsWebHook(String body, String token);
 }
@@ -0,0 +1,56 @@
+package io.choerodon.devops.app.service;
+
+import java.util.List;
+import javax.annotation.Nullable;
+
+import io.choerodon.devops.api.vo.PodMetricsRedisInfoVO;
+import io.choerodon.devops.api.vo.ResourceMetricsVO;
+import io.choerodon.devops.api.vo.host.ResourceUsageInfoVO;
+
+/**
+ * pod和主机的cpu, 内存使用量的历史数据
+ *
+ * @author zmf
+ * @since 2021/8/9
+ */
+public interface ResourceMetricsService {
+    /**
+     * 记录agent上报的pod实时数据
+     *
+     * @param pods pod数据
+     */
+    void recordPodMetrics(List<PodMetricsRedisInfoVO> pods);
+
+    /**
+     * 记录主机上报的资源使用率
+     *
+     * @param hostId            主机id
+     * @param resourceUsageInfo 资源使用率
+     */
+    void recordHostMetrics(String hostId, ResourceUsageInfoVO resourceUsageInfo);
+
+    /**
+     * 查询pod一段时间内的cpu和内存使用量
+     *
+     * @param projectId  项目id
+     * @param envId      环境id
+     * @param podId      pod id
+     * @param startTime  开始时间, 单位: 毫秒, 默认为结束时间前一小时
+     * @param endTime    结束时间, 单位: 毫秒, 默认为当前时间
+     * @param resolution 精度: raw/1m/5m/1h, 为空时按时间范围选择
+     * @return 使用量
+     */
+    ResourceMetricsVO queryPodMetrics(Long projectId, Long envId, Long podId, @Nullable Long startTime, @Nullable Long endTime, @Nullable String resolution);
+
+    /**
+     * 查询主机一段时间内的cpu和内存使用率
+     *
+     * @param projectId  项目id
+     * @param hostId     主机id
+     * @param startTime  开始时间, 单位: 毫秒, 默认为结束时间前一小时
+     * @param endTime    结束时间, 单位: 毫秒, 默认为当前时间
+     * @param resolution 精度: raw/1m/5m/1h, 为空时按时间范围选择
+     * @return 使用率
+     */
+    ResourceMetricsVO queryHostMetrics(Long projectId, Long hostId, @Nullable Long startTime, @Nullable Long endTime, @Nullable String resolution);
+}
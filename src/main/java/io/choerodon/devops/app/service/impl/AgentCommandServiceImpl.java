@@ -369,7 +369,7 @@ public class AgentCommandServiceImpl implements AgentCommandService {
 
     @Override
     public void getTestAppStatus(Map<Long, List<String>> testReleases) {
-        List<Long> connected = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> connected = clusterConnectionHandler.getUpdatedClusterSet();
         testReleases.forEach((key, value) -> {
             if (connected.contains(key)) {
                 AgentMsgVO msg = new AgentMsgVO();
@@ -135,6 +135,8 @@ public class AgentMsgHandlerServiceImpl implements AgentMsgHandlerService {
     @Autowired
     private AgentPodService agentPodService;
     @Autowired
+    private ResourceMetricsService resourceMetricsService;
+    @Autowired
     private AgentCommandService agentCommandService;
     @Autowired
     private AppServiceMapper appServiceMapper;
@@ -2225,6 +2227,7 @@ public class AgentMsgHandlerServiceImpl implements AgentMsgHandlerService {
                 podMetricsRedisInfoVOS.add(podMetricsRedisInfoVO);
             });
             agentPodService.handleRealTimePodData(podMetricsRedisInfoVOS);
+            resourceMetricsService.recordPodMetrics(podMetricsRedisInfoVOS);
         }
     }
 
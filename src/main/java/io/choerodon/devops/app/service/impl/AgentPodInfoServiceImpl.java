@@ -1,11 +1,15 @@
 package io.choerodon.devops.app.service.impl;
 
-import java.util.Date;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import com.alibaba.fastjson.JSON;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
@@ -18,40 +22,59 @@ import io.choerodon.devops.app.service.AgentPodService;
  */
 @Service
 public class AgentPodInfoServiceImpl implements AgentPodService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AgentPodInfoServiceImpl.class);
     /**
-     * pod--${podName}--${namespace}
+     * pod--${podName}--${namespace}--${clusterCode}
      */
     private static final String KEY_PATTERN = "pod--%s--%s--%s";
     /**
      * 在redis中存的实时数据的最大数量
      */
     private static final long RECORD_SIZE = 30;
+    /**
+     * pod的实时数据的过期时间, 避免已经删除的pod的数据一直留在redis中
+     */
+    private static final long RECORD_EXPIRE_SECONDS = TimeUnit.DAYS.toSeconds(1);
+    /**
+     * 紧凑格式的字段分隔符, 格式为 ${snapshotTimeMillis},${cpu},${memory}, cpu和memory为null时为空
+     * pod名称, namespace和集群编码已经在key中, 不重复存储
+     */
+    private static final char FIELD_SEPARATOR = ',';
+    /**
+     * 旧版本以JSON格式存储, 读取时兼容
+     */
+    private static final char LEGACY_JSON_PREFIX = '{';
+    private static final String NULL_FIELD = "null";
 
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
 
     @Override
     public void handleRealTimePodData(List<PodMetricsRedisInfoVO> pods) {
-        Date snapshotTime = new Date();
-        pods.forEach(pod -> {
-            pod.setSnapShotTime(snapshotTime);
-            String key = String.format(KEY_PATTERN, pod.getName(), pod.getNamespace(), pod.getClusterCode());
-            Long size = stringRedisTemplate.opsForList().size(key);
-            if (size >= RECORD_SIZE) {
-                long stop = size - 1;
-                long start = stop - (RECORD_SIZE - 1) + 1;
-                stringRedisTemplate.opsForList().trim(key, start, stop);
-            }
-            stringRedisTemplate.opsForList().rightPush(key, JSON.toJSONString(pod));
+        if (pods.isEmpty()) {
+            return;
+        }
+        long snapshotTime = System.currentTimeMillis();
+        // 一个namespace的所有pod的数据在一次往返中写入
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringRedisConnection = (StringRedisConnection) connection;
+            pods.forEach(pod -> {
+                String key = String.format(KEY_PATTERN, pod.getName(), pod.getNamespace(), pod.getClusterCode());
+                stringRedisConnection.rPush(key, encode(snapshotTime, pod));
+                stringRedisConnection.lTrim(key, -RECORD_SIZE, -1);
+                stringRedisConnection.expire(key, RECORD_EXPIRE_SECONDS);
+            });
+            return null;
         });
     }
 
     @Override
     public List<PodMetricsRedisInfoVO> queryAllPodSnapshots(String podName, String namespace, String clusterCode) {
         return stringRedisTemplate.opsForList()
-                .range(String.format(KEY_PATTERN, podName, namespace, clusterCode), 0, RECORD_SIZE - 1)
+                .range(String.format(KEY_PATTERN, podName, namespace, clusterCode), -RECORD_SIZE, -1)
                 .stream()
-                .map(p -> JSON.parseObject(p, PodMetricsRedisInfoVO.class))
+                .map(p -> decode(p, podName, namespace, clusterCode))
+                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
     }
 
@@ -59,7 +82,67 @@ public class AgentPodInfoServiceImpl implements AgentPodService {
     @Override
     public PodMetricsRedisInfoVO queryLatestPodSnapshot(String podName, String namespace, String clusterCode) {
         String key = String.format(KEY_PATTERN, podName, namespace, clusterCode);
-        Long size = stringRedisTemplate.opsForList().size(key);
-        return JSON.parseObject(stringRedisTemplate.opsForList().index(key, size - 1), PodMetricsRedisInfoVO.class);
+        return decode(stringRedisTemplate.opsForList().index(key, -1), podName, namespace, clusterCode);
+    }
+
+    @Override
+    public Map<String, PodMetricsRedisInfoVO> queryLatestPodSnapshots(Collection<String> podNames, String namespace, String clusterCode) {
+        if (podNames.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<String> orderedPodNames = new ArrayList<>(podNames);
+        // 每个pod只需要一次LINDEX, 所有pod的查询在一次往返中完成
+        List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringRedisConnection = (StringRedisConnection) connection;
+            orderedPodNames.forEach(podName -> stringRedisConnection.lIndex(String.format(KEY_PATTERN, podName, namespace, clusterCode), -1));
+            return null;
+        });
+        Map<String, PodMetricsRedisInfoVO> snapshots = new HashMap<>(orderedPodNames.size());
+        for (int i = 0; i < orderedPodNames.size(); i++) {
+            String podName = orderedPodNames.get(i);
+            PodMetricsRedisInfoVO snapshot = decode((String) values.get(i), podName, namespace, clusterCode);
+            if (snapshot != null) {
+                snapshots.put(podName, snapshot);
+            }
+        }
+        return snapshots;
+    }
+
+    private static String encode(long snapshotTime, PodMetricsRedisInfoVO pod) {
+        return snapshotTime + String.valueOf(FIELD_SEPARATOR) + encodeField(pod.getCpu()) + FIELD_SEPARATOR + encodeField(pod.getMemory());
+    }
+
+    private static String encodeField(@Nullable String field) {
+        return field == null ? "" : field;
+    }
+
+    @Nullable
+    private static String decodeField(String field) {
+        // 之前的版本把null写成了"null", 在数据过期前兼容
+        return field.isEmpty() || NULL_FIELD.equals(field) ? null : field;
+    }
+
+    @Nullable
+    private static PodMetricsRedisInfoVO decode(@Nullable String value, String podName, String namespace, String clusterCode) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        if (value.charAt(0) == LEGACY_JSON_PREFIX) {
+            return JSON.parseObject(value, PodMetricsRedisInfoVO.class);
+        }
+        int first = value.indexOf(FIELD_SEPARATOR);
+        int second = first < 0 ? -1 : value.indexOf(FIELD_SEPARATOR, first + 1);
+        if (second < 0) {
+            LOGGER.warn("Unexpected pod metrics value {} of pod {} in namespace {} of cluster {}", value, podName, namespace, clusterCode);
+            return null;
+        }
+        PodMetricsRedisInfoVO pod = new PodMetricsRedisInfoVO();
+        pod.setName(podName);
+        pod.setNamespace(namespace);
+        pod.setClusterCode(clusterCode);
+        pod.setSnapShotTime(new Date(Long.parseLong(value.substring(0, first))));
+        pod.setCpu(decodeField(value.substring(first + 1, second)));
+        pod.setMemory(decodeField(value.substring(second + 1)));
+        return pod;
     }
 }
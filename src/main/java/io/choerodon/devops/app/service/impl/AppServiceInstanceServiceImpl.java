@@ -201,7 +201,7 @@ public class AppServiceInstanceServiceImpl implements AppServiceInstanceService
             return null;
         }
         AppServiceInstanceInfoVO appServiceInstanceInfoVO = new AppServiceInstanceInfoVO();
-        List<Long> updatedEnv = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnv = clusterConnectionHandler.getUpdatedClusterSet();
         BeanUtils.copyProperties(appServiceInstanceInfoDTO, appServiceInstanceInfoVO);
         appServiceInstanceInfoVO.setConnect(updatedEnv.contains(appServiceInstanceInfoDTO.getClusterId()));
 
@@ -258,7 +258,7 @@ public class AppServiceInstanceServiceImpl implements AppServiceInstanceService
     @Override
     public Page<AppServiceInstanceInfoVO> pageInstanceInfoByOptions(Long projectId, Long envId, PageRequest pageable, String params) {
         Map<String, Object> maps = TypeUtil.castMapParams(params);
-        List<Long> updatedEnv = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnv = clusterConnectionHandler.getUpdatedClusterSet();
         Page<AppServiceInstanceInfoVO> pageInfo = ConvertUtils.convertPage(PageHelper.doPageAndSort(PageRequestUtil.getMappedPage(pageable, orderByFieldMap), () -> appServiceInstanceMapper.listInstanceInfoByEnvAndOptions(
                 envId, TypeUtil.cast(maps.get(TypeUtil.SEARCH_PARAM)), TypeUtil.cast(maps.get(TypeUtil.PARAMS)))),
                 AppServiceInstanceInfoVO.class);
@@ -1613,15 +1613,10 @@ public class AppServiceInstanceServiceImpl implements AppServiceInstanceService
             return instanceValueVO;
         }
 
-        String fileName = GenerateUUID.generateUUID() + YAML_SUFFIX;
-        String path = "deployfile";
-        FileUtil.saveDataToFile(path, fileName, versionValue + "\n" + "---" + "\n" + deployValue);
         InstanceValueVO instanceValueVO;
-        String absoluteFilePath = path + System.getProperty(FILE_SEPARATOR) + fileName;
         try {
-            instanceValueVO = FileUtil.replaceNew(absoluteFilePath);
+            instanceValueVO = HelmValuesMergeUtil.merge(versionValue, deployValue);
         } catch (Exception e) {
-            FileUtil.deleteFile(absoluteFilePath);
             LOGGER.warn("Failed to replace values. the version values is {} and deploy value is {}", versionValue, deployValue);
             throw new CommonException(e.getMessage(), e);
         }
@@ -1629,7 +1624,6 @@ public class AppServiceInstanceServiceImpl implements AppServiceInstanceService
             instanceValueVO.setHighlightMarkers(new ArrayList<>());
         }
         instanceValueVO.setTotalLine(FileUtil.getFileTotalLine(instanceValueVO.getYaml()));
-        FileUtil.deleteFile(absoluteFilePath);
         return instanceValueVO;
     }
 
@@ -103,6 +103,7 @@ import io.choerodon.devops.infra.feign.HrdsCodeRepoClient;
 import io.choerodon.devops.infra.feign.RdupmClient;
 import io.choerodon.devops.infra.feign.SonarClient;
 import io.choerodon.devops.infra.feign.operator.*;
+import io.choerodon.devops.infra.handler.IamResourceResolver;
 import io.choerodon.devops.infra.handler.RetrofitHandler;
 import io.choerodon.devops.infra.mapper.*;
 import io.choerodon.devops.infra.util.*;
@@ -168,6 +169,8 @@ public class AppServiceServiceImpl implements AppServiceService {
     @Autowired
     private AppServiceMapper appServiceMapper;
     @Autowired
+    private DevopsSearchIndexService devopsSearchIndexService;
+    @Autowired
     private AppServiceInstanceMapper appServiceInstanceMapper;
     @Autowired
     private AppServiceVersionMapper appServiceVersionMapper;
@@ -184,6 +187,8 @@ public class AppServiceServiceImpl implements AppServiceService {
     @Autowired
     private BaseServiceClientOperator baseServiceClientOperator;
     @Autowired
+    private IamResourceResolver iamResourceResolver;
+    @Autowired
     private GitlabServiceClientOperator gitlabServiceClientOperator;
     @Autowired
     private DevopsConfigService devopsConfigService;
@@ -332,8 +337,8 @@ public class AppServiceServiceImpl implements AppServiceService {
 
     @Override
     public AppServiceRepVO query(Long projectId, Long appServiceId) {
-        ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(projectId);
-        Tenant organizationDTO = baseServiceClientOperator.queryOrganizationById(projectDTO.getOrganizationId());
+        ProjectDTO projectDTO = iamResourceResolver.queryProject(projectId);
+        Tenant organizationDTO = iamResourceResolver.queryTenant(projectDTO.getOrganizationId());
         AppServiceDTO appServiceDTO = appServiceMapper.selectByPrimaryKey(appServiceId);
         Boolean shareAppService = false;
         if (!appServiceDTO.getProjectId().equals(projectId)) {
@@ -353,7 +358,7 @@ public class AppServiceServiceImpl implements AppServiceService {
             appServiceRepVO.setRepoUrl(concatRepoUrl(organizationDTO.getTenantNum(), projectDTO.getCode(), appServiceDTO.getCode()));
         }
         if (shareAppService) {
-            ProjectDTO shareProjectDTO = baseServiceClientOperator.queryIamProjectById(appServiceDTO.getProjectId());
+            ProjectDTO shareProjectDTO = iamResourceResolver.queryProject(appServiceDTO.getProjectId());
             appServiceRepVO.setShareProjectName(shareProjectDTO.getName());
         }
         //添加harbor的配置信息
@@ -376,11 +381,16 @@ public class AppServiceServiceImpl implements AppServiceService {
     @Override
     public Page<AppServiceRepVO> internalListAllInProject(Long projectId, String params, PageRequest pageable) {
         Map<String, Object> mapParams = TypeUtil.castMapParams(params);
+        Map<String, Object> searchParam = TypeUtil.cast(mapParams.get(TypeUtil.SEARCH_PARAM));
+        List<String> paramList = TypeUtil.cast(mapParams.get(TypeUtil.PARAMS));
+        Set<Long> searchIds = devopsSearchIndexService.resolveAppServiceIds(projectId, searchParam, paramList);
+        if (searchIds != null && searchIds.isEmpty()) {
+            return new Page<>();
+        }
         return ConvertUtils.convertPage(
                 PageHelper.doPageAndSort(PageRequestUtil.simpleConvertSortForPage(pageable),
                         () -> appServiceMapper.list(projectId, null, null, null,
-                                TypeUtil.cast(mapParams.get(TypeUtil.SEARCH_PARAM)),
-                                TypeUtil.cast(mapParams.get(TypeUtil.PARAMS)), PageRequestUtil.checkSortIsEmpty(pageable))),
+                                searchParam, paramList, PageRequestUtil.checkSortIsEmpty(pageable), searchIds)),
                 this::dtoToRepVoWithoutIamUserFill);
     }
 
@@ -511,6 +521,7 @@ public class AppServiceServiceImpl implements AppServiceService {
             rdupmClient.deleteRelationByService(projectId, appServiceId, harborCustomRepo.getId());
         }
         appServiceMapper.deleteByPrimaryKey(appServiceId);
+        devopsSearchIndexService.removeAppService(appServiceId);
     }
 
     @Override
@@ -1859,13 +1870,13 @@ public class AppServiceServiceImpl implements AppServiceService {
     @Override
     public Page<AppServiceRepVO> pageShareAppService(Long projectId, boolean doPage, PageRequest pageable, String searchParam) {
         Map<String, Object> searchParamMap = TypeUtil.castMapParams(searchParam);
-        Long organizationId = baseServiceClientOperator.queryIamProjectById(projectId).getOrganizationId();
-        List<Long> appServiceIds = new ArrayList<>();
-        baseServiceClientOperator.listIamProjectByOrgId(organizationId).stream()
-                .filter(projectDTO -> !projectId.equals(projectDTO.getId()))
-                .forEach(proId ->
-                        baseListAll(proId.getId()).forEach(appServiceDTO -> appServiceIds.add(appServiceDTO.getId()))
-                );
+        Long organizationId = iamResourceResolver.queryProject(projectId).getOrganizationId();
+        List<Long> otherProjectIds = baseServiceClientOperator.listIamProjectByOrgId(organizationId).stream()
+                .map(ProjectDTO::getId)
+                .filter(id -> !projectId.equals(id))
+                .collect(toList());
+        // 组织下其它项目部署过的应用服务一次查出
+        List<Long> appServiceIds = otherProjectIds.isEmpty() ? new ArrayList<>() : appServiceMapper.listDeployedIdsByProjectIds(otherProjectIds);
         Page<AppServiceDTO> applicationServiceDTOPageInfo = new Page<>();
         if (doPage) {
             applicationServiceDTOPageInfo = PageHelper.doPageAndSort(PageRequestUtil.simpleConvertSortForPage(pageable), () -> appServiceMapper.listShareApplicationService(appServiceIds, projectId, null, TypeUtil.cast(searchParamMap.get(TypeUtil.PARAMS))));
@@ -2211,7 +2222,7 @@ public class AppServiceServiceImpl implements AppServiceService {
                     DevopsEnvironmentDTO devopsEnvironmentDTO = devopsEnvironmentMapper.selectByPrimaryKey(appServiceRepVO.getEnvId());
                     if (!Objects.isNull(devopsEnvironmentDTO)) {
                         if (!devopsEnvironmentDTO.getProjectId().equals(appServiceDTO.getProjectId())) {
-                            ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(appServiceDTO.getProjectId());
+                            ProjectDTO projectDTO = iamResourceResolver.queryProject(appServiceDTO.getProjectId());
                             appServiceRepVO.setShareProjectName(projectDTO.getName());
                         }
                     }
@@ -2412,7 +2423,11 @@ public class AppServiceServiceImpl implements AppServiceService {
         if (appServiceMapper.updateByPrimaryKeySelective(applicationDTO) != 1) {
             throw new CommonException("error.app.service.update");
         }
-        return appServiceMapper.selectByPrimaryKey(applicationDTO.getId());
+        AppServiceDTO updatedAppServiceDTO = appServiceMapper.selectByPrimaryKey(applicationDTO.getId());
+        if (applicationDTO.getName() != null || applicationDTO.getCode() != null) {
+            devopsSearchIndexService.indexAppService(updatedAppServiceDTO);
+        }
+        return updatedAppServiceDTO;
     }
 
     @Override
@@ -2425,6 +2440,13 @@ public class AppServiceServiceImpl implements AppServiceService {
             appMarket, String type, Boolean doPage, PageRequest pageable, String params, Boolean checkMember) {
 
         Map<String, Object> mapParams = TypeUtil.castMapParams(params);
+        Map<String, Object> searchParam = TypeUtil.cast(mapParams.get(TypeUtil.SEARCH_PARAM));
+        List<String> paramList = TypeUtil.cast(mapParams.get(TypeUtil.PARAMS));
+        // 先从索引得到候选的应用服务, 没有候选时不需要再查询
+        Set<Long> searchIds = devopsSearchIndexService.resolveAppServiceIds(projectId, searchParam, paramList);
+        if (searchIds != null && searchIds.isEmpty()) {
+            return new Page<>();
+        }
         Long userId = DetailsHelper.getUserDetails().getUserId();
 
         boolean projectOwnerOrRoot = permissionHelper.isGitlabProjectOwnerOrGitlabAdmin(projectId, userId);
@@ -2434,12 +2456,10 @@ public class AppServiceServiceImpl implements AppServiceService {
             if (doPage == null || doPage) {
                 return PageHelper.doPageAndSort(PageRequestUtil.simpleConvertSortForPage(pageable),
                         () -> appServiceMapper.list(projectId, isActive, hasVersion, type,
-                                TypeUtil.cast(mapParams.get(TypeUtil.SEARCH_PARAM)),
-                                TypeUtil.cast(mapParams.get(TypeUtil.PARAMS)), PageRequestUtil.checkSortIsEmpty(pageable)));
+                                searchParam, paramList, PageRequestUtil.checkSortIsEmpty(pageable), searchIds));
             } else {
                 list = appServiceMapper.list(projectId, isActive, hasVersion, type,
-                        TypeUtil.cast(mapParams.get(TypeUtil.SEARCH_PARAM)),
-                        TypeUtil.cast(mapParams.get(TypeUtil.PARAMS)), PageRequestUtil.checkSortIsEmpty(pageable));
+                        searchParam, paramList, PageRequestUtil.checkSortIsEmpty(pageable), searchIds);
             }
         } else {
             // 是否需要进行项目成员gitlab角色校验
@@ -2457,12 +2477,10 @@ public class AppServiceServiceImpl implements AppServiceService {
             if (doPage == null || doPage) {
                 return PageHelper.doPageAndSort(PageRequestUtil.simpleConvertSortForPage(pageable),
                         () -> appServiceMapper.listProjectMembersAppService(projectId, appServiceIds, isActive, hasVersion, type,
-                                TypeUtil.cast(mapParams.get(TypeUtil.SEARCH_PARAM)),
-                                TypeUtil.cast(mapParams.get(TypeUtil.PARAMS)), pageable.getSort() == null, userId));
+                                searchParam, paramList, pageable.getSort() == null, userId, searchIds));
             } else {
                 list = appServiceMapper.listProjectMembersAppService(projectId, appServiceIds, isActive, hasVersion, type,
-                        TypeUtil.cast(mapParams.get(TypeUtil.SEARCH_PARAM)),
-                        TypeUtil.cast(mapParams.get(TypeUtil.PARAMS)), pageable.getSort() == null, userId);
+                        searchParam, paramList, pageable.getSort() == null, userId, searchIds);
             }
         }
 
@@ -2518,6 +2536,7 @@ public class AppServiceServiceImpl implements AppServiceService {
     @Override
     public void baseDelete(Long appServiceId) {
         appServiceMapper.deleteByPrimaryKey(appServiceId);
+        devopsSearchIndexService.removeAppService(appServiceId);
     }
 
     @Override
@@ -2608,6 +2627,7 @@ public class AppServiceServiceImpl implements AppServiceService {
         if (appServiceMapper.insert(appServiceDTO) != 1) {
             throw new CommonException("error.application.create.insert");
         }
+        devopsSearchIndexService.indexAppService(appServiceDTO);
         return appServiceDTO;
     }
 
@@ -2671,7 +2691,10 @@ public class AppServiceServiceImpl implements AppServiceService {
         }
         switch (type) {
             case NORMAL_SERVICE: {
-                List<AppServiceDTO> list = appServiceMapper.list(projectId, Boolean.TRUE, true, serviceType, null, params, "");
+                Set<Long> searchIds = devopsSearchIndexService.resolveAppServiceIds(projectId, null, params);
+                List<AppServiceDTO> list = searchIds != null && searchIds.isEmpty()
+                        ? Collections.emptyList()
+                        : appServiceMapper.list(projectId, Boolean.TRUE, true, serviceType, null, params, "", searchIds);
                 AppServiceGroupVO appServiceGroupVO = new AppServiceGroupVO();
                 appServiceGroupVO.setAppServiceList(ConvertUtils.convertList(list, this::dtoToGroupInfoVO));
                 return ArrayUtil.singleAsList(appServiceGroupVO);
@@ -0,0 +1,329 @@
+package io.choerodon.devops.app.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.app.service.AppServiceVersionBlobService;
+import io.choerodon.devops.infra.dto.AppServiceVersionReadmeDTO;
+import io.choerodon.devops.infra.dto.AppServiceVersionValueDTO;
+import io.choerodon.devops.infra.enums.ChartBlobType;
+import io.choerodon.devops.infra.mapper.AppServiceVersionMapper;
+import io.choerodon.devops.infra.mapper.AppServiceVersionReadmeMapper;
+import io.choerodon.devops.infra.mapper.AppServiceVersionValueMapper;
+
+/**
+ * @author zmf
+ * @since 2021/8/10
+ */
+@Service
+public class AppServiceVersionBlobServiceImpl implements AppServiceVersionBlobService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AppServiceVersionBlobServiceImpl.class);
+    /**
+     * 并发插入相同内容或者记录刚好被清理时重试的次数
+     */
+    private static final int MAX_ACQUIRE_ATTEMPTS = 3;
+
+    /**
+     * 每批清理的记录数量
+     */
+    @Value("${devops.chart.blob.gcBatchSize:500}")
+    private Integer gcBatchSize;
+    /**
+     * 旧数据去重时每个事务处理的记录数量
+     */
+    @Value("${devops.chart.blob.dedupBatchSize:200}")
+    private Integer dedupBatchSize;
+
+    @Autowired
+    private AppServiceVersionValueMapper appServiceVersionValueMapper;
+    @Autowired
+    private AppServiceVersionReadmeMapper appServiceVersionReadmeMapper;
+    @Autowired
+    private AppServiceVersionMapper appServiceVersionMapper;
+
+    @Nullable
+    @Override
+    public Long acquire(ChartBlobType type, @Nullable String content) {
+        if (content == null) {
+            return null;
+        }
+        BlobTable table = table(type);
+        String contentHash = contentHash(content);
+        for (int attempt = 0; attempt < MAX_ACQUIRE_ATTEMPTS; attempt++) {
+            // 先更新再查询: 更新读取的是最新提交的数据, 更新过的行在当前事务中可见
+            if (table.increaseRefCountByHash(contentHash, 1L) == 1) {
+                return table.selectIdByContentHash(contentHash);
+            }
+            try {
+                return table.insert(content, contentHash);
+            } catch (DuplicateKeyException e) {
+                LOGGER.debug("The {} with hash {} is inserted concurrently, retry", type.getValue(), contentHash);
+            }
+        }
+        throw new CommonException("error.chart.blob.acquire", type.getValue());
+    }
+
+    @Override
+    public void release(ChartBlobType type, Collection<Long> ids) {
+        Map<Long, Integer> counts = new HashMap<>();
+        ids.stream().filter(Objects::nonNull).forEach(id -> counts.merge(id, 1, Integer::sum));
+        if (!counts.isEmpty()) {
+            table(type).decreaseRefCounts(counts);
+        }
+    }
+
+    @Override
+    public int collectGarbage(ChartBlobType type) {
+        BlobTable table = table(type);
+        int deleted = 0;
+        while (true) {
+            List<Long> ids = table.listUnreferencedIds(gcBatchSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+            // 删除时再次检查引用数, 查询之后被重新引用的记录不会被删除
+            int count = table.deleteUnreferencedByIds(ids);
+            deleted += count;
+            if (ids.size() < gcBatchSize || count == 0) {
+                break;
+            }
+        }
+        if (deleted > 0) {
+            LOGGER.info("Deleted {} unreferenced {}", deleted, type.getValue());
+        }
+        return deleted;
+    }
+
+    @Nullable
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public Long deduplicate(ChartBlobType type, Long afterId) {
+        BlobTable table = table(type);
+        Map<Long, String> blobs = table.listWithoutContentHash(afterId, dedupBatchSize);
+        if (blobs.isEmpty()) {
+            return null;
+        }
+        Long lastId = afterId;
+        for (Map.Entry<Long, String> blob : blobs.entrySet()) {
+            lastId = blob.getKey();
+            if (blob.getValue() == null) {
+                continue;
+            }
+            // 锁住旧记录, 删除版本不会同时减少它的引用数
+            Long refCount = table.selectRefCountForUpdate(blob.getKey());
+            if (refCount == null) {
+                continue;
+            }
+            String contentHash = contentHash(blob.getValue());
+            if (table.increaseRefCountByHash(contentHash, refCount) == 1) {
+                // 已经有相同内容的记录, 引用转移到已有记录
+                Long existingId = table.selectIdByContentHash(contentHash);
+                table.moveReferences(blob.getKey(), existingId);
+                table.deleteById(blob.getKey());
+                continue;
+            }
+            try {
+                table.updateContentHash(blob.getKey(), contentHash);
+            } catch (DuplicateKeyException e) {
+                // 并发上传的版本刚好插入了相同的内容, 下次去重时再合并
+                LOGGER.debug("The {} {} with hash {} is inserted concurrently, skip it", type.getValue(), blob.getKey(), contentHash);
+            }
+        }
+        return lastId;
+    }
+
+    private BlobTable table(ChartBlobType type) {
+        return type == ChartBlobType.VALUES ? new ValueTable() : new ReadmeTable();
+    }
+
+    private static String contentHash(String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(content.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * values表和readme表的相同操作
+     */
+    private interface BlobTable {
+        int increaseRefCountByHash(String contentHash, Long delta);
+
+        Long selectIdByContentHash(String contentHash);
+
+        Long insert(String content, String contentHash);
+
+        void decreaseRefCounts(Map<Long, Integer> counts);
+
+        List<Long> listUnreferencedIds(Integer limit);
+
+        int deleteUnreferencedByIds(Collection<Long> ids);
+
+        /**
+         * @return id -> 内容, 按id递增
+         */
+        Map<Long, String> listWithoutContentHash(Long afterId, Integer limit);
+
+        Long selectRefCountForUpdate(Long id);
+
+        int updateContentHash(Long id, String contentHash);
+
+        /**
+         * 引用fromId的版本改为引用toId
+         */
+        void moveReferences(Long fromId, Long toId);
+
+        void deleteById(Long id);
+    }
+
+    private class ValueTable implements BlobTable {
+        @Override
+        public int increaseRefCountByHash(String contentHash, Long delta) {
+            return appServiceVersionValueMapper.increaseRefCountByHash(contentHash, delta);
+        }
+
+        @Override
+        public Long selectIdByContentHash(String contentHash) {
+            return appServiceVersionValueMapper.selectIdByContentHash(contentHash);
+        }
+
+        @Override
+        public Long insert(String content, String contentHash) {
+            AppServiceVersionValueDTO appServiceVersionValueDTO = new AppServiceVersionValueDTO();
+            appServiceVersionValueDTO.setValue(content);
+            appServiceVersionValueDTO.setContentHash(contentHash);
+            appServiceVersionValueDTO.setRefCount(1L);
+            if (appServiceVersionValueMapper.insert(appServiceVersionValueDTO) != 1) {
+                throw new CommonException("error.version.value.insert");
+            }
+            return appServiceVersionValueDTO.getId();
+        }
+
+        @Override
+        public void decreaseRefCounts(Map<Long, Integer> counts) {
+            appServiceVersionValueMapper.decreaseRefCounts(counts);
+        }
+
+        @Override
+        public List<Long> listUnreferencedIds(Integer limit) {
+            return appServiceVersionValueMapper.listUnreferencedIds(limit);
+        }
+
+        @Override
+        public int deleteUnreferencedByIds(Collection<Long> ids) {
+            return appServiceVersionValueMapper.deleteUnreferencedByIds(ids);
+        }
+
+        @Override
+        public Map<Long, String> listWithoutContentHash(Long afterId, Integer limit) {
+            Map<Long, String> blobs = new LinkedHashMap<>();
+            appServiceVersionValueMapper.listWithoutContentHash(afterId, limit)
+                    .forEach(value -> blobs.put(value.getId(), value.getValue()));
+            return blobs;
+        }
+
+        @Override
+        public Long selectRefCountForUpdate(Long id) {
+            return appServiceVersionValueMapper.selectRefCountForUpdate(id);
+        }
+
+        @Override
+        public int updateContentHash(Long id, String contentHash) {
+            return appServiceVersionValueMapper.updateContentHash(id, contentHash);
+        }
+
+        @Override
+        public void moveReferences(Long fromId, Long toId) {
+            appServiceVersionMapper.updateValueId(fromId, toId);
+        }
+
+        @Override
+        public void deleteById(Long id) {
+            appServiceVersionValueMapper.deleteByPrimaryKey(id);
+        }
+    }
+
+    private class ReadmeTable implements BlobTable {
+        @Override
+        public int increaseRefCountByHash(String contentHash, Long delta) {
+            return appServiceVersionReadmeMapper.increaseRefCountByHash(contentHash, delta);
+        }
+
+        @Override
+        public Long selectIdByContentHash(String contentHash) {
+            return appServiceVersionReadmeMapper.selectIdByContentHash(contentHash);
+        }
+
+        @Override
+        public Long insert(String content, String contentHash) {
+            AppServiceVersionReadmeDTO appServiceVersionReadmeDTO = new AppServiceVersionReadmeDTO(content);
+            appServiceVersionReadmeDTO.setContentHash(contentHash);
+            appServiceVersionReadmeDTO.setRefCount(1L);
+            if (appServiceVersionReadmeMapper.insert(appServiceVersionReadmeDTO) != 1) {
+                throw new CommonException("error.insert.version.readme");
+            }
+            return appServiceVersionReadmeDTO.getId();
+        }
+
+        @Override
+        public void decreaseRefCounts(Map<Long, Integer> counts) {
+            appServiceVersionReadmeMapper.decreaseRefCounts(counts);
+        }
+
+        @Override
+        public List<Long> listUnreferencedIds(Integer limit) {
+            return appServiceVersionReadmeMapper.listUnreferencedIds(limit);
+        }
+
+        @Override
+        public int deleteUnreferencedByIds(Collection<Long> ids) {
+            return appServiceVersionReadmeMapper.deleteUnreferencedByIds(ids);
+        }
+
+        @Override
+        public Map<Long, String> listWithoutContentHash(Long afterId, Integer limit) {
+            Map<Long, String> blobs = new LinkedHashMap<>();
+            appServiceVersionReadmeMapper.listWithoutContentHash(afterId, limit)
+                    .forEach(readme -> blobs.put(readme.getId(), readme.getReadme()));
+            return blobs;
+        }
+
+        @Override
+        public Long selectRefCountForUpdate(Long id) {
+            return appServiceVersionReadmeMapper.selectRefCountForUpdate(id);
+        }
+
+        @Override
+        public int updateContentHash(Long id, String contentHash) {
+            return appServiceVersionReadmeMapper.updateContentHash(id, contentHash);
+        }
+
+        @Override
+        public void moveReferences(Long fromId, Long toId) {
+            appServiceVersionMapper.updateReadmeValueId(fromId, toId);
+        }
+
+        @Override
+        public void deleteById(Long id) {
+            appServiceVersionReadmeMapper.deleteByPrimaryKey(id);
+        }
+    }
+}
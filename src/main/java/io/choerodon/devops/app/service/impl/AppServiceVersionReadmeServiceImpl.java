@@ -18,7 +18,7 @@ public class AppServiceVersionReadmeServiceImpl implements AppServiceVersionRead
 
     @Override
     public AppServiceVersionReadmeDTO baseCreate(AppServiceVersionReadmeDTO appServiceVersionReadmeDTO) {
-        if (appServiceVersionReadmeMapper.insert(appServiceVersionReadmeDTO) != 1) {
+        if (appServiceVersionReadmeMapper.insertSelective(appServiceVersionReadmeDTO) != 1) {
             throw new CommonException("error.insert.version.readme");
         }
         return appServiceVersionReadmeDTO;
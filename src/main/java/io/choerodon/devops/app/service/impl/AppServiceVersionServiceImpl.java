@@ -5,9 +5,6 @@ import static java.util.Comparator.comparing;
 import static java.util.stream.Collectors.collectingAndThen;
 import static java.util.stream.Collectors.toCollection;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
@@ -41,6 +38,7 @@ import io.choerodon.devops.infra.dto.harbor.HarborRepoDTO;
 import io.choerodon.devops.infra.dto.iam.IamUserDTO;
 import io.choerodon.devops.infra.dto.iam.ProjectDTO;
 import io.choerodon.devops.infra.dto.iam.Tenant;
+import io.choerodon.devops.infra.enums.ChartBlobType;
 import io.choerodon.devops.infra.enums.ProjectConfigType;
 import io.choerodon.devops.infra.exception.DevopsCiInvalidException;
 import io.choerodon.devops.infra.feign.RdupmClient;
@@ -56,15 +54,9 @@ public class AppServiceVersionServiceImpl implements AppServiceVersionService {
     private static final Logger LOGGER = LoggerFactory.getLogger(AppServiceVersionServiceImpl.class);
 
     /**
-     * 存储chart包的文件路径模板
-     * devops-应用服务id-版本号-commit值前8位
+     * chart包中没有README.md时的默认内容
      */
-    private static final String DESTINATION_PATH_TEMPLATE = "devops-%s-%s-%s";
-    /**
-     * 解压chart包的文件路径模板
-     * stores-应用服务id-版本号-commit值前8位
-     */
-    private static final String STORE_PATH_TEMPLATE = "stores-%s-%s-%s";
+    private static final String DEFAULT_README = "# 暂无";
 
     private static final String APP_SERVICE = "appService";
     private static final String CHART = "chart";
@@ -74,6 +66,16 @@ public class AppServiceVersionServiceImpl implements AppServiceVersionService {
 
     @Value("${services.gitlab.url}")
     private String gitlabUrl;
+    /**
+     * chart包中values.yaml的大小上限, 单位: 字节
+     */
+    @Value("${devops.chart.values.maxBytes:1048576}")
+    private Integer maxValuesBytes;
+    /**
+     * chart包中README.md的大小上限, 超过的部分被截断, 单位: 字节
+     */
+    @Value("${devops.chart.readme.maxBytes:1048576}")
+    private Integer maxReadmeBytes;
 
     @Autowired
     private AppServiceService applicationService;
@@ -94,7 +96,7 @@ public class AppServiceVersionServiceImpl implements AppServiceVersionService {
     @Autowired
     private AppServiceVersionMapper appServiceVersionMapper;
     @Autowired
-    private AppServiceVersionReadmeMapper appServiceVersionReadmeMapper;
+    private AppServiceVersionBlobService appServiceVersionBlobService;
     @Autowired
     private AppServiceMapper appServiceMapper;
     @Autowired
@@ -145,7 +147,6 @@ public class AppServiceVersionServiceImpl implements AppServiceVersionService {
     private void doCreate(String image, Long harborConfigId, String repoType, String token, String version, String commit, MultipartFile files, String ref) {
         AppServiceDTO appServiceDTO = appServiceMapper.queryByToken(token);
 
-        AppServiceVersionValueDTO appServiceVersionValueDTO = new AppServiceVersionValueDTO();
         AppServiceVersionDTO newVersion = new AppServiceVersionDTO();
         ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(appServiceDTO.getProjectId());
         Tenant organization = baseServiceClientOperator.queryOrganizationById(projectDTO.getOrganizationId());
@@ -173,68 +174,43 @@ public class AppServiceVersionServiceImpl implements AppServiceVersionService {
 
         newVersion.setRepository(helmUrl.endsWith("/") ? helmUrl + organization.getTenantNum() + "/" + projectDTO.getCode() + "/" : helmUrl + "/" + organization.getTenantNum() + "/" + projectDTO.getCode() + "/");
 
-        // 取commit的一部分作为文件路径
-        String commitPart = commit == null ? "" : commit.substring(0, 8);
-
-        String storeFilePath = String.format(STORE_PATH_TEMPLATE, appServiceDTO.getId(), version, commitPart);
-        String destFilePath = String.format(DESTINATION_PATH_TEMPLATE, appServiceDTO.getId(), version, commitPart);
+        // 上传chart包到 chart museum, 发送的同时在内存中解压出values和README, 不写本地文件
+        ChartUploadRequestBody chartBody = new ChartUploadRequestBody(files, maxValuesBytes, maxReadmeBytes);
+        chartUtil.uploadChart(helmUrl, organization.getTenantNum(), projectDTO.getCode(), files.getOriginalFilename(), chartBody, helmConfig.getUserName(), helmConfig.getPassword());
 
-        String path = FileUtil.multipartFileToFile(storeFilePath, files);
-
-        // 上传chart包到 chart museum
-        chartUtil.uploadChart(helmUrl, organization.getTenantNum(), projectDTO.getCode(), new File(path), helmConfig.getUserName(), helmConfig.getPassword());
-
-        FileUtil.unTarGZ(path, destFilePath);
-
-        // 使用深度优先遍历查找文件, 避免查询到子chart的values值
-        File valuesFile = FileUtil.queryFileFromFilesBFS(new File(destFilePath), "values.yaml");
-
-        if (valuesFile == null) {
-            FileUtil.deleteDirectories(storeFilePath, destFilePath);
-            throw new CommonException("error.find.values.yaml.in.chart");
+        ChartUploadRequestBody.ChartContent chartContent = chartBody.getContent();
+        if (chartContent != null && chartContent.isValuesTooLarge()) {
+            throw new CommonException("error.chart.values.too.large", maxValuesBytes);
         }
-
-        String values;
-        try (FileInputStream fis = new FileInputStream(valuesFile)) {
-            values = FileUtil.replaceReturnString(fis, null);
-        } catch (IOException e) {
-            FileUtil.deleteDirectories(storeFilePath, destFilePath);
-            throw new CommonException(e);
+        // 只取chart根目录下的values.yaml, 避免取到子chart的values值
+        if (chartContent == null || chartContent.getValues() == null) {
+            throw new CommonException("error.find.values.yaml.in.chart");
         }
+        String values = chartContent.getValues();
 
         try {
             FileUtil.checkYamlFormat(values);
         } catch (CommonException e) {
-            FileUtil.deleteDirectories(storeFilePath, destFilePath);
             throw new CommonException("The format of the values.yaml in the chart is invalid!", e);
         }
 
         // 更新版本纪录和values纪录
         if (oldVersionInDb != null) {
             // 重新上传chart包后更新values
-            updateValues(oldVersionInDb.getValueId(), values);
+            updateValues(oldVersionInDb, newVersion, values);
             updateVersion(oldVersionInDb, newVersion);
         } else {
-            // 新建版本时的操作
-            appServiceVersionValueDTO.setValue(values);
+            // 新建版本时的操作, 内容相同的values和readme只保存一份
             try {
-                newVersion.setValueId(appServiceVersionValueService
-                        .baseCreate(appServiceVersionValueDTO).getId());
+                newVersion.setValueId(appServiceVersionBlobService.acquire(ChartBlobType.VALUES, values));
             } catch (Exception e) {
-                FileUtil.deleteDirectories(storeFilePath, destFilePath);
                 throw new CommonException(ERROR_VERSION_INSERT, e);
             }
-
-            AppServiceVersionReadmeDTO appServiceVersionReadmeDTO = new AppServiceVersionReadmeDTO();
-            appServiceVersionReadmeDTO.setReadme(FileUtil.getReadme(destFilePath));
-            appServiceVersionReadmeMapper.insert(appServiceVersionReadmeDTO);
-
-            newVersion.setReadmeValueId(appServiceVersionReadmeDTO.getId());
+            newVersion.setReadmeValueId(appServiceVersionBlobService.acquire(ChartBlobType.README,
+                    chartContent.getReadme() == null ? DEFAULT_README : chartContent.getReadme()));
             baseCreate(newVersion);
         }
 
-
-        FileUtil.deleteDirectories(destFilePath, storeFilePath);
         //生成版本成功后发送webhook json
         sendNotificationService.sendWhenAppServiceVersion(newVersion, appServiceDTO, projectDTO);
     }
@@ -246,21 +222,16 @@ public class AppServiceVersionServiceImpl implements AppServiceVersionService {
         MapperUtil.resultJudgedUpdateByPrimaryKeySelective(appServiceVersionMapper, newVersion, ERROR_VERSION_UPDATE);
     }
 
-    private void updateValues(Long oldValuesId, String values) {
-        AppServiceVersionValueDTO appServiceVersionValueDTO = new AppServiceVersionValueDTO();
-        appServiceVersionValueDTO.setId(oldValuesId);
-
-        AppServiceVersionValueDTO old = appServiceVersionValueService.baseQuery(oldValuesId);
-
-        if (old == null) {
+    /**
+     * values变了才改为引用新的values, values可能被其它版本引用, 不能直接修改
+     */
+    private void updateValues(AppServiceVersionDTO oldVersionInDb, AppServiceVersionDTO newVersion, String values) {
+        AppServiceVersionValueDTO old = appServiceVersionValueService.baseQuery(oldVersionInDb.getValueId());
+        if (old != null && Objects.equals(old.getValue(), values)) {
             return;
         }
-
-        // values变了才更新
-        if (!Objects.equals(old.getValue(), values)) {
-            appServiceVersionValueDTO.setValue(values);
-            appServiceVersionValueService.baseUpdate(appServiceVersionValueDTO);
-        }
+        newVersion.setValueId(appServiceVersionBlobService.acquire(ChartBlobType.VALUES, values));
+        appServiceVersionBlobService.release(ChartBlobType.VALUES, Collections.singletonList(oldVersionInDb.getValueId()));
     }
 
     private boolean filterAppDeploy(PipelineAppServiceDeployDTO deployDTO, String version) {
@@ -694,8 +665,9 @@ public class AppServiceVersionServiceImpl implements AppServiceVersionService {
     public void deleteByAppServiceId(Long appServiceId) {
         List<AppServiceVersionDTO> appServiceVersionDTOS = appServiceVersionMapper.listByAppServiceId(appServiceId, null);
         if (!CollectionUtils.isEmpty(appServiceVersionDTOS)) {
-            Set<Long> valueIds = new HashSet<>();
-            Set<Long> readmeIds = new HashSet<>();
+            // 多个版本可能引用同一个values和readme, 每个版本释放一次引用
+            List<Long> valueIds = new ArrayList<>();
+            List<Long> readmeIds = new ArrayList<>();
             Set<Long> configIds = new HashSet<>();
             Set<Long> versionIds = new HashSet<>();
             appServiceVersionDTOS.forEach(appServiceVersionDTO -> {
@@ -715,12 +687,8 @@ public class AppServiceVersionServiceImpl implements AppServiceVersionService {
                 }
 
             });
-            if (!CollectionUtils.isEmpty(valueIds)) {
-                appServiceVersionValueService.deleteByIds(valueIds);
-            }
-            if (!CollectionUtils.isEmpty(readmeIds)) {
-                appServiceVersionReadmeMapper.deleteByIds(readmeIds);
-            }
+            appServiceVersionBlobService.release(ChartBlobType.VALUES, valueIds);
+            appServiceVersionBlobService.release(ChartBlobType.README, readmeIds);
             if (!CollectionUtils.isEmpty(configIds)) {
                 devopsConfigService.deleteByConfigIds(configIds);
             }
@@ -805,13 +773,14 @@ public class AppServiceVersionServiceImpl implements AppServiceVersionService {
         Tenant tenant = baseServiceClientOperator.queryOrganizationById(projectDTO.getOrganizationId());
         List<HarborImageTagDTO> deleteImagetags = new ArrayList<>();
         List<ChartTagVO> deleteChartTags = new ArrayList<>();
+        List<Long> valueIds = new ArrayList<>();
+        List<Long> readmeIds = new ArrayList<>();
         versionIds.forEach(id -> {
             // 查询应用服务版本
             AppServiceVersionDTO appServiceVersionDTO = appServiceVersionMapper.selectByPrimaryKey(id);
-            // 删除value
-            appServiceVersionValueService.baseDeleteById(appServiceVersionDTO.getValueId());
-            // 删除readme
-            appServiceVersionReadmeMapper.deleteByPrimaryKey(appServiceVersionDTO.getReadmeValueId());
+            // values和readme可能被其它版本引用, 只释放引用, 没有引用后由定时任务清理
+            valueIds.add(appServiceVersionDTO.getValueId());
+            readmeIds.add(appServiceVersionDTO.getReadmeValueId());
 
             // 计算删除harbor镜像列表
             if (DEFAULT_REPO.equals(appServiceVersionDTO.getRepoType())) {
@@ -825,6 +794,8 @@ public class AppServiceVersionServiceImpl implements AppServiceVersionService {
             // 删除应用服务版本
             appServiceVersionMapper.deleteByPrimaryKey(appServiceVersionDTO.getId());
         });
+        appServiceVersionBlobService.release(ChartBlobType.VALUES, valueIds);
+        appServiceVersionBlobService.release(ChartBlobType.README, readmeIds);
         CustomResourceVO customResourceVO = new CustomResourceVO();
         customResourceVO.setHarborImageTagDTOS(deleteImagetags);
         customResourceVO.setChartTagVOS(deleteChartTags);
@@ -27,7 +27,7 @@ public class AppServiceVersionValueServiceImpl implements AppServiceVersionValue
 
     @Override
     public AppServiceVersionValueDTO baseCreate(AppServiceVersionValueDTO appServiceVersionValueDTO) {
-        if (appServiceVersionValueMapper.insert(appServiceVersionValueDTO) != 1) {
+        if (appServiceVersionValueMapper.insertSelective(appServiceVersionValueDTO) != 1) {
             throw new CommonException("error.version.value.insert");
         }
         return appServiceVersionValueDTO;
@@ -35,7 +35,7 @@ public class AppServiceVersionValueServiceImpl implements AppServiceVersionValue
 
     @Override
     public AppServiceVersionValueDTO baseUpdate(AppServiceVersionValueDTO appServiceVersionValueDTO) {
-        MapperUtil.resultJudgedUpdateByPrimaryKey(appServiceVersionValueMapper, appServiceVersionValueDTO, "error.version.value.update");
+        MapperUtil.resultJudgedUpdateByPrimaryKeySelective(appServiceVersionValueMapper, appServiceVersionValueDTO, "error.version.value.update");
         return appServiceVersionValueDTO;
     }
 
@@ -1,10 +1,7 @@
 package io.choerodon.devops.app.service.impl;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
+import java.util.*;
 import java.util.stream.Collectors;
 
 import com.alibaba.fastjson.JSONObject;
@@ -12,6 +9,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
@@ -44,6 +43,10 @@ import io.choerodon.mybatis.pagehelper.domain.PageRequest;
 @Service
 public class ClusterNodeInfoServiceImpl implements ClusterNodeInfoService {
     private static final String REDIS_CLUSTER_KEY_TEMPLATE = "node_info_project_id_%s_cluster_id_%s";
+    /**
+     * 节点名称 -> 节点信息的hash, 和节点信息的list一起写入, 用于按节点名称查询, 不需要解析所有节点
+     */
+    private static final String REDIS_NODE_HASH_KEY_SUFFIX = "_by_name";
     private static final String CPU_MEASURE_FORMAT = "%.2f";
     private static final String MEMORY_MEASURE_FORMAT = "%.2f%s";
     private static final String[] MEMORY_MEASURE = {"Ki", "Ki", "Mi", "Gi"};
@@ -78,8 +81,61 @@ public class ClusterNodeInfoServiceImpl implements ClusterNodeInfoService {
 
     @Override
     public void setValueForKey(String redisClusterKey, List<AgentNodeInfoVO> agentNodeInfoVOS) {
-        stringRedisTemplate.delete(redisClusterKey);
-        stringRedisTemplate.opsForList().rightPushAll(redisClusterKey, agentNodeInfoVOS.stream().map(this::node2JsonString).collect(Collectors.toList()));
+        Map<String, String> nodeJsonMap = new LinkedHashMap<>();
+        agentNodeInfoVOS.forEach(raw -> nodeJsonMap.put(raw.getNodeName(), node2JsonString(raw)));
+        String hashKey = redisClusterKey + REDIS_NODE_HASH_KEY_SUFFIX;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection stringRedisConnection = (StringRedisConnection) connection;
+            stringRedisConnection.del(redisClusterKey, hashKey);
+            if (!nodeJsonMap.isEmpty()) {
+                stringRedisConnection.rPush(redisClusterKey, nodeJsonMap.values().toArray(new String[0]));
+                stringRedisConnection.hMSet(hashKey, nodeJsonMap);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 在一次往返中按节点名称查询节点信息, 只解析需要的节点
+     * 旧版本写入的数据没有按名称的hash, 此时从列表中查找
+     *
+     * @param redisClusterKey 节点信息的key
+     * @param nodeNames       节点名称
+     * @return 节点名称 -> 节点信息, 没有信息的节点不在结果中
+     */
+    private Map<String, ClusterNodeInfoVO> multiGetNodeInfo(String redisClusterKey, List<String> nodeNames) {
+        if (nodeNames.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        String hashKey = redisClusterKey + REDIS_NODE_HASH_KEY_SUFFIX;
+        List<String> nodeJsons = stringRedisTemplate.<String, String>opsForHash().multiGet(hashKey, nodeNames);
+        if (nodeJsons.stream().allMatch(Objects::isNull) && !Boolean.TRUE.equals(stringRedisTemplate.hasKey(hashKey))) {
+            return listLegacyNodeInfo(redisClusterKey, nodeNames);
+        }
+        Map<String, ClusterNodeInfoVO> nodeInfoMap = new HashMap<>(nodeNames.size());
+        for (int i = 0; i < nodeNames.size(); i++) {
+            String nodeJson = nodeJsons.get(i);
+            if (nodeJson != null) {
+                nodeInfoMap.put(nodeNames.get(i), JSONObject.parseObject(nodeJson, ClusterNodeInfoVO.class));
+            }
+        }
+        return nodeInfoMap;
+    }
+
+    private Map<String, ClusterNodeInfoVO> listLegacyNodeInfo(String redisClusterKey, List<String> nodeNames) {
+        Set<String> names = new HashSet<>(nodeNames);
+        Map<String, ClusterNodeInfoVO> nodeInfoMap = new HashMap<>(nodeNames.size());
+        List<String> nodeJsons = stringRedisTemplate.opsForList().range(redisClusterKey, 0, -1);
+        if (nodeJsons == null) {
+            return nodeInfoMap;
+        }
+        for (String nodeJson : nodeJsons) {
+            ClusterNodeInfoVO node = JSONObject.parseObject(nodeJson, ClusterNodeInfoVO.class);
+            if (names.contains(node.getNodeName())) {
+                nodeInfoMap.putIfAbsent(node.getNodeName(), node);
+            }
+        }
+        return nodeInfoMap;
     }
 
     private void setCpuPercentage(ClusterNodeInfoVO node) {
@@ -172,7 +228,7 @@ public class ClusterNodeInfoServiceImpl implements ClusterNodeInfoService {
 
         Page<ClusterNodeInfoVO> result = new Page<>();
         DevopsClusterDTO devopsClusterDTO = devopsClusterService.baseQuery(clusterId);
-        List<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterSet();
         String redisKey = getRedisClusterKey(clusterId, projectId);
         List<ClusterNodeInfoVO> nodes;
 
@@ -182,14 +238,10 @@ public class ClusterNodeInfoServiceImpl implements ClusterNodeInfoService {
 
             // 查询为node添加id需要的数据
             List<DevopsClusterNodeDTO> outerNodes = devopsClusterNodeService.queryNodeByClusterIdAndType(clusterId, ClusterNodeTypeEnum.OUTTER);
-            Map<String, ClusterNodeInfoVO> redisNodeInfoMap = stringRedisTemplate
-                    .opsForList()
-                    .range(redisKey, 0, nodeDTOS.size())
-                    .stream()
-                    .map(node -> {
-                        return JSONObject.parseObject(node, ClusterNodeInfoVO.class);
-                    })
-                    .collect(Collectors.toMap(ClusterNodeInfoVO::getNodeName, v -> v));
+            // 集群已连接时, 只查询当前页的节点信息
+            Map<String, ClusterNodeInfoVO> redisNodeInfoMap = updatedClusterList.contains(clusterId)
+                    ? multiGetNodeInfo(redisKey, nodeDTOS.getContent().stream().map(DevopsClusterNodeDTO::getName).collect(Collectors.toList()))
+                    : Collections.emptyMap();
 
             List<ClusterNodeInfoVO> nodeInfoVOS = nodeDTOS.stream().map(node -> {
                 ClusterNodeInfoVO clusterNodeInfoVO = new ClusterNodeInfoVO();
@@ -288,17 +340,7 @@ public class ClusterNodeInfoServiceImpl implements ClusterNodeInfoService {
         }
 
         String redisKey = getRedisClusterKey(clusterId, projectId);
-        long total = stringRedisTemplate.opsForList().size(redisKey);
-
-        // get all nodes according to the cluster id and filter the node with the certain name
-        return stringRedisTemplate
-                .opsForList()
-                .range(redisKey, 0, total - 1)
-                .stream()
-                .map(node -> JSONObject.parseObject(node, ClusterNodeInfoVO.class))
-                .filter(node -> nodeName.equals(node.getNodeName()))
-                .findFirst()
-                .orElse(null);
+        return multiGetNodeInfo(redisKey, Collections.singletonList(nodeName)).get(nodeName);
     }
 
     @Override
@@ -3,6 +3,7 @@ package io.choerodon.devops.app.service.impl;
 import java.util.List;
 import java.util.Map;
 
+import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -35,8 +36,8 @@ public class ConvertDevopsCustomResourceImpl extends ConvertK8sObjectService<Dev
 
 
     @Override
-    public DevopsCustomizeResourceDTO serializableObject(String jsonString, String filePath, Map<String, String> objectPath, Long envId) {
-        DevopsCustomizeResourceDTO result = getDevopsCustomizeResourceDTO(envId, filePath, JSONObject.parseObject(jsonString));
+    public DevopsCustomizeResourceDTO serializableObject(Map<String, Object> data, String filePath, Map<String, String> objectPath, Long envId) {
+        DevopsCustomizeResourceDTO result = getDevopsCustomizeResourceDTO(envId, filePath, (JSONObject) JSON.toJSON(data));
         objectPath.put(TypeUtil.objToString(result.hashCode()), filePath);
         return result;
     }
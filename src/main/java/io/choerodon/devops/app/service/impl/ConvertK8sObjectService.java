@@ -21,19 +21,20 @@ public abstract class ConvertK8sObjectService<T> {
     }
 
     /**
-     * 将JSON格式的资源转为Java对象，并添加对象的hashcode和文件路径的对应关系
+     * 将yaml解析出的资源转为Java对象，并添加对象的hashcode和文件路径的对应关系
+     * 会在多个线程中并行调用, 实现中不能访问数据库或修改共享的状态
      *
-     * @param jsonString json
+     * @param data       yaml解析出的资源
      * @param filePath   资源所在文件路径
      * @param objectPath 用于存放对象hashcode和文件路径的对应关系
      * @param envId      环境id
      * @return 对象
      */
-    public T serializableObject(String jsonString, String filePath, Map<String, String> objectPath, Long envId) {
+    public T serializableObject(Map<String, Object> data, String filePath, Map<String, String> objectPath, Long envId) {
         YamlConvertToResourceHandler<T> yamlConvertToResourceHandler
                 = new YamlConvertToResourceHandler<>(targetClass);
         return yamlConvertToResourceHandler
-                .serializable(jsonString, filePath, objectPath);
+                .serializable(data, filePath, objectPath);
     }
 
     /**
@@ -21,7 +21,7 @@ public class ConvertNotSupportedResourceServiceImpl extends ConvertK8sObjectServ
     }
 
     @Override
-    public Object serializableObject(String jsonString, String filePath, Map<String, String> objectPath, Long envId) {
+    public Object serializableObject(Map<String, Object> data, String filePath, Map<String, String> objectPath, Long envId) {
         throw new GitOpsExplainException(GitOpsObjectError.RESOURCE_TYPE_NOT_SUPPORTED.getError(), filePath);
     }
 
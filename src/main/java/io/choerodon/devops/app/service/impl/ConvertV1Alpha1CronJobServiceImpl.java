@@ -3,6 +3,7 @@ package io.choerodon.devops.app.service.impl;
 import java.util.List;
 import java.util.Map;
 
+import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -65,8 +66,8 @@ public class ConvertV1Alpha1CronJobServiceImpl extends ConvertK8sObjectService<D
     }
 
     @Override
-    public DevopsCronJobDTO serializableObject(String jsonString, String filePath, Map<String, String> objectPath, Long envId) {
-        DevopsCronJobDTO result = getDevopsCronJobDTO(envId, filePath, JSONObject.parseObject(jsonString));
+    public DevopsCronJobDTO serializableObject(Map<String, Object> data, String filePath, Map<String, String> objectPath, Long envId) {
+        DevopsCronJobDTO result = getDevopsCronJobDTO(envId, filePath, (JSONObject) JSON.toJSON(data));
         objectPath.put(TypeUtil.objToString(result.hashCode()), filePath);
         return result;
     }
@@ -3,6 +3,7 @@ package io.choerodon.devops.app.service.impl;
 import java.util.List;
 import java.util.Map;
 
+import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -83,8 +84,8 @@ public class ConvertV1beta2DeploymentServiceImpl extends ConvertK8sObjectService
     }
 
     @Override
-    public DevopsDeploymentDTO serializableObject(String jsonString, String filePath, Map<String, String> objectPath, Long envId) {
-        DevopsDeploymentDTO result = getDevopsDeploymentDTO(envId, filePath, JSONObject.parseObject(jsonString));
+    public DevopsDeploymentDTO serializableObject(Map<String, Object> data, String filePath, Map<String, String> objectPath, Long envId) {
+        DevopsDeploymentDTO result = getDevopsDeploymentDTO(envId, filePath, (JSONObject) JSON.toJSON(data));
         objectPath.put(TypeUtil.objToString(result.hashCode()), filePath);
         return result;
     }
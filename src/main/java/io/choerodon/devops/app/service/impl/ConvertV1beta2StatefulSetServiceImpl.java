@@ -3,6 +3,7 @@ package io.choerodon.devops.app.service.impl;
 import java.util.List;
 import java.util.Map;
 
+import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -65,8 +66,8 @@ public class ConvertV1beta2StatefulSetServiceImpl extends ConvertK8sObjectServic
     }
 
     @Override
-    public DevopsStatefulSetDTO serializableObject(String jsonString, String filePath, Map<String, String> objectPath, Long envId) {
-        DevopsStatefulSetDTO result = getDevopsStatefulSetDTO(envId, filePath, JSONObject.parseObject(jsonString));
+    public DevopsStatefulSetDTO serializableObject(Map<String, Object> data, String filePath, Map<String, String> objectPath, Long envId) {
+        DevopsStatefulSetDTO result = getDevopsStatefulSetDTO(envId, filePath, (JSONObject) JSON.toJSON(data));
         objectPath.put(TypeUtil.objToString(result.hashCode()), filePath);
         return result;
     }
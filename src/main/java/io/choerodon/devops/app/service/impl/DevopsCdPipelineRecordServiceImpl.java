@@ -326,7 +326,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
         LOGGER.info("========================================");
         LOGGER.info("start image deploy cd host job,pipelineRecordId:{},cdStageRecordId:{},cdJobRecordId{}", pipelineRecordId, cdStageRecordId, cdJobRecordId);
         Boolean status = true;
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         StringBuilder log = new StringBuilder();
         String deployVersion = null;
         CdHostDeployConfigVO cdHostDeployConfigVO = new CdHostDeployConfigVO();
@@ -394,7 +394,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
             jobRecordDTO.setDeployMetadata(gson.toJson(c7nImageDeployDTO));
             devopsCdJobRecordService.update(jobRecordDTO);
             // 2.
-            sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO(), ssh);
+            ssh = sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO());
             // 3.
             // 3.1
             sshUtil.dockerLogin(ssh, c7nImageDeployDTO, log);
@@ -454,7 +454,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
                     null, deploySourceVO, DetailsHelper.getUserDetails().getUserId());
         } finally {
             devopsCdJobRecordService.updateLogById(cdJobRecordId, log);
-            closeSsh(ssh, null);
+            sshUtil.closeSsh(ssh, null);
         }
         return status;
     }
@@ -489,7 +489,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
     public Boolean cdHostJarDeploy(Long pipelineRecordId, Long cdStageRecordId, Long cdJobRecordId) {
         LOGGER.info("========================================");
         LOGGER.info("start jar deploy cd host job,pipelineRecordId:{},cdStageRecordId:{},cdJobRecordId{}", pipelineRecordId, cdStageRecordId, cdJobRecordId);
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         Boolean status = true;
         StringBuilder log = new StringBuilder();
         DevopsCdJobRecordDTO jobRecordDTO = new DevopsCdJobRecordDTO();
@@ -559,7 +559,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
             jobRecordDTO.setDeployMetadata(gson.toJson(c7nNexusDeployDTO));
             devopsCdJobRecordService.update(jobRecordDTO);
 
-            sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO(), ssh);
+            ssh = sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO());
 
             // 2. 执行jar部署
             sshStopJar(ssh, jobRecordDTO.getJobId(), jarDeploy, log);
@@ -612,7 +612,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
                     null, deploySourceVO, DetailsHelper.getUserDetails().getUserId());
         } finally {
             devopsCdJobRecordService.updateLogById(cdJobRecordId, log);
-            closeSsh(ssh, null);
+            sshUtil.closeSsh(ssh, null);
         }
         return status;
     }
@@ -629,7 +629,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
     public Boolean cdHostCustomDeploy(Long pipelineRecordId, Long cdStageRecordId, Long cdJobRecordId) {
         LOGGER.info("========================================");
         LOGGER.info("start custom deploy cd host job,pipelineRecordId:{},cdStageRecordId:{},cdJobRecordId{}", pipelineRecordId, cdStageRecordId, cdJobRecordId);
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         Boolean status = true;
         StringBuilder log = new StringBuilder();
         try {
@@ -637,7 +637,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
             DevopsCdJobRecordDTO jobRecordDTO = devopsCdJobRecordMapper.selectByPrimaryKey(cdJobRecordId);
             CdHostDeployConfigVO cdHostDeployConfigVO = gson.fromJson(jobRecordDTO.getMetadata(), CdHostDeployConfigVO.class);
             String value = new String(decoder.decodeBuffer(cdHostDeployConfigVO.getCustomize().getValues()), StandardCharsets.UTF_8);
-            sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO(), ssh);
+            ssh = sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO());
             sshExecCustom(ssh, value, log);
             devopsCdJobRecordService.updateStatusById(cdJobRecordId, PipelineStatus.SUCCESS.toValue());
         } catch (Exception e) {
@@ -646,7 +646,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
             jobFailed(pipelineRecordId, cdStageRecordId, cdJobRecordId);
         } finally {
             devopsCdJobRecordService.updateLogById(cdJobRecordId, log);
-            closeSsh(ssh, null);
+            sshUtil.closeSsh(ssh, null);
         }
         return status;
     }
@@ -781,17 +781,6 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
 
     }
 
-    private void closeSsh(SSHClient ssh, Session session) {
-        try {
-            if (session != null) {
-                session.close();
-            }
-            ssh.disconnect();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
     private String getJarName(String url) {
         String[] arr = url.split("/");
         return arr[arr.length - 1].replace(".jar", "-") + GenerateUUID.generateRandomString() + ".jar";
@@ -1224,10 +1213,10 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
         CdHostDeployConfigVO cdHostDeployConfigVO = gson.fromJson(cdJobRecordDTO.getMetadata(), CdHostDeployConfigVO.class);
         CdHostDeployConfigVO.ImageDeploy imageDeploy = cdHostDeployConfigVO.getImageDeploy();
         C7nImageDeployDTO imageTagVoRecord = gson.fromJson(cdJobRecordDTO.getDeployMetadata(), C7nImageDeployDTO.class);
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         StringBuilder log = new StringBuilder();
         try {
-            sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO(), ssh);
+            ssh = sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO());
             sshUtil.dockerLogin(ssh, imageTagVoRecord, log);
             sshUtil.dockerPull(ssh, imageTagVoRecord, log);
             sshUtil.dockerStop(ssh, imageDeploy.getContainerName(), log);
@@ -1238,7 +1227,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
             jobFailed(pipelineRecordId, cdStageRecordId, cdJobRecordId);
         } finally {
             devopsCdJobRecordService.updateLogById(cdJobRecordId, log);
-            closeSsh(ssh, null);
+            sshUtil.closeSsh(ssh, null);
         }
     }
 
@@ -1248,10 +1237,10 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
         devopsCdJobRecordService.updateStatusById(cdJobRecordId, PipelineStatus.RUNNING.toValue());
         CdHostDeployConfigVO cdHostDeployConfigVO = gson.fromJson(cdJobRecordDTO.getMetadata(), CdHostDeployConfigVO.class);
         C7nNexusDeployDTO c7nNexusDeployDTO = gson.fromJson(cdJobRecordDTO.getDeployMetadata(), C7nNexusDeployDTO.class);
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         StringBuilder log = new StringBuilder();
         try {
-            sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO(), ssh);
+            ssh = sshUtil.sshConnect(cdHostDeployConfigVO.getHostConnectionVO());
             // 2.1
             sshStopJar(ssh, cdJobRecordDTO.getJobId(), cdHostDeployConfigVO.getJarDeploy(), log);
             sshExec(ssh, c7nNexusDeployDTO, cdHostDeployConfigVO.getJarDeploy(), log);
@@ -1261,7 +1250,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
             jobFailed(pipelineRecordId, cdStageRecordId, cdJobRecordId);
         } finally {
             devopsCdJobRecordService.updateLogById(cdJobRecordId, log);
-            closeSsh(ssh, null);
+            sshUtil.closeSsh(ssh, null);
         }
     }
 
@@ -1577,11 +1566,11 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
 
     @Override
     public Boolean testConnection(HostConnectionVO hostConnectionVO) {
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         Session session = null;
         Boolean index = true;
         try {
-            sshUtil.sshConnect(hostConnectionVO, ssh);
+            ssh = sshUtil.sshConnect(hostConnectionVO);
             session = ssh.startSession();
             Session.Command cmd = session.exec("echo Hello World!!!");
             LOGGER.info(IOUtils.readFully(cmd.getInputStream()).toString());
@@ -1594,7 +1583,7 @@ public class DevopsCdPipelineRecordServiceImpl implements DevopsCdPipelineRecord
             index = false;
             e.printStackTrace();
         } finally {
-            closeSsh(ssh, session);
+            sshUtil.closeSsh(ssh, session);
         }
         return index;
     }
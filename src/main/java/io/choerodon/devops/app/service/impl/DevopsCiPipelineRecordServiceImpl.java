@@ -356,18 +356,36 @@ public class DevopsCiPipelineRecordServiceImpl implements DevopsCiPipelineRecord
         if (CollectionUtils.isEmpty(pipelineRecordVOList)) {
             return pipelineRecordInfo;
         }
+        fillStageRecords(ciPipelineId, pipelineRecordVOList);
+        return pipelineRecordInfo;
+    }
+
+    /**
+     * 计算一页流水线记录的阶段状态
+     * 阶段信息只查询一次, 所有记录的job记录在一次查询中获取, 查询的次数和记录的数量无关
+     *
+     * @param ciPipelineId         流水线id
+     * @param pipelineRecordVOList 流水线记录
+     */
+    void fillStageRecords(Long ciPipelineId, List<DevopsCiPipelineRecordVO> pipelineRecordVOList) {
+        if (pipelineRecordVOList.isEmpty()) {
+            return;
+        }
+        // 查询所有流水线记录下的job记录
+        Set<Long> pipelineRecordIds = pipelineRecordVOList.stream().map(DevopsCiPipelineRecordVO::getId).collect(Collectors.toSet());
+        Map<Long, List<DevopsCiJobRecordDTO>> pipelineJobRecords = devopsCiJobRecordMapper.listByCiPipelineRecordIds(pipelineRecordIds)
+                .stream()
+                .collect(Collectors.groupingBy(DevopsCiJobRecordDTO::getCiPipelineRecordId));
+        // 查询阶段信息, 所有记录的阶段信息是相同的
+        List<DevopsCiStageDTO> devopsCiStageDTOList = devopsCiStageService.listByPipelineId(ciPipelineId);
+
         pipelineRecordVOList.forEach(pipelineRecord -> {
-            ciPipelineSyncHandler.syncPipeline(pipelineRecord.getStatus(), pipelineRecord.getLastUpdateDate(), pipelineRecord.getId(), TypeUtil.objToInteger(pipelineRecord.getGitlabPipelineId()));
-            // 查询流水线记录下的job记录
-            DevopsCiJobRecordDTO recordDTO = new DevopsCiJobRecordDTO();
-            recordDTO.setCiPipelineRecordId(pipelineRecord.getId());
-            List<DevopsCiJobRecordDTO> devopsCiJobRecordDTOS = devopsCiJobRecordMapper.select(recordDTO);
+            List<DevopsCiJobRecordDTO> devopsCiJobRecordDTOS = pipelineJobRecords.getOrDefault(pipelineRecord.getId(), Collections.emptyList());
+            ciPipelineSyncHandler.syncPipeline(pipelineRecord.getStatus(), pipelineRecord.getLastUpdateDate(), pipelineRecord.getId(), TypeUtil.objToInteger(pipelineRecord.getGitlabPipelineId()), devopsCiJobRecordDTOS.isEmpty());
 
             // 只返回job的最新记录
             devopsCiJobRecordDTOS = filterJobs(devopsCiJobRecordDTOS);
             Map<String, List<DevopsCiJobRecordDTO>> jobRecordMap = devopsCiJobRecordDTOS.stream().collect(Collectors.groupingBy(DevopsCiJobRecordDTO::getStage));
-            // 查询阶段信息
-            List<DevopsCiStageDTO> devopsCiStageDTOList = devopsCiStageService.listByPipelineId(ciPipelineId);
             List<DevopsCiStageRecordVO> devopsCiStageRecordVOS = ConvertUtils.convertList(devopsCiStageDTOList, DevopsCiStageRecordVO.class);
             // 计算stage状态
             devopsCiStageRecordVOS.forEach(stageRecord -> {
@@ -383,7 +401,6 @@ public class DevopsCiPipelineRecordServiceImpl implements DevopsCiPipelineRecord
             devopsCiStageRecordVOS = devopsCiStageRecordVOS.stream().sorted(Comparator.comparing(DevopsCiStageRecordVO::getSequence)).filter(v -> v.getStatus() != null).collect(Collectors.toList());
             pipelineRecord.setStageRecordVOList(devopsCiStageRecordVOS);
         });
-        return pipelineRecordInfo;
     }
 
     @Transactional(rollbackFor = Exception.class)
@@ -9,7 +9,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 
 import net.schmizz.sshj.SSHClient;
@@ -47,6 +49,7 @@ import io.choerodon.devops.infra.dto.DevopsClusterDTO;
 import io.choerodon.devops.infra.dto.DevopsClusterNodeDTO;
 import io.choerodon.devops.infra.dto.DevopsClusterOperationRecordDTO;
 import io.choerodon.devops.infra.enums.*;
+import io.choerodon.devops.infra.handler.ClusterInstallStatusPoller;
 import io.choerodon.devops.infra.mapper.DevopsClusterMapper;
 import io.choerodon.devops.infra.mapper.DevopsClusterNodeMapper;
 import io.choerodon.devops.infra.mapper.DevopsClusterOperationRecordMapper;
@@ -89,6 +92,8 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
     private TransactionalProducer producer;
     @Autowired
     private DevopsClusterOperatingRecordService devopsClusterOperatingRecordService;
+    @Autowired
+    private ClusterInstallStatusPoller clusterInstallStatusPoller;
 
     @Override
     @Transactional
@@ -117,7 +122,7 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
         if (hostConnectionVO.getAuthType().equalsIgnoreCase(HostAuthType.PUBLICKEY.value())) {
             password = Base64Util.getBase64DecodedString(password);
         }
-        return SshUtil.sshConnectForOK(hostConnectionVO.getHostIp(),
+        return sshUtil.sshConnectForOK(hostConnectionVO.getHostIp(),
                 hostConnectionVO.getHostPort(),
                 hostConnectionVO.getAuthType(),
                 hostConnectionVO.getUsername(),
@@ -362,10 +367,10 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
             hostConnectionVO = ConvertUtils.convertObject(devopsClusterNodeDTOList.get(0), HostConnectionVO.class);
         }
 
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         try {
             LOGGER.info(">>>>>>>>> [install k8s] clusterId {} :start to create ssh connection object <<<<<<<<<", devopsClusterInstallPayload.getClusterId());
-            sshUtil.sshConnect(ConvertUtils.convertObject(hostConnectionVO, HostConnectionVO.class), ssh);
+            ssh = sshUtil.sshConnect(ConvertUtils.convertObject(hostConnectionVO, HostConnectionVO.class));
             // 检查集群是否安装成功，该情况是如果集群安装成功，但是saga失败导致数据没有更新，防止saga重试使得集群被重新安装。如果成功，此次saga任务成功
             if (checkInstallSuccess(ssh, record, devopsClusterDTO)) {
                 return;
@@ -391,7 +396,7 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
                     .appendErrorMsg(e.getMessage());
             devopsClusterDTO.setStatus(ClusterStatusEnum.FAILED.value());
             if (e instanceof TransportException) {
-                LOGGER.info(">>>>>>>>> [install k8s] clusterId {} : ssh connection disconnect ,host: [ {} ] <<<<<<<<<", devopsClusterInstallPayload.getClusterId(), ssh.getRemoteHostname());
+                LOGGER.info(">>>>>>>>> [install k8s] clusterId {} : ssh connection disconnect ,host: [ {} ] <<<<<<<<<", devopsClusterInstallPayload.getClusterId(), hostConnectionVO.getHostIp());
             } else {
                 LOGGER.info(">>>>>>>>> [install k8s] clusterId {} :failed to install ,error: {}<<<<<<<<<", devopsClusterInstallPayload.getClusterId(), e.getMessage());
                 e.printStackTrace();
@@ -527,12 +532,12 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
 
         DevopsClusterInstallInfoVO devopsClusterInstallInfoVO = JsonHelper.unmarshalByJackson(clusterInstallInfoRaw, DevopsClusterInstallInfoVO.class);
 
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         DevopsNodeCheckResultVO devopsNodeCheckResultVO = new DevopsNodeCheckResultVO();
         try {
             try {
                 LOGGER.info(">>>>>>>>> [check node] key {} :start to create ssh connection object <<<<<<<<<", redisKey);
-                sshUtil.sshConnect(devopsClusterInstallInfoVO.getHostConnectionVO(), ssh);
+                ssh = sshUtil.sshConnect(devopsClusterInstallInfoVO.getHostConnectionVO());
             } catch (IOException e) {
                 throw new Exception(String.format(">>>>>>>>> [check node] failed to connect to host: [ %s ] by ssh <<<<<<<<<", devopsClusterInstallInfoVO.getHostConnectionVO().getHostIp()));
             }
@@ -686,91 +691,124 @@ public class DevopsClusterNodeServiceImpl implements DevopsClusterNodeService {
 
     @Override
     public void update() {
-        // 添加redis锁，防止多个pod重复执行
-        try {
-            if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(CLUSTER_STATUS_SYNC_REDIS_LOCK, "lock", 1, TimeUnit.MINUTES))) {
-                return;
-            }
-            DevopsClusterOperationRecordDTO devopsClusterOperationRecordDTO = new DevopsClusterOperationRecordDTO()
-                    .setStatus(ClusterOperationStatusEnum.OPERATING.value())
-                    .setType(ClusterOperationTypeEnum.INSTALL_K8S.getType());
-            List<DevopsClusterOperationRecordDTO> devopsClusterOperationRecordDTOList = devopsClusterOperationRecordMapper.select(devopsClusterOperationRecordDTO);
-            if (CollectionUtils.isEmpty(devopsClusterOperationRecordDTOList)) {
-                return;
+        // 添加redis锁，防止多个pod重复执行, 轮询期间锁会续期
+        clusterInstallStatusPoller.runExclusively(CLUSTER_STATUS_SYNC_REDIS_LOCK, this::syncInstallStatus);
+    }
+
+    private void syncInstallStatus() {
+        DevopsClusterOperationRecordDTO devopsClusterOperationRecordDTO = new DevopsClusterOperationRecordDTO()
+                .setStatus(ClusterOperationStatusEnum.OPERATING.value())
+                .setType(ClusterOperationTypeEnum.INSTALL_K8S.getType());
+        List<DevopsClusterOperationRecordDTO> devopsClusterOperationRecordDTOList = devopsClusterOperationRecordMapper.select(devopsClusterOperationRecordDTO);
+        if (CollectionUtils.isEmpty(devopsClusterOperationRecordDTOList)) {
+            return;
+        }
+        List<Long> clusterIds = devopsClusterOperationRecordDTOList.stream().map(DevopsClusterOperationRecordDTO::getClusterId).collect(Collectors.toList());
+        Map<Long, DevopsClusterDTO> devopsClusterDTOMap = devopsClusterMapper.listByClusterIds(clusterIds)
+                .stream()
+                .collect(Collectors.toMap(DevopsClusterDTO::getId, d -> d));
+
+        List<DevopsClusterOperationRecordDTO> recordsToUpdate = new ArrayList<>();
+        List<DevopsClusterDTO> clustersToUpdate = new ArrayList<>();
+        // 操作记录id -> 轮询任务
+        Map<Long, ClusterInstallStatusPoller.PollTask> pollTasks = new HashMap<>();
+        Map<Long, DevopsClusterOperationRecordDTO> polledRecords = new HashMap<>();
+        for (DevopsClusterOperationRecordDTO record : devopsClusterOperationRecordDTOList) {
+            Long clusterId = record.getClusterId();
+            LOGGER.info(">>>>>>>>> [update cluster status] clusterId:{} operationId:{} <<<<<<<<<", clusterId, record.getId());
+            DevopsClusterDTO devopsClusterDTO = devopsClusterDTOMap.get(clusterId);
+            if (devopsClusterDTO == null) {
+                devopsClusterOperationRecordMapper.deleteByPrimaryKey(record.getId());
+                continue;
             }
-            List<Long> clusterIds = devopsClusterOperationRecordDTOList.stream().map(DevopsClusterOperationRecordDTO::getClusterId).collect(Collectors.toList());
-            Map<Long, DevopsClusterDTO> devopsClusterDTOMap = devopsClusterMapper.listByClusterIds(clusterIds)
-                    .stream()
-                    .collect(Collectors.toMap(DevopsClusterDTO::getId, d -> d));
-            for (DevopsClusterOperationRecordDTO record : devopsClusterOperationRecordDTOList) {
-                Long clusterId = record.getClusterId();
-                LOGGER.info(">>>>>>>>> [update cluster status] clusterId:{} operationId:{} <<<<<<<<<", clusterId, record.getId());
-                DevopsClusterDTO devopsClusterDTO = devopsClusterDTOMap.get(clusterId);
-                if (devopsClusterDTO == null) {
-                    devopsClusterOperationRecordMapper.deleteByPrimaryKey(record.getId());
-                    continue;
+            if (!ClusterStatusEnum.OPERATING.value().equalsIgnoreCase(devopsClusterDTO.getStatus())) {
+                if (ClusterStatusEnum.FAILED.value().equalsIgnoreCase(devopsClusterDTO.getStatus())) {
+                    record.setStatus(ClusterOperationStatusEnum.FAILED.value());
+                } else {
+                    record.setStatus(ClusterOperationStatusEnum.SUCCESS.value());
                 }
-                if (!ClusterStatusEnum.OPERATING.value().equalsIgnoreCase(devopsClusterDTO.getStatus())) {
-                    if (ClusterStatusEnum.FAILED.value().equalsIgnoreCase(devopsClusterDTO.getStatus())) {
-                        record.setStatus(ClusterOperationStatusEnum.FAILED.value());
-                    } else {
-                        record.setStatus(ClusterOperationStatusEnum.SUCCESS.value());
-                    }
-                    devopsClusterOperationRecordMapper.updateByPrimaryKeySelective(record);
-                    continue;
+                recordsToUpdate.add(record);
+                continue;
+            }
+            pollTasks.put(record.getId(), commit -> pollInstallStatus(record, devopsClusterDTO, commit));
+            polledRecords.put(record.getId(), record);
+        }
+
+        // 超时的集群本轮不更新, 仍然是操作中, 下一轮重新轮询
+        Set<Long> completed = clusterInstallStatusPoller.pollAll(pollTasks);
+        completed.forEach(recordId -> {
+            DevopsClusterOperationRecordDTO record = polledRecords.get(recordId);
+            DevopsClusterDTO devopsClusterDTO = devopsClusterDTOMap.get(record.getClusterId());
+            if (!ClusterOperationStatusEnum.OPERATING.value().equals(record.getStatus())) {
+                recordsToUpdate.add(record);
+            }
+            if (!ClusterStatusEnum.OPERATING.value().equalsIgnoreCase(devopsClusterDTO.getStatus())) {
+                clustersToUpdate.add(devopsClusterDTO);
+            }
+        });
+        devopsClusterOperatingRecordService.batchUpdateStatus(recordsToUpdate, clustersToUpdate);
+        LOGGER.info(">>>>>>>>> [update cluster status] {} of {} clusters polled, {} records and {} clusters updated <<<<<<<<<",
+                completed.size(), pollTasks.size(), recordsToUpdate.size(), clustersToUpdate.size());
+    }
+
+    /**
+     * 读取集群安装的退出码, 根据结果修改操作记录和集群的状态, 不写入数据库
+     * 安装agent和删除退出码文件不能重复执行, 执行前先提交, 提交失败(已经超时)时本轮不再处理, 下一轮重新读取退出码
+     */
+    private void pollInstallStatus(DevopsClusterOperationRecordDTO record, DevopsClusterDTO devopsClusterDTO, BooleanSupplier commit) {
+        Long clusterId = record.getClusterId();
+        SSHClient ssh = null;
+        try {
+            List<DevopsClusterNodeDTO> devopsClusterNodeDTOList = devopsClusterNodeMapper.listByClusterId(clusterId);
+            List<DevopsClusterNodeDTO> devopsClusterOutterNodeDTOList = devopsClusterNodeDTOList.stream().filter(n -> ClusterNodeTypeEnum.OUTTER.getType().equalsIgnoreCase(n.getType())).collect(Collectors.toList());
+            if (!CollectionUtils.isEmpty(devopsClusterOutterNodeDTOList)) {
+                ssh = sshUtil.sshConnect(ConvertUtils.convertObject(devopsClusterOutterNodeDTOList.get(0), HostConnectionVO.class));
+            } else {
+                ssh = sshUtil.sshConnect(ConvertUtils.convertObject(devopsClusterNodeDTOList.get(0), HostConnectionVO.class));
+            }
+            ExecResultInfoVO resultInfoVO = sshUtil.execCommand(ssh, String.format(CAT_FILE, String.format(EXIT_CODE_FILE_TEMPLATE, devopsClusterDTO.getCode())));
+            if (resultInfoVO.getExitCode() != 0) {
+                if (resultInfoVO.getStdErr().contains("No such file or directory")) {
+                    LOGGER.info(">>>>>>>>> [update cluster status] cluster [ {} ] operation [ {} ] is installing <<<<<<<<<", clusterId, record.getId());
+                } else {
+                    LOGGER.info(">>>>>>>>> [update cluster status] Failed to get install status of host [ {} ],error is: {} <<<<<<<<<", ssh.getRemoteHostname(), resultInfoVO.getStdErr());
+                    record.setStatus(ClusterOperationStatusEnum.FAILED.value())
+                            .appendErrorMsg(resultInfoVO.getStdErr());
+                    devopsClusterDTO.setStatus(ClusterStatusEnum.FAILED.value());
                 }
-                SSHClient ssh = new SSHClient();
-                try {
-                    List<DevopsClusterNodeDTO> devopsClusterNodeDTOList = devopsClusterNodeMapper.listByClusterId(clusterId);
-                    List<DevopsClusterNodeDTO> devopsClusterOutterNodeDTOList = devopsClusterNodeDTOList.stream().filter(n -> ClusterNodeTypeEnum.OUTTER.getType().equalsIgnoreCase(n.getType())).collect(Collectors.toList());
-                    if (!CollectionUtils.isEmpty(devopsClusterOutterNodeDTOList)) {
-                        sshUtil.sshConnect(ConvertUtils.convertObject(devopsClusterOutterNodeDTOList.get(0), HostConnectionVO.class), ssh);
-                    } else {
-                        sshUtil.sshConnect(ConvertUtils.convertObject(devopsClusterNodeDTOList.get(0), HostConnectionVO.class), ssh);
+            } else {
+                if ("0".equals(resultInfoVO.getStdOut().replaceAll("\r|\n", ""))) {
+                    if (!commit.getAsBoolean()) {
+                        return;
                     }
-                    ExecResultInfoVO resultInfoVO = sshUtil.execCommand(ssh, String.format(CAT_FILE, String.format(EXIT_CODE_FILE_TEMPLATE, devopsClusterDTO.getCode())));
-                    if (resultInfoVO.getExitCode() != 0) {
-                        if (resultInfoVO.getStdErr().contains("No such file or directory")) {
-                            LOGGER.info(">>>>>>>>> [update cluster status] cluster [ {} ] operation [ {} ] is installing <<<<<<<<<", clusterId, record.getId());
-                        } else {
-                            LOGGER.info(">>>>>>>>> [update cluster status] Failed to get install status of host [ {} ],error is: {} <<<<<<<<<", ssh.getRemoteHostname(), resultInfoVO.getStdErr());
-                            record.setStatus(ClusterOperationStatusEnum.FAILED.value())
-                                    .appendErrorMsg(resultInfoVO.getStdErr());
-                            devopsClusterDTO.setStatus(ClusterStatusEnum.FAILED.value());
-                        }
-                    } else {
-                        if ("0".equals(resultInfoVO.getStdOut().replaceAll("\r|\n", ""))) {
-                            // k8s安装成功
-                            LOGGER.info(">>>>>>>>> [update cluster status] cluster [ {} ] operation [ {} ] install success <<<<<<<<<", clusterId, record.getId());
-                            record.setStatus(ClusterOperationStatusEnum.SUCCESS.value());
-                            devopsClusterDTO.setStatus(ClusterStatusEnum.DISCONNECT.value());
-                            // 安装agent, 第一步安装helm ，第二步安装agent。这一步骤如果出现错误,只保存错误信息
-                            installAgent(devopsClusterDTO, record, ssh);
-                        } else {
-                            LOGGER.info(">>>>>>>>> [update cluster status] cluster [ {} ] operation [ {} ] install failed <<<<<<<<<", clusterId, record.getId());
-                            String installLog = sshUtil.execCommand(ssh, String.format(CAT_FILE, INSTALL_K8S_LOG)).getStdOut();
-                            int length = installLog.length();
-                            installLog = length > MAX_LOG_MSG_LENGTH ? installLog.substring(length - MAX_LOG_MSG_LENGTH, length) : installLog;
-                            record.setStatus(ClusterOperationStatusEnum.FAILED.value());
-                            devopsClusterDTO.setStatus(ClusterStatusEnum.FAILED.value());
-                            record.appendErrorMsg(String.format("install failed.%s for more detail ,login in node [ %s ] and cat %s", installLog, ssh.getRemoteHostname(), INSTALL_K8S_LOG));
-                            // 删除执行状态文件，防止重试安装后，该方法读取错误的状态
-                            sshUtil.execCommand(ssh, String.format(DELETE_FILE, String.format(EXIT_CODE_FILE_TEMPLATE, devopsClusterDTO.getCode())));
-                        }
+                    // k8s安装成功
+                    LOGGER.info(">>>>>>>>> [update cluster status] cluster [ {} ] operation [ {} ] install success <<<<<<<<<", clusterId, record.getId());
+                    record.setStatus(ClusterOperationStatusEnum.SUCCESS.value());
+                    devopsClusterDTO.setStatus(ClusterStatusEnum.DISCONNECT.value());
+                    // 安装agent, 第一步安装helm ，第二步安装agent。这一步骤如果出现错误,只保存错误信息
+                    installAgent(devopsClusterDTO, record, ssh);
+                } else {
+                    LOGGER.info(">>>>>>>>> [update cluster status] cluster [ {} ] operation [ {} ] install failed <<<<<<<<<", clusterId, record.getId());
+                    String installLog = sshUtil.execCommand(ssh, String.format(CAT_FILE, INSTALL_K8S_LOG)).getStdOut();
+                    int length = installLog.length();
+                    installLog = length > MAX_LOG_MSG_LENGTH ? installLog.substring(length - MAX_LOG_MSG_LENGTH, length) : installLog;
+                    if (!commit.getAsBoolean()) {
+                        return;
                     }
-                } catch (Exception e) {
-                    record.setStatus(ClusterOperationStatusEnum.FAILED.value())
-                            .appendErrorMsg(e.getMessage());
+                    record.setStatus(ClusterOperationStatusEnum.FAILED.value());
                     devopsClusterDTO.setStatus(ClusterStatusEnum.FAILED.value());
-                    e.printStackTrace();
-                } finally {
-                    devopsClusterMapper.updateByPrimaryKeySelective(devopsClusterDTO);
-                    devopsClusterOperationRecordMapper.updateByPrimaryKeySelective(record);
-                    sshUtil.sshDisconnect(ssh);
+                    record.appendErrorMsg(String.format("install failed.%s for more detail ,login in node [ %s ] and cat %s", installLog, ssh.getRemoteHostname(), INSTALL_K8S_LOG));
+                    // 删除执行状态文件，防止重试安装后，该方法读取错误的状态
+                    sshUtil.execCommand(ssh, String.format(DELETE_FILE, String.format(EXIT_CODE_FILE_TEMPLATE, devopsClusterDTO.getCode())));
                 }
             }
+        } catch (Exception e) {
+            record.setStatus(ClusterOperationStatusEnum.FAILED.value())
+                    .appendErrorMsg(e.getMessage());
+            devopsClusterDTO.setStatus(ClusterStatusEnum.FAILED.value());
+            LOGGER.warn(">>>>>>>>> [update cluster status] Failed to poll install status of cluster [ {} ] operation [ {} ] <<<<<<<<<", clusterId, record.getId(), e);
         } finally {
-            stringRedisTemplate.delete(CLUSTER_STATUS_SYNC_REDIS_LOCK);
+            sshUtil.sshDisconnect(ssh);
         }
     }
 
@@ -1,5 +1,7 @@
 package io.choerodon.devops.app.service.impl;
 
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -7,11 +9,14 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
+import org.springframework.util.CollectionUtils;
 
 import io.choerodon.devops.app.service.DevopsClusterOperatingRecordService;
 import io.choerodon.devops.infra.constant.ClusterCheckConstant;
+import io.choerodon.devops.infra.dto.DevopsClusterDTO;
 import io.choerodon.devops.infra.dto.DevopsClusterOperationRecordDTO;
 import io.choerodon.devops.infra.enums.ClusterOperationStatusEnum;
+import io.choerodon.devops.infra.mapper.DevopsClusterMapper;
 import io.choerodon.devops.infra.mapper.DevopsClusterOperationRecordMapper;
 
 /**
@@ -27,6 +32,8 @@ public class DevopsClusterOperatingRecordServiceImpl implements DevopsClusterOpe
     private static final Logger LOGGER = LoggerFactory.getLogger(DevopsClusterOperatingRecordServiceImpl.class);
     @Autowired
     private DevopsClusterOperationRecordMapper devopsClusterOperationRecordMapper;
+    @Autowired
+    private DevopsClusterMapper devopsClusterMapper;
 
     @Override
     @Transactional(propagation = Propagation.REQUIRES_NEW)
@@ -61,4 +68,15 @@ public class DevopsClusterOperatingRecordServiceImpl implements DevopsClusterOpe
     public DevopsClusterOperationRecordDTO queryById(Long operationRecordId) {
         return devopsClusterOperationRecordMapper.selectByPrimaryKey(operationRecordId);
     }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public void batchUpdateStatus(List<DevopsClusterOperationRecordDTO> records, List<DevopsClusterDTO> clusters) {
+        if (!CollectionUtils.isEmpty(records)) {
+            devopsClusterOperationRecordMapper.batchUpdateStatusAndErrorMsg(records);
+        }
+        if (!CollectionUtils.isEmpty(clusters)) {
+            devopsClusterMapper.batchUpdateStatus(clusters);
+        }
+    }
 }
@@ -384,7 +384,7 @@ public class DevopsClusterServiceImpl implements DevopsClusterService {
         Page<DevopsClusterRepVO> devopsClusterRepVOPageInfo = ConvertUtils.convertPage(basePageClustersByOptions(projectId, doPage, pageable, params), DevopsClusterRepVO.class);
         Page<ClusterWithNodesVO> devopsClusterRepDTOPage = ConvertUtils.convertPage(devopsClusterRepVOPageInfo, ClusterWithNodesVO.class);
 
-        List<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterSet();
         devopsClusterRepVOPageInfo.getContent().forEach(devopsClusterRepVO -> {
             if (updatedEnvList.contains(devopsClusterRepVO.getId())) {
                 devopsClusterRepVO.setConnect(true);
@@ -541,7 +541,7 @@ public class DevopsClusterServiceImpl implements DevopsClusterService {
         devopsClusterDTO.setProjectId(projectId);
         List<DevopsClusterDTO> devopsClusterDTOList = devopsClusterMapper.select(devopsClusterDTO);
         List<DevopsClusterBasicInfoVO> devopsClusterBasicInfoVOList = ConvertUtils.convertList(devopsClusterDTOList, DevopsClusterBasicInfoVO.class);
-        List<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterSet();
 
         // 连接的集群
         List<DevopsClusterBasicInfoVO> connectedClusters = new ArrayList<>();
@@ -667,7 +667,7 @@ public class DevopsClusterServiceImpl implements DevopsClusterService {
     }
 
     private void checkConnectAndExistEnvsOrPV(Long clusterId) {
-        List<Long> connectedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> connectedEnvList = clusterConnectionHandler.getUpdatedClusterSet();
         List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = devopsEnvironmentService.baseListUserEnvByClusterId(clusterId);
 
         if (connectedEnvList.contains(clusterId)) {
@@ -686,7 +686,7 @@ public class DevopsClusterServiceImpl implements DevopsClusterService {
     @Override
     public ClusterMsgVO checkConnectEnvsAndPV(Long clusterId) {
         ClusterMsgVO clusterMsgVO = new ClusterMsgVO(false, false);
-        List<Long> connectedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> connectedEnvList = clusterConnectionHandler.getUpdatedClusterSet();
         List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = devopsEnvironmentService.baseListUserEnvByClusterId(clusterId);
 
         if (connectedEnvList.contains(clusterId)) {
@@ -710,7 +710,7 @@ public class DevopsClusterServiceImpl implements DevopsClusterService {
         if (result == null) {
             return null;
         }
-        List<Long> upToDateList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upToDateList = clusterConnectionHandler.getUpdatedClusterSet();
         if (upToDateList.contains(clusterId)) {
             result.setConnect(true);
             if (result.getStatus().equalsIgnoreCase(ClusterStatusEnum.DISCONNECT.value())) {
@@ -848,7 +848,7 @@ public class DevopsClusterServiceImpl implements DevopsClusterService {
 
     @Override
     public ClusterOverViewVO getOrganizationClusterOverview(Long organizationId) {
-        List<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterSet();
         List<DevopsClusterDTO> clusterDTOList = devopsClusterMapper.listByOrganizationId(organizationId);
         if (CollectionUtils.isEmpty(clusterDTOList)) {
 
@@ -869,7 +869,7 @@ public class DevopsClusterServiceImpl implements DevopsClusterService {
     @Override
     public ClusterOverViewVO getSiteClusterOverview() {
         int allCount = devopsClusterMapper.countByOptions(null, null);
-        int updatedCount = clusterConnectionHandler.getUpdatedClusterList().size();
+        int updatedCount = clusterConnectionHandler.getUpdatedClusterSet().size();
         return new ClusterOverViewVO(updatedCount, allCount - updatedCount);
     }
 
@@ -909,7 +909,7 @@ public class DevopsClusterServiceImpl implements DevopsClusterService {
 
     private DevopsClusterRepVO getDevopsClusterStatus(Long clusterId) {
         DevopsClusterRepVO devopsClusterRepVO = ConvertUtils.convertObject(baseQuery(clusterId), DevopsClusterRepVO.class);
-        List<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterSet();
 
         if (updatedEnvList.contains(clusterId)) {
             devopsClusterRepVO.setConnect(true);
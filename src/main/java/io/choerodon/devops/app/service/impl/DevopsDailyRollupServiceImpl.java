@@ -0,0 +1,125 @@
+package io.choerodon.devops.app.service.impl;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import io.choerodon.devops.api.vo.CountVO;
+import io.choerodon.devops.app.service.DevopsDailyRollupService;
+import io.choerodon.devops.infra.dto.DevopsDailyRollupDTO;
+import io.choerodon.devops.infra.dto.DevopsEnvCommandDTO;
+import io.choerodon.devops.infra.dto.DevopsGitlabCommitDTO;
+import io.choerodon.devops.infra.dto.DevopsPipelineRecordRelDTO;
+import io.choerodon.devops.infra.enums.CommandType;
+import io.choerodon.devops.infra.enums.DailyRollupMetric;
+import io.choerodon.devops.infra.enums.ObjectType;
+import io.choerodon.devops.infra.mapper.DevopsDailyRollupMapper;
+
+/**
+ * @author zmf
+ * @since 2021/8/8
+ */
+@Service
+public class DevopsDailyRollupServiceImpl implements DevopsDailyRollupService {
+    /**
+     * 没有用户时的用户id
+     */
+    private static final Long NONE_USER_ID = 0L;
+    private static final String DATE_PATTERN = "yyyy-MM-dd";
+
+    @Autowired
+    private DevopsDailyRollupMapper devopsDailyRollupMapper;
+
+    @Override
+    public void increaseCommit(DevopsGitlabCommitDTO devopsGitlabCommitDTO) {
+        Date commitDate = devopsGitlabCommitDTO.getCommitDate() == null ? new Date() : devopsGitlabCommitDTO.getCommitDate();
+        devopsDailyRollupMapper.increaseByAppService(DailyRollupMetric.COMMIT.getValue(),
+                devopsGitlabCommitDTO.getAppServiceId(),
+                userIdOrNone(devopsGitlabCommitDTO.getUserId()),
+                toSqlDate(commitDate),
+                1L);
+    }
+
+    @Override
+    public void increaseCommits(List<DevopsGitlabCommitDTO> devopsGitlabCommitDTOS) {
+        Map<List<Object>, Long> counts = new HashMap<>();
+        Date now = new Date();
+        devopsGitlabCommitDTOS.forEach(devopsGitlabCommitDTO -> {
+            Date commitDate = devopsGitlabCommitDTO.getCommitDate() == null ? now : devopsGitlabCommitDTO.getCommitDate();
+            List<Object> key = Arrays.asList(devopsGitlabCommitDTO.getAppServiceId(), userIdOrNone(devopsGitlabCommitDTO.getUserId()), toSqlDate(commitDate));
+            counts.merge(key, 1L, Long::sum);
+        });
+        counts.forEach((key, count) -> devopsDailyRollupMapper.increaseByAppService(DailyRollupMetric.COMMIT.getValue(),
+                (Long) key.get(0),
+                (Long) key.get(1),
+                (java.sql.Date) key.get(2),
+                count));
+    }
+
+    @Override
+    public void increaseDeploy(DevopsEnvCommandDTO devopsEnvCommandDTO) {
+        if (!ObjectType.INSTANCE.getType().equals(devopsEnvCommandDTO.getObject())
+                || !(CommandType.CREATE.getType().equals(devopsEnvCommandDTO.getCommandType())
+                || CommandType.UPDATE.getType().equals(devopsEnvCommandDTO.getCommandType()))) {
+            return;
+        }
+        devopsDailyRollupMapper.increaseByInstance(DailyRollupMetric.DEPLOY.getValue(),
+                devopsEnvCommandDTO.getObjectId(),
+                userIdOrNone(devopsEnvCommandDTO.getCreatedBy()),
+                toSqlDate(new Date()));
+    }
+
+    @Override
+    public void increaseCi(DevopsPipelineRecordRelDTO devopsPipelineRecordRelDTO) {
+        devopsDailyRollupMapper.increaseByPipeline(DailyRollupMetric.CI.getValue(),
+                devopsPipelineRecordRelDTO.getPipelineId(),
+                userIdOrNone(devopsPipelineRecordRelDTO.getCreatedBy()),
+                toSqlDate(new Date()));
+    }
+
+    @Override
+    public CountVO countByDate(Long projectId, DailyRollupMetric metric, Date startDate, Date endDate) {
+        List<DevopsDailyRollupDTO> dailyCounts = devopsDailyRollupMapper.listDailyCount(projectId, metric.getValue(), null,
+                toSqlDate(startDate), toSqlDate(endDate), false);
+        SimpleDateFormat simpleDateFormat = new SimpleDateFormat(DATE_PATTERN);
+        CountVO countVO = new CountVO();
+        countVO.setDate(dailyCounts.stream().map(d -> simpleDateFormat.format(d.getStatDate())).collect(Collectors.toList()));
+        countVO.setCount(dailyCounts.stream().map(DevopsDailyRollupDTO::getCount).collect(Collectors.toList()));
+        return countVO;
+    }
+
+    @Override
+    public List<DevopsDailyRollupDTO> listDailyCountByUser(Long projectId, DailyRollupMetric metric, @Nullable Collection<Long> appServiceIds, Date startDate, Date endDate) {
+        return devopsDailyRollupMapper.listDailyCount(projectId, metric.getValue(), appServiceIds,
+                toSqlDate(startDate), toSqlDate(endDate), true);
+    }
+
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public void rebuild(Date startDate, Date endDate) {
+        java.sql.Date start = toSqlDate(startDate);
+        java.sql.Date end = toSqlDate(endDate);
+        for (DailyRollupMetric metric : DailyRollupMetric.values()) {
+            devopsDailyRollupMapper.deleteByMetricAndDate(metric.getValue(), start, end);
+        }
+        devopsDailyRollupMapper.rebuildCommit(DailyRollupMetric.COMMIT.getValue(), start, end);
+        devopsDailyRollupMapper.rebuildDeploy(DailyRollupMetric.DEPLOY.getValue(), start, end);
+        devopsDailyRollupMapper.rebuildCi(DailyRollupMetric.CI.getValue(), start, end);
+    }
+
+    private static Long userIdOrNone(@Nullable Long userId) {
+        return userId == null ? NONE_USER_ID : userId;
+    }
+
+    /**
+     * 去掉时间部分
+     */
+    private static java.sql.Date toSqlDate(Date date) {
+        return java.sql.Date.valueOf(new java.sql.Date(date.getTime()).toLocalDate());
+    }
+}
@@ -38,12 +38,12 @@ import io.choerodon.devops.infra.dto.gitlab.MergeRequestDTO;
 import io.choerodon.devops.infra.dto.iam.ProjectDTO;
 import io.choerodon.devops.infra.dto.iam.Tenant;
 import io.choerodon.devops.infra.enums.AccessLevel;
+import io.choerodon.devops.infra.enums.ChartBlobType;
 import io.choerodon.devops.infra.enums.CommandStatus;
 import io.choerodon.devops.infra.enums.ProjectConfigType;
 import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator;
 import io.choerodon.devops.infra.feign.operator.GitlabServiceClientOperator;
 import io.choerodon.devops.infra.mapper.AppServiceMapper;
-import io.choerodon.devops.infra.mapper.AppServiceVersionReadmeMapper;
 import io.choerodon.devops.infra.util.*;
 
 /**
@@ -93,9 +93,7 @@ public class DevopsDemoEnvInitServiceImpl implements DevopsDemoEnvInitService {
     @Autowired
     private ChartUtil chartUtil;
     @Autowired
-    private AppServiceVersionValueService appServiceVersionValueService;
-    @Autowired
-    private AppServiceVersionReadmeMapper appServiceVersionReadmeMapper;
+    private AppServiceVersionBlobService appServiceVersionBlobService;
     @Autowired
     private SendNotificationService sendNotificationService;
 
@@ -329,7 +327,6 @@ public class DevopsDemoEnvInitServiceImpl implements DevopsDemoEnvInitService {
     private void doCreate(String image, String token, String version, String commit, MultipartFile files) {
         AppServiceDTO appServiceDTO = appServiceMapper.queryByToken(token);
 
-        AppServiceVersionValueDTO appServiceVersionValueDTO = new AppServiceVersionValueDTO();
         AppServiceVersionDTO appServiceVersionDTO = new AppServiceVersionDTO();
         ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(appServiceDTO.getProjectId());
         Tenant organization = baseServiceClientOperator.queryOrganizationById(projectDTO.getOrganizationId());
@@ -385,20 +382,14 @@ public class DevopsDemoEnvInitServiceImpl implements DevopsDemoEnvInitService {
             FileUtil.deleteDirectories(storeFilePath, destFilePath);
             throw new CommonException("The format of the values.yaml in the chart is invalid!", e);
         }
-        appServiceVersionValueDTO.setValue(values);
         try {
-            appServiceVersionDTO.setValueId(appServiceVersionValueService
-                    .baseCreate(appServiceVersionValueDTO).getId());
+            appServiceVersionDTO.setValueId(appServiceVersionBlobService.acquire(ChartBlobType.VALUES, values));
         } catch (Exception e) {
             FileUtil.deleteDirectories(storeFilePath, destFilePath);
             throw new CommonException(ERROR_VERSION_INSERT, e);
         }
 
-        AppServiceVersionReadmeDTO appServiceVersionReadmeDTO = new AppServiceVersionReadmeDTO();
-        appServiceVersionReadmeDTO.setReadme(FileUtil.getReadme(destFilePath));
-        appServiceVersionReadmeMapper.insert(appServiceVersionReadmeDTO);
-
-        appServiceVersionDTO.setReadmeValueId(appServiceVersionReadmeDTO.getId());
+        appServiceVersionDTO.setReadmeValueId(appServiceVersionBlobService.acquire(ChartBlobType.README, FileUtil.getReadme(destFilePath)));
         appServiceVersionService.baseCreate(appServiceVersionDTO);
 
         FileUtil.deleteDirectories(destFilePath, storeFilePath);
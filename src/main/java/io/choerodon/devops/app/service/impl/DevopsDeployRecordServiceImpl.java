@@ -7,6 +7,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -271,7 +272,7 @@ public class DevopsDeployRecordServiceImpl implements DevopsDeployRecordService
 
         Map<Long, IamUserDTO> userMap = iamUserDTOS.stream().collect(Collectors.toMap(IamUserDTO::getId, v -> v));
 
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterSet();
 
         deployRecordVOPage.getContent().forEach(v -> {
             try {
@@ -15,6 +15,7 @@ import io.choerodon.core.domain.Page;
 import io.choerodon.core.exception.CommonException;
 import io.choerodon.devops.api.vo.kubernetes.Command;
 import io.choerodon.devops.app.service.DevopsCommandEventService;
+import io.choerodon.devops.app.service.DevopsDailyRollupService;
 import io.choerodon.devops.app.service.DevopsEnvCommandLogService;
 import io.choerodon.devops.app.service.DevopsEnvCommandService;
 import io.choerodon.devops.app.service.DevopsEnvCommandValueService;
@@ -44,6 +45,8 @@ public class DevopsEnvCommandServiceImpl implements DevopsEnvCommandService {
     DevopsCommandEventService devopsCommandEventService;
     @Autowired
     private DevopsEnvCommandMapper devopsEnvCommandMapper;
+    @Autowired
+    private DevopsDailyRollupService devopsDailyRollupService;
 
 
     @Override
@@ -51,6 +54,7 @@ public class DevopsEnvCommandServiceImpl implements DevopsEnvCommandService {
         if (devopsEnvCommandMapper.insert(devopsEnvCommandDTO) != 1) {
             throw new CommonException("error.env.command.insert");
         }
+        devopsDailyRollupService.increaseDeploy(devopsEnvCommandDTO);
         return devopsEnvCommandMapper.selectByPrimaryKey(devopsEnvCommandDTO);
     }
 
@@ -82,6 +82,13 @@ public class DevopsEnvFileResourceServiceImpl implements DevopsEnvFileResourceSe
         return devopsEnvFileResourceMapper.select(devopsEnvFileResourceDTO);
     }
 
+    @Override
+    public List<DevopsEnvFileResourceDTO> baseListByEnvId(Long envId) {
+        DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = new DevopsEnvFileResourceDTO();
+        devopsEnvFileResourceDTO.setEnvId(Objects.requireNonNull(envId));
+        return devopsEnvFileResourceMapper.select(devopsEnvFileResourceDTO);
+    }
+
     @Override
     public void baseDeleteByEnvIdAndResourceId(Long envId, Long resourceId, String resourceType) {
         DevopsEnvFileResourceDTO devopsEnvFileResourceDTO = new DevopsEnvFileResourceDTO();
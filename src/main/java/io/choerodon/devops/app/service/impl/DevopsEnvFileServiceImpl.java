@@ -1,11 +1,11 @@
 package io.choerodon.devops.app.service.impl;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 
+import org.hzero.mybatis.BatchInsertHelper;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
@@ -47,6 +47,9 @@ public class DevopsEnvFileServiceImpl implements DevopsEnvFileService {
     private DevopsEnvironmentService devopsEnvironmentService;
     @Autowired
     private BaseServiceClientOperator baseServiceClientOperator;
+    @Autowired
+    @Qualifier("devopsEnvFileBatchInsertHelper")
+    private BatchInsertHelper<DevopsEnvFileDTO> batchInsertHelper;
 
     @Override
     public List<DevopsEnvFileErrorVO> listByEnvId(Long envId) {
@@ -133,6 +136,44 @@ public class DevopsEnvFileServiceImpl implements DevopsEnvFileService {
         return devopsEnvFileMapper.select(devopsEnvFileDTO);
     }
 
+    @Override
+    public void batchUpdateDevopsCommit(Long envId, Map<String, String> fileCommits) {
+        if (fileCommits.isEmpty()) {
+            return;
+        }
+        Map<String, DevopsEnvFileDTO> existedFiles = new HashMap<>();
+        baseListByEnvId(envId).forEach(file -> existedFiles.putIfAbsent(file.getFilePath(), file));
+
+        List<DevopsEnvFileDTO> newFiles = new ArrayList<>();
+        // 提交相同的文件在一条语句中更新
+        Map<String, List<Long>> commitFileIds = new HashMap<>();
+        fileCommits.forEach((filePath, commit) -> {
+            DevopsEnvFileDTO devopsEnvFileDTO = existedFiles.get(filePath);
+            if (devopsEnvFileDTO == null) {
+                devopsEnvFileDTO = new DevopsEnvFileDTO();
+                devopsEnvFileDTO.setEnvId(envId);
+                devopsEnvFileDTO.setFilePath(filePath);
+                devopsEnvFileDTO.setDevopsCommit(commit);
+                newFiles.add(devopsEnvFileDTO);
+            } else if (!Objects.equals(commit, devopsEnvFileDTO.getDevopsCommit())) {
+                commitFileIds.computeIfAbsent(commit, k -> new ArrayList<>()).add(devopsEnvFileDTO.getId());
+            }
+        });
+
+        if (!newFiles.isEmpty()) {
+            batchInsertHelper.batchInsert(newFiles);
+        }
+        commitFileIds.forEach((commit, ids) -> devopsEnvFileMapper.batchUpdateDevopsCommit(ids, commit));
+    }
+
+    @Override
+    public void batchDeleteByEnvIdAndPaths(Long envId, Collection<String> filePaths) {
+        if (filePaths.isEmpty()) {
+            return;
+        }
+        devopsEnvFileMapper.batchDeleteByEnvIdAndPaths(Objects.requireNonNull(envId), filePaths);
+    }
+
     @Transactional(propagation = Propagation.REQUIRED, rollbackFor = Exception.class)
     @Override
     public void deleteByEnvId(Long envId) {
@@ -69,7 +69,7 @@ public class DevopsEnvPodServiceImpl implements DevopsEnvPodService {
 
     @Override
     public Page<DevopsEnvPodVO> pageByOptions(Long projectId, Long envId, Long appServiceId, Long instanceId, PageRequest pageable, String searchParam) {
-        List<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterSet();
         Page<DevopsEnvPodDTO> devopsEnvPodDTOPageInfo = basePageByIds(projectId, envId, appServiceId, instanceId, pageable, searchParam);
         Page<DevopsEnvPodVO> devopsEnvPodVOPageInfo = ConvertUtils.convertPage(devopsEnvPodDTOPageInfo, DevopsEnvPodVO.class);
 
@@ -282,8 +282,14 @@ public class DevopsEnvPodServiceImpl implements DevopsEnvPodService {
         List<DevopsEnvResourceDetailDTO> devopsEnvResourceDetailDTOS = devopsEnvResourceDetailService.listByMessageIds(resourceDetailIds);
         Map<Long, DevopsEnvResourceDetailDTO> devopsEnvResourceDetailMap = devopsEnvResourceDetailDTOS.stream().collect(Collectors.toMap(DevopsEnvResourceDetailDTO::getId, Function.identity()));
 
+        // 按namespace批量查询pod最新的实时数据, 每个namespace一次往返
+        Map<String, Map<String, PodMetricsRedisInfoVO>> podMetricsMap = new HashMap<>();
+        devopsEnvPodInfoVOList.stream()
+                .collect(Collectors.groupingBy(DevopsEnvPodInfoVO::getNamespace, Collectors.mapping(DevopsEnvPodInfoVO::getName, Collectors.toSet())))
+                .forEach((namespace, names) -> podMetricsMap.put(namespace, agentPodService.queryLatestPodSnapshots(names, namespace, devopsClusterDTO.getCode())));
+
         devopsEnvPodInfoVOList.forEach(devopsEnvPodInfoVO -> {
-            PodMetricsRedisInfoVO podMetricsRedisInfoVO = agentPodService.queryLatestPodSnapshot(devopsEnvPodInfoVO.getName(), devopsEnvPodInfoVO.getNamespace(), devopsClusterDTO.getCode());
+            PodMetricsRedisInfoVO podMetricsRedisInfoVO = podMetricsMap.get(devopsEnvPodInfoVO.getNamespace()).get(devopsEnvPodInfoVO.getName());
             DevopsEnvResourceDTO devopsEnvResourceDTO = devopsEnvResourceMap.get(devopsEnvPodInfoVO.getName());
             DevopsEnvResourceDetailDTO devopsEnvResourceDetailDTO = devopsEnvResourceDetailMap.get(devopsEnvResourceDTO.getResourceDetailId());
             V1Pod v1Pod = json.deserialize(devopsEnvResourceDetailDTO.getMessage(), V1Pod.class);
@@ -365,7 +371,7 @@ public class DevopsEnvPodServiceImpl implements DevopsEnvPodService {
 
     @Override
     public Page<DevopsEnvPodVO> pageByKind(Long projectId, Long envId, String kind, String name, PageRequest pageable, String searchParam) {
-        List<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterSet();
 
         DevopsEnvResourceDTO devopsEnvResourceDTO = devopsEnvResourceService.baseQueryOptions(null, null, envId, kind, name);
 
@@ -580,6 +580,14 @@ public class DevopsEnvResourceServiceImpl implements DevopsEnvResourceService {
         return devopsEnvResourceMapper.listEnvResourceByOptions(envId, type, names);
     }
 
+    @Override
+    public List<DevopsEnvResourceDTO> listInstanceIdsByKindsAndNames(Long envId, Collection<String> kinds, Collection<String> names) {
+        if (CollectionUtils.isEmpty(kinds) || CollectionUtils.isEmpty(names)) {
+            return new ArrayList<>();
+        }
+        return devopsEnvResourceMapper.listInstanceIdsByKindsAndNames(Objects.requireNonNull(envId), kinds, names);
+    }
+
     @Override
     public List<PodEventVO> listPodEventBycommandId(Long commandId) {
 
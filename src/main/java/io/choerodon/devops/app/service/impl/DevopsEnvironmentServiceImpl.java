@@ -57,6 +57,7 @@ import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator;
 import io.choerodon.devops.infra.feign.operator.GitlabServiceClientOperator;
 import io.choerodon.devops.infra.feign.operator.MarketServiceClientOperator;
 import io.choerodon.devops.infra.handler.ClusterConnectionHandler;
+import io.choerodon.devops.infra.handler.EnvSyncStatusPublisher;
 import io.choerodon.devops.infra.mapper.*;
 import io.choerodon.devops.infra.util.*;
 import io.choerodon.mybatis.pagehelper.domain.PageRequest;
@@ -138,6 +139,8 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
     @Autowired
     private ClusterConnectionHandler clusterConnectionHandler;
     @Autowired
+    private EnvSyncStatusPublisher envSyncStatusPublisher;
+    @Autowired
     private AppServiceInstanceMapper appServiceInstanceMapper;
     @Autowired
     private DevopsServiceMapper devopsServiceMapper;
@@ -154,8 +157,6 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
     @Autowired
     private DevopsEnvAppServiceMapper devopsEnvAppServiceMapper;
     @Autowired
-    private DevopsEnvGroupMapper devopsEnvGroupMapper;
-    @Autowired
     private DevopsDeployRecordService devopsDeployRecordService;
     @Autowired
     private AppServiceService appServiceService;
@@ -298,11 +299,10 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
     @Override
     public List<DevopsEnvGroupEnvsVO> listDevopsEnvGroupEnvs(Long projectId, Boolean active) {
         List<DevopsEnvGroupEnvsVO> devopsEnvGroupEnvsDTOS = new ArrayList<>();
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
-        List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = baseListByProjectIdAndActive(projectId, active).stream().peek(t ->
-                setEnvStatus(upgradeClusterList, t)
-        )
-                .collect(Collectors.toList());
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterSet();
+        // 集群名称在同一个查询中连接得到
+        List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = devopsEnvironmentMapper.listByProjectIdAndActive(projectId, active);
+        devopsEnvironmentDTOS.forEach(t -> setEnvStatus(upgradeClusterList, t));
         List<DevopsEnvironmentRepVO> devopsEnviromentRepDTOS = ConvertUtils.convertList(devopsEnvironmentDTOS, DevopsEnvironmentRepVO.class);
         if (!active) {
             DevopsEnvGroupEnvsVO devopsEnvGroupEnvsDTO = new DevopsEnvGroupEnvsVO();
@@ -311,9 +311,9 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
             return devopsEnvGroupEnvsDTOS;
         }
         List<DevopsEnvGroupDTO> devopsEnvGroupES = devopsEnvGroupService.baseListByProjectId(projectId);
+        Map<Long, DevopsEnvGroupDTO> devopsEnvGroupDTOMap = devopsEnvGroupES.stream()
+                .collect(Collectors.toMap(DevopsEnvGroupDTO::getId, Function.identity()));
         devopsEnviromentRepDTOS.forEach(devopsEnviromentRepDTO -> {
-            DevopsClusterDTO devopsClusterDTO = devopsClusterService.baseQuery(devopsEnviromentRepDTO.getClusterId());
-            devopsEnviromentRepDTO.setClusterName(devopsClusterDTO == null ? null : devopsClusterDTO.getName());
             if (devopsEnviromentRepDTO.getDevopsEnvGroupId() == null) {
                 devopsEnviromentRepDTO.setDevopsEnvGroupId(0L);
             }
@@ -322,13 +322,11 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
         Map<Long, List<DevopsEnvironmentRepVO>> resultMaps = devopsEnviromentRepDTOS.stream()
                 .collect(Collectors.groupingBy(DevopsEnvironmentRepVO::getDevopsEnvGroupId));
 
-        List<Long> envGroupIds = new ArrayList<>();
         resultMaps.forEach((key, value) -> {
-            envGroupIds.add(key);
             DevopsEnvGroupEnvsVO devopsEnvGroupEnvsDTO = new DevopsEnvGroupEnvsVO();
             DevopsEnvGroupDTO devopsEnvGroupDTO = new DevopsEnvGroupDTO();
             if (key != 0) {
-                devopsEnvGroupDTO = devopsEnvGroupService.baseQuery(key);
+                devopsEnvGroupDTO = getEnvGroup(devopsEnvGroupDTOMap, key);
             }
             devopsEnvGroupEnvsDTO.setDevopsEnvGroupId(devopsEnvGroupDTO.getId());
             devopsEnvGroupEnvsDTO.setDevopsEnvGroupName(devopsEnvGroupDTO.getName());
@@ -336,7 +334,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
             devopsEnvGroupEnvsDTOS.add(devopsEnvGroupEnvsDTO);
         });
         devopsEnvGroupES.forEach(devopsEnvGroupE -> {
-            if (!envGroupIds.contains(devopsEnvGroupE.getId())) {
+            if (!resultMaps.containsKey(devopsEnvGroupE.getId())) {
                 DevopsEnvGroupEnvsVO devopsEnvGroupEnvsDTO = new DevopsEnvGroupEnvsVO();
                 devopsEnvGroupEnvsDTO.setDevopsEnvGroupId(devopsEnvGroupE.getId());
                 devopsEnvGroupEnvsDTO.setDevopsEnvGroupName(devopsEnvGroupE.getName());
@@ -346,20 +344,27 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
         return devopsEnvGroupEnvsDTOS;
     }
 
+    /**
+     * 从项目的环境组中取环境组, 环境组不属于这个项目的异常数据才单独查询
+     */
+    @Nullable
+    private DevopsEnvGroupDTO getEnvGroup(Map<Long, DevopsEnvGroupDTO> projectEnvGroups, Long groupId) {
+        DevopsEnvGroupDTO devopsEnvGroupDTO = projectEnvGroups.get(groupId);
+        return devopsEnvGroupDTO != null ? devopsEnvGroupDTO : devopsEnvGroupService.baseQuery(groupId);
+    }
+
     @Override
     public List<DevopsEnvGroupEnvsVO> listEnvTreeMenu(Long projectId) {
         List<DevopsEnvGroupEnvsVO> devopsEnvGroupEnvsDTOS = new ArrayList<>();
         // 获得环境列表(包含激活与不激活)
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterSet();
 
-        List<DevopsEnvironmentDTO> devopsEnvironmentList = devopsEnvironmentMapper.listByProjectId(projectId)
-                .stream()
-                .peek(t -> setEnvStatus(upgradeClusterList, t))
-                .collect(Collectors.toList());
+        List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = devopsEnvironmentMapper.listByProjectId(projectId);
+        devopsEnvironmentDTOS.forEach(t -> setEnvStatus(upgradeClusterList, t));
+        List<DevopsEnvGroupDTO> devopsEnvGroupES = devopsEnvGroupService.baseListByProjectId(projectId);
 
         // 没有环境列表则返回空列表
-        if (devopsEnvironmentList.isEmpty()) {
-            List<DevopsEnvGroupDTO> devopsEnvGroupES = devopsEnvGroupService.baseListByProjectId(projectId);
+        if (devopsEnvironmentDTOS.isEmpty()) {
             devopsEnvGroupES.forEach(g -> {
                 DevopsEnvGroupEnvsVO devopsEnvGroupEnvsDTO2 = new DevopsEnvGroupEnvsVO();
                 devopsEnvGroupEnvsDTO2.setDevopsEnvGroupId(g.getId());
@@ -369,31 +374,20 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
             devopsEnvGroupEnvsDTOS.add(new DevopsEnvGroupEnvsVO());
             return devopsEnvGroupEnvsDTOS;
         }
-        List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = devopsEnvironmentList.stream()
-                .peek(t -> setEnvStatus(upgradeClusterList, t))
-                .collect(Collectors.toList());
-
         List<DevopsEnvironmentRepVO> devopsEnvironmentRepDTOS = ConvertUtils.convertList(devopsEnvironmentDTOS, DevopsEnvironmentRepVO.class);
 
-        List<DevopsEnvGroupDTO> devopsEnvGroupES = devopsEnvGroupService.baseListByProjectId(projectId);
-
         Map<Long, List<DevopsEnvironmentRepVO>> resultMaps = sort(devopsEnvironmentRepDTOS);
 
-        List<Long> groupIds = new ArrayList<>(resultMaps.keySet());
-        Map<Long, DevopsEnvGroupDTO> devopsEnvGroupDTOMap = new HashMap<>();
-        devopsEnvGroupMapper.listByIdList(groupIds)
-                .forEach(i -> devopsEnvGroupDTOMap.put(i.getId(), i));
-
-        List<Long> envGroupIds = new ArrayList<>();
+        Map<Long, DevopsEnvGroupDTO> devopsEnvGroupDTOMap = devopsEnvGroupES.stream()
+                .collect(Collectors.toMap(DevopsEnvGroupDTO::getId, Function.identity()));
 
         //有环境的分组
         resultMaps.forEach((key, value) -> {
-            envGroupIds.add(key);
             DevopsEnvGroupEnvsVO devopsEnvGroupEnvsDTO1 = new DevopsEnvGroupEnvsVO();
             DevopsEnvGroupDTO devopsEnvGroupDTO = new DevopsEnvGroupDTO();
             if (key != 0) {
-                devopsEnvGroupDTO = Optional.ofNullable(devopsEnvGroupDTOMap.get(key)).
-                        orElseThrow(() -> new CommonException("error.env.group.not.exist"));
+                devopsEnvGroupDTO = Optional.ofNullable(getEnvGroup(devopsEnvGroupDTOMap, key))
+                        .orElseThrow(() -> new CommonException("error.env.group.not.exist"));
             }
             devopsEnvGroupEnvsDTO1.setDevopsEnvGroupId(devopsEnvGroupDTO.getId());
             devopsEnvGroupEnvsDTO1.setDevopsEnvGroupName(devopsEnvGroupDTO.getName());
@@ -402,7 +396,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
         });
         //没有环境的分组
         devopsEnvGroupES.forEach(devopsEnvGroupE -> {
-            if (!envGroupIds.contains(devopsEnvGroupE.getId())) {
+            if (!resultMaps.containsKey(devopsEnvGroupE.getId())) {
                 DevopsEnvGroupEnvsVO devopsEnvGroupEnvsDTO2 = new DevopsEnvGroupEnvsVO();
                 devopsEnvGroupEnvsDTO2.setDevopsEnvGroupId(devopsEnvGroupE.getId());
                 devopsEnvGroupEnvsDTO2.setDevopsEnvGroupName(devopsEnvGroupE.getName());
@@ -417,7 +411,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
 
     @Override
     public List<DevopsEnvironmentRepVO> listByGroup(Long projectId, Long groupId) {
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterSet();
         List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = devopsEnvironmentMapper.listByProjectIdAndGroupId(projectId, groupId)
                 .stream()
                 .peek(t -> setEnvStatus(upgradeClusterList, t))
@@ -506,7 +500,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
         // 查询当前用户是否为项目所有者
         Boolean projectOwnerOrRoot = permissionHelper.isGitlabProjectOwnerOrGitlabAdmin(projectId);
 
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterSet();
         List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = baseListByProjectIdAndActive(projectId, active).stream()
                 .filter(devopsEnvironmentE -> !devopsEnvironmentE.getFailed()).peek(t -> {
                     setEnvStatus(upgradeClusterList, t);
@@ -519,7 +513,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
 
     @Override
     public List<DevopsEnvironmentViewVO> listInstanceEnvTree(Long projectId) {
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterSet();
 
         List<DevopsEnvironmentViewVO> connectedEnvs = new ArrayList<>();
         List<DevopsEnvironmentViewVO> unConnectedEnvs = new ArrayList<>();
@@ -598,7 +592,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
 
     @Override
     public List<DevopsResourceEnvOverviewVO> listResourceEnvTree(Long projectId) {
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterSet();
 
         List<DevopsResourceEnvOverviewVO> connectedEnvs = new ArrayList<>();
         List<DevopsResourceEnvOverviewVO> unConnectedEnvs = new ArrayList<>();
@@ -640,7 +634,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
         if (active == null) {
             active = Boolean.TRUE;
         }
-        List<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterSet();
 
         // 要停用环境时，对环境进行校验
         if (!active) {
@@ -686,7 +680,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
         BeanUtils.copyProperties(envInfo, vo);
         vo.setFail(envInfo.getFailed());
 
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterSet();
         vo.setConnect(upgradeClusterList.contains(envInfo.getClusterId()));
 
 
@@ -750,7 +744,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
         return ConvertUtils.convertObject(baseUpdate(toUpdate), DevopsEnvironmentUpdateVO.class);
     }
 
-    private void setEnvStatus(List<Long> upgradeEnvList, DevopsEnvironmentDTO t) {
+    private void setEnvStatus(Set<Long> upgradeEnvList, DevopsEnvironmentDTO t) {
         t.setConnected(upgradeEnvList.contains(t.getClusterId()));
     }
 
@@ -1060,12 +1054,17 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
 
     @Override
     public EnvSyncStatusVO queryEnvSyncStatus(Long projectId, Long envId) {
-        ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(projectId);
-        Tenant organizationDTO = baseServiceClientOperator.queryOrganizationById(projectDTO.getOrganizationId());
+        EnvSyncStatusVO cached = envSyncStatusPublisher.get(envId);
+        if (cached != null) {
+            return cached;
+        }
         DevopsEnvironmentDTO devopsEnvironmentDTO = baseQueryById(envId);
         if (devopsEnvironmentDTO == null) {
             return null;
         }
+        // 缓存的状态被环境的所有查看者共享, 提交的地址使用环境所属的项目, 不使用请求中的项目
+        ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(devopsEnvironmentDTO.getProjectId());
+        Tenant organizationDTO = baseServiceClientOperator.queryOrganizationById(projectDTO.getOrganizationId());
         EnvSyncStatusVO envSyncStatusDTO = new EnvSyncStatusVO();
         if (devopsEnvironmentDTO.getAgentSyncCommit() != null) {
             envSyncStatusDTO.setAgentSyncCommit(devopsEnvCommitService
@@ -1085,6 +1084,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
         envSyncStatusDTO.setCommitUrl(String.format("%s/%s-%s-gitops/%s/commit/",
                 gitlabUrl, organizationDTO.getTenantNum(), projectDTO.getCode(),
                 devopsEnvironmentDTO.getCode()));
+        envSyncStatusPublisher.putLoaded(envId, envSyncStatusDTO);
         return envSyncStatusDTO;
     }
 
@@ -1400,7 +1400,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
         CommonExAssertUtil.assertNotNull(devopsEnvironmentDTO, "error.env.id.not.exist", envId);
         CommonExAssertUtil.assertTrue(projectId.equals(devopsEnvironmentDTO.getProjectId()), MiscConstants.ERROR_OPERATING_RESOURCE_IN_OTHER_PROJECT);
 
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterSet();
         //排除掉运行中的环境
         if (Boolean.TRUE.equals(devopsEnvironmentDTO.getActive()) && Boolean.FALSE.equals(devopsEnvironmentDTO.getFailed()) && upgradeClusterList.contains(devopsEnvironmentDTO.getClusterId())) {
             throw new CommonException("error.env.delete");
@@ -1711,7 +1711,7 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
     public List<DevopsClusterRepVO> listDevopsCluster(Long projectId) {
         ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(projectId);
         List<DevopsClusterRepVO> devopsClusterRepVOS = ConvertUtils.convertList(devopsClusterService.baseListByProjectId(projectId, projectDTO.getOrganizationId()), DevopsClusterRepVO.class);
-        List<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> upgradeClusterList = clusterConnectionHandler.getUpdatedClusterSet();
         devopsClusterRepVOS.forEach(t -> {
             if (upgradeClusterList.contains(t.getId())) {
                 t.setConnect(true);
@@ -1845,24 +1845,37 @@ public class DevopsEnvironmentServiceImpl implements DevopsEnvironmentService {
     public void baseUpdateSagaSyncEnvCommit(DevopsEnvironmentDTO devopsEnvironmentDTO) {
         devopsEnvironmentMapper.updateSagaSyncEnvCommit(devopsEnvironmentDTO.getId(),
                 devopsEnvironmentDTO.getSagaSyncCommit());
+        envSyncStatusPublisher.publishSagaSyncCommit(devopsEnvironmentDTO.getId(), queryCommitSha(devopsEnvironmentDTO.getSagaSyncCommit()));
     }
 
     @Override
     public void baseUpdateDevopsSyncEnvCommit(DevopsEnvironmentDTO devopsEnvironmentDTO) {
         devopsEnvironmentMapper.updateDevopsSyncEnvCommit(devopsEnvironmentDTO.getId(),
                 devopsEnvironmentDTO.getDevopsSyncCommit());
+        envSyncStatusPublisher.publishDevopsSyncCommit(devopsEnvironmentDTO.getId(), queryCommitSha(devopsEnvironmentDTO.getDevopsSyncCommit()));
     }
 
     @Override
     public void baseUpdateAgentSyncEnvCommit(DevopsEnvironmentDTO devopsEnvironmentDTO) {
         devopsEnvironmentMapper.updateAgentSyncEnvCommit(devopsEnvironmentDTO.getId(),
                 devopsEnvironmentDTO.getAgentSyncCommit());
+        envSyncStatusPublisher.publishAgentSyncCommit(devopsEnvironmentDTO.getId(), queryCommitSha(devopsEnvironmentDTO.getAgentSyncCommit()));
+    }
+
+    @Nullable
+    private String queryCommitSha(@Nullable Long envCommitId) {
+        if (envCommitId == null) {
+            return null;
+        }
+        DevopsEnvCommitDTO devopsEnvCommitDTO = devopsEnvCommitService.baseQuery(envCommitId);
+        return devopsEnvCommitDTO == null ? null : devopsEnvCommitDTO.getCommitSha();
     }
 
 
     @Override
     public void baseDeleteById(Long id) {
         devopsEnvironmentMapper.deleteByPrimaryKey(id);
+        envSyncStatusPublisher.evict(id);
     }
 
     @Override
@@ -1,18 +1,23 @@
 package io.choerodon.devops.app.service.impl;
 
+import static io.choerodon.devops.infra.constant.KubernetesConstants.KIND;
 import static io.choerodon.devops.infra.constant.KubernetesConstants.METADATA;
 import static io.choerodon.devops.infra.constant.KubernetesConstants.NAME;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
-import com.alibaba.fastjson.JSONObject;
 import io.kubernetes.client.models.V1Endpoints;
 import org.eclipse.jgit.api.Git;
 import org.slf4j.Logger;
@@ -20,11 +25,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.MessageSource;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.StopWatch;
 import org.springframework.util.StringUtils;
 import org.yaml.snakeyaml.Yaml;
 
@@ -87,6 +94,14 @@ public class DevopsGitServiceImpl implements DevopsGitService {
     @Value("${services.gitlab.sshUrl}")
     private String gitlabSshUrl;
 
+    /**
+     * 并行解析GitOps文件的线程数
+     */
+    @Value("${devops.gitops.parse.parallelism:4}")
+    private Integer gitOpsParseParallelism;
+
+    private ForkJoinPool gitOpsParsePool;
+
     @Autowired
     private GitlabServiceClientOperator gitlabServiceClientOperator;
     @Autowired
@@ -150,6 +165,19 @@ public class DevopsGitServiceImpl implements DevopsGitService {
         initUserEnvSupportedResources(allConverters);
         initSystemEnvSupportedResources(allConverters);
         initHandlers();
+
+        gitOpsParsePool = new ForkJoinPool(gitOpsParseParallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("gitops-parse-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (gitOpsParsePool != null) {
+            gitOpsParsePool.shutdown();
+        }
     }
 
     /**
@@ -677,27 +705,32 @@ public class DevopsGitServiceImpl implements DevopsGitService {
 
         final Long projectId = devopsEnvironmentDTO.getProjectId();
 
+        // 记录各个阶段的耗时
+        StopWatch stopWatch = new StopWatch("GitOps of env " + envId);
         try {
             //更新本地库到最新提交
+            stopWatch.start("fetch");
             Git git = handDevopsEnvGitRepository(path, url, devopsEnvironmentDTO.getEnvIdRsa(), devopsEnvCommitDTO.getCommitSha());
             LOGGER.info("更新gitops库成功");
             //查询devops-sync tag是否存在，存在则比较tag和最新commit的diff，不存在则识别gitops库下所有文件为新增文件
             tagNotExist = getDevopsSyncTag(pushWebHookVO);
+            stopWatch.stop();
 
+            stopWatch.start("diff");
+            // 一次查出环境下所有的文件资源关系, 按文件路径分组, 而不是每个文件查询一次
+            Map<String, List<DevopsEnvFileResourceDTO>> fileResources = devopsEnvFileResourceService.baseListByEnvId(envId)
+                    .stream()
+                    .collect(Collectors.groupingBy(DevopsEnvFileResourceDTO::getFilePath));
             if (tagNotExist) {
                 operationFiles.addAll(FileUtil.getFilesPath(path));
-                operationFiles.forEach(file -> {
-                    List<DevopsEnvFileResourceDTO> devopsEnvFileResourceDTOS = devopsEnvFileResourceService
-                            .baseQueryByEnvIdAndPath(devopsEnvironmentDTO.getId(), file);
-                    if (!devopsEnvFileResourceDTOS.isEmpty()) {
-                        beforeSync.addAll(devopsEnvFileResourceDTOS);
-                    }
-                });
+                operationFiles.forEach(file -> beforeSync.addAll(fileResources.getOrDefault(file, Collections.emptyList())));
             } else {
                 handleDiffs(gitLabProjectId, operationFiles, deletedFiles, beforeSync, beforeSyncDelete,
-                        devopsEnvironmentDTO, devopsEnvCommitDTO);
+                        fileResources, devopsEnvCommitDTO);
             }
+            stopWatch.stop();
 
+            stopWatch.start("parse");
             Map<Class, List> resourceKindMap = initResourceKindContainer();
 
             //从文件中读出对象,序列化为K8S对象
@@ -707,7 +740,9 @@ public class DevopsGitServiceImpl implements DevopsGitService {
                     new ArrayList<>(beforeSyncDelete));
 
             LOGGER.info("序列化k8s对象成功！");
+            stopWatch.stop();
 
+            stopWatch.start("relations");
             List<DevopsEnvFileResourceDTO> beforeSyncFileResource = new ArrayList<>(beforeSync);
 
             //将k8s对象初始化为实例，网络，域名，证书，秘钥对象,处理对象文件关系
@@ -723,11 +758,17 @@ public class DevopsGitServiceImpl implements DevopsGitService {
                 handler.handlerRelations(objectPath, beforeSyncFileResource, v, resourceKindMap.get(V1Endpoints.class), envId, projectId, path, userId);
             });
             LOGGER.info("k8s对象转换平台对象成功！");
+            stopWatch.stop();
+
             // 处理文件
-            handleFiles(operationFiles, deletedFiles, devopsEnvironmentDTO, devopsEnvCommitDTO, path);
+            stopWatch.start("files");
+            handleFiles(operationFiles, deletedFiles, envId, path);
+            stopWatch.stop();
 
             // 更新远程仓库的DevOps相关的tag
+            stopWatch.start("tag");
             handleTag(git, devopsEnvironmentDTO.getEnvIdRsa(), pushWebHookVO, devopsEnvCommitDTO, tagNotExist);
+            stopWatch.stop();
 
             devopsEnvironmentDTO.setDevopsSyncCommit(devopsEnvCommitDTO.getId());
             //更新环境 解释commit
@@ -735,7 +776,16 @@ public class DevopsGitServiceImpl implements DevopsGitService {
             //向agent发送同步指令
             agentCommandService.sendCommand(devopsEnvironmentDTO);
             LOGGER.info("发送GitOps同步成功指令成功");
+            LOGGER.info("GitOps of env {} finished. {} files are operated and {} files are deleted. {}",
+                    envId, operationFiles.size(), deletedFiles.size(), stopWatch.shortSummary());
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(stopWatch.prettyPrint());
+            }
         } catch (CommonException e) {
+            if (stopWatch.isRunning()) {
+                stopWatch.stop();
+            }
+            LOGGER.info("GitOps of env {} failed. {}", envId, stopWatch.shortSummary());
             String filePath = "";
             String errorCode = "";
             if (e instanceof GitOpsExplainException) {
@@ -791,30 +841,14 @@ public class DevopsGitServiceImpl implements DevopsGitService {
         return !branchEOptional.isPresent();
     }
 
-    private void handleFiles(List<String> operationFiles, List<String> deletedFiles,
-                             DevopsEnvironmentDTO devopsEnvironmentDTO, DevopsEnvCommitDTO devopsEnvCommitDTO, String path) {
-        //新增解释文件记录
-        for (String filePath : operationFiles) {
-            DevopsEnvFileDTO devopsEnvFileDTO = devopsEnvFileService
-                    .baseQueryByEnvAndPath(devopsEnvironmentDTO.getId(), filePath);
-            if (devopsEnvFileDTO == null) {
-                devopsEnvFileDTO = new DevopsEnvFileDTO();
-                devopsEnvFileDTO.setDevopsCommit(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
-                devopsEnvFileDTO.setFilePath(filePath);
-                devopsEnvFileDTO.setEnvId(devopsEnvCommitDTO.getEnvId());
-                devopsEnvFileService.baseCreate(devopsEnvFileDTO);
-            } else {
-                devopsEnvFileDTO.setDevopsCommit(GitUtil.getFileLatestCommit(path + GIT_SUFFIX, filePath));
-                devopsEnvFileService.baseUpdate(devopsEnvFileDTO);
-            }
-        }
+    private void handleFiles(List<String> operationFiles, List<String> deletedFiles, Long envId, String path) {
+        //新增或更新解释文件记录, 所有文件的最新提交在一次提交历史的遍历中获取
+        Map<String, String> latestCommits = GitUtil.getFilesLatestCommit(path + GIT_SUFFIX, operationFiles);
+        Map<String, String> fileCommits = new HashMap<>(operationFiles.size() * 2);
+        operationFiles.forEach(filePath -> fileCommits.put(filePath, latestCommits.getOrDefault(filePath, "")));
+        devopsEnvFileService.batchUpdateDevopsCommit(envId, fileCommits);
 
-        for (String filePath : deletedFiles) {
-            DevopsEnvFileDTO devopsEnvFileDTO = new DevopsEnvFileDTO();
-            devopsEnvFileDTO.setEnvId(devopsEnvironmentDTO.getId());
-            devopsEnvFileDTO.setFilePath(filePath);
-            devopsEnvFileService.baseDelete(devopsEnvFileDTO);
-        }
+        devopsEnvFileService.batchDeleteByEnvIdAndPaths(envId, new HashSet<>(deletedFiles));
     }
 
     private void handleTag(Git git, String sshKey, PushWebHookVO pushWebHookVO,
@@ -834,7 +868,7 @@ public class DevopsGitServiceImpl implements DevopsGitService {
 
     private void handleDiffs(Integer gitLabProjectId, List<String> operationFiles, List<String> deletedFiles,
                              Set<DevopsEnvFileResourceDTO> beforeSync, Set<DevopsEnvFileResourceDTO> beforeSyncDelete,
-                             DevopsEnvironmentDTO devopsEnvironmentDTO, DevopsEnvCommitDTO devopsEnvCommitDTO) {
+                             Map<String, List<DevopsEnvFileResourceDTO>> fileResources, DevopsEnvCommitDTO devopsEnvCommitDTO) {
         //获取将此次最新提交与tag作比价得到diff
         CompareResultDTO compareResultDTO = gitlabServiceClientOperator
                 .queryCompareResult(gitLabProjectId, GitUtil.DEV_OPS_SYNC_TAG, devopsEnvCommitDTO.getCommitSha());
@@ -851,20 +885,10 @@ public class DevopsGitServiceImpl implements DevopsGitService {
                 }
             }
 
-            List<DevopsEnvFileResourceDTO> devopsEnvFileResourceDTOS = devopsEnvFileResourceService
-                    .baseQueryByEnvIdAndPath(devopsEnvironmentDTO.getId(), t.getOldPath());
-            if (!devopsEnvFileResourceDTOS.isEmpty()) {
-                beforeSync.addAll(devopsEnvFileResourceDTOS);
-            }
+            beforeSync.addAll(fileResources.getOrDefault(t.getOldPath(), Collections.emptyList()));
         });
 
-        deletedFiles.forEach(file -> {
-            List<DevopsEnvFileResourceDTO> devopsEnvFileResourceDTOS = devopsEnvFileResourceService
-                    .baseQueryByEnvIdAndPath(devopsEnvironmentDTO.getId(), file);
-            if (!devopsEnvFileResourceDTOS.isEmpty()) {
-                beforeSyncDelete.addAll(devopsEnvFileResourceDTOS);
-            }
-        });
+        deletedFiles.forEach(file -> beforeSyncDelete.addAll(fileResources.getOrDefault(file, Collections.emptyList())));
     }
 
     /**
@@ -885,23 +909,80 @@ public class DevopsGitServiceImpl implements DevopsGitService {
                                                         Long envId,
                                                         List<DevopsEnvFileResourceDTO> beforeSyncDelete) {
         Map<String, String> objectPath = new HashMap<>();
-        Yaml yaml = new Yaml();
         final Map<String, ConvertK8sObjectService> converters = EnvironmentType.USER == environmentType ? userEnvSupportedResourceConverters : systemEnvSupportedResourceConverters;
 
-        files.forEach(filePath -> {
-            File file = new File(String.format("%s/%s", path, filePath));
-            Iterable<Object> allParts;
-            try {
-                allParts = yaml.loadAll(new FileInputStream(file));
-            } catch (FileNotFoundException e) {
-                throw new CommonException(e.getMessage(), e);
+        // 并行解析文件, 结果的顺序和文件的顺序一致
+        List<ParsedGitOpsFile> parsedFiles = parseFiles(files, path, converters, envId);
+
+        // 按文件的顺序合并解析结果并校验资源是否已经存在, 报出的错误和逐个文件解析时一致
+        for (ParsedGitOpsFile parsedFile : parsedFiles) {
+            String filePath = parsedFile.filePath;
+            objectPath.putAll(parsedFile.objectPath);
+            for (ParsedGitOpsResource parsedResource : parsedFile.resources) {
+                ConvertK8sObjectService currentHandler = parsedResource.handler;
+                Object resource = parsedResource.resource;
+                if (resource == null) {
+                    // PVC需要查询数据库确定转换的方式
+                    if (isPvcTreatedAsCustomizeResourceBefore(envId, getPersistentVolumeClaimName(parsedResource.data, filePath))) {
+                        // 0.20版本之前被作为自定义资源解析的PVC仍然作为自定义资源看待
+                        currentHandler = converters.get(ResourceType.MISSTYPE.getType());
+                    } else {
+                        currentHandler = converters.getOrDefault(ResourceType.PERSISTENT_VOLUME_CLAIM.getType(), converters.get(ResourceType.MISSTYPE.getType()));
+                    }
+                    resource = currentHandler.serializableObject(parsedResource.data, filePath, objectPath, envId);
+                }
+                resourceContainer.computeIfAbsent(resource.getClass(), t -> new ArrayList<>());
+
+                // 校验参数
+                currentHandler.checkParameters(resource, objectPath);
+
+                // 校验资源是否已经存在
+                currentHandler.checkIfExist(resourceContainer.get(resource.getClass()), envId, beforeSyncDelete, objectPath, resource);
+            }
+            if (parsedFile.error != null) {
+                throw parsedFile.error;
             }
-            while (allParts.iterator().hasNext()) {
+        }
+        return objectPath;
+    }
+
+    private List<ParsedGitOpsFile> parseFiles(List<String> files, String path, Map<String, ConvertK8sObjectService> converters, Long envId) {
+        if (files.size() < 2) {
+            return files.stream()
+                    .map(filePath -> parseFile(filePath, path, converters, envId))
+                    .collect(Collectors.toList());
+        }
+        try {
+            // 在ForkJoinPool中执行的并行流会使用这个线程池
+            return gitOpsParsePool.submit(() -> files.parallelStream()
+                    .map(filePath -> parseFile(filePath, path, converters, envId))
+                    .collect(Collectors.toList()))
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CommonException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            // 解析文件的异常都已经被记录在结果中, 这里只有意料之外的错误
+            throw new CommonException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * 解析一个文件中的所有资源, 会被多个线程并行调用, 不能访问数据库
+     * 出错时, 出错之前解析出的资源和错误都会被记录在结果中, 以便按原来的顺序处理
+     */
+    @SuppressWarnings("unchecked")
+    private static ParsedGitOpsFile parseFile(String filePath, String path, Map<String, ConvertK8sObjectService> converters, Long envId) {
+        ParsedGitOpsFile parsedFile = new ParsedGitOpsFile(filePath);
+        File file = new File(String.format("%s/%s", path, filePath));
+        try (InputStream inputStream = new FileInputStream(file)) {
+            Iterator<Object> allParts = new Yaml().loadAll(inputStream).iterator();
+            while (allParts.hasNext()) {
                 Object data;
                 try {
                     // 真正对数据进行解析是在next方法中调用
                     // next方法会调用 org.yaml.snakeyaml.constructor.BaseConstructor.getData()
-                    data = allParts.iterator().next();
+                    data = allParts.next();
                 } catch (Exception e) {
                     // 捕获Yaml解析出错，如： "---{}\n---"
                     // 返回友好的方式
@@ -918,68 +999,52 @@ public class DevopsGitServiceImpl implements DevopsGitService {
                     throw new GitOpsExplainException(GitOpsObjectError.FILE_NOT_YAML.getError(), filePath);
                 }
 
-                JSONObject JSONObject = new JSONObject((Map<String, Object>) data);
-                if (JSONObject.get("kind") == null) {
+                Map<String, Object> resourceData = (Map<String, Object>) data;
+                if (resourceData.get(KIND) == null) {
                     throw new GitOpsExplainException(GitOpsObjectError.CUSTOM_RESOURCE_KIND_NOT_FOUND.getError(), filePath);
                 }
 
-
                 // 之前都是对数据进行校验的阶段
-                String type = JSONObject.get("kind").toString();
+                String type = resourceData.get(KIND).toString();
+
+                if (ResourceType.PERSISTENT_VOLUME_CLAIM.getType().equals(type)) {
+                    // PVC的转换方式需要查询数据库, 在合并结果时处理
+                    parsedFile.resources.add(new ParsedGitOpsResource(null, null, resourceData));
+                    continue;
+                }
 
                 // 处理当前资源的处理逻辑
-                ConvertK8sObjectService currentHandler;
-                if (ResourceType.PERSISTENT_VOLUME_CLAIM.getType().equals(type)
-                        && isPvcTreatedAsCustomizeResourceBefore(envId, getPersistentVolumeClaimName(JSONObject, filePath))) {
-                    // 0.20版本之前被作为自定义资源解析的PVC仍然作为自定义资源看待
+                ConvertK8sObjectService currentHandler = converters.get(type);
+                if (currentHandler == null) {
+                    // 准备默认处理方式，用户环境默认处理方式是作为自定义资源处理，
+                    // 系统环境的默认处理方式是抛出异常以表示不支持
                     currentHandler = converters.get(ResourceType.MISSTYPE.getType());
-                } else {
-                    currentHandler = converters.get(type);
-                    if (currentHandler == null) {
-                        // 跳过不解析的资源
-//                        if (GitOpsConstants.IGNORE_RESOURCES.contains(type)) {
-//                            break;
-//                        }
-
-                        // 准备默认处理方式，用户环境默认处理方式是作为自定义资源处理，
-                        // 系统环境的默认处理方式是抛出异常以表示不支持
-                        currentHandler = converters.get(ResourceType.MISSTYPE.getType());
-                    }
                 }
 
-                Object resource = currentHandler.serializableObject(JSONObject.toJSONString(), filePath, objectPath, envId);
-                resourceContainer.computeIfAbsent(resource.getClass(), t -> new ArrayList<>());
-
-                // 校验参数
-                currentHandler.checkParameters(resource, objectPath);
-
-                // 校验资源是否已经存在
-                currentHandler.checkIfExist(resourceContainer.get(resource.getClass()), envId, beforeSyncDelete, objectPath, resource);
+                Object resource = currentHandler.serializableObject(resourceData, filePath, parsedFile.objectPath, envId);
+                parsedFile.resources.add(new ParsedGitOpsResource(currentHandler, resource, null));
             }
-        });
-        return objectPath;
+        } catch (IOException e) {
+            parsedFile.error = new CommonException(e.getMessage(), e);
+        } catch (RuntimeException e) {
+            parsedFile.error = e;
+        }
+        return parsedFile;
     }
 
-    private static String getPersistentVolumeClaimName(JSONObject jsonObject, String filePath) {
-        String name;
-        try {
-            name = jsonObject.getJSONObject(METADATA).getString(NAME);
-        } catch (Exception e) {
+    @Nullable
+    private static String getPersistentVolumeClaimName(Map<String, Object> data, String filePath) {
+        Object metadata = data.get(METADATA);
+        if (!(metadata instanceof Map)) {
             throw new GitOpsExplainException(
                     GitOpsObjectError.PERSISTENT_VOLUME_CLAIM_NAME_NOT_FOUND.getError(), filePath);
         }
-        return name;
+        Object name = ((Map<?, ?>) metadata).get(NAME);
+        return name == null ? null : name.toString();
     }
 
-    /**
-     * 判断PVC在之前0.20版本之前是否被解析为自定义资源
-     *
-     * @param envId        环境id
-     * @param resourceName 资源名称
-     * @return true表明是作为自定义资源
-     */
-    private boolean isPvcTreatedAsCustomizeResourceBefore(Long envId, String resourceName) {
-        return devopsCustomizeResourceService.queryByEnvIdAndKindAndName(envId, ResourceType.PERSISTENT_VOLUME_CLAIM.getType(), resourceName) != null;
+    private boolean isPvcTreatedAsCustomizeResourceBefore(Long envId, @Nullable String resourceName) {
+        return resourceName != null && devopsCustomizeResourceService.queryByEnvIdAndKindAndName(envId, ResourceType.PERSISTENT_VOLUME_CLAIM.getType(), resourceName) != null;
     }
 
     private void commitBranchSync(PushWebHookVO pushWebHookVO, Long appServiceId) {
@@ -1238,4 +1303,39 @@ public class DevopsGitServiceImpl implements DevopsGitService {
             return new ArrayList<>();
         }
     }
+
+    /**
+     * 一个GitOps文件的解析结果
+     */
+    private static class ParsedGitOpsFile {
+        private final String filePath;
+        private final List<ParsedGitOpsResource> resources = new ArrayList<>();
+        /**
+         * 这个文件中的对象hashcode和文件路径的对应关系
+         */
+        private final Map<String, String> objectPath = new HashMap<>();
+        /**
+         * 解析出错时的异常, 在处理完出错前的资源后抛出
+         */
+        private RuntimeException error;
+
+        private ParsedGitOpsFile(String filePath) {
+            this.filePath = filePath;
+        }
+    }
+
+    /**
+     * 文件中的一个资源, PVC的resource和handler为空, 需要在合并时根据data转换
+     */
+    private static class ParsedGitOpsResource {
+        private final ConvertK8sObjectService handler;
+        private final Object resource;
+        private final Map<String, Object> data;
+
+        private ParsedGitOpsResource(ConvertK8sObjectService handler, Object resource, Map<String, Object> data) {
+            this.handler = handler;
+            this.resource = resource;
+            this.data = data;
+        }
+    }
 }
@@ -8,9 +8,12 @@ import java.util.stream.Collectors;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import org.hzero.mybatis.BatchInsertHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.ObjectUtils;
@@ -24,22 +27,25 @@ import io.choerodon.core.iam.ResourceLevel;
 import io.choerodon.core.oauth.DetailsHelper;
 import io.choerodon.devops.api.vo.CommitFormRecordVO;
 import io.choerodon.devops.api.vo.CommitFormUserVO;
+import io.choerodon.devops.api.vo.CommitVO;
 import io.choerodon.devops.api.vo.DevopsGitlabCommitVO;
 import io.choerodon.devops.api.vo.PushWebHookVO;
 import io.choerodon.devops.app.eventhandler.constants.SagaTopicCodeConstants;
 import io.choerodon.devops.app.eventhandler.payload.DevopsGitlabTagPayload;
 import io.choerodon.devops.app.service.AppServiceService;
 import io.choerodon.devops.app.service.DevopsBranchService;
+import io.choerodon.devops.app.service.DevopsDailyRollupService;
 import io.choerodon.devops.app.service.DevopsGitlabCommitService;
-import io.choerodon.devops.app.service.DevopsIssueRelService;
 import io.choerodon.devops.infra.constant.GitOpsConstants;
 import io.choerodon.devops.infra.dto.AppServiceDTO;
 import io.choerodon.devops.infra.dto.DevopsBranchDTO;
+import io.choerodon.devops.infra.dto.DevopsDailyRollupDTO;
 import io.choerodon.devops.infra.dto.DevopsGitlabCommitDTO;
 import io.choerodon.devops.infra.dto.DevopsIssueRelDTO;
 import io.choerodon.devops.infra.dto.gitlab.CommitDTO;
 import io.choerodon.devops.infra.dto.iam.IamUserDTO;
 import io.choerodon.devops.infra.dto.iam.ProjectDTO;
+import io.choerodon.devops.infra.enums.DailyRollupMetric;
 import io.choerodon.devops.infra.enums.DevopsIssueRelObjectTypeEnum;
 import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator;
 import io.choerodon.devops.infra.feign.operator.GitlabServiceClientOperator;
@@ -53,6 +59,7 @@ import io.choerodon.mybatis.pagehelper.domain.PageRequest;
 
 @Service
 public class DevopsGitlabCommitServiceImpl implements DevopsGitlabCommitService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DevopsGitlabCommitServiceImpl.class);
 
     private static final Gson gson = new Gson();
     private static final Integer ADMIN = 1;
@@ -75,7 +82,10 @@ public class DevopsGitlabCommitServiceImpl implements DevopsGitlabCommitService
     @Qualifier("devopsIssueRelBatchInsertHelper")
     private BatchInsertHelper<DevopsIssueRelDTO> batchInsertHelper;
     @Autowired
-    private DevopsIssueRelService devopsIssueRelService;
+    @Qualifier("devopsGitlabCommitBatchInsertHelper")
+    private BatchInsertHelper<DevopsGitlabCommitDTO> commitBatchInsertHelper;
+    @Autowired
+    private DevopsDailyRollupService devopsDailyRollupService;
 
     @Override
     public void create(PushWebHookVO pushWebHookVO, String token, String operate) {
@@ -83,33 +93,7 @@ public class DevopsGitlabCommitServiceImpl implements DevopsGitlabCommitService
         String ref = pushWebHookVO.getRef().split("/")[2];
         if (!pushWebHookVO.getCommits().isEmpty()) {
             DevopsBranchDTO devopsBranchDTO = devopsBranchService.baseQueryByAppAndBranchNameWithIssueIds(applicationDTO.getId(), ref);
-            pushWebHookVO.getCommits().forEach(commitDTO -> {
-                DevopsGitlabCommitDTO devopsGitlabCommitDTO = devopsGitlabCommitService.baseQueryByShaAndRef(commitDTO.getId(), ref);
-
-                if (devopsGitlabCommitDTO == null) {
-                    devopsGitlabCommitDTO = new DevopsGitlabCommitDTO();
-                    devopsGitlabCommitDTO.setAppServiceId(applicationDTO.getId());
-                    devopsGitlabCommitDTO.setCommitContent(commitDTO.getMessage());
-                    devopsGitlabCommitDTO.setCommitSha(commitDTO.getId());
-                    devopsGitlabCommitDTO.setRef(ref);
-                    devopsGitlabCommitDTO.setUrl(commitDTO.getUrl());
-                    if ("root".equals(commitDTO.getAuthor().getName())) {
-                        devopsGitlabCommitDTO.setUserId(IamAdminIdHolder.getAdminId());
-                    } else {
-                        IamUserDTO iamUserDTO = baseServiceClientOperator.queryByEmail(applicationDTO.getProjectId(),
-                                commitDTO.getAuthor().getEmail());
-                        if (iamUserDTO != null) {
-                            devopsGitlabCommitDTO.setUserId(iamUserDTO.getId());
-                        }
-                    }
-                    devopsGitlabCommitDTO.setCommitDate(commitDTO.getTimestamp());
-                    devopsGitlabCommitService.baseCreate(devopsGitlabCommitDTO);
-                    // 如果分支和issue关联了，且此次操作为提交代码，添加关联关系
-                    if (!CollectionUtils.isEmpty(devopsBranchDTO.getIssueIds()) && operate.equals(GitOpsConstants.COMMIT)) {
-                        devopsIssueRelService.addRelation(DevopsIssueRelObjectTypeEnum.COMMIT.getValue(), devopsGitlabCommitDTO.getId(), devopsBranchDTO.getId(), applicationDTO.getProjectId(), applicationDTO.getCode(), devopsBranchDTO.getIssueIds());
-                    }
-                }
-            });
+            createCommits(applicationDTO, ref, pushWebHookVO.getCommits(), devopsBranchDTO, operate);
         } else {
             //直接从一个分支切出来另外一个分支，没有commits记录（所以下面插入的commit不需要关联issueId）
             DevopsGitlabCommitDTO devopsGitlabCommitDTO = devopsGitlabCommitService.baseQueryByShaAndRef(pushWebHookVO.getCheckoutSha(), ref);
@@ -137,6 +121,107 @@ public class DevopsGitlabCommitServiceImpl implements DevopsGitlabCommitService
 
     }
 
+    /**
+     * 批量保存推送的提交, 已有的提交跳过
+     * 查询已有提交、插入提交和关联关系的次数与提交数量无关, 查询用户的次数等于不同作者的数量
+     */
+    private void createCommits(AppServiceDTO applicationDTO, String ref, List<CommitVO> commits, DevopsBranchDTO devopsBranchDTO, String operate) {
+        Set<String> existingShas = listExistingShas(ref, commits.stream().map(CommitVO::getId).collect(Collectors.toSet()));
+        Map<String, Long> userIdsByEmail = new HashMap<>();
+        List<DevopsGitlabCommitDTO> newCommits = new ArrayList<>();
+        for (CommitVO commitDTO : commits) {
+            if (!existingShas.add(commitDTO.getId())) {
+                continue;
+            }
+            DevopsGitlabCommitDTO devopsGitlabCommitDTO = new DevopsGitlabCommitDTO();
+            devopsGitlabCommitDTO.setAppServiceId(applicationDTO.getId());
+            devopsGitlabCommitDTO.setCommitContent(commitDTO.getMessage());
+            devopsGitlabCommitDTO.setCommitSha(commitDTO.getId());
+            devopsGitlabCommitDTO.setRef(ref);
+            devopsGitlabCommitDTO.setUrl(commitDTO.getUrl());
+            if ("root".equals(commitDTO.getAuthor().getName())) {
+                devopsGitlabCommitDTO.setUserId(IamAdminIdHolder.getAdminId());
+            } else {
+                // 同一个作者只查询一次
+                String email = commitDTO.getAuthor().getEmail();
+                if (!userIdsByEmail.containsKey(email)) {
+                    IamUserDTO iamUserDTO = baseServiceClientOperator.queryByEmail(applicationDTO.getProjectId(), email);
+                    userIdsByEmail.put(email, iamUserDTO == null ? null : iamUserDTO.getId());
+                }
+                devopsGitlabCommitDTO.setUserId(userIdsByEmail.get(email));
+            }
+            devopsGitlabCommitDTO.setCommitDate(commitDTO.getTimestamp());
+            newCommits.add(devopsGitlabCommitDTO);
+        }
+        if (newCommits.isEmpty()) {
+            return;
+        }
+
+        // 只统计本次插入的提交, 被其它请求插入的提交由插入它的请求统计
+        List<DevopsGitlabCommitDTO> insertedCommits;
+        try {
+            commitBatchInsertHelper.batchInsert(newCommits);
+            insertedCommits = newCommits;
+        } catch (Exception e) {
+            // 同一次推送的webhook被重复投递时可能同时插入相同的提交, 改为逐条插入已有的会跳过
+            LOGGER.warn("Failed to batch insert {} commits of app service {} on {}, insert one by one", newCommits.size(), applicationDTO.getId(), ref, e);
+            insertedCommits = insertOneByOne(ref, newCommits);
+        }
+        devopsDailyRollupService.increaseCommits(insertedCommits);
+
+        // 如果分支和issue关联了，且此次操作为提交代码，添加关联关系; 只关联本次插入的提交, 其它请求插入的提交由它自己关联
+        if (!insertedCommits.isEmpty() && !CollectionUtils.isEmpty(devopsBranchDTO.getIssueIds()) && operate.equals(GitOpsConstants.COMMIT)) {
+            List<DevopsIssueRelDTO> devopsIssueRelDTOList = new ArrayList<>();
+            devopsGitlabCommitMapper.listByRefAndCommitShas(ref, insertedCommits.stream().map(DevopsGitlabCommitDTO::getCommitSha).collect(Collectors.toList()))
+                    .forEach(devopsGitlabCommitDTO -> devopsBranchDTO.getIssueIds().forEach(issueId -> {
+                        DevopsIssueRelDTO devopsIssueRelDTO = new DevopsIssueRelDTO();
+                        devopsIssueRelDTO.setIssueId(issueId);
+                        devopsIssueRelDTO.setBranchId(devopsBranchDTO.getId());
+                        devopsIssueRelDTO.setProjectId(applicationDTO.getProjectId());
+                        devopsIssueRelDTO.setAppServiceCode(applicationDTO.getCode());
+                        devopsIssueRelDTO.setObject(DevopsIssueRelObjectTypeEnum.COMMIT.getValue());
+                        devopsIssueRelDTO.setObjectId(devopsGitlabCommitDTO.getId());
+                        devopsIssueRelDTOList.add(devopsIssueRelDTO);
+                    }));
+            if (!devopsIssueRelDTOList.isEmpty()) {
+                batchInsertHelper.batchInsert(devopsIssueRelDTOList);
+            }
+        }
+    }
+
+    /**
+     * 逐条插入还不存在的提交
+     *
+     * @return 本次插入的提交
+     */
+    private List<DevopsGitlabCommitDTO> insertOneByOne(String ref, List<DevopsGitlabCommitDTO> commits) {
+        Set<String> existingShas = listExistingShas(ref, commits.stream().map(DevopsGitlabCommitDTO::getCommitSha).collect(Collectors.toSet()));
+        List<DevopsGitlabCommitDTO> insertedCommits = new ArrayList<>();
+        for (DevopsGitlabCommitDTO devopsGitlabCommitDTO : commits) {
+            if (existingShas.contains(devopsGitlabCommitDTO.getCommitSha())) {
+                continue;
+            }
+            try {
+                if (devopsGitlabCommitMapper.insert(devopsGitlabCommitDTO) != 1) {
+                    throw new CommonException("error.gitlab.commit.create");
+                }
+                insertedCommits.add(devopsGitlabCommitDTO);
+            } catch (DuplicateKeyException e) {
+                LOGGER.info("Commit {} on {} was inserted by another request", devopsGitlabCommitDTO.getCommitSha(), ref);
+            }
+        }
+        return insertedCommits;
+    }
+
+    private Set<String> listExistingShas(String ref, Set<String> commitShas) {
+        if (commitShas.isEmpty()) {
+            return new HashSet<>();
+        }
+        return devopsGitlabCommitMapper.listByRefAndCommitShas(ref, commitShas).stream()
+                .map(DevopsGitlabCommitDTO::getCommitSha)
+                .collect(Collectors.toSet());
+    }
+
     @Override
     @Saga(code = DEVOPS_GIT_TAG_DELETE, description = "删除tag", inputSchemaClass = DevopsGitlabTagPayload.class)
     public void deleteTag(PushWebHookVO pushWebHookVO, String token) {
@@ -170,23 +255,34 @@ public class DevopsGitlabCommitServiceImpl implements DevopsGitlabCommitService
             return new DevopsGitlabCommitVO();
         }
 
-        // 查询应用列表下所有commit记录
-        List<DevopsGitlabCommitDTO> devopsGitlabCommitDTOS = devopsGitlabCommitService
-                .baseListByOptions(projectId, appServiceIdsMap, startDate, endDate);
-        if (devopsGitlabCommitDTOS.isEmpty()) {
+        // 从按天汇总表查询每个用户每天的提交数量
+        List<DevopsDailyRollupDTO> dailyCounts = devopsDailyRollupService.listDailyCountByUser(projectId, DailyRollupMetric.COMMIT,
+                appServiceIdsMap, startDate, endDate);
+        if (dailyCounts.isEmpty()) {
             return new DevopsGitlabCommitVO();
         }
 
         // 获得去重后的所有用户信息
-        Map<Long, IamUserDTO> userMap = getUserDOMap(devopsGitlabCommitDTOS);
-
-        // 获取用户分别的commit
-        List<CommitFormUserVO> commitFormUserVOS = getCommitFormUserDTOList(devopsGitlabCommitDTOS, userMap);
-
-        // 获取总的commit(将所有用户的commit_date放入一个数组)，按照时间先后排序
-        List<Date> totalCommitsDate = getTotalDates(commitFormUserVOS);
-        Collections.sort(totalCommitsDate);
+        Map<Long, IamUserDTO> userMap = baseServiceClientOperator.listUsersByIds(dailyCounts.stream()
+                .map(DevopsDailyRollupDTO::getUserId)
+                .distinct()
+                .collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(IamUserDTO::getId, u -> u, (u1, u2) -> u1));
+
+        // 获取用户分别的commit, 同一天的提交按数量重复当天的日期
+        Map<Long, List<Date>> userCommitDates = new LinkedHashMap<>();
+        List<Date> totalCommitsDate = new ArrayList<>();
+        dailyCounts.forEach(dailyCount -> {
+            List<Date> dates = userCommitDates.computeIfAbsent(dailyCount.getUserId(), k -> new ArrayList<>());
+            for (long i = 0; i < dailyCount.getCount(); i++) {
+                dates.add(dailyCount.getStatDate());
+                totalCommitsDate.add(dailyCount.getStatDate());
+            }
+        });
+        List<CommitFormUserVO> commitFormUserVOS = getCommitFormUserDTOList(userCommitDates, userMap);
 
+        // 汇总结果已经按照日期升序
         return new DevopsGitlabCommitVO(commitFormUserVOS, totalCommitsDate);
     }
 
@@ -238,42 +334,19 @@ public class DevopsGitlabCommitServiceImpl implements DevopsGitlabCommitService
         return userEList.stream().collect(Collectors.toMap(IamUserDTO::getId, u -> u, (u1, u2) -> u1));
     }
 
-    private List<CommitFormUserVO> getCommitFormUserDTOList
-            (List<DevopsGitlabCommitDTO> devopsGitlabCommitDTOS,
-             Map<Long, IamUserDTO> userMap) {
+    private List<CommitFormUserVO> getCommitFormUserDTOList(Map<Long, List<Date>> userCommitDates,
+                                                            Map<Long, IamUserDTO> userMap) {
         List<CommitFormUserVO> commitFormUserVOS = new ArrayList<>();
-        // 遍历list，key为userid，value为list
-        Map<Long, List<DevopsGitlabCommitDTO>> map = new HashMap<>();
-        for (DevopsGitlabCommitDTO devopsGitlabCommitDTO : devopsGitlabCommitDTOS) {
-            Long userId = devopsGitlabCommitDTO.getUserId();
-            if (userId == null && !map.containsKey(0L)) {
-                List<DevopsGitlabCommitDTO> commitDTOS = new ArrayList<>();
-                commitDTOS.add(devopsGitlabCommitDTO);
-                map.put(0L, commitDTOS);
-            } else if (userId == null && map.containsKey(0L)) {
-                map.get(0L).add(devopsGitlabCommitDTO);
-            } else if (userId != null && !map.containsKey(userId)) {
-                List<DevopsGitlabCommitDTO> commitDTOS = new ArrayList<>();
-                commitDTOS.add(devopsGitlabCommitDTO);
-                map.put(userId, commitDTOS);
-            } else {
-                map.get(userId).add(devopsGitlabCommitDTO);
-            }
-        }
-        map.forEach((userId, list) -> {
+        // 没有对应用户的提交的用户id为0
+        userCommitDates.forEach((userId, date) -> {
             IamUserDTO iamUserDTO = userMap.get(userId);
             if (!ObjectUtils.isEmpty(iamUserDTO)) {
                 String loginName = iamUserDTO.getLdap() ? iamUserDTO.getLoginName() : iamUserDTO.getEmail();
                 String name = iamUserDTO.getRealName() + "(" + loginName + ")";
                 String imgUrl = iamUserDTO.getImageUrl();
-                // 遍历list，将每个用户的所有commit date取出放入List<Date>，然后保存为DTO
-                List<Date> date = new ArrayList<>();
-                list.forEach(e -> date.add(e.getCommitDate()));
                 commitFormUserVOS.add(new CommitFormUserVO(userId, name, imgUrl, date));
             } else {
                 String name = "Unknown" + "(" + userId + ")";
-                List<Date> date = new ArrayList<>();
-                list.forEach(e -> date.add(e.getCommitDate()));
                 commitFormUserVOS.add(new CommitFormUserVO(userId, name, null, date));
             }
         });
@@ -285,18 +358,13 @@ public class DevopsGitlabCommitServiceImpl implements DevopsGitlabCommitService
         return devopsGitlabCommitService.basePageByOptions(projectId, appServiceIds, pageable, userMap, startDate, endDate);
     }
 
-    private List<Date> getTotalDates(List<CommitFormUserVO> commitFormUserVOS) {
-        List<Date> totalCommitsDate = new ArrayList<>();
-        commitFormUserVOS.forEach(e -> totalCommitsDate.addAll(e.getCommitDates()));
-        return totalCommitsDate;
-    }
-
     @Override
     public DevopsGitlabCommitDTO baseCreate(DevopsGitlabCommitDTO devopsGitlabCommitDTO) {
         if (!checkExist(devopsGitlabCommitDTO)) {
             if (devopsGitlabCommitMapper.insert(devopsGitlabCommitDTO) != 1) {
                 throw new CommonException("error.gitlab.commit.create");
             }
+            devopsDailyRollupService.increaseCommit(devopsGitlabCommitDTO);
         }
         return devopsGitlabCommitDTO;
     }
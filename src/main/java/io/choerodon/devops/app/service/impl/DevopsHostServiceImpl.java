@@ -12,10 +12,6 @@ import javax.servlet.http.HttpServletResponse;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.common.base.Functions;
 import com.google.common.base.Joiner;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import net.schmizz.sshj.SSHClient;
-import net.schmizz.sshj.common.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.hzero.core.base.BaseConstants;
 import org.hzero.core.util.UUIDUtils;
@@ -53,6 +49,7 @@ import io.choerodon.devops.infra.enums.host.HostCommandStatusEnum;
 import io.choerodon.devops.infra.enums.host.HostInstanceType;
 import io.choerodon.devops.infra.enums.host.HostResourceType;
 import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator;
+import io.choerodon.devops.infra.handler.HostConnectivityProber;
 import io.choerodon.devops.infra.mapper.*;
 import io.choerodon.devops.infra.util.*;
 import io.choerodon.mybatis.pagehelper.PageHelper;
@@ -73,6 +70,11 @@ public class DevopsHostServiceImpl implements DevopsHostService {
      */
     private static final long OPERATING_TIMEOUT = 300L * 1000;
     private static final String CHECKING_HOST = "checking";
+    /**
+     * 批量校准主机状态的进度, redis hash, field为主机id, value为校验状态
+     */
+    private static final String CHECKING_PROGRESS_KEY_TEMPLATE = "host:checking:progress:%s";
+    private static final long CHECKING_PROGRESS_EXPIRE_MINUTES = 10;
     private static final String HOST_AGENT = "curl -o host.sh %s/devops/v1/projects/%d/hosts/%d/download_file/%s && sh host.sh";
     private static final String HOST_UNINSTALL_SHELL = "ps aux|grep c7n-agent | grep -v grep |awk '{print  $2}' |xargs kill -9";
     private static final String HOST_ACTIVATE_COMMAND_TEMPLATE;
@@ -85,7 +87,6 @@ public class DevopsHostServiceImpl implements DevopsHostService {
         }
     }
 
-    private final Gson gson = new Gson();
     @Autowired
     EncryptService encryptService;
     @Value("${services.gateway.url}")
@@ -123,6 +124,10 @@ public class DevopsHostServiceImpl implements DevopsHostService {
     private DevopsDockerInstanceMapper devopsDockerInstanceMapper;
     @Autowired
     private DevopsNormalInstanceMapper devopsNormalInstanceMapper;
+    @Autowired
+    private HostConnectivityProber hostConnectivityProber;
+    @Autowired
+    private SshUtil sshUtil;
 
     @Transactional(rollbackFor = Exception.class)
     @Override
@@ -183,22 +188,88 @@ public class DevopsHostServiceImpl implements DevopsHostService {
     @Override
     public void asyncBatchCorrectStatus(Long projectId, Set<Long> hostIds, Long userId) {
         LOGGER.debug("asyncBatchCorrectStatus: projectId: {}, hostIds: {}", projectId, hostIds);
-        // 这么调用, 是解决事务代理不生效问题
-        hostIds.forEach(hostId -> ApplicationContextHelper.getContext().getBean(DevopsHostService.class).correctStatus(projectId, hostId, userId));
+        batchCorrectStatus(projectId, hostIds, userId, null);
     }
 
     @Override
     public String asyncBatchCorrectStatusWithProgress(Long projectId, Set<Long> hostIds) {
         String correctKey = UUIDUtils.generateUUID();
         // 初始化校验状态
-        Map<Long, String> map = new HashMap<>();
-        hostIds.forEach(hostId -> map.put(hostId, CHECKING_HOST));
+        Map<String, String> map = new HashMap<>();
+        hostIds.forEach(hostId -> map.put(String.valueOf(hostId), CHECKING_HOST));
 
-        stringRedisTemplate.opsForValue().set(correctKey, gson.toJson(map), 10, TimeUnit.MINUTES);
-        hostIds.forEach(hostId -> ApplicationContextHelper.getContext().getBean(DevopsHostService.class).correctStatus(projectId, correctKey, hostId));
+        String progressKey = checkingProgressKey(correctKey);
+        if (!map.isEmpty()) {
+            stringRedisTemplate.opsForHash().putAll(progressKey, map);
+            stringRedisTemplate.expire(progressKey, CHECKING_PROGRESS_EXPIRE_MINUTES, TimeUnit.MINUTES);
+        }
+        // 这么调用, 是解决异步代理不生效问题
+        ApplicationContextHelper.getContext().getBean(DevopsHostService.class).asyncBatchCorrectStatus(projectId, correctKey, hostIds);
         return correctKey;
     }
 
+    @Async(GitOpsConstants.HOST_STATUS_EXECUTOR)
+    @Override
+    public void asyncBatchCorrectStatus(Long projectId, String correctKey, Set<Long> hostIds) {
+        LOGGER.debug("asyncBatchCorrectStatus: projectId: {}, correctKey: {}, hostIds: {}", projectId, correctKey, hostIds);
+        batchCorrectStatus(projectId, hostIds, null, correctKey);
+    }
+
+    /**
+     * 并发探测主机连通性, 每个主机有结果后立即更新主机状态和校验进度
+     *
+     * @param projectId  项目id
+     * @param hostIds    主机id
+     * @param updaterId  更新者id, 为空时使用主机的上次更新者
+     * @param correctKey 校验进度的key, 为空时不记录进度
+     */
+    private void batchCorrectStatus(Long projectId, Set<Long> hostIds, @Nullable Long updaterId, @Nullable String correctKey) {
+        if (CollectionUtils.isEmpty(hostIds)) {
+            return;
+        }
+        List<DevopsHostDTO> hosts = devopsHostMapper.listByProjectIdAndIds(projectId, hostIds);
+        if (correctKey != null && hosts.size() < hostIds.size()) {
+            // 已经不存在的主机直接标记为失败, 以免进度一直处于校验中
+            Set<Long> existedIds = hosts.stream().map(DevopsHostDTO::getId).collect(Collectors.toSet());
+            hostIds.stream().filter(id -> !existedIds.contains(id)).forEach(id -> updateHostStatus(correctKey, id, DevopsHostStatus.FAILED.getValue()));
+        }
+
+        boolean noContextPre = DetailsHelper.getUserDetails() == null;
+        try {
+            hostConnectivityProber.probeAll(hosts, (hostDTO, result) -> {
+                // 设置上下文, 以免丢失更新者信息
+                CustomContextUtil.setUserContext(updaterId != null ? updaterId : hostDTO.getLastUpdatedBy());
+                try {
+                    applyConnectionResult(hostDTO, result);
+                } finally {
+                    if (correctKey != null) {
+                        updateHostStatus(correctKey, hostDTO.getId(), toCheckingStatus(result));
+                    }
+                }
+            });
+        } finally {
+            // 如果之前没有上下文, 清除上下文
+            if (noContextPre) {
+                CustomContextUtil.clearContext();
+            }
+        }
+    }
+
+    private void applyConnectionResult(DevopsHostDTO hostDTO, DevopsHostConnectionTestResultVO result) {
+        hostDTO.setHostStatus(result.getHostStatus());
+        hostDTO.setHostCheckError(result.getHostCheckError());
+        // 不对更新涉及的纪录结果进行判断
+        devopsHostMapper.updateByPrimaryKeySelective(hostDTO);
+        LOGGER.debug("connection result for host with id {} is {}", hostDTO.getId(), result);
+    }
+
+    private static String toCheckingStatus(DevopsHostConnectionTestResultVO result) {
+        if (DevopsHostStatus.SUCCESS.getValue().equals(result.getHostStatus()) && DevopsHostStatus.SUCCESS.getValue().equals(result.getJmeterStatus())) {
+            return DevopsHostStatus.SUCCESS.getValue();
+        }
+        return DevopsHostStatus.FAILED.getValue();
+    }
+
     @Transactional(rollbackFor = Exception.class)
     @Async(GitOpsConstants.HOST_STATUS_EXECUTOR)
     @Override
@@ -248,14 +319,8 @@ public class DevopsHostServiceImpl implements DevopsHostService {
 
             // 设置上下文, 以免丢失更新者信息
             CustomContextUtil.setDefaultIfNull(updaterId != null ? updaterId : hostDTO.getLastUpdatedBy());
-            DevopsHostConnectionTestVO devopsHostConnectionTestVO = ConvertUtils.convertObject(hostDTO, DevopsHostConnectionTestVO.class);
-
-            DevopsHostConnectionTestResultVO result = testConnection(projectId, devopsHostConnectionTestVO);
-            hostDTO.setHostStatus(result.getHostStatus());
-            hostDTO.setHostCheckError(result.getHostCheckError());
-            // 不对更新涉及的纪录结果进行判断
-            devopsHostMapper.updateByPrimaryKeySelective(hostDTO);
-            LOGGER.debug("connection result for host with id {} is {}", hostId, result);
+            DevopsHostConnectionTestResultVO result = hostConnectivityProber.probe(hostDTO.getHostIp(), hostDTO.getSshPort(), hostDTO.getAuthType(), hostDTO.getUsername(), hostDTO.getPassword());
+            applyConnectionResult(hostDTO, result);
         } catch (Exception ex) {
             LOGGER.warn("Failed to correct status for host with id {}", hostId);
             LOGGER.warn("The ex is ", ex);
@@ -267,63 +332,22 @@ public class DevopsHostServiceImpl implements DevopsHostService {
         }
     }
 
-    @Override
-    @Async
-    public void correctStatus(Long projectId, String correctKey, Long hostId) {
-        boolean noContextPre = DetailsHelper.getUserDetails() == null;
-        try {
-            DevopsHostDTO hostDTO = devopsHostMapper.selectByPrimaryKey(hostId);
-            if (hostDTO == null) {
-                return;
-            }
-
-            // 设置上下文, 以免丢失更新者信息
-            CustomContextUtil.setDefaultIfNull(hostDTO.getLastUpdatedBy());
-            DevopsHostConnectionTestVO devopsHostConnectionTestVO = ConvertUtils.convertObject(hostDTO, DevopsHostConnectionTestVO.class);
-
-            DevopsHostConnectionTestResultVO result = testConnection(projectId, devopsHostConnectionTestVO);
-            hostDTO.setHostStatus(result.getHostStatus());
-            hostDTO.setHostCheckError(result.getHostCheckError());
-            // 不对更新涉及的纪录结果进行判断
-            devopsHostMapper.updateByPrimaryKeySelective(hostDTO);
-            String status = DevopsHostStatus.FAILED.getValue();
-            if (DevopsHostStatus.SUCCESS.getValue().equals(result.getHostStatus()) && DevopsHostStatus.SUCCESS.getValue().equals(result.getJmeterStatus())) {
-                status = DevopsHostStatus.SUCCESS.getValue();
-            }
-            updateHostStatus(correctKey, hostId, status);
-            LOGGER.debug("connection result for host with id {} is {}", hostId, result);
-        } catch (Exception ex) {
-            LOGGER.warn("Failed to correct status for host with id {}", hostId);
-            LOGGER.warn("The ex is ", ex);
-        } finally {
-            // 如果之前没有上下文, 清除上下文
-            if (noContextPre) {
-                CustomContextUtil.clearContext();
-            }
-        }
+    private void updateHostStatus(String correctKey, Long hostId, String status) {
+        // 单个主机的进度单独写入hash的field, 并发写入互不覆盖
+        String progressKey = checkingProgressKey(correctKey);
+        stringRedisTemplate.opsForHash().put(progressKey, String.valueOf(hostId), status);
+        stringRedisTemplate.expire(progressKey, CHECKING_PROGRESS_EXPIRE_MINUTES, TimeUnit.MINUTES);
     }
 
-    private void updateHostStatus(String correctKey, Long hostId, String status) {
-        String lockKey = "checkHost:status:lock:" + correctKey;
-        while (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(lockKey, "lock", 10, TimeUnit.MINUTES))) {
-            try {
-                TimeUnit.SECONDS.sleep(1);
-            } catch (InterruptedException e) {
-                LOGGER.info("sleep.failed.", e);
-            }
-        }
-        try {
-            Map<Long, String> hostStatus = gson.fromJson(stringRedisTemplate.opsForValue().get(correctKey), new TypeToken<Map<Long, String>>() {
-            }.getType());
-            if (hostStatus == null) {
-                hostStatus = new HashMap<>();
-            }
-            hostStatus.put(hostId, status);
-            stringRedisTemplate.opsForValue().set(correctKey, gson.toJson(hostStatus), 10, TimeUnit.MINUTES);
-        } finally {
-            stringRedisTemplate.delete(lockKey);
-        }
+    private Map<Long, String> queryCheckingProgress(String correctKey) {
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(checkingProgressKey(correctKey));
+        Map<Long, String> hostStatusMap = new HashMap<>(entries.size());
+        entries.forEach((hostId, status) -> hostStatusMap.put(TypeUtil.objToLong(hostId), String.valueOf(status)));
+        return hostStatusMap;
+    }
 
+    private static String checkingProgressKey(String correctKey) {
+        return String.format(CHECKING_PROGRESS_KEY_TEMPLATE, correctKey);
     }
 
     /**
@@ -426,30 +450,18 @@ public class DevopsHostServiceImpl implements DevopsHostService {
 
     @Override
     public DevopsHostConnectionTestResultVO testConnection(Long projectId, DevopsHostConnectionTestVO devopsHostConnectionTestVO) {
-        SSHClient sshClient = null;
-        try {
-            DevopsHostConnectionTestResultVO result = new DevopsHostConnectionTestResultVO();
-            sshClient = SshUtil.sshConnect(devopsHostConnectionTestVO.getHostIp(), devopsHostConnectionTestVO.getSshPort(), devopsHostConnectionTestVO.getAuthType(), devopsHostConnectionTestVO.getUsername(), devopsHostConnectionTestVO.getPassword());
-            result.setHostStatus(sshClient != null ? DevopsHostStatus.SUCCESS.getValue() : DevopsHostStatus.FAILED.getValue());
-            if (sshClient == null) {
-                result.setHostCheckError("failed to check ssh, please ensure network and authentication is valid");
-            }
-            return result;
-        } finally {
-            IOUtils.closeQuietly(sshClient);
-        }
+        return hostConnectivityProber.probe(devopsHostConnectionTestVO.getHostIp(), devopsHostConnectionTestVO.getSshPort(), devopsHostConnectionTestVO.getAuthType(), devopsHostConnectionTestVO.getUsername(), devopsHostConnectionTestVO.getPassword());
     }
 
     public Set<Object> multiTestConnection(Long projectId, Set<Long> hostIds) {
         List<DevopsHostDTO> devopsHostDTOList = devopsHostMapper.listByProjectIdAndIds(projectId, hostIds);
         CommonExAssertUtil.assertTrue(devopsHostDTOList.size() > 0, "error.component.host.size");
-        Set<Long> connectionFailedHostIds = new HashSet<>();
-        devopsHostDTOList.forEach(d -> {
-            DevopsHostConnectionTestResultVO devopsHostConnectionTestResultVO = testConnection(projectId, ConvertUtils.convertObject(d, DevopsHostConnectionTestVO.class));
-            if (!DevopsHostStatus.SUCCESS.getValue().equals(devopsHostConnectionTestResultVO.getHostStatus())) {
-                connectionFailedHostIds.add(d.getId());
-            }
-        });
+        Set<Long> connectionFailedHostIds = hostConnectivityProber.probeAll(devopsHostDTOList, null)
+                .entrySet()
+                .stream()
+                .filter(e -> !DevopsHostStatus.SUCCESS.getValue().equals(e.getValue().getHostStatus()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
         return encryptService.encryptIds(connectionFailedHostIds);
     }
 
@@ -463,7 +475,7 @@ public class DevopsHostServiceImpl implements DevopsHostService {
         CommonExAssertUtil.assertTrue(projectId.equals(devopsHostDTO.getProjectId()), MiscConstants.ERROR_OPERATING_RESOURCE_IN_OTHER_PROJECT);
         CommonExAssertUtil.assertTrue(DevopsHostType.DEPLOY.getValue().equals(devopsHostDTO.getType()), "error.host.type.invalid");
 
-        return SshUtil.sshConnectForOK(devopsHostDTO.getHostIp(), devopsHostDTO.getSshPort(), devopsHostDTO.getAuthType(), devopsHostDTO.getUsername(), devopsHostDTO.getPassword());
+        return sshUtil.sshConnectForOK(devopsHostDTO.getHostIp(), devopsHostDTO.getSshPort(), devopsHostDTO.getAuthType(), devopsHostDTO.getUsername(), devopsHostDTO.getPassword());
     }
 
     @Override
@@ -540,8 +552,7 @@ public class DevopsHostServiceImpl implements DevopsHostService {
 
     @Override
     public CheckingProgressVO getCheckingProgress(Long projectId, String correctKey) {
-        Map<Long, String> hostStatusMap = gson.fromJson(stringRedisTemplate.opsForValue().get(correctKey), new TypeToken<Map<Long, String>>() {
-        }.getType());
+        Map<Long, String> hostStatusMap = queryCheckingProgress(correctKey);
         if (hostStatusMap == null) {
             return null;
         }
@@ -584,8 +595,7 @@ public class DevopsHostServiceImpl implements DevopsHostService {
     public Page<DevopsHostVO> pagingWithCheckingStatus(Long projectId, PageRequest pageRequest, String correctKey, String searchParam) {
         Set<Long> hostIds = new HashSet<>();
         if (!StringUtils.isAllEmpty(correctKey)) {
-            Map<Long, String> hostStatusMap = gson.fromJson(stringRedisTemplate.opsForValue().get(correctKey), new TypeToken<Map<Long, String>>() {
-            }.getType());
+            Map<Long, String> hostStatusMap = queryCheckingProgress(correctKey);
             if (!CollectionUtils.isEmpty(hostStatusMap)) {
                 hostIds = hostStatusMap.keySet();
             }
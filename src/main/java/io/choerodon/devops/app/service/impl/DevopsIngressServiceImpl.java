@@ -388,7 +388,7 @@ public class DevopsIngressServiceImpl implements DevopsIngressService, ChartReso
             return null;
         }
 
-        List<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterSet();
 
         DevopsIngressVO vo = new DevopsIngressVO();
         BeanUtils.copyProperties(devopsIngressDTO, vo, "annotations");
@@ -427,7 +427,7 @@ public class DevopsIngressServiceImpl implements DevopsIngressService, ChartReso
     public Page<DevopsIngressVO> pageByEnv(Long projectId, Long envId, PageRequest pageable, String params) {
         Page<DevopsIngressVO> devopsIngressVOPage = basePageByOptions(projectId, envId, null, pageable, params);
 
-        List<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedEnvList = clusterConnectionHandler.getUpdatedClusterSet();
         devopsIngressVOPage.getContent().forEach(devopsIngressVO -> {
             DevopsEnvironmentDTO devopsEnvironmentDTO = devopsEnvironmentService.baseQueryById(devopsIngressVO.getEnvId());
             devopsIngressVO.setEnvStatus(updatedEnvList.contains(devopsEnvironmentDTO.getClusterId()));
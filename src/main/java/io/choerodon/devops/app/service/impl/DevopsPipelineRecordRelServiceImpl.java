@@ -11,6 +11,7 @@ import org.springframework.util.CollectionUtils;
 import io.choerodon.core.domain.Page;
 import io.choerodon.core.exception.CommonException;
 import io.choerodon.devops.api.vo.pipeline.PipelineCompositeRecordVO;
+import io.choerodon.devops.app.service.DevopsDailyRollupService;
 import io.choerodon.devops.app.service.DevopsPipelineRecordRelService;
 import io.choerodon.devops.infra.constant.PipelineCheckConstant;
 import io.choerodon.devops.infra.constant.PipelineConstants;
@@ -35,6 +36,8 @@ public class DevopsPipelineRecordRelServiceImpl implements DevopsPipelineRecordR
     private static final String ERROR_PIPELINE_RECORD_REL_ID_IS_NULL = "error.pipeline.record.rel.id.is.null";
     @Autowired
     private DevopsPipelineRecordRelMapper devopsPipelineRecordRelMapper;
+    @Autowired
+    private DevopsDailyRollupService devopsDailyRollupService;
 
 
     @Override
@@ -43,6 +46,7 @@ public class DevopsPipelineRecordRelServiceImpl implements DevopsPipelineRecordR
         if (devopsPipelineRecordRelMapper.insertSelective(devopsPipelineRecordRelDTO) != 1) {
             throw new CommonException(ERROR_UPDATE_PIPELINE_RECORD_REL);
         }
+        devopsDailyRollupService.increaseCi(devopsPipelineRecordRelDTO);
     }
 
     @Override
@@ -1,30 +1,33 @@
 package io.choerodon.devops.app.service.impl;
 
-import java.text.SimpleDateFormat;
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.util.CollectionUtils;
 
 import io.choerodon.devops.api.vo.CountVO;
-import io.choerodon.devops.app.service.AppServiceInstanceService;
+import io.choerodon.devops.app.service.DevopsDailyRollupService;
 import io.choerodon.devops.app.service.DevopsProjectOverview;
-import io.choerodon.devops.infra.dto.*;
+import io.choerodon.devops.infra.dto.AppServiceDTO;
+import io.choerodon.devops.infra.dto.DevopsEnvironmentDTO;
 import io.choerodon.devops.infra.dto.agile.SprintDTO;
 import io.choerodon.devops.infra.dto.iam.ProjectDTO;
+import io.choerodon.devops.infra.enums.DailyRollupMetric;
 import io.choerodon.devops.infra.feign.operator.AgileServiceClientOperator;
 import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator;
 import io.choerodon.devops.infra.handler.ClusterConnectionHandler;
-import io.choerodon.devops.infra.mapper.*;
+import io.choerodon.devops.infra.mapper.AppServiceMapper;
+import io.choerodon.devops.infra.mapper.DevopsEnvironmentMapper;
 
 @Service
 public class DevopsProjectOverviewImpl implements DevopsProjectOverview {
 
     private static final String UP = "up";
     private static final String DOWN = "down";
-    private SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd");
 
     @Autowired
     private ClusterConnectionHandler clusterConnectionHandler;
@@ -36,9 +39,6 @@ public class DevopsProjectOverviewImpl implements DevopsProjectOverview {
     @Autowired
     private AgileServiceClientOperator agileServiceClientOperator;
 
-    @Autowired
-    private AppServiceInstanceService appServiceInstanceService;
-
     @Autowired
     private DevopsEnvironmentMapper devopsEnvironmentMapper;
 
@@ -46,26 +46,14 @@ public class DevopsProjectOverviewImpl implements DevopsProjectOverview {
     private AppServiceMapper appServiceMapper;
 
     @Autowired
-    private DevopsGitlabCommitMapper devopsGitlabCommitMapper;
-
-    @Autowired
-    private AppServiceInstanceMapper appServiceInstanceMapper;
-
-    @Autowired
-    private DevopsEnvCommandMapper devopsEnvCommandMapper;
-
-    @Autowired
-    private DevopsCiCdPipelineMapper devopsCiCdPipelineMapper;
-
-    @Autowired
-    private DevopsPipelineRecordRelMapper devopsPipelineRecordRelMapper;
+    private DevopsDailyRollupService devopsDailyRollupService;
 
     @Override
     public Map<String, Long> getEnvStatusCount(Long projectId) {
 
         Map<String, Long> count = new HashMap<>();
 
-        List<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterSet();
 
         List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = devopsEnvironmentMapper.listByProjectId(projectId);
 
@@ -103,116 +91,48 @@ public class DevopsProjectOverviewImpl implements DevopsProjectOverview {
 
     @Override
     public CountVO getCommitCount(Long projectId) {
-        ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(projectId);
-        SprintDTO sprintDTO = agileServiceClientOperator.getActiveSprint(projectId, projectDTO.getOrganizationId());
-        if (sprintDTO == null || sprintDTO.getSprintId() == null) {
+        SprintDTO sprintDTO = queryActiveSprint(projectId);
+        if (sprintDTO == null) {
             return new CountVO();
         }
-        List<Date> dateList = devopsGitlabCommitMapper.queryCountByProjectIdAndDate(projectId, new java.sql.Date(sprintDTO.getStartDate().getTime()), new java.sql.Date(sprintDTO.getEndDate().getTime()));
-
-        Map<String, Long> dateCount = dateList.stream().map(simpleDateFormat::format)
-                .sorted(Comparator.naturalOrder())
-                .collect(Collectors.groupingBy(t -> t, Collectors.counting()));
-
-        List<String> date = dateCount.keySet().stream().sorted(Comparator.naturalOrder()).collect(Collectors.toList());
-
-        List<Long> count = new ArrayList<>();
-
-        date.forEach(d -> count.add(dateCount.get(d)));
-
-
-        CountVO result = new CountVO();
-
-        result.setDate(date);
-        result.setCount(count);
-
-        return result;
+        return devopsDailyRollupService.countByDate(projectId, DailyRollupMetric.COMMIT, sprintDTO.getStartDate(), sprintDTO.getEndDate());
     }
 
     @Override
     public CountVO getDeployCount(Long projectId) {
-        ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(projectId);
-
-        // 该项目下所有环境
-        List<DevopsEnvironmentDTO> devopsEnvironmentDTOS = devopsEnvironmentMapper.listByProjectId(projectId);
-
-        List<Long> envIds = devopsEnvironmentDTOS.stream()
-                .map(DevopsEnvironmentDTO::getId)
-                .collect(Collectors.toList());
-
-        if (envIds.isEmpty()) {
+        SprintDTO sprintDTO = queryActiveSprint(projectId);
+        if (sprintDTO == null) {
             return new CountVO();
         }
+        return devopsDailyRollupService.countByDate(projectId, DailyRollupMetric.DEPLOY, sprintDTO.getStartDate(), sprintDTO.getEndDate());
+    }
 
-        SprintDTO sprintDTO = agileServiceClientOperator.getActiveSprint(projectId, projectDTO.getOrganizationId());
-        if (sprintDTO == null || sprintDTO.getSprintId() == null) {
+    @Override
+    public CountVO getCiCount(Long projectId) {
+        SprintDTO sprintDTO = queryActiveSprint(projectId);
+        if (sprintDTO == null) {
             return new CountVO();
         }
-
-        List<DeployDTO> deployDTOS = appServiceInstanceService.baseListDeployFrequency(projectId, envIds.toArray(new Long[0]), null, sprintDTO.getStartDate(), sprintDTO.getEndDate());
-
-        //以时间维度分组
-        Map<String, List<DeployDTO>> resultMaps = deployDTOS.stream()
-                .collect(Collectors.groupingBy(t -> new java.sql.Date(t.getCreationDate().getTime()).toString()));
-
-        List<String> creationDates = deployDTOS.stream()
-                .map(deployDTO -> new java.sql.Date(deployDTO.getCreationDate().getTime()).toString())
-                .collect(Collectors.toList());
-        creationDates = new ArrayList<>(new HashSet<>(creationDates)).stream().sorted(Comparator.naturalOrder())
-                .collect(Collectors.toList());
-
-
-        List<Long> count = new ArrayList<>();
-        creationDates.forEach(date -> {
-            Long[] newDeployFrequency = {0L};
-            resultMaps.get(date).forEach(deployFrequencyDO -> newDeployFrequency[0] = newDeployFrequency[0] + 1L);
-            count.add(newDeployFrequency[0]);
-        });
-
-        CountVO result = new CountVO();
-
-        result.setDate(creationDates);
-        result.setCount(count);
-        return result;
+        //当前冲刺下流水线的触发次数
+        return devopsDailyRollupService.countByDate(projectId, DailyRollupMetric.CI, sprintDTO.getStartDate(), sprintDTO.getEndDate());
     }
 
-    @Override
-    public CountVO getCiCount(Long projectId) {
+    /**
+     * 查询项目当前活跃的冲刺
+     *
+     * @return 没有活跃的冲刺时为空
+     */
+    @Nullable
+    private SprintDTO queryActiveSprint(Long projectId) {
         ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(projectId);
         SprintDTO sprintDTO = agileServiceClientOperator.getActiveSprint(projectId, projectDTO.getOrganizationId());
         if (sprintDTO == null || sprintDTO.getSprintId() == null) {
-            return new CountVO();
-        }
-        //根据项目的id查询项目下所有的流水线的id
-        List<CiCdPipelineDTO> ciCdPipelineDTOS = devopsCiCdPipelineMapper.selectPipelineByProjectId(projectDTO.getId());
-        if (CollectionUtils.isEmpty(ciCdPipelineDTOS)) {
-            return new CountVO();
-        }
-        //查询流水线在这个冲刺中的部署次数
-        List<DevopsPipelineRecordRelDTO> devopsPipelineRecordRelDTOS = new ArrayList<>();
-        ciCdPipelineDTOS.forEach(ciCdPipelineDTO ->
-                //当前冲刺下流水线的触发次数
-                devopsPipelineRecordRelDTOS.addAll(devopsPipelineRecordRelMapper.selectBySprint(ciCdPipelineDTO.getId(),
-                        new java.sql.Date(sprintDTO.getStartDate().getTime()),
-                        new java.sql.Date(sprintDTO.getEndDate().getTime()))));
-        if (CollectionUtils.isEmpty(devopsPipelineRecordRelDTOS)) {
-            return new CountVO();
+            return null;
         }
-        Map<String, Long> dateCount = devopsPipelineRecordRelDTOS.stream().map(DevopsPipelineRecordRelDTO::getCreationDate).map(simpleDateFormat::format)
-                .sorted(Comparator.naturalOrder())
-                .collect(Collectors.groupingBy(t -> t, Collectors.counting()));
-
-
-        List<String> date = dateCount.keySet().stream().sorted(Comparator.naturalOrder()).collect(Collectors.toList());
-        List<Long> count = new ArrayList<>();
-        date.forEach(d -> count.add(dateCount.get(d)));
-        CountVO result = new CountVO();
-        result.setDate(date);
-        result.setCount(count);
-        return result;
+        return sprintDTO;
     }
 
-    private boolean isEnvUp(List<Long> updatedClusterList, DevopsEnvironmentDTO t) {
+    private boolean isEnvUp(Set<Long> updatedClusterList, DevopsEnvironmentDTO t) {
         return updatedClusterList.contains(t.getClusterId());
     }
 
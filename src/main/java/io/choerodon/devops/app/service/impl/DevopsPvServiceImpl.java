@@ -108,7 +108,7 @@ public class DevopsPvServiceImpl implements DevopsPvService {
                 TypeUtil.cast(searchParamMap.get(TypeUtil.PARAMS))
         ));
 
-        List<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterSet();
         pvDTOPageInfo.getContent().forEach(i -> i.setClusterConnect(updatedClusterList.contains(i.getClusterId())));
         return pvDTOPageInfo;
     }
@@ -825,7 +825,7 @@ public class DevopsPvServiceImpl implements DevopsPvService {
             projectRelatedPvList = ConvertUtils.convertList(devopsPvMapper.listByPvIds(projectRelatedPvIdsList), DevopsPvVO.class);
         }
 
-        List<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterList();
+        Set<Long> updatedClusterList = clusterConnectionHandler.getUpdatedClusterSet();
 
         String pvcStorage = map.get("requestResource");
         // 筛选容量大于或等于pvc容量且集群agent处于连接状态且未与Prometheus进行绑定
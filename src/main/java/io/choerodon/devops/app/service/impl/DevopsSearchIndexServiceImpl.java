@@ -0,0 +1,177 @@
+package io.choerodon.devops.app.service.impl;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.CollectionUtils;
+
+import io.choerodon.devops.app.service.DevopsSearchIndexService;
+import io.choerodon.devops.infra.dto.AppServiceDTO;
+import io.choerodon.devops.infra.dto.DevopsSearchGramDTO;
+import io.choerodon.devops.infra.enums.SearchIndexObjectType;
+import io.choerodon.devops.infra.mapper.AppServiceMapper;
+import io.choerodon.devops.infra.mapper.DevopsSearchGramMapper;
+import io.choerodon.devops.infra.util.NGramUtil;
+import io.choerodon.devops.infra.util.TypeUtil;
+
+/**
+ * @author zmf
+ * @since 2021/8/8
+ */
+@Service
+public class DevopsSearchIndexServiceImpl implements DevopsSearchIndexService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DevopsSearchIndexServiceImpl.class);
+
+    /**
+     * 索引重建完成的标记, 没有过期时间
+     */
+    private static final String READY_KEY_TEMPLATE = "devops-service:search-index:%s:ready";
+    private static final String SEARCH_PARAM_CODE = "code";
+    private static final String SEARCH_PARAM_NAME = "name";
+
+    /**
+     * 是否使用索引过滤模糊搜索, 关闭后仍然维护索引
+     */
+    @Value("${devops.search.index.enabled:true}")
+    private Boolean enabled;
+    /**
+     * 索引返回的候选超过这个数量时不使用索引, 避免过长的IN条件
+     */
+    @Value("${devops.search.index.maxCandidates:1000}")
+    private Integer maxCandidates;
+    /**
+     * 重建索引时每批处理的应用服务数量
+     */
+    @Value("${devops.search.index.rebuildBatchSize:500}")
+    private Integer rebuildBatchSize;
+
+    @Autowired
+    private DevopsSearchGramMapper devopsSearchGramMapper;
+    @Autowired
+    private AppServiceMapper appServiceMapper;
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Override
+    public void indexAppService(AppServiceDTO appServiceDTO) {
+        devopsSearchGramMapper.deleteByObjectIds(SearchIndexObjectType.APP_SERVICE.getValue(),
+                Collections.singleton(appServiceDTO.getId()));
+        insertGrams(Collections.singletonList(appServiceDTO));
+    }
+
+    @Override
+    public void removeAppService(Long appServiceId) {
+        devopsSearchGramMapper.deleteByObjectIds(SearchIndexObjectType.APP_SERVICE.getValue(),
+                Collections.singleton(appServiceId));
+    }
+
+    @Nullable
+    @Override
+    public Set<Long> resolveAppServiceIds(Long projectId, @Nullable Map<String, Object> searchParam, @Nullable List<String> params) {
+        if (!Boolean.TRUE.equals(enabled) || !isReady(SearchIndexObjectType.APP_SERVICE)) {
+            return null;
+        }
+        Set<Long> ids = null;
+        if (searchParam != null) {
+            // code 和 name 的条件是 AND 的关系
+            ids = intersect(ids, resolveTerm(projectId, TypeUtil.objToString(searchParam.get(SEARCH_PARAM_CODE))));
+            ids = intersect(ids, resolveTerm(projectId, TypeUtil.objToString(searchParam.get(SEARCH_PARAM_NAME))));
+        }
+        if (!CollectionUtils.isEmpty(params)) {
+            // params 之间是 OR 的关系, 任一个参数不能使用索引时整体不能使用索引
+            Set<Long> unionIds = new HashSet<>();
+            for (String param : params) {
+                Set<Long> paramIds = resolveTerm(projectId, param);
+                if (paramIds == null) {
+                    unionIds = null;
+                    break;
+                }
+                unionIds.addAll(paramIds);
+            }
+            ids = intersect(ids, unionIds);
+        }
+        return ids;
+    }
+
+    @Override
+    public void rebuildAppServices() {
+        // 只插入不删除: 和应用服务的更新并发时, 最多留下旧名称的三元组, 只会多出候选, 不会漏掉结果
+        long afterId = 0L;
+        int total = 0;
+        List<AppServiceDTO> batch;
+        do {
+            batch = appServiceMapper.listForSearchIndex(afterId, rebuildBatchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+            insertGrams(batch);
+            afterId = batch.get(batch.size() - 1).getId();
+            total += batch.size();
+        } while (batch.size() == rebuildBatchSize);
+
+        stringRedisTemplate.opsForValue().set(readyKey(SearchIndexObjectType.APP_SERVICE), String.valueOf(System.currentTimeMillis()));
+        LOGGER.info("Search index of {} app services is rebuilt", total);
+    }
+
+    private void insertGrams(List<AppServiceDTO> appServiceDTOS) {
+        List<DevopsSearchGramDTO> grams = new ArrayList<>();
+        for (AppServiceDTO appServiceDTO : appServiceDTOS) {
+            for (String gram : NGramUtil.indexGrams(appServiceDTO.getCode(), appServiceDTO.getName())) {
+                grams.add(new DevopsSearchGramDTO(SearchIndexObjectType.APP_SERVICE.getValue(),
+                        appServiceDTO.getProjectId(), appServiceDTO.getId(), gram));
+            }
+        }
+        if (!grams.isEmpty()) {
+            devopsSearchGramMapper.batchInsert(grams);
+        }
+    }
+
+    /**
+     * 查询一个搜索词的候选id
+     *
+     * @return 为空表示这个搜索词不限制结果
+     */
+    @Nullable
+    private Set<Long> resolveTerm(Long projectId, @Nullable String term) {
+        if (term == null || term.isEmpty()) {
+            // 和mapper中的条件一致, 空的搜索词不过滤
+            return null;
+        }
+        Set<String> grams = NGramUtil.queryGrams(term);
+        if (grams == null) {
+            return null;
+        }
+        List<Long> ids = devopsSearchGramMapper.listObjectIdsContainingAll(SearchIndexObjectType.APP_SERVICE.getValue(),
+                projectId, grams, maxCandidates + 1);
+        if (ids.size() > maxCandidates) {
+            return null;
+        }
+        return new HashSet<>(ids);
+    }
+
+    @Nullable
+    private static Set<Long> intersect(@Nullable Set<Long> ids, @Nullable Set<Long> other) {
+        if (ids == null) {
+            return other;
+        }
+        if (other == null) {
+            return ids;
+        }
+        return ids.stream().filter(other::contains).collect(Collectors.toSet());
+    }
+
+    private boolean isReady(SearchIndexObjectType objectType) {
+        return Boolean.TRUE.equals(stringRedisTemplate.hasKey(readyKey(objectType)));
+    }
+
+    private static String readyKey(SearchIndexObjectType objectType) {
+        return String.format(READY_KEY_TEMPLATE, objectType.getValue());
+    }
+}
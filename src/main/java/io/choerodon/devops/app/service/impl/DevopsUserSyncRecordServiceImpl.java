@@ -1,14 +1,15 @@
 package io.choerodon.devops.app.service.impl;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
 import org.hzero.boot.file.FileClient;
-import org.hzero.core.base.BaseConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -20,6 +21,7 @@ import io.choerodon.devops.infra.constant.MiscConstants;
 import io.choerodon.devops.infra.dto.DevopsUserSyncRecordDTO;
 import io.choerodon.devops.infra.enums.UserSyncRecordStatus;
 import io.choerodon.devops.infra.enums.UserSyncType;
+import io.choerodon.devops.infra.handler.GitlabUserSyncEngine;
 import io.choerodon.devops.infra.mapper.DevopsUserSyncRecordMapper;
 import io.choerodon.devops.infra.util.MapperUtil;
 
@@ -34,7 +36,7 @@ public class DevopsUserSyncRecordServiceImpl implements DevopsUserSyncRecordServ
     @Autowired
     private DevopsUserSyncRecordMapper devopsUserSyncRecordMapper;
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
+    private StringRedisTemplate stringRedisTemplate;
     @Autowired
     private FileClient fileClient;
 
@@ -56,20 +58,22 @@ public class DevopsUserSyncRecordServiceImpl implements DevopsUserSyncRecordServ
     }
 
     private void fillProcess(DevopsUserSyncRecordVO devopsUserSyncRecordVO) {
-        // 进度的模板 已处理/总数
-        String processString = (String) redisTemplate.opsForValue().get(MiscConstants.USER_SYNC_REDIS_KEY);
-        if (processString == null) {
+        // 进度为 本次已处理的数量/本次要处理的总数
+        List<String> values = stringRedisTemplate.opsForValue().multiGet(Arrays.asList(
+                MiscConstants.USER_SYNC_PROCESSED_REDIS_KEY,
+                MiscConstants.USER_SYNC_TOTAL_REDIS_KEY,
+                MiscConstants.USER_SYNC_START_REDIS_KEY));
+        if (values == null || values.get(1) == null) {
             return;
         }
 
-        String[] values = processString.split(BaseConstants.Symbol.SLASH);
-        if (values.length != 2) {
-            LOGGER.warn("unexpected length for user process length, the user process string is {}", processString);
-            return;
+        long current = values.get(0) == null ? 0 : Long.parseLong(values.get(0));
+        long total = Long.parseLong(values.get(1));
+        devopsUserSyncRecordVO.setTotal(total);
+        devopsUserSyncRecordVO.setCurrent(current);
+        if (values.get(2) != null) {
+            devopsUserSyncRecordVO.setEtaSeconds(GitlabUserSyncEngine.estimateEtaSeconds(current, total, Long.parseLong(values.get(2))));
         }
-
-        devopsUserSyncRecordVO.setTotal(Long.valueOf(values[1]));
-        devopsUserSyncRecordVO.setCurrent(Long.valueOf(values[0]));
     }
 
     private DevopsUserSyncRecordVO constructEmptyVO() {
@@ -89,6 +93,41 @@ public class DevopsUserSyncRecordServiceImpl implements DevopsUserSyncRecordServ
         return devopsUserSyncRecordMapper.selectByPrimaryKey(devopsUserSyncRecordDTO.getId());
     }
 
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public DevopsUserSyncRecordDTO resumeOrInitRecord(UserSyncType userSyncType) {
+        DevopsUserSyncRecordDTO latest = devopsUserSyncRecordMapper.queryLatestRecord();
+        if (latest == null || UserSyncRecordStatus.FINISHED.getValue().equals(latest.getStatus())) {
+            return initRecord(userSyncType);
+        }
+        // 已经同步成功的用户不会再次同步, 保留成功数; 失败的用户会重试, 失败数重新计算
+        LOGGER.info("Resume the interrupted user sync record with id {}. {} users have been synced", latest.getId(), latest.getSuccessCount());
+        latest.setFailCount(0L);
+        latest.setProcessedCount(latest.getSuccessCount());
+        MapperUtil.resultJudgedUpdateByPrimaryKeySelective(devopsUserSyncRecordMapper, latest, "error.update.user.sync.record");
+        return devopsUserSyncRecordMapper.selectByPrimaryKey(latest.getId());
+    }
+
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public void start(Long recordId, long pendingCount) {
+        DevopsUserSyncRecordDTO devopsUserSyncRecordDTO = devopsUserSyncRecordMapper.selectByPrimaryKey(recordId);
+        devopsUserSyncRecordDTO.setTotalCount(devopsUserSyncRecordDTO.getProcessedCount() + pendingCount);
+        MapperUtil.resultJudgedUpdateByPrimaryKeySelective(devopsUserSyncRecordMapper, devopsUserSyncRecordDTO, "error.update.user.sync.record");
+    }
+
+    @Override
+    public void checkpoint(Long recordId, long successCount, long failCount) {
+        devopsUserSyncRecordMapper.checkpoint(recordId, successCount, failCount);
+    }
+
+    @Transactional(rollbackFor = Exception.class)
+    @Override
+    public void finish(Long recordId, String errorInformationCsv) {
+        DevopsUserSyncRecordDTO devopsUserSyncRecordDTO = devopsUserSyncRecordMapper.selectByPrimaryKey(recordId);
+        finish(recordId, devopsUserSyncRecordDTO.getSuccessCount(), devopsUserSyncRecordDTO.getFailCount(), errorInformationCsv);
+    }
+
     @Transactional(rollbackFor = Exception.class)
     @Override
     public void finish(Long recordId, Long successCount, Long failCount, String errorInformationCsv) {
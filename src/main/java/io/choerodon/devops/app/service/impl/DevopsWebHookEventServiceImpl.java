@@ -0,0 +1,260 @@
+package io.choerodon.devops.app.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.*;
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import io.choerodon.core.domain.Page;
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.api.vo.DevopsWebHookEventVO;
+import io.choerodon.devops.app.service.DevopsWebHookEventService;
+import io.choerodon.devops.app.service.GitlabWebHookService;
+import io.choerodon.devops.infra.dto.DevopsWebHookEventDTO;
+import io.choerodon.devops.infra.enums.WebHookEventStatus;
+import io.choerodon.devops.infra.mapper.DevopsWebHookEventMapper;
+import io.choerodon.devops.infra.util.ConvertUtils;
+import io.choerodon.devops.infra.util.CustomContextUtil;
+import io.choerodon.devops.infra.util.WebHookEventScanner;
+import io.choerodon.mybatis.pagehelper.PageHelper;
+import io.choerodon.mybatis.pagehelper.domain.PageRequest;
+
+/**
+ * @author zmf
+ * @since 2021/8/10
+ */
+@Service
+public class DevopsWebHookEventServiceImpl implements DevopsWebHookEventService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DevopsWebHookEventServiceImpl.class);
+
+    private static final Long NONE_PARTITION_KEY = 0L;
+    private static final int MAX_ERROR_MESSAGE_LENGTH = 2000;
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    @Value("${devops.webhook.queue.enabled:true}")
+    private Boolean enabled;
+    @Value("${devops.webhook.queue.partitions:8}")
+    private Integer partitions;
+    @Value("${devops.webhook.queue.partitionCapacity:1000}")
+    private Integer partitionCapacity;
+    @Value("${devops.webhook.queue.maxAttempts:5}")
+    private Integer maxAttempts;
+    @Value("${devops.webhook.queue.retryBaseSeconds:30}")
+    private Long retryBaseSeconds;
+    @Value("${devops.webhook.queue.processingTimeoutSeconds:600}")
+    private Long processingTimeoutSeconds;
+    @Value("${devops.webhook.queue.pollBatchSize:200}")
+    private Integer pollBatchSize;
+    @Value("${devops.webhook.queue.successRetentionHours:72}")
+    private Long successRetentionHours;
+    @Value("${devops.webhook.queue.deadRetentionHours:720}")
+    private Long deadRetentionHours;
+
+    @Autowired
+    private DevopsWebHookEventMapper devopsWebHookEventMapper;
+    @Autowired
+    private GitlabWebHookService gitlabWebHookService;
+
+    /**
+     * 每个分区一个线程, 同一个分区的事件在本实例上按顺序处理
+     */
+    private ExecutorService[] partitionExecutors;
+    /**
+     * 已经分发到本实例线程池还没处理的事件id, 避免轮询时重复分发
+     */
+    private final Set<Long> dispatchedIds = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    void init() {
+        partitionExecutors = new ExecutorService[partitions];
+        for (int i = 0; i < partitions; i++) {
+            String threadName = "webhook-event-" + i;
+            partitionExecutors[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(partitionCapacity), runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    @PreDestroy
+    void destroy() {
+        // 未处理完的事件由其它实例超时后重新处理
+        for (ExecutorService executor : partitionExecutors) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void accept(String body, String token, @Nullable String eventUuid) {
+        WebHookEventScanner.ScanResult scanResult = WebHookEventScanner.scan(body);
+        if (!Boolean.TRUE.equals(enabled)) {
+            gitlabWebHookService.processEvent(scanResult.getObjectKind(), body, token);
+            return;
+        }
+        DevopsWebHookEventDTO devopsWebHookEventDTO = new DevopsWebHookEventDTO();
+        devopsWebHookEventDTO.setEventKey(StringUtils.isBlank(eventUuid) ? digest(token, body) : eventUuid);
+        devopsWebHookEventDTO.setObjectKind(scanResult.getObjectKind());
+        devopsWebHookEventDTO.setPartitionKey(scanResult.getProjectId() == null ? NONE_PARTITION_KEY : scanResult.getProjectId());
+        devopsWebHookEventDTO.setToken(token);
+        devopsWebHookEventDTO.setBody(body);
+        devopsWebHookEventDTO.setStatus(WebHookEventStatus.PENDING.getValue());
+        devopsWebHookEventDTO.setAttempts(0);
+        devopsWebHookEventDTO.setNextAttemptAt(new Date());
+        try {
+            devopsWebHookEventMapper.insertSelective(devopsWebHookEventDTO);
+        } catch (DuplicateKeyException e) {
+            // gitlab超时重发的事件
+            LOGGER.info("Duplicated webhook event {} of kind {} is ignored", devopsWebHookEventDTO.getEventKey(), scanResult.getObjectKind());
+            return;
+        }
+        dispatch(devopsWebHookEventDTO.getPartitionKey(), devopsWebHookEventDTO.getId());
+    }
+
+    @Override
+    public void dispatchDueEvents() {
+        if (!Boolean.TRUE.equals(enabled)) {
+            return;
+        }
+        devopsWebHookEventMapper.listDueEvents(new Date(), pollBatchSize)
+                .forEach(event -> dispatch(event.getPartitionKey(), event.getId()));
+    }
+
+    @Override
+    public void failStaleEvents() {
+        Date now = new Date();
+        Date startedBefore = new Date(now.getTime() - TimeUnit.SECONDS.toMillis(processingTimeoutSeconds));
+        int count = devopsWebHookEventMapper.failStaleProcessing(startedBefore, now, maxAttempts);
+        if (count > 0) {
+            LOGGER.warn("{} webhook events timed out while processing", count);
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        long now = System.currentTimeMillis();
+        deleteBefore(WebHookEventStatus.SUCCESS, new Date(now - TimeUnit.HOURS.toMillis(successRetentionHours)));
+        deleteBefore(WebHookEventStatus.DEAD, new Date(now - TimeUnit.HOURS.toMillis(deadRetentionHours)));
+    }
+
+    @Override
+    public Page<DevopsWebHookEventVO> pageEvents(@Nullable String status, @Nullable String objectKind, PageRequest pageRequest) {
+        Page<DevopsWebHookEventDTO> page = PageHelper.doPageAndSort(pageRequest, () -> devopsWebHookEventMapper.listByOptions(status, objectKind));
+        return ConvertUtils.convertPage(page, DevopsWebHookEventVO.class);
+    }
+
+    @Override
+    public void replay(Long eventId) {
+        DevopsWebHookEventDTO devopsWebHookEventDTO = devopsWebHookEventMapper.selectByPrimaryKey(eventId);
+        if (devopsWebHookEventDTO == null) {
+            throw new CommonException("error.webhook.event.not.exist", eventId);
+        }
+        if (devopsWebHookEventMapper.replay(eventId, new Date()) != 1) {
+            throw new CommonException("error.webhook.event.processing", eventId);
+        }
+        dispatch(devopsWebHookEventDTO.getPartitionKey(), eventId);
+    }
+
+    @Override
+    public int replayDeadEvents() {
+        int count = devopsWebHookEventMapper.replay(null, new Date());
+        LOGGER.info("{} dead webhook events are replayed", count);
+        // 由轮询按顺序分发
+        return count;
+    }
+
+    private void dispatch(Long partitionKey, Long eventId) {
+        if (!dispatchedIds.add(eventId)) {
+            return;
+        }
+        try {
+            partitionExecutors[Math.floorMod(partitionKey.hashCode(), partitions)].execute(() -> {
+                dispatchedIds.remove(eventId);
+                process(eventId);
+            });
+        } catch (RejectedExecutionException e) {
+            // 本实例积压过多, 留给之后的轮询
+            dispatchedIds.remove(eventId);
+            LOGGER.debug("Webhook event {} is left for polling", eventId);
+        }
+    }
+
+    private void process(Long eventId) {
+        DevopsWebHookEventDTO event = devopsWebHookEventMapper.selectByPrimaryKey(eventId);
+        if (event == null) {
+            return;
+        }
+        // 同一个项目更早的事件还没有处理完(在其它实例上或等待重试), 等它完成后由轮询分发
+        if (devopsWebHookEventMapper.countUnfinishedBefore(event.getPartitionKey(), eventId) > 0) {
+            return;
+        }
+        if (devopsWebHookEventMapper.claim(eventId, new Date()) != 1) {
+            return;
+        }
+        try {
+            gitlabWebHookService.processEvent(event.getObjectKind(), event.getBody(), event.getToken());
+            devopsWebHookEventMapper.markSuccess(eventId);
+        } catch (Exception e) {
+            fail(event, e);
+        } finally {
+            CustomContextUtil.clearContext();
+        }
+        Long nextId = devopsWebHookEventMapper.selectNextPendingId(event.getPartitionKey(), eventId);
+        if (nextId != null) {
+            dispatch(event.getPartitionKey(), nextId);
+        }
+    }
+
+    private void fail(DevopsWebHookEventDTO event, Exception e) {
+        int attempts = event.getAttempts() + 1;
+        boolean dead = attempts >= maxAttempts;
+        long delayMillis = Math.min(TimeUnit.SECONDS.toMillis(retryBaseSeconds) << Math.min(attempts - 1, 20), MAX_RETRY_DELAY_MILLIS);
+        String errorMessage = StringUtils.abbreviate(e.getClass().getName() + ": " + e.getMessage(), MAX_ERROR_MESSAGE_LENGTH);
+        devopsWebHookEventMapper.markFailed(event.getId(),
+                dead ? WebHookEventStatus.DEAD.getValue() : WebHookEventStatus.FAILED.getValue(),
+                attempts,
+                new Date(System.currentTimeMillis() + delayMillis),
+                errorMessage);
+        if (dead) {
+            LOGGER.error("Webhook event {} of kind {} failed {} times and is moved to the dead letters", event.getId(), event.getObjectKind(), attempts, e);
+        } else {
+            LOGGER.warn("Webhook event {} of kind {} failed {} times, retry in {} ms", event.getId(), event.getObjectKind(), attempts, delayMillis, e);
+        }
+    }
+
+    private void deleteBefore(WebHookEventStatus status, Date before) {
+        int deleted;
+        do {
+            deleted = devopsWebHookEventMapper.deleteByStatusBefore(status.getValue(), before, pollBatchSize);
+        } while (deleted >= pollBatchSize);
+    }
+
+    private static String digest(String token, String body) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(token).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(body.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
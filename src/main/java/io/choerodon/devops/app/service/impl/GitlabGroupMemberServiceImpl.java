@@ -31,6 +31,7 @@ import io.choerodon.devops.infra.enums.GitlabGroupType;
 import io.choerodon.devops.infra.enums.LabelType;
 import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator;
 import io.choerodon.devops.infra.feign.operator.GitlabServiceClientOperator;
+import io.choerodon.devops.infra.handler.IamResourceResolver;
 import io.choerodon.devops.infra.mapper.DevopsEnvironmentMapper;
 import io.choerodon.devops.infra.mapper.DevopsProjectMapper;
 import io.choerodon.devops.infra.util.LogUtil;
@@ -66,6 +67,8 @@ public class GitlabGroupMemberServiceImpl implements GitlabGroupMemberService {
     @Autowired
     private BaseServiceClientOperator baseServiceClientOperator;
     @Autowired
+    private IamResourceResolver iamResourceResolver;
+    @Autowired
     private DevopsProjectMapper devopsProjectMapper;
 
 
@@ -190,11 +193,20 @@ public class GitlabGroupMemberServiceImpl implements GitlabGroupMemberService {
 
     @Override
     public void deleteGitlabGroupMemberRole(List<GitlabGroupMemberVO> gitlabGroupMemberVOList) {
-        gitlabGroupMemberVOList.stream()
+        List<GitlabGroupMemberVO> projectMembers = gitlabGroupMemberVOList.stream()
                 .filter(gitlabGroupMemberVO -> gitlabGroupMemberVO.getResourceType().equals(PROJECT))
+                .collect(Collectors.toList());
+        // 涉及的项目一次查出
+        Map<Long, ProjectDTO> projects = iamResourceResolver.resolveProjects(projectMembers.stream()
+                .map(GitlabGroupMemberVO::getResourceId)
+                .collect(Collectors.toSet()));
+        projectMembers
                 .forEach(gitlabGroupMemberVO -> {
                     //删除用户的项目所有者权限，如果是组织root,则不删除该项目下gitlab相应的权限
-                    ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(gitlabGroupMemberVO.getResourceId());
+                    ProjectDTO projectDTO = projects.get(gitlabGroupMemberVO.getResourceId());
+                    if (projectDTO == null) {
+                        throw new CommonException("error.project.query.by.id", gitlabGroupMemberVO.getResourceId());
+                    }
                     if (!baseServiceClientOperator.isOrganzationRoot(gitlabGroupMemberVO.getUserId(), projectDTO.getOrganizationId())) {
                         deleteAllPermissionInProjectOfUser(gitlabGroupMemberVO, projectDTO.getId());
                     }
@@ -1,8 +1,6 @@
 package io.choerodon.devops.app.service.impl;
 
 import com.alibaba.fastjson.JSONArray;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -18,6 +16,7 @@ import io.choerodon.devops.infra.enums.PipelineStatus;
 import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator;
 import io.choerodon.devops.infra.util.CustomContextUtil;
 import io.choerodon.devops.infra.util.FastjsonParserConfigProvider;
+import io.choerodon.devops.infra.util.WebHookEventScanner;
 
 @Service
 public class GitlabWebHookServiceImpl implements GitlabWebHookService {
@@ -55,9 +54,12 @@ public class GitlabWebHookServiceImpl implements GitlabWebHookService {
 
     @Override
     public void forwardingEventToPortal(String body, String token) {
-        JsonObject returnData = new JsonParser().parse(body).getAsJsonObject();
-        String kind = returnData.get("object_kind").getAsString();
-        switch (kind) {
+        processEvent(WebHookEventScanner.scan(body).getObjectKind(), body, token);
+    }
+
+    @Override
+    public void processEvent(String objectKind, String body, String token) {
+        switch (objectKind) {
             case "merge_request":
                 DevopsMergeRequestVO devopsMergeRequestVO = JSONArray.parseObject(body, DevopsMergeRequestVO.class, FastjsonParserConfigProvider.getParserConfig());
                 setUserContext(devopsMergeRequestVO.getUser().getUsername());
@@ -105,9 +107,7 @@ public class GitlabWebHookServiceImpl implements GitlabWebHookService {
 
     @Override
     public void gitOpsWebHook(String body, String token) {
-        JsonObject returnData = new JsonParser().parse(body).getAsJsonObject();
-        String kind = returnData.get("object_kind").getAsString();
-        if ("push".equals(kind)) {
+        if ("push".equals(WebHookEventScanner.scan(body).getObjectKind())) {
             PushWebHookVO pushWebHookVO = JSONArray.parseObject(body, PushWebHookVO.class, FastjsonParserConfigProvider.getParserConfig());
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug(pushWebHookVO.toString());
@@ -100,7 +100,7 @@ public class JarAndImageDeployServiceImpl implements JarAndImageDeployService {
     private void hostJarDeploy(Long projectId, DeployConfigVO deployConfigVO) {
         LOGGER.info("========================================");
         LOGGER.info("start jar deploy cd host job,projectId:{}", projectId);
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         StringBuilder log = new StringBuilder();
         DeployConfigVO.JarDeploy jarDeploy;
         C7nNexusComponentDTO c7nNexusComponentDTO = new C7nNexusComponentDTO();
@@ -181,7 +181,7 @@ public class JarAndImageDeployServiceImpl implements JarAndImageDeployService {
             c7nNexusComponentDTO = nexusComponentDTOList.get(0);
             c7nNexusDeployDTO.setJarName(jarDeploy.getArtifactId());
 
-            sshUtil.sshConnect(deployConfigVO.getHostConnectionVO(), ssh);
+            ssh = sshUtil.sshConnect(deployConfigVO.getHostConnectionVO());
 
             // 2. 执行jar部署
             sshUtil.sshStopJar(ssh, c7nNexusDeployDTO.getJarName(), jarDeploy.getWorkingPath(), log);
@@ -237,7 +237,7 @@ public class JarAndImageDeployServiceImpl implements JarAndImageDeployService {
     private void hostImagedeploy(Long projectId, DeployConfigVO deployConfigVO) {
         LOGGER.info("========================================");
         LOGGER.info("start image deploy cd host job,projectId:{}", projectId);
-        SSHClient ssh = new SSHClient();
+        SSHClient ssh = null;
         StringBuilder log = new StringBuilder();
         DeployConfigVO.ImageDeploy imageDeploy = new DeployConfigVO.ImageDeploy();
         ProjectDTO projectDTO = baseServiceClientOperator.queryIamProjectById(projectId);
@@ -294,7 +294,7 @@ public class JarAndImageDeployServiceImpl implements JarAndImageDeployService {
             c7nImageDeployDTO.setHarborUrl(imageTagVo.getHarborUrl());
             c7nImageDeployDTO.setPullCmd(imageTagVo.getImageTagList().get(0).getPullCmd());
             // 2.
-            sshUtil.sshConnect(deployConfigVO.getHostConnectionVO(), ssh);
+            ssh = sshUtil.sshConnect(deployConfigVO.getHostConnectionVO());
             // 3.
             // 3.1
             sshUtil.dockerLogin(ssh, c7nImageDeployDTO, log);
@@ -562,15 +562,24 @@ public class PolarisScanningServiceImpl implements PolarisScanningService {
         // 以下是查出环境下的实例然后和检测项关联起来存成json放入数据库
         DevopsPolarisNamespaceResultDTO devopsPolarisNamespaceResultDTO = new DevopsPolarisNamespaceResultDTO(envId, devopsEnvironmentDTO.getCode(), recordId, Boolean.FALSE);
 
+        // 一次查出所有资源关联的实例
+        Map<String, Long> resourceInstanceIds = findAssociatedInstanceIds(envId, results);
+        List<PolarisControllerResultVO> associatedResults = results.stream()
+                .filter(result -> resourceInstanceIds.get(resourceKey(result.getKind(), result.getName())) != null)
+                .collect(Collectors.toList());
+
+        // 挑选出各个层级未通过的检测项放入到要作为json传出到数据库的对象中
+        // 各个资源的扫描结果互不相关, 并行处理, 结果的顺序和扫描结果的顺序一致
+        List<PolarisStorageControllerResultVO> analyzedResults = associatedResults.parallelStream()
+                .map(this::analyzePolarisResult)
+                .collect(Collectors.toList());
+
         Map<Long, List<PolarisStorageControllerResultVO>> map = new HashMap<>();
-        results.forEach(result -> {
-            Long instanceId = findAssociatedInstanceId(envId, result.getName(), result.getKind());
-            if (instanceId == null) {
-                return;
-            }
-            // 挑选出各个层级未通过的检测项放入到要作为json传出到数据库的对象中
-            map.computeIfAbsent(instanceId, id -> new ArrayList<>()).add(analyzePolarisResult(result));
-        });
+        for (int i = 0; i < associatedResults.size(); i++) {
+            PolarisControllerResultVO result = associatedResults.get(i);
+            Long instanceId = resourceInstanceIds.get(resourceKey(result.getKind(), result.getName()));
+            map.computeIfAbsent(instanceId, id -> new ArrayList<>()).add(analyzedResults.get(i));
+        }
 
         // 查出实例信息
         List<InstanceWithPolarisStorageVO> instances = appServiceInstanceMapper.queryInstancesWithAppServiceByIds(new ArrayList<>(map.keySet()));
@@ -950,17 +959,38 @@ public class PolarisScanningServiceImpl implements PolarisScanningService {
     }
 
     /**
-     * 找到这个资源关联的实例id
+     * 找到扫描结果中的资源关联的实例id, 环境下所有的资源在一次查询中获取
      *
-     * @param envId        环境id
-     * @param resourceName 资源名称
-     * @param resourceKind 资源类型
-     * @return 实例id，可为null
+     * @param envId   环境id
+     * @param results 扫描结果
+     * @return 资源的key (见{@link #resourceKey(String, String)}) -> 实例id, 没有关联实例的资源不在其中
      */
-    @Nullable
-    private Long findAssociatedInstanceId(Long envId, String resourceName, String resourceKind) {
-        DevopsEnvResourceDTO devopsEnvResourceDTO = devopsEnvResourceService.baseQueryOptions(null, null, envId, resourceKind, resourceName);
-        return devopsEnvResourceDTO == null ? null : devopsEnvResourceDTO.getInstanceId();
+    private Map<String, Long> findAssociatedInstanceIds(Long envId, List<PolarisControllerResultVO> results) {
+        Set<String> kinds = new HashSet<>();
+        Set<String> names = new HashSet<>();
+        results.forEach(result -> {
+            if (result.getKind() != null && result.getName() != null) {
+                kinds.add(result.getKind());
+                names.add(result.getName());
+            }
+        });
+
+        // 同一个资源有多条纪录时, 和之前一样取第一条
+        Map<String, DevopsEnvResourceDTO> resources = new HashMap<>();
+        devopsEnvResourceService.listInstanceIdsByKindsAndNames(envId, kinds, names)
+                .forEach(resource -> resources.putIfAbsent(resourceKey(resource.getKind(), resource.getName()), resource));
+
+        Map<String, Long> instanceIds = new HashMap<>();
+        resources.forEach((key, resource) -> {
+            if (resource.getInstanceId() != null) {
+                instanceIds.put(key, resource.getInstanceId());
+            }
+        });
+        return instanceIds;
+    }
+
+    private static String resourceKey(String kind, String name) {
+        return kind + "/" + name;
     }
 
     @Override
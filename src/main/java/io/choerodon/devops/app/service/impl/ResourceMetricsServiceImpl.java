@@ -0,0 +1,167 @@
+package io.choerodon.devops.app.service.impl;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.api.vo.MetricPointVO;
+import io.choerodon.devops.api.vo.PodMetricsRedisInfoVO;
+import io.choerodon.devops.api.vo.ResourceMetricsVO;
+import io.choerodon.devops.api.vo.host.ResourceUsageInfoVO;
+import io.choerodon.devops.app.service.*;
+import io.choerodon.devops.infra.constant.MiscConstants;
+import io.choerodon.devops.infra.dto.DevopsEnvPodDTO;
+import io.choerodon.devops.infra.dto.DevopsEnvironmentDTO;
+import io.choerodon.devops.infra.dto.DevopsHostDTO;
+import io.choerodon.devops.infra.enums.MetricResolution;
+import io.choerodon.devops.infra.metrics.TimeSeriesBlock;
+import io.choerodon.devops.infra.metrics.TimeSeriesStore;
+import io.choerodon.devops.infra.util.CommonExAssertUtil;
+import io.choerodon.devops.infra.util.K8sUtil;
+
+/**
+ * @author zmf
+ * @since 2021/8/9
+ */
+@Service
+public class ResourceMetricsServiceImpl implements ResourceMetricsService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceMetricsServiceImpl.class);
+
+    /**
+     * pod:${clusterCode}:${namespace}:${podName}:${metric}
+     */
+    private static final String POD_SERIES_TEMPLATE = "pod:%s:%s:%s:%s";
+    /**
+     * host:${hostId}:${metric}
+     */
+    private static final String HOST_SERIES_TEMPLATE = "host:%s:%s";
+    private static final String METRIC_CPU = "cpu";
+    private static final String METRIC_MEMORY = "memory";
+    private static final long DEFAULT_RANGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final String PERCENT = "%";
+
+    @Autowired
+    private TimeSeriesStore timeSeriesStore;
+    @Autowired
+    private PermissionHelper permissionHelper;
+    @Autowired
+    private DevopsEnvPodService devopsEnvPodService;
+    @Autowired
+    private DevopsClusterService devopsClusterService;
+    @Autowired
+    private DevopsHostService devopsHostService;
+
+    @Override
+    public void recordPodMetrics(List<PodMetricsRedisInfoVO> pods) {
+        long now = System.currentTimeMillis();
+        pods.forEach(pod -> {
+            try {
+                // cpu的单位为核, 内存的单位为字节
+                double cpu = K8sUtil.getNormalValueFromCpuString(pod.getCpu());
+                double memory = K8sUtil.getByteFromMemoryString(pod.getMemory());
+                timeSeriesStore.record(podSeriesId(pod.getClusterCode(), pod.getNamespace(), pod.getName(), METRIC_CPU), now, cpu);
+                timeSeriesStore.record(podSeriesId(pod.getClusterCode(), pod.getNamespace(), pod.getName(), METRIC_MEMORY), now, memory);
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Unexpected metrics cpu {} memory {} of pod {} in namespace {}", pod.getCpu(), pod.getMemory(), pod.getName(), pod.getNamespace());
+            }
+        });
+    }
+
+    @Override
+    public void recordHostMetrics(String hostId, ResourceUsageInfoVO resourceUsageInfo) {
+        long now = System.currentTimeMillis();
+        Double cpu = parseUsage(resourceUsageInfo.getCpu());
+        if (cpu != null) {
+            timeSeriesStore.record(hostSeriesId(hostId, METRIC_CPU), now, cpu);
+        }
+        Double memory = parseUsage(resourceUsageInfo.getMem());
+        if (memory != null) {
+            timeSeriesStore.record(hostSeriesId(hostId, METRIC_MEMORY), now, memory);
+        }
+    }
+
+    @Override
+    public ResourceMetricsVO queryPodMetrics(Long projectId, Long envId, Long podId, @Nullable Long startTime, @Nullable Long endTime, @Nullable String resolution) {
+        DevopsEnvironmentDTO devopsEnvironmentDTO = permissionHelper.checkEnvBelongToProject(projectId, envId);
+        DevopsEnvPodDTO devopsEnvPodDTO = devopsEnvPodService.baseQueryById(podId);
+        CommonExAssertUtil.assertNotNull(devopsEnvPodDTO, "error.pod.not.exist", podId);
+        CommonExAssertUtil.assertTrue(devopsEnvironmentDTO.getCode().equals(devopsEnvPodDTO.getNamespace()), MiscConstants.ERROR_OPERATING_RESOURCE_IN_OTHER_PROJECT);
+        String clusterCode = devopsClusterService.baseQuery(devopsEnvironmentDTO.getClusterId()).getCode();
+        return query(podSeriesId(clusterCode, devopsEnvPodDTO.getNamespace(), devopsEnvPodDTO.getName(), METRIC_CPU),
+                podSeriesId(clusterCode, devopsEnvPodDTO.getNamespace(), devopsEnvPodDTO.getName(), METRIC_MEMORY),
+                startTime, endTime, resolution);
+    }
+
+    @Override
+    public ResourceMetricsVO queryHostMetrics(Long projectId, Long hostId, @Nullable Long startTime, @Nullable Long endTime, @Nullable String resolution) {
+        DevopsHostDTO devopsHostDTO = devopsHostService.baseQuery(hostId);
+        CommonExAssertUtil.assertNotNull(devopsHostDTO, "error.host.not.exist", hostId);
+        CommonExAssertUtil.assertTrue(devopsHostDTO.getProjectId().equals(projectId), MiscConstants.ERROR_OPERATING_RESOURCE_IN_OTHER_PROJECT);
+        return query(hostSeriesId(String.valueOf(hostId), METRIC_CPU), hostSeriesId(String.valueOf(hostId), METRIC_MEMORY),
+                startTime, endTime, resolution);
+    }
+
+    private ResourceMetricsVO query(String cpuSeriesId, String memorySeriesId, @Nullable Long startTime, @Nullable Long endTime, @Nullable String resolution) {
+        long end = endTime == null ? System.currentTimeMillis() : endTime;
+        long start = startTime == null ? end - DEFAULT_RANGE_MILLIS : startTime;
+        if (start > end) {
+            throw new CommonException("error.metrics.time.range.invalid");
+        }
+        MetricResolution metricResolution;
+        if (StringUtils.isEmpty(resolution)) {
+            metricResolution = timeSeriesStore.chooseResolution(start, end);
+        } else {
+            metricResolution = MetricResolution.forValue(resolution);
+            CommonExAssertUtil.assertNotNull(metricResolution, "error.metrics.resolution.invalid", resolution);
+        }
+
+        ResourceMetricsVO resourceMetricsVO = new ResourceMetricsVO();
+        resourceMetricsVO.setResolution(metricResolution.getValue());
+        resourceMetricsVO.setCpu(toPointVOs(timeSeriesStore.query(cpuSeriesId, start, end, metricResolution)));
+        resourceMetricsVO.setMemory(toPointVOs(timeSeriesStore.query(memorySeriesId, start, end, metricResolution)));
+        return resourceMetricsVO;
+    }
+
+    private static List<MetricPointVO> toPointVOs(List<TimeSeriesBlock.DataPoint> points) {
+        return points.stream()
+                .map(point -> new MetricPointVO(new Date(TimeUnit.SECONDS.toMillis(point.getTimestamp())), point.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 主机上报的使用率可能带有百分号
+     */
+    @Nullable
+    private static Double parseUsage(@Nullable String usage) {
+        if (StringUtils.isEmpty(usage)) {
+            return null;
+        }
+        String value = usage.trim();
+        if (value.endsWith(PERCENT)) {
+            value = value.substring(0, value.length() - 1).trim();
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            LOGGER.debug("Unexpected host resource usage {}", usage);
+            return null;
+        }
+    }
+
+    private static String podSeriesId(String clusterCode, String namespace, String podName, String metric) {
+        return String.format(POD_SERIES_TEMPLATE, clusterCode, namespace, podName, metric);
+    }
+
+    private static String hostSeriesId(String hostId, String metric) {
+        return String.format(HOST_SERIES_TEMPLATE, hostId, metric);
+    }
+}
@@ -0,0 +1,39 @@
+package io.choerodon.devops.app.task;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.devops.app.service.AppServiceVersionBlobService;
+import io.choerodon.devops.infra.enums.ChartBlobType;
+
+/**
+ * @author zmf
+ * @since 2021/8/10
+ */
+@ConditionalOnProperty(value = "local.test", havingValue = "false", matchIfMissing = true)
+@Component
+public class AppServiceVersionBlobTask {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AppServiceVersionBlobTask.class);
+
+    @Autowired
+    private AppServiceVersionBlobService appServiceVersionBlobService;
+
+    /**
+     * 定时清理版本删除后没有被引用的values和readme
+     * 删除时会再次检查引用数, 多个实例同时执行不会误删
+     */
+    @Scheduled(fixedDelayString = "${devops.chart.blob.gcMilliSeconds:3600000}")
+    public void collectGarbage() {
+        for (ChartBlobType type : ChartBlobType.values()) {
+            try {
+                appServiceVersionBlobService.collectGarbage(type);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to collect unreferenced {}", type.getValue(), e);
+            }
+        }
+    }
+}
@@ -1,16 +1,23 @@
 package io.choerodon.devops.app.task;
 
+import java.sql.Date;
+import java.time.LocalDate;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import io.choerodon.asgard.schedule.QuartzDefinition;
 import io.choerodon.asgard.schedule.annotation.JobTask;
 import io.choerodon.asgard.schedule.annotation.TimedTask;
+import io.choerodon.devops.app.service.AppServiceVersionBlobService;
 import io.choerodon.devops.app.service.DevopsCheckLogService;
+import io.choerodon.devops.app.service.DevopsDailyRollupService;
+import io.choerodon.devops.app.service.DevopsSearchIndexService;
+import io.choerodon.devops.infra.enums.ChartBlobType;
 
 /**
  * @author zmf
@@ -19,8 +26,25 @@ import io.choerodon.devops.app.service.DevopsCheckLogService;
 public class DevopsTask {
     private static final Logger logger = LoggerFactory.getLogger(DevopsTask.class);
 
+    /**
+     * 重新汇总最近多少天的按天数据
+     */
+    @Value("${devops.rollup.backfill.days:365}")
+    private Integer backfillDays;
+    /**
+     * 每个事务重新汇总的天数
+     */
+    @Value("${devops.rollup.backfill.chunkDays:31}")
+    private Integer backfillChunkDays;
+
     @Autowired
     private DevopsCheckLogService devopsCheckLogService;
+    @Autowired
+    private DevopsDailyRollupService devopsDailyRollupService;
+    @Autowired
+    private DevopsSearchIndexService devopsSearchIndexService;
+    @Autowired
+    private AppServiceVersionBlobService appServiceVersionBlobService;
 
 
     @JobTask(maxRetryCount = 3, code = "fixEnvAppData", description = "修复环境应用服务数据")
@@ -35,4 +59,59 @@ public class DevopsTask {
         }
         logger.info(">>>>>>>>>>>>>>>>>>>>end fix env app data<<<<<<<<<<<<<<<<<<<<<<<<<<");
     }
+
+    @JobTask(maxRetryCount = 3, code = "backfillDailyRollup", description = "从原始记录重新汇总项目概览的按天数据")
+    @TimedTask(name = "backfillDailyRollup", description = "从原始记录重新汇总项目概览的按天数据", oneExecution = true,
+            repeatCount = 0, repeatInterval = 1, repeatIntervalUnit = QuartzDefinition.SimpleRepeatIntervalUnit.HOURS, params = {})
+    public void backfillDailyRollup(Map<String, Object> map) {
+        logger.info(">>>>>>>>>>>>>>>>>>>>begin to backfill daily rollup<<<<<<<<<<<<<<<<<<<<<<<<<<");
+        // 当天的数据在写入时累加, 只重新汇总到昨天
+        LocalDate endDate = LocalDate.now().minusDays(1);
+        LocalDate chunkStart = endDate.minusDays(backfillDays - 1L);
+        while (!chunkStart.isAfter(endDate)) {
+            LocalDate chunkEnd = chunkStart.plusDays(backfillChunkDays - 1L);
+            if (chunkEnd.isAfter(endDate)) {
+                chunkEnd = endDate;
+            }
+            try {
+                devopsDailyRollupService.rebuild(Date.valueOf(chunkStart), Date.valueOf(chunkEnd));
+            } catch (Exception e) {
+                logger.error("error.backfill.daily.rollup from {} to {}", chunkStart, chunkEnd, e);
+            }
+            chunkStart = chunkEnd.plusDays(1);
+        }
+        logger.info(">>>>>>>>>>>>>>>>>>>>end backfill daily rollup<<<<<<<<<<<<<<<<<<<<<<<<<<");
+    }
+
+    @JobTask(maxRetryCount = 3, code = "rebuildSearchIndex", description = "重建应用服务模糊搜索的索引")
+    @TimedTask(name = "rebuildSearchIndex", description = "重建应用服务模糊搜索的索引", oneExecution = true,
+            repeatCount = 0, repeatInterval = 1, repeatIntervalUnit = QuartzDefinition.SimpleRepeatIntervalUnit.HOURS, params = {})
+    public void rebuildSearchIndex(Map<String, Object> map) {
+        logger.info(">>>>>>>>>>>>>>>>>>>>begin to rebuild search index<<<<<<<<<<<<<<<<<<<<<<<<<<");
+        try {
+            devopsSearchIndexService.rebuildAppServices();
+        } catch (Exception e) {
+            logger.error("error.rebuild.search.index", e);
+        }
+        logger.info(">>>>>>>>>>>>>>>>>>>>end rebuild search index<<<<<<<<<<<<<<<<<<<<<<<<<<");
+    }
+
+    @JobTask(maxRetryCount = 3, code = "deduplicateVersionValues", description = "对应用服务版本已有的values和readme去重")
+    @TimedTask(name = "deduplicateVersionValues", description = "对应用服务版本已有的values和readme去重", oneExecution = true,
+            repeatCount = 0, repeatInterval = 1, repeatIntervalUnit = QuartzDefinition.SimpleRepeatIntervalUnit.HOURS, params = {})
+    public void deduplicateVersionValues(Map<String, Object> map) {
+        logger.info(">>>>>>>>>>>>>>>>>>>>begin to deduplicate version values<<<<<<<<<<<<<<<<<<<<<<<<<<");
+        for (ChartBlobType type : ChartBlobType.values()) {
+            // 每批一个事务, 失败后重新执行时从没有去重的记录继续
+            Long lastId = 0L;
+            try {
+                while ((lastId = appServiceVersionBlobService.deduplicate(type, lastId)) != null) {
+                    logger.debug("Deduplicated {} up to id {}", type.getValue(), lastId);
+                }
+            } catch (Exception e) {
+                logger.error("error.deduplicate.version.{} after id {}", type.getValue(), lastId, e);
+            }
+        }
+        logger.info(">>>>>>>>>>>>>>>>>>>>end deduplicate version values<<<<<<<<<<<<<<<<<<<<<<<<<<");
+    }
 }
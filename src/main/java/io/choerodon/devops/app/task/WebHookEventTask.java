@@ -0,0 +1,48 @@
+package io.choerodon.devops.app.task;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.devops.app.service.DevopsWebHookEventService;
+
+/**
+ * @author zmf
+ * @since 2021/8/10
+ */
+@ConditionalOnProperty(value = "local.test", havingValue = "false", matchIfMissing = true)
+@Component
+public class WebHookEventTask {
+    private static final Logger LOGGER = LoggerFactory.getLogger(WebHookEventTask.class);
+
+    @Autowired
+    private DevopsWebHookEventService devopsWebHookEventService;
+
+    /**
+     * 分发到期的webhook事件, 包括接收时没能分发、等待重试和处理超时的事件
+     */
+    @Scheduled(fixedDelayString = "${devops.webhook.queue.pollMilliSeconds:5000}")
+    public void dispatchDueEvents() {
+        try {
+            devopsWebHookEventService.failStaleEvents();
+            devopsWebHookEventService.dispatchDueEvents();
+        } catch (Exception e) {
+            LOGGER.warn("Failed to dispatch due webhook events", e);
+        }
+    }
+
+    /**
+     * 定时删除过了保留时间的webhook事件
+     */
+    @Scheduled(fixedDelayString = "${devops.webhook.queue.cleanupMilliSeconds:3600000}")
+    public void cleanup() {
+        try {
+            devopsWebHookEventService.cleanup();
+        } catch (Exception e) {
+            LOGGER.warn("Failed to clean up webhook events", e);
+        }
+    }
+}
@@ -6,6 +6,8 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import io.choerodon.devops.infra.dto.DevopsEnvFileDTO;
+import io.choerodon.devops.infra.dto.DevopsGitlabCommitDTO;
 import io.choerodon.devops.infra.dto.DevopsIssueRelDTO;
 
 /**
@@ -21,4 +23,14 @@ public class BatchInsertHelperConfig {
     public BatchInsertHelper<DevopsIssueRelDTO> uiTestCaseDTOBatchInsertHelper(SqlSessionFactory sqlSessionFactory) {
         return new BatchInsertHelper<>(sqlSessionFactory, this.sliceSize);
     }
-}
\ No newline at end of file
+
+    @Bean("devopsEnvFileBatchInsertHelper")
+    public BatchInsertHelper<DevopsEnvFileDTO> devopsEnvFileBatchInsertHelper(SqlSessionFactory sqlSessionFactory) {
+        return new BatchInsertHelper<>(sqlSessionFactory, this.sliceSize);
+    }
+
+    @Bean("devopsGitlabCommitBatchInsertHelper")
+    public BatchInsertHelper<DevopsGitlabCommitDTO> devopsGitlabCommitBatchInsertHelper(SqlSessionFactory sqlSessionFactory) {
+        return new BatchInsertHelper<>(sqlSessionFactory, this.sliceSize);
+    }
+}
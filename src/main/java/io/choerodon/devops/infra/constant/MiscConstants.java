@@ -40,6 +40,21 @@ public final class MiscConstants {
      */
     public static final String USER_SYNC_REDIS_KEY = "devops-service:user-sync-key";
 
+    /**
+     * 同步用户的进度, 本次同步已处理的用户数量
+     */
+    public static final String USER_SYNC_PROCESSED_REDIS_KEY = USER_SYNC_REDIS_KEY + ":processed";
+
+    /**
+     * 同步用户的进度, 本次同步要处理的用户总数
+     */
+    public static final String USER_SYNC_TOTAL_REDIS_KEY = USER_SYNC_REDIS_KEY + ":total";
+
+    /**
+     * 同步用户的进度, 本次同步开始处理的时间戳
+     */
+    public static final String USER_SYNC_START_REDIS_KEY = USER_SYNC_REDIS_KEY + ":start";
+
     /**
      * 设置同步用户的分布式锁时，锁的key
      */
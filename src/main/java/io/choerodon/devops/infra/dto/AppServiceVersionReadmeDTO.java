@@ -17,6 +17,14 @@ public class AppServiceVersionReadmeDTO {
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
     private String readme;
+    /**
+     * 内容的SHA-256, 为空表示还未去重的旧数据
+     */
+    private String contentHash;
+    /**
+     * 引用这条记录的版本数量
+     */
+    private Long refCount;
 
     public AppServiceVersionReadmeDTO() {
     }
@@ -47,4 +55,20 @@ public class AppServiceVersionReadmeDTO {
     public void setReadme(String readme) {
         this.readme = readme;
     }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public Long getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(Long refCount) {
+        this.refCount = refCount;
+    }
 }
@@ -12,6 +12,14 @@ public class AppServiceVersionValueDTO {
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
     private String value;
+    /**
+     * 内容的SHA-256, 为空表示还未去重的旧数据
+     */
+    private String contentHash;
+    /**
+     * 引用这条记录的版本数量
+     */
+    private Long refCount;
 
     public Long getId() {
         return id;
@@ -28,4 +36,20 @@ public class AppServiceVersionValueDTO {
     public void setValue(String value) {
         this.value = value;
     }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public Long getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(Long refCount) {
+        this.refCount = refCount;
+    }
 }
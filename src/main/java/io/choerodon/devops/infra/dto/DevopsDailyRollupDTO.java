@@ -0,0 +1,104 @@
+package io.choerodon.devops.infra.dto;
+
+import java.util.Date;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import io.swagger.annotations.ApiModelProperty;
+
+import io.choerodon.mybatis.annotation.ModifyAudit;
+import io.choerodon.mybatis.annotation.VersionAudit;
+import io.choerodon.mybatis.domain.AuditDomain;
+
+/**
+ * 项目概览和统计图表的按天汇总
+ *
+ * @author zmf
+ * @since 2021/8/8
+ */
+@VersionAudit
+@ModifyAudit
+@Table(name = "devops_daily_rollup")
+public class DevopsDailyRollupDTO extends AuditDomain {
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @ApiModelProperty("项目id")
+    private Long projectId;
+
+    /**
+     * {@link io.choerodon.devops.infra.enums.DailyRollupMetric}
+     */
+    @ApiModelProperty("统计项")
+    private String metric;
+
+    @ApiModelProperty("统计的日期")
+    private Date statDate;
+
+    @ApiModelProperty("应用服务id, 没有时为0")
+    private Long appServiceId;
+
+    @ApiModelProperty("用户id, 没有时为0")
+    private Long userId;
+
+    @ApiModelProperty("当天的数量")
+    private Long count;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(Long projectId) {
+        this.projectId = projectId;
+    }
+
+    public String getMetric() {
+        return metric;
+    }
+
+    public void setMetric(String metric) {
+        this.metric = metric;
+    }
+
+    public Date getStatDate() {
+        return statDate;
+    }
+
+    public void setStatDate(Date statDate) {
+        this.statDate = statDate;
+    }
+
+    public Long getAppServiceId() {
+        return appServiceId;
+    }
+
+    public void setAppServiceId(Long appServiceId) {
+        this.appServiceId = appServiceId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getCount() {
+        return count;
+    }
+
+    public void setCount(Long count) {
+        this.count = count;
+    }
+}
@@ -0,0 +1,91 @@
+package io.choerodon.devops.infra.dto;
+
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import io.swagger.annotations.ApiModelProperty;
+
+import io.choerodon.mybatis.annotation.ModifyAudit;
+import io.choerodon.mybatis.annotation.VersionAudit;
+import io.choerodon.mybatis.domain.AuditDomain;
+
+/**
+ * 模糊搜索的三元组倒排索引
+ *
+ * @author zmf
+ * @since 2021/8/8
+ */
+@VersionAudit
+@ModifyAudit
+@Table(name = "devops_search_gram")
+public class DevopsSearchGramDTO extends AuditDomain {
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    /**
+     * {@link io.choerodon.devops.infra.enums.SearchIndexObjectType}
+     */
+    @ApiModelProperty("被索引的对象类型")
+    private String objectType;
+
+    @ApiModelProperty("对象所属的项目id")
+    private Long projectId;
+
+    @ApiModelProperty("对象id")
+    private Long objectId;
+
+    @ApiModelProperty("小写的三个字符")
+    private String gram;
+
+    public DevopsSearchGramDTO() {
+    }
+
+    public DevopsSearchGramDTO(String objectType, Long projectId, Long objectId, String gram) {
+        this.objectType = objectType;
+        this.projectId = projectId;
+        this.objectId = objectId;
+        this.gram = gram;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getObjectType() {
+        return objectType;
+    }
+
+    public void setObjectType(String objectType) {
+        this.objectType = objectType;
+    }
+
+    public Long getProjectId() {
+        return projectId;
+    }
+
+    public void setProjectId(Long projectId) {
+        this.projectId = projectId;
+    }
+
+    public Long getObjectId() {
+        return objectId;
+    }
+
+    public void setObjectId(Long objectId) {
+        this.objectId = objectId;
+    }
+
+    public String getGram() {
+        return gram;
+    }
+
+    public void setGram(String gram) {
+        this.gram = gram;
+    }
+}
@@ -33,6 +33,11 @@ public class DevopsUserSyncRecordDTO extends AuditDomain {
     @ApiModelProperty(value = "同步失败用户数量")
     private Long failCount;
 
+    @ApiModelProperty(value = "要同步的用户总数")
+    private Long totalCount;
+    @ApiModelProperty(value = "已处理的用户数量")
+    private Long processedCount;
+
     /**
      * {@link io.choerodon.devops.app.task.UserSyncTask}
      */
@@ -88,6 +93,22 @@ public class DevopsUserSyncRecordDTO extends AuditDomain {
         this.failCount = failCount;
     }
 
+    public Long getTotalCount() {
+        return totalCount;
+    }
+
+    public void setTotalCount(Long totalCount) {
+        this.totalCount = totalCount;
+    }
+
+    public Long getProcessedCount() {
+        return processedCount;
+    }
+
+    public void setProcessedCount(Long processedCount) {
+        this.processedCount = processedCount;
+    }
+
     public String getType() {
         return type;
     }
@@ -0,0 +1,148 @@
+package io.choerodon.devops.infra.dto;
+
+import java.util.Date;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import io.swagger.annotations.ApiModelProperty;
+
+import io.choerodon.mybatis.annotation.ModifyAudit;
+import io.choerodon.mybatis.annotation.VersionAudit;
+import io.choerodon.mybatis.domain.AuditDomain;
+
+/**
+ * 待处理的gitlab webhook事件
+ *
+ * @author zmf
+ * @since 2021/8/10
+ */
+@VersionAudit
+@ModifyAudit
+@Table(name = "devops_webhook_event")
+public class DevopsWebHookEventDTO extends AuditDomain {
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @ApiModelProperty("去重的key, gitlab的事件uuid或者请求的摘要")
+    private String eventKey;
+
+    @ApiModelProperty("事件类型")
+    private String objectKind;
+
+    @ApiModelProperty("gitlab项目id, 没有时为0")
+    private Long partitionKey;
+
+    @ApiModelProperty("webhook的token")
+    private String token;
+
+    @ApiModelProperty("webhook的请求体")
+    private String body;
+
+    /**
+     * {@link io.choerodon.devops.infra.enums.WebHookEventStatus}
+     */
+    @ApiModelProperty("状态")
+    private String status;
+
+    @ApiModelProperty("失败的次数")
+    private Integer attempts;
+
+    @ApiModelProperty("下次处理的时间")
+    private Date nextAttemptAt;
+
+    @ApiModelProperty("开始处理的时间")
+    private Date processingStartedAt;
+
+    @ApiModelProperty("最近一次失败的原因")
+    private String errorMessage;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getEventKey() {
+        return eventKey;
+    }
+
+    public void setEventKey(String eventKey) {
+        this.eventKey = eventKey;
+    }
+
+    public String getObjectKind() {
+        return objectKind;
+    }
+
+    public void setObjectKind(String objectKind) {
+        this.objectKind = objectKind;
+    }
+
+    public Long getPartitionKey() {
+        return partitionKey;
+    }
+
+    public void setPartitionKey(Long partitionKey) {
+        this.partitionKey = partitionKey;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public Date getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(Date nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public Date getProcessingStartedAt() {
+        return processingStartedAt;
+    }
+
+    public void setProcessingStartedAt(Date processingStartedAt) {
+        this.processingStartedAt = processingStartedAt;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+}
@@ -0,0 +1,28 @@
+package io.choerodon.devops.infra.enums;
+
+/**
+ * 按内容去重存储的chart包内容的类型
+ *
+ * @author zmf
+ * @since 2021/8/10
+ */
+public enum ChartBlobType {
+    /**
+     * chart包的values.yaml, 由版本的value_id引用
+     */
+    VALUES("values"),
+    /**
+     * chart包的README.md, 由版本的readme_value_id引用
+     */
+    README("readme");
+
+    private final String value;
+
+    ChartBlobType(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
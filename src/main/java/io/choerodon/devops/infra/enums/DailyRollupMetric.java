@@ -0,0 +1,32 @@
+package io.choerodon.devops.infra.enums;
+
+/**
+ * 按天汇总的统计项
+ *
+ * @author zmf
+ * @since 2021/8/8
+ */
+public enum DailyRollupMetric {
+    /**
+     * 代码提交次数, 按提交时间统计
+     */
+    COMMIT("commit"),
+    /**
+     * 实例的部署(创建和更新)次数
+     */
+    DEPLOY("deploy"),
+    /**
+     * 流水线的触发次数
+     */
+    CI("ci");
+
+    private final String value;
+
+    DailyRollupMetric(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,92 @@
+package io.choerodon.devops.infra.enums;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+/**
+ * 资源指标时间序列的精度
+ * 原始数据按上报的时间存储, 其它精度由原始数据按时间桶取平均值得到;
+ * 每个精度的数据按固定的时间窗口分块存储
+ *
+ * @author zmf
+ * @since 2021/8/9
+ */
+public enum MetricResolution {
+    /**
+     * 原始数据, 每小时一块
+     */
+    RAW("raw", 0, TimeUnit.HOURS.toSeconds(1)),
+    /**
+     * 1分钟平均值, 每天一块
+     */
+    MINUTE("1m", TimeUnit.MINUTES.toSeconds(1), TimeUnit.DAYS.toSeconds(1)),
+    /**
+     * 5分钟平均值, 每周一块
+     */
+    FIVE_MINUTES("5m", TimeUnit.MINUTES.toSeconds(5), TimeUnit.DAYS.toSeconds(7)),
+    /**
+     * 1小时平均值, 每30天一块
+     */
+    HOUR("1h", TimeUnit.HOURS.toSeconds(1), TimeUnit.DAYS.toSeconds(30));
+
+    private final String value;
+    /**
+     * 时间桶的长度, 单位: 秒, 原始数据为0
+     */
+    private final long stepSeconds;
+    /**
+     * 数据块的时间窗口, 单位: 秒
+     */
+    private final long blockSeconds;
+
+    MetricResolution(String value, long stepSeconds, long blockSeconds) {
+        this.value = value;
+        this.stepSeconds = stepSeconds;
+        this.blockSeconds = blockSeconds;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getStepSeconds() {
+        return stepSeconds;
+    }
+
+    public long getBlockSeconds() {
+        return blockSeconds;
+    }
+
+    public boolean isRaw() {
+        return stepSeconds == 0;
+    }
+
+    /**
+     * 时间戳所在数据块的起始时间
+     *
+     * @param timestamp 时间戳, 单位: 秒
+     */
+    public long blockStart(long timestamp) {
+        return Math.floorDiv(timestamp, blockSeconds) * blockSeconds;
+    }
+
+    /**
+     * 时间戳所在时间桶的起始时间, 原始数据返回时间戳本身
+     *
+     * @param timestamp 时间戳, 单位: 秒
+     */
+    public long bucketStart(long timestamp) {
+        return isRaw() ? timestamp : Math.floorDiv(timestamp, stepSeconds) * stepSeconds;
+    }
+
+    @Nullable
+    public static MetricResolution forValue(@Nullable String value) {
+        for (MetricResolution resolution : values()) {
+            if (resolution.value.equals(value)) {
+                return resolution;
+            }
+        }
+        return null;
+    }
+}
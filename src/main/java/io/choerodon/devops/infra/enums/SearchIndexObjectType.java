@@ -0,0 +1,24 @@
+package io.choerodon.devops.infra.enums;
+
+/**
+ * 模糊搜索索引的对象类型
+ *
+ * @author zmf
+ * @since 2021/8/8
+ */
+public enum SearchIndexObjectType {
+    /**
+     * 应用服务, 索引名称和编码
+     */
+    APP_SERVICE("app_service");
+
+    private final String value;
+
+    SearchIndexObjectType(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,40 @@
+package io.choerodon.devops.infra.enums;
+
+/**
+ * gitlab webhook事件的处理状态
+ *
+ * @author zmf
+ * @since 2021/8/10
+ */
+public enum WebHookEventStatus {
+    /**
+     * 等待处理
+     */
+    PENDING("pending"),
+    /**
+     * 正在处理
+     */
+    PROCESSING("processing"),
+    /**
+     * 处理成功
+     */
+    SUCCESS("success"),
+    /**
+     * 处理失败, 等待重试
+     */
+    FAILED("failed"),
+    /**
+     * 重试次数用完, 不再自动处理, 需要手动重放
+     */
+    DEAD("dead");
+
+    private final String value;
+
+    WebHookEventStatus(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
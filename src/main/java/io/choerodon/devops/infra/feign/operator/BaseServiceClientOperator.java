@@ -34,6 +34,7 @@ import io.choerodon.devops.api.vo.iam.ImmutableProjectInfoVO;
 import io.choerodon.devops.infra.dto.iam.*;
 import io.choerodon.devops.infra.enums.LabelType;
 import io.choerodon.devops.infra.feign.BaseServiceClient;
+import io.choerodon.devops.infra.handler.IamLookupCache;
 import io.choerodon.devops.infra.util.FeignParamUtils;
 import io.choerodon.devops.infra.util.TypeUtil;
 import io.choerodon.mybatis.pagehelper.domain.PageRequest;
@@ -58,6 +59,8 @@ public class BaseServiceClientOperator {
     private BaseServiceClient baseServiceClient;
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private IamLookupCache iamLookupCache;
 
     /**
      * @param organizationId 组织id
@@ -75,7 +78,23 @@ public class BaseServiceClientOperator {
     }
 
     public ProjectDTO queryIamProjectById(Long projectId) {
-        return queryIamProjectById(projectId, true, true, true);
+        ProjectDTO projectDTO = iamLookupCache.getProject(Objects.requireNonNull(projectId), id -> {
+            ResponseEntity<ProjectDTO> responseEntity = baseServiceClient.queryIamProject(id, true, true, true);
+            ProjectDTO result = responseEntity.getBody();
+            if (result == null) {
+                return null;
+            }
+            // 判断id是否为空是因为可能会返回 CommonException 但是也会被反序列化为  ProjectDTO
+            // 错误的结果直接抛出, 不作为不存在的记录缓存
+            if (!responseEntity.getStatusCode().is2xxSuccessful() || result.getId() == null) {
+                throw new CommonException("error.project.query.by.id", id);
+            }
+            return result;
+        });
+        if (projectDTO == null) {
+            throw new CommonException("error.project.query.by.id", projectId);
+        }
+        return projectDTO;
     }
 
     public ProjectDTO queryIamProjectById(Long projectId, Boolean withCategory, Boolean withUserInfo, Boolean withAgileInfo) {
@@ -89,7 +108,28 @@ public class BaseServiceClientOperator {
     }
 
     public Tenant queryOrganizationById(Long organizationId) {
-        return queryOrganizationById(organizationId, true);
+        Tenant tenant = iamLookupCache.getTenant(organizationId, id -> {
+            ResponseEntity<Tenant> organizationDTOResponseEntity = baseServiceClient.queryOrganizationById(id, true);
+            if (!organizationDTOResponseEntity.getStatusCode().is2xxSuccessful()) {
+                throw new CommonException("error.organization.get", id);
+            }
+            Tenant result = organizationDTOResponseEntity.getBody();
+            if (result == null) {
+                return null;
+            }
+            // 错误的结果不作为不存在的记录缓存
+            if (result.getTenantId() == null) {
+                if (LOGGER.isInfoEnabled()) {
+                    LOGGER.info("queryOrganizationById: unexpected result: {}", JSONObject.toJSONString(result));
+                }
+                throw new CommonException("error.organization.get", id);
+            }
+            return result;
+        });
+        if (tenant == null) {
+            throw new CommonException("error.organization.get", organizationId);
+        }
+        return tenant;
     }
 
     public Tenant queryOrganizationById(Long organizationId, Boolean withMoreInfo) {
@@ -240,16 +280,18 @@ public class BaseServiceClientOperator {
     }
 
     public IamUserDTO queryUserByUserId(Long id) {
-        List<Long> ids = new ArrayList<>();
         if (id == null) {
             return null;
         }
-        ids.add(id);
-        List<IamUserDTO> userES = this.listUsersByIds(ids);
-        if (userES != null && !userES.isEmpty()) {
-            return userES.get(0);
-        }
-        return null;
+        return iamLookupCache.getUserById(id, userId -> {
+            List<Long> ids = new ArrayList<>();
+            ids.add(userId);
+            List<IamUserDTO> userES = this.listUsersByIds(ids);
+            if (userES != null && !userES.isEmpty()) {
+                return userES.get(0);
+            }
+            return null;
+        });
     }
 
     public List<IamUserDTO> queryUsersByUserIds(List<Long> ids) {
@@ -269,12 +311,14 @@ public class BaseServiceClientOperator {
 
     public IamUserDTO queryByEmail(Long projectId, String email) {
         try {
-            ResponseEntity<Page<IamUserDTO>> userDOResponseEntity = baseServiceClient
-                    .listUsersByEmail(projectId, 0, 0, email);
-            if (userDOResponseEntity.getBody().getContent().isEmpty()) {
-                return null;
-            }
-            return userDOResponseEntity.getBody().getContent().get(0);
+            return iamLookupCache.getUserByEmail(projectId, email, key -> {
+                ResponseEntity<Page<IamUserDTO>> userDOResponseEntity = baseServiceClient
+                        .listUsersByEmail(projectId, 0, 0, email);
+                if (userDOResponseEntity.getBody().getContent().isEmpty()) {
+                    return null;
+                }
+                return userDOResponseEntity.getBody().getContent().get(0);
+            });
         } catch (Exception e) {
             LOGGER.error("get user by email {} error", email);
             return null;
@@ -440,16 +484,27 @@ public class BaseServiceClientOperator {
      * @return 用户信息
      */
     public IamUserDTO queryUserByLoginName(String loginName) {
+        IamUserDTO iamUserDTO;
         try {
-            ResponseEntity<IamUserDTO> responseEntity = baseServiceClient.queryByLoginName(loginName);
-            IamUserDTO iamUserDTO = responseEntity.getBody();
-            if (iamUserDTO == null || iamUserDTO.getId() == null) {
-                throw new CommonException("error.query.user.by.login.name", loginName);
-            }
-            return iamUserDTO;
+            iamUserDTO = iamLookupCache.getUserByLoginName(loginName, name -> {
+                ResponseEntity<IamUserDTO> responseEntity = baseServiceClient.queryByLoginName(name);
+                IamUserDTO result = responseEntity.getBody();
+                if (result == null) {
+                    return null;
+                }
+                // 错误的结果也会被反序列化为 IamUserDTO, 直接抛出, 不作为不存在的记录缓存
+                if (!responseEntity.getStatusCode().is2xxSuccessful() || result.getId() == null) {
+                    throw new CommonException("error.query.user.by.login.name", name);
+                }
+                return result;
+            });
         } catch (Exception ex) {
             throw new CommonException("error.query.user.by.login.name", loginName);
         }
+        if (iamUserDTO == null) {
+            throw new CommonException("error.query.user.by.login.name", loginName);
+        }
+        return iamUserDTO;
     }
 
     /**
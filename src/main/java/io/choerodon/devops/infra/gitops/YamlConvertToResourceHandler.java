@@ -3,12 +3,17 @@ package io.choerodon.devops.infra.gitops;
 import java.util.Map;
 import java.util.Objects;
 
+import com.google.gson.Gson;
 import io.kubernetes.client.JSON;
 
 import io.choerodon.devops.infra.exception.GitOpsExplainException;
 import io.choerodon.devops.infra.util.TypeUtil;
 
 public class YamlConvertToResourceHandler<T> {
+    /**
+     * Gson是线程安全的, 共用一个实例, 避免每次转换都重新注册类型适配器
+     */
+    private static final Gson GSON = new JSON().getGson();
 
     private Class<T> targetClass;
 
@@ -16,13 +21,15 @@ public class YamlConvertToResourceHandler<T> {
         this.targetClass = Objects.requireNonNull(targetClass);
     }
 
-    public T serializable(String yamlContent,
+    /**
+     * 将yaml解析出的Map直接转为对象, 不经过JSON字符串
+     */
+    public T serializable(Map<String, Object> data,
                           String filePath,
                           Map<String, String> objectPath) {
-        JSON json = new JSON();
         T result;
         try {
-            result = json.deserialize(yamlContent, targetClass);
+            result = GSON.fromJson(GSON.toJsonTree(data), targetClass);
         } catch (Exception e) {
             throw new GitOpsExplainException(e.getMessage(), filePath);
         }
@@ -2,6 +2,7 @@ package io.choerodon.devops.infra.handler;
 
 import java.util.Date;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 import org.hzero.core.util.AssertUtils;
 import org.slf4j.Logger;
@@ -74,6 +75,27 @@ public class CiPipelineSyncHandler {
      */
     public void syncPipeline(String pipelineStatus, Date lastUpdateDate,
                              Long pipelineRecordId, Integer gitlabPipelineId) {
+        syncPipeline(pipelineStatus, lastUpdateDate, pipelineRecordId, gitlabPipelineId,
+                () -> devopsCiJobRecordService.selectCountByCiPipelineRecordId(pipelineRecordId) == 0);
+    }
+
+    /**
+     * 判断是否需要异步地拉取gitlab中流水线的状态到数据库进行更新
+     * 用于调用方已经查询出了流水线的job纪录的情况, 不再查询job纪录的数量
+     *
+     * @param pipelineStatus   流水线状态
+     * @param lastUpdateDate   流水线最后更新时间
+     * @param pipelineRecordId 流水线纪录id
+     * @param gitlabPipelineId 对应的gitlab流水线纪录id
+     * @param jobRecordsEmpty  流水线纪录下是否没有job纪录
+     */
+    public void syncPipeline(String pipelineStatus, Date lastUpdateDate,
+                             Long pipelineRecordId, Integer gitlabPipelineId, boolean jobRecordsEmpty) {
+        syncPipeline(pipelineStatus, lastUpdateDate, pipelineRecordId, gitlabPipelineId, () -> jobRecordsEmpty);
+    }
+
+    private void syncPipeline(String pipelineStatus, Date lastUpdateDate,
+                              Long pipelineRecordId, Integer gitlabPipelineId, BooleanSupplier jobRecordsEmpty) {
         AssertUtils.notNull(pipelineStatus, "Pipeline status can't be null.");
         LOGGER.debug("Sync pipeline... status: {}, date: {}, pipelineRecordId: {}, gitlabPipelineId: {}", pipelineStatus, lastUpdateDate, pipelineRecordId, gitlabPipelineId);
 
@@ -100,7 +122,7 @@ public class CiPipelineSyncHandler {
         if (!PipelineStatus.SKIPPED.toValue().equals(pipelineStatus)) {
             // 如果流水线状态不是跳过, 但是job数据为空, 也进行同步
             if (beforeSeconds(lastUpdateDate, emptyStageThresholdMilliSeconds)
-                    && devopsCiJobRecordService.selectCountByCiPipelineRecordId(pipelineRecordId) == 0) {
+                    && jobRecordsEmpty.getAsBoolean()) {
                 if (inFetchPeriod(gitlabPipelineId)) {
                     return;
                 }
@@ -5,20 +5,17 @@ import static io.choerodon.devops.infra.constant.DevOpsWebSocketConstants.*;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 import javax.servlet.http.HttpServletRequest;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
 import io.choerodon.core.exception.CommonException;
-import io.choerodon.devops.api.vo.ClusterSessionVO;
 import io.choerodon.devops.app.service.DevopsClusterService;
 import io.choerodon.devops.infra.dto.DevopsClusterDTO;
 import io.choerodon.devops.infra.dto.iam.ProjectDTO;
@@ -41,8 +38,6 @@ public class ClusterConnectionHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(ClusterConnectionHandler.class);
 
     private Pattern pattern = Pattern.compile("^[-+]?[\\d]*$");
-    @Value("${agent.version}")
-    private String agentExpectVersion;
     @Value("${services.gitlab.sshUrl}")
     private String gitlabSshUrl;
     @Autowired
@@ -50,9 +45,9 @@ public class ClusterConnectionHandler {
     @Autowired
     private GitUtil gitUtil;
     @Autowired
-    private RedisTemplate<String, Object> redisTemplate;
-    @Autowired
     private DevopsClusterService devopsClusterService;
+    @Autowired
+    private ClusterSessionRegistry clusterSessionRegistry;
 
     /**
      * 检查集群的环境是否链接
@@ -72,10 +67,7 @@ public class ClusterConnectionHandler {
      * @return true 表示已连接
      */
     private boolean getEnvConnectionStatus(Long clusterId) {
-        Map<String, ClusterSessionVO> clusterSessions = (Map<String, ClusterSessionVO>) (Map) redisTemplate.opsForHash().entries(CLUSTER_SESSION);
-        return clusterSessions.values().stream()
-                .anyMatch(t -> clusterId.equals(t.getClusterId())
-                        && agentExpectVersion.equals(t.getVersion()));
+        return clusterSessionRegistry.isUpToDate(clusterId);
     }
 
     /**
@@ -85,11 +77,17 @@ public class ClusterConnectionHandler {
      * @return 环境更新列表
      */
     public List<Long> getUpdatedClusterList() {
-        Map<String, ClusterSessionVO> clusterSessions = (Map<String, ClusterSessionVO>) (Map) redisTemplate.opsForHash().entries(CLUSTER_SESSION);
-        return clusterSessions.values().stream()
-                .filter(clusterSessionVO -> agentExpectVersion.equals(clusterSessionVO.getVersion()))
-                .map(ClusterSessionVO::getClusterId)
-                .collect(Collectors.toCollection(ArrayList::new));
+        return new ArrayList<>(clusterSessionRegistry.getUpToDateClusterIds());
+    }
+
+    /**
+     * 不需要进行升级的已连接的集群 up-to-date
+     * 用于需要逐行判断集群是否连接的场景
+     *
+     * @return 不可修改的集群id集合
+     */
+    public Set<Long> getUpdatedClusterSet() {
+        return clusterSessionRegistry.getUpToDateClusterIds();
     }
 
 
@@ -0,0 +1,238 @@
+package io.choerodon.devops.infra.handler;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+/**
+ * 集群安装状态的轮询
+ * 多个集群的轮询在独立的有界线程池中并发进行, 每个集群的轮询有独立的截止时间, 超时的集群本轮不更新, 下一轮重新轮询;
+ * 轮询期间定时续期redis锁, 慢的主机不会使锁过期导致其它实例重复轮询;
+ * 轮询在执行不可重复的操作前先提交, 提交后不再超时, 它的结果一定会被写入, 避免操作执行了而结果被丢弃
+ *
+ * @author zmf
+ * @since 2021/8/10
+ */
+@Component
+public class ClusterInstallStatusPoller {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterInstallStatusPoller.class);
+    /**
+     * 锁的值是持有者的token时才续期
+     */
+    private static final RedisScript<Long> RENEW_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('expire', KEYS[1], ARGV[2]) else return 0 end", Long.class);
+    /**
+     * 锁的值是持有者的token时才删除
+     */
+    private static final RedisScript<Long> RELEASE_LOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end", Long.class);
+
+    /**
+     * 并发轮询的集群数量
+     */
+    @Value("${devops.cluster.install.poll.parallelism:8}")
+    private Integer parallelism;
+    /**
+     * 单个集群轮询的截止时间, 包括安装agent的时间
+     */
+    @Value("${devops.cluster.install.poll.timeoutSeconds:600}")
+    private Long timeoutSeconds;
+    /**
+     * 锁的租约时长, 轮询期间每隔三分之一租约续期一次
+     */
+    @Value("${devops.cluster.install.poll.lockLeaseSeconds:60}")
+    private Long lockLeaseSeconds;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    private ExecutorService pollExecutor;
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void initialize() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        pollExecutor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "cluster-install-poll-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-install-poll-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        pollExecutor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 获取redis锁后在当前线程执行, 执行期间锁定时续期, 执行完后释放
+     *
+     * @param lockKey 锁的key
+     * @param work    持有锁时执行的任务
+     * @return false表示锁被其它实例持有, 没有执行
+     */
+    public boolean runExclusively(String lockKey, Runnable work) {
+        String token = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForValue().setIfAbsent(lockKey, token, lockLeaseSeconds, TimeUnit.SECONDS))) {
+            return false;
+        }
+        long renewPeriodSeconds = Math.max(1, lockLeaseSeconds / 3);
+        ScheduledFuture<?> renewal = scheduler.scheduleAtFixedRate(() -> renewLock(lockKey, token),
+                renewPeriodSeconds, renewPeriodSeconds, TimeUnit.SECONDS);
+        try {
+            work.run();
+        } finally {
+            renewal.cancel(false);
+            try {
+                stringRedisTemplate.execute(RELEASE_LOCK_SCRIPT, Collections.singletonList(lockKey), token);
+            } catch (Exception ex) {
+                LOGGER.warn("Failed to release lock {}, it will expire in {} seconds", lockKey, lockLeaseSeconds, ex);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 并发执行多个集群的轮询, 阻塞直到所有集群完成或者超时
+     * 超时的轮询会被中断, 它对集群和操作记录的修改不应该再写入数据库; 已经提交的轮询不会超时
+     *
+     * @param tasks 集群的标识 -> 轮询任务
+     * @param <K>   集群标识的类型
+     * @return 在截止时间内完成或者已经提交的集群的标识
+     */
+    public <K> Set<K> pollAll(Map<K, PollTask> tasks) {
+        Set<K> completed = ConcurrentHashMap.newKeySet();
+        if (tasks.isEmpty()) {
+            return completed;
+        }
+        CountDownLatch remaining = new CountDownLatch(tasks.size());
+        tasks.forEach((key, task) -> {
+            try {
+                pollExecutor.execute(() -> poll(key, task, completed, remaining));
+            } catch (RejectedExecutionException ex) {
+                LOGGER.warn("Poll of cluster {} is rejected", key, ex);
+                remaining.countDown();
+            }
+        });
+        try {
+            remaining.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while waiting for install status of clusters, {} of {} finished", completed.size(), tasks.size());
+            // 返回快照, 之后完成的集群不再计入
+            return new HashSet<>(completed);
+        }
+        return completed;
+    }
+
+    private <K> void poll(K key, PollTask task, Set<K> completed, CountDownLatch remaining) {
+        PollState state = new PollState(Thread.currentThread());
+        // 截止时间从轮询开始时计算, 不包括排队时间
+        ScheduledFuture<?> deadline = scheduler.schedule(() -> {
+            if (state.timeout()) {
+                LOGGER.warn("Poll of cluster {} exceeded {} seconds, skip it in this round", key, timeoutSeconds);
+                remaining.countDown();
+            } else {
+                LOGGER.info("Poll of cluster {} exceeded {} seconds after it was committed, wait for it", key, timeoutSeconds);
+            }
+        }, timeoutSeconds, TimeUnit.SECONDS);
+        try {
+            task.poll(state::commit);
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to poll install status of cluster {}", key, ex);
+        } finally {
+            deadline.cancel(false);
+            if (state.finish()) {
+                completed.add(key);
+                remaining.countDown();
+            }
+            // 清除超时设置的中断标记, 不影响线程执行下一个任务
+            Thread.interrupted();
+        }
+    }
+
+    private void renewLock(String lockKey, String token) {
+        try {
+            Long renewed = stringRedisTemplate.execute(RENEW_LOCK_SCRIPT, Collections.singletonList(lockKey), token, String.valueOf(lockLeaseSeconds));
+            if (renewed == null || renewed == 0) {
+                LOGGER.warn("Lock {} is no longer held by this instance", lockKey);
+            }
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to renew lock {}", lockKey, ex);
+        }
+    }
+
+    /**
+     * 集群的轮询任务
+     */
+    @FunctionalInterface
+    public interface PollTask {
+        /**
+         * 轮询集群的安装状态
+         *
+         * @param commit 执行不可重复的操作(如安装agent、删除远程的文件)前调用, 返回true后轮询不再超时;
+         *               返回false表示已经超时, 这些操作不能再执行
+         */
+        void poll(BooleanSupplier commit);
+    }
+
+    /**
+     * 轮询的结束和超时只有一个生效, 中断只会在轮询结束前发生; 提交后不再超时
+     */
+    private static class PollState {
+        private final Thread worker;
+        private boolean done;
+        private boolean committed;
+
+        private PollState(Thread worker) {
+            this.worker = worker;
+        }
+
+        synchronized boolean timeout() {
+            if (done || committed) {
+                return false;
+            }
+            done = true;
+            worker.interrupt();
+            return true;
+        }
+
+        synchronized boolean commit() {
+            if (done) {
+                return false;
+            }
+            committed = true;
+            return true;
+        }
+
+        synchronized boolean finish() {
+            if (done) {
+                return false;
+            }
+            done = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package io.choerodon.devops.infra.handler;
+
+import static io.choerodon.devops.infra.handler.ClusterConnectionHandler.CLUSTER_SESSION;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.devops.api.vo.ClusterSessionVO;
+
+/**
+ * 本地的集群连接信息注册表
+ * 缓存已连接且agent版本为最新的集群id, 避免每次判断集群是否连接都从redis中读取所有的集群连接信息
+ * <p>
+ * 集群的连接信息仍然以redis中的 {@link ClusterConnectionHandler#CLUSTER_SESSION} 为准,
+ * 任一实例上agent连接或断开后, 会通过redis的频道通知所有实例重新加载,
+ * 同时定时从redis全量加载, 以免丢失通知导致数据不一致
+ *
+ * @author zmf
+ * @since 2021/8/3
+ */
+@Component
+public class ClusterSessionRegistry {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClusterSessionRegistry.class);
+
+    /**
+     * 集群连接信息变化的通知频道
+     */
+    public static final String CLUSTER_SESSION_CHANNEL = "devops-service:cluster-sessions-changed";
+
+    @Value("${agent.version}")
+    private String agentExpectVersion;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+    @Autowired
+    private RedisConnectionFactory redisConnectionFactory;
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 已连接且不需要升级的集群id的快照, 只整体替换, 不修改
+     */
+    private volatile Set<Long> upToDateClusterIds = Collections.emptySet();
+
+    @PostConstruct
+    void init() {
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(redisConnectionFactory);
+        listenerContainer.addMessageListener((message, pattern) -> reload(), new ChannelTopic(CLUSTER_SESSION_CHANNEL));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+        reload();
+    }
+
+    @PreDestroy
+    void destroy() throws Exception {
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+    }
+
+    /**
+     * 获取已连接且不需要升级的集群id
+     *
+     * @return 不可修改的集合
+     */
+    public Set<Long> getUpToDateClusterIds() {
+        return upToDateClusterIds;
+    }
+
+    /**
+     * 集群是否已连接且不需要升级
+     *
+     * @param clusterId 集群id
+     * @return true表示已连接
+     */
+    public boolean isUpToDate(Long clusterId) {
+        return clusterId != null && upToDateClusterIds.contains(clusterId);
+    }
+
+    /**
+     * 本实例修改了集群连接信息后调用, 立即重新加载本地的数据并通知其他实例
+     */
+    public void notifyChanged() {
+        reload();
+        try {
+            redisTemplate.convertAndSend(CLUSTER_SESSION_CHANNEL, String.valueOf(System.currentTimeMillis()));
+        } catch (Exception ex) {
+            // 通知失败时其他实例依赖定时的全量加载来纠正
+            LOGGER.warn("Failed to publish cluster session change", ex);
+        }
+    }
+
+    /**
+     * 定时全量加载, 防止丢失通知
+     */
+    @Scheduled(fixedDelayString = "${devops.cluster.session.reconcileMilliSeconds:60000}")
+    public void reconcile() {
+        Set<Long> previous = upToDateClusterIds;
+        reload();
+        if (!previous.equals(upToDateClusterIds)) {
+            LOGGER.info("Cluster session registry is reconciled. The up-to-date cluster count changed from {} to {}", previous.size(), upToDateClusterIds.size());
+        }
+    }
+
+    private synchronized void reload() {
+        try {
+            Map<Object, Object> entries = redisTemplate.opsForHash().entries(CLUSTER_SESSION);
+            Set<Long> clusterIds = new HashSet<>(entries.size() * 2);
+            for (Object value : entries.values()) {
+                if (value instanceof ClusterSessionVO) {
+                    ClusterSessionVO clusterSessionVO = (ClusterSessionVO) value;
+                    if (agentExpectVersion.equals(clusterSessionVO.getVersion()) && clusterSessionVO.getClusterId() != null) {
+                        clusterIds.add(clusterSessionVO.getClusterId());
+                    }
+                }
+            }
+            upToDateClusterIds = Collections.unmodifiableSet(clusterIds);
+        } catch (Exception ex) {
+            // 加载失败时保留旧的数据
+            LOGGER.warn("Failed to load cluster sessions from redis", ex);
+        }
+    }
+}
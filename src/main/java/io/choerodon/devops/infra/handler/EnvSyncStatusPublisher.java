@@ -0,0 +1,166 @@
+package io.choerodon.devops.infra.handler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+import org.hzero.websocket.helper.KeySocketSendHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.choerodon.devops.api.vo.EnvSyncStatusVO;
+import io.choerodon.devops.infra.util.JsonHelper;
+
+/**
+ * 环境GitOps同步状态的缓存和推送
+ * 同步的commit更新后写入redis并推送给订阅了这个环境的前端, 前端打开页面时从redis读取当前状态, 不需要轮询;
+ * 缓存在redis的hash中, 字段是agentSyncCommit, devopsSyncCommit, sagaSyncCommit和commitUrl
+ * <p>
+ * 前端以group参数 env-sync:{envId} 连接websocket, 收到的消息的key为 env-sync-status,
+ * 内容只包含变化的字段, 字段名与{@link EnvSyncStatusVO}相同
+ *
+ * @author zmf
+ * @since 2021/8/10
+ */
+@Component
+public class EnvSyncStatusPublisher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EnvSyncStatusPublisher.class);
+
+    public static final String GROUP = "env-sync:";
+    public static final String MESSAGE_KEY = "env-sync-status";
+
+    private static final String REDIS_KEY_TEMPLATE = "devops-service:env-sync-status:%s";
+    private static final String AGENT_SYNC_COMMIT = "agentSyncCommit";
+    private static final String DEVOPS_SYNC_COMMIT = "devopsSyncCommit";
+    private static final String SAGA_SYNC_COMMIT = "sagaSyncCommit";
+    private static final String COMMIT_URL = "commitUrl";
+
+    @Value("${devops.env.syncStatus.expireSeconds:86400}")
+    private Long expireSeconds;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private KeySocketSendHelper webSocketHelper;
+
+    /**
+     * 查询缓存的同步状态
+     *
+     * @param envId 环境id
+     * @return 没有缓存时为null
+     */
+    @Nullable
+    public EnvSyncStatusVO get(Long envId) {
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(redisKey(envId),
+                Arrays.asList(AGENT_SYNC_COMMIT, DEVOPS_SYNC_COMMIT, SAGA_SYNC_COMMIT, COMMIT_URL));
+        // commitUrl只在从数据库加载时写入, 没有它说明缓存不完整
+        if (values.get(3) == null) {
+            return null;
+        }
+        EnvSyncStatusVO envSyncStatusVO = new EnvSyncStatusVO();
+        envSyncStatusVO.setAgentSyncCommit((String) values.get(0));
+        envSyncStatusVO.setDevopsSyncCommit((String) values.get(1));
+        envSyncStatusVO.setSagaSyncCommit((String) values.get(2));
+        envSyncStatusVO.setCommitUrl((String) values.get(3));
+        return envSyncStatusVO;
+    }
+
+    /**
+     * 缓存从数据库加载的同步状态
+     * 只写入还没有的字段, 加载期间推送的更新的commit不会被覆盖
+     *
+     * @param envId           环境id
+     * @param envSyncStatusVO 同步状态
+     */
+    public void putLoaded(Long envId, EnvSyncStatusVO envSyncStatusVO) {
+        String key = redisKey(envId);
+        putIfAbsent(key, AGENT_SYNC_COMMIT, envSyncStatusVO.getAgentSyncCommit());
+        putIfAbsent(key, DEVOPS_SYNC_COMMIT, envSyncStatusVO.getDevopsSyncCommit());
+        putIfAbsent(key, SAGA_SYNC_COMMIT, envSyncStatusVO.getSagaSyncCommit());
+        putIfAbsent(key, COMMIT_URL, envSyncStatusVO.getCommitUrl());
+        stringRedisTemplate.expire(key, expireSeconds, TimeUnit.SECONDS);
+    }
+
+    public void publishAgentSyncCommit(Long envId, @Nullable String commitSha) {
+        publish(envId, AGENT_SYNC_COMMIT, commitSha);
+    }
+
+    public void publishDevopsSyncCommit(Long envId, @Nullable String commitSha) {
+        publish(envId, DEVOPS_SYNC_COMMIT, commitSha);
+    }
+
+    public void publishSagaSyncCommit(Long envId, @Nullable String commitSha) {
+        publish(envId, SAGA_SYNC_COMMIT, commitSha);
+    }
+
+    /**
+     * 环境删除后调用
+     *
+     * @param envId 环境id
+     */
+    public void evict(Long envId) {
+        stringRedisTemplate.delete(redisKey(envId));
+    }
+
+    /**
+     * 在事务提交后更新缓存并推送, 事务回滚时不会推送未生效的commit
+     */
+    private void publish(Long envId, String field, @Nullable String commitSha) {
+        if (envId == null || commitSha == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    doPublish(envId, field, commitSha);
+                }
+            });
+        } else {
+            doPublish(envId, field, commitSha);
+        }
+    }
+
+    private void doPublish(Long envId, String field, String commitSha) {
+        try {
+            String key = redisKey(envId);
+            stringRedisTemplate.opsForHash().put(key, field, commitSha);
+            stringRedisTemplate.expire(key, expireSeconds, TimeUnit.SECONDS);
+
+            Map<String, String> message = new HashMap<>(1);
+            message.put(field, commitSha);
+            webSocketHelper.sendByGroup(GROUP + envId, MESSAGE_KEY, JsonHelper.marshalByJackson(message));
+        } catch (Exception e) {
+            // 推送失败不影响同步, 删除缓存让下次查询从数据库加载
+            LOGGER.warn("Failed to publish {} {} of env {}", field, commitSha, envId, e);
+            evictQuietly(envId);
+        }
+    }
+
+    private void evictQuietly(Long envId) {
+        try {
+            evict(envId);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to evict the sync status of env {}", envId, e);
+        }
+    }
+
+    private void putIfAbsent(String key, String field, @Nullable String value) {
+        if (value != null) {
+            stringRedisTemplate.opsForHash().putIfAbsent(key, field, value);
+        }
+    }
+
+    private static String redisKey(Long envId) {
+        return String.format(REDIS_KEY_TEMPLATE, envId);
+    }
+}
@@ -0,0 +1,637 @@
+package io.choerodon.devops.infra.handler;
+
+import static io.choerodon.devops.infra.constant.MiscConstants.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.google.common.util.concurrent.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hzero.core.base.BaseConstants;
+import org.hzero.core.util.UUIDUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.core.convertor.ApplicationContextHelper;
+import io.choerodon.devops.app.service.DevopsUserSyncRecordService;
+import io.choerodon.devops.app.service.GitlabUserService;
+import io.choerodon.devops.app.service.UserAttrService;
+import io.choerodon.devops.infra.constant.GitOpsConstants;
+import io.choerodon.devops.infra.dto.DevopsUserSyncRecordDTO;
+import io.choerodon.devops.infra.dto.iam.IamUserDTO;
+import io.choerodon.devops.infra.enums.UserSyncType;
+import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator;
+import io.choerodon.devops.infra.util.LogUtil;
+import io.choerodon.devops.infra.util.UserSyncErrorBuilder;
+
+/**
+ * 分片并行的gitlab用户同步
+ * <p>
+ * 获取到同步用户的分布式锁的实例作为协调者, 将未同步的用户按id排序后切分成互不相交的分片放入redis的队列,
+ * 并通过redis的频道通知所有实例; 每个实例(包括协调者)通过 RPOPLPUSH 原子地认领分片, 在本地的工作线程中
+ * 并发同步分片中的用户, 对gitlab的请求由令牌桶限速. 每处理完一个分片, 将结果累加到同步记录中作为检查点.
+ * <p>
+ * 认领分片的实例会持续续期分片的租约, 协调者发现租约过期(实例停止)的分片后将其重新放回队列.
+ * 协调者中断后, 下次同步会继续未结束的同步记录, 已经同步成功的用户不会再次同步.
+ * <p>
+ * 每次同步的分片、租约等redis的key都带有这次同步的id; 继续中断的同步前, 先停止认领上次的分片,
+ * 并等待上次仍持有租约的分片处理完, 再重新计算未同步的用户, 避免同一个用户被新旧两次同步同时处理.
+ *
+ * @author zmf
+ * @since 2021/8/7
+ */
+@Component
+public class GitlabUserSyncEngine {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GitlabUserSyncEngine.class);
+
+    /**
+     * 开始同步的通知频道, 消息内容为同步记录的id
+     */
+    public static final String USER_SYNC_CHANNEL = "devops-service:user-sync-started";
+
+    /**
+     * 正在进行的同步, 内容为 同步记录id:同步id
+     */
+    private static final String RUN_KEY = USER_SYNC_REDIS_KEY + ":run";
+
+    private static final String METRIC_USERS = "devops.user.sync.users";
+    private static final String METRIC_REMAINING = "devops.user.sync.remaining";
+    private static final String METRIC_ETA = "devops.user.sync.eta.seconds";
+    private static final String TAG_RESULT = "result";
+
+    private static final String ANONYMOUS_USER_LOGIN_NAME = "ANONYMOUS";
+    /**
+     * 创建的用户邮箱重复的失败信息
+     */
+    private static final String GITLAB_USER_EMAIL_DUPLICATED_MESSAGE = "Email has already been taken";
+    /**
+     * 分布式锁持有的时间
+     */
+    private static final long LOCK_HOLD_MINUTES = 10;
+    private static final int USER_ERROR_MAX_LENGTH = 300;
+    private static final String SHARD_INDEX_SEPARATOR = ":";
+    /**
+     * 进度指标缓存的时间, 避免每次采集指标都读取redis
+     */
+    private static final long PROGRESS_CACHE_MILLIS = 15000;
+
+    /**
+     * 每个分片的用户数量
+     */
+    @Value("${devops.user.sync.shardSize:100}")
+    private Integer shardSize;
+    /**
+     * 每个实例同步用户的并发数
+     */
+    @Value("${devops.user.sync.concurrency:4}")
+    private Integer concurrency;
+    /**
+     * 每个实例每秒最多开始同步的用户数量
+     */
+    @Value("${devops.user.sync.permitsPerSecond:5}")
+    private Double permitsPerSecond;
+    /**
+     * 分片的租约时长, 超过这个时间没有续期的分片会被重新分配
+     */
+    @Value("${devops.user.sync.leaseSeconds:120}")
+    private Long leaseSeconds;
+    /**
+     * 协调者检查分片是否处理完的间隔
+     */
+    @Value("${devops.user.sync.awaitIntervalSeconds:5}")
+    private Long awaitIntervalSeconds;
+    /**
+     * 用户请求连续失败的阈值, 超过阈值，暂停一段时间
+     */
+    @Value("${devops.user.userFailureThreshold:10}")
+    private int userFailureThreshold;
+    /**
+     * 达到阈值后，暂停的时间
+     */
+    @Value("${devops.user.failureSleepSeconds:20}")
+    private int failureSleepSeconds;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisConnectionFactory redisConnectionFactory;
+    @Autowired
+    private UserAttrService userAttrService;
+    @Autowired
+    private BaseServiceClientOperator baseServiceClientOperator;
+    @Autowired
+    private DevopsUserSyncRecordService devopsUserSyncRecordService;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    @Qualifier(GitOpsConstants.USER_SYNC_EXECUTOR)
+    private AsyncTaskExecutor userSyncExecutor;
+
+    private final String instanceId = UUIDUtils.generateUUID();
+    /**
+     * 本实例是否正在处理分片
+     */
+    private final AtomicBoolean working = new AtomicBoolean();
+    /**
+     * 连续失败(不包含邮箱重复导致的失败)的次数
+     */
+    private final AtomicInteger consecutiveFailedCount = new AtomicInteger();
+    /**
+     * 连续失败达到阈值后, 暂停到这个时间
+     */
+    private volatile long pausedUntil;
+    /**
+     * 缓存的同步进度, 由进度指标共用
+     */
+    private volatile ProgressSnapshot progressSnapshot;
+
+    private ExecutorService workerPool;
+    private RateLimiter rateLimiter;
+    private RedisMessageListenerContainer listenerContainer;
+    private Counter successCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "user-sync-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        rateLimiter = RateLimiter.create(permitsPerSecond);
+
+        successCounter = Counter.builder(METRIC_USERS).tag(TAG_RESULT, "success")
+                .description("Users synced to gitlab by this instance")
+                .register(meterRegistry);
+        failedCounter = Counter.builder(METRIC_USERS).tag(TAG_RESULT, "failed")
+                .description("Users failed to sync to gitlab by this instance")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_REMAINING, this, engine -> engine.progressMetric(false))
+                .description("Users remaining in the running user sync")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_ETA, this, engine -> engine.progressMetric(true))
+                .description("Estimated seconds to finish the running user sync")
+                .register(meterRegistry);
+
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(redisConnectionFactory);
+        listenerContainer.addMessageListener((message, pattern) -> joinAsync(), new ChannelTopic(USER_SYNC_CHANNEL));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+        // 启动时如果有正在进行的同步, 直接加入
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(RUN_KEY))) {
+            joinAsync();
+        }
+    }
+
+    @PreDestroy
+    void destroy() throws Exception {
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+        workerPool.shutdownNow();
+    }
+
+    /**
+     * 尝试作为协调者同步所有未同步的用户, 已经有实例在协调时直接返回
+     *
+     * @param userSyncType 触发同步的来源类型
+     */
+    public void sync(UserSyncType userSyncType) {
+        Boolean ownLock = stringRedisTemplate.opsForValue().setIfAbsent(USER_SYNC_REDIS_KEY, instanceId, LOCK_HOLD_MINUTES, TimeUnit.MINUTES);
+        if (!Boolean.TRUE.equals(ownLock)) {
+            LOGGER.info("Failed to get lock to sync users. So skip...");
+            return;
+        }
+        try {
+            DevopsUserSyncRecordDTO record = devopsUserSyncRecordService.resumeOrInitRecord(userSyncType);
+            SyncRun previousRun = SyncRun.parse(stringRedisTemplate.opsForValue().get(RUN_KEY));
+            if (previousRun != null) {
+                drainPreviousRun(previousRun);
+            }
+
+            Set<Long> pendingUserIds = listPendingUserIds();
+            if (pendingUserIds.isEmpty()) {
+                // 未同步用户也发送一次记录
+                if (record.getSuccessCount() != null && record.getSuccessCount() > 0) {
+                    devopsUserSyncRecordService.finish(record.getId(), new UserSyncErrorBuilder().build());
+                } else {
+                    devopsUserSyncRecordService.finishEmptyRecord(record.getId());
+                }
+                return;
+            }
+
+            long start = System.currentTimeMillis();
+            SyncRun run = new SyncRun(record.getId(), UUIDUtils.generateUUID());
+            publishShards(run, pendingUserIds);
+            work(run);
+            awaitShards(run);
+
+            devopsUserSyncRecordService.finish(record.getId(), collectErrors(run));
+            stringRedisTemplate.delete(Arrays.asList(RUN_KEY, run.shardsKey, run.processingKey, run.errorsKey,
+                    USER_SYNC_PROCESSED_REDIS_KEY, USER_SYNC_TOTAL_REDIS_KEY, USER_SYNC_START_REDIS_KEY));
+            LOGGER.info("Successfully sync {} users in {} seconds", pendingUserIds.size(), TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - start));
+        } catch (Exception ex) {
+            // 同步记录保持同步中, 这次同步的分片留在redis中, 下次同步时等待仍在处理的分片完成后继续
+            LOGGER.warn("Failed to sync user. ", ex);
+        } finally {
+            stringRedisTemplate.delete(USER_SYNC_REDIS_KEY);
+        }
+    }
+
+    /**
+     * 按照本次同步开始以来的平均速度估算剩余时间
+     *
+     * @param processed   已处理的数量
+     * @param total       总数
+     * @param startMillis 开始的时间戳
+     * @return 剩余的秒数, 还没有处理任何用户时为空
+     */
+    @Nullable
+    public static Long estimateEtaSeconds(long processed, long total, long startMillis) {
+        if (processed <= 0) {
+            return null;
+        }
+        long elapsedMillis = System.currentTimeMillis() - startMillis;
+        return TimeUnit.MILLISECONDS.toSeconds(elapsedMillis * Math.max(total - processed, 0) / processed);
+    }
+
+    private Set<Long> listPendingUserIds() {
+        // 查询iam所有的用户的count, 去掉匿名用户的数量
+        int iamUserCount = baseServiceClientOperator.queryAllUserCount() - 1;
+        int devopsUserCount = userAttrService.allUserCount();
+
+        // 和devops-service的devops-user表的纪录进行对照
+        // 如果数量不对，请求iam，查询所有的用户的id，
+        if (iamUserCount <= devopsUserCount) {
+            LOGGER.info("The iamUserCount {} is less than devopsUserCount {}, so skip syncing", iamUserCount, devopsUserCount);
+            return Collections.emptySet();
+        }
+        LOGGER.info("The iamUserCount is {} and the devopsUserCount is {}", iamUserCount, devopsUserCount);
+        Set<Long> devopsUsers = userAttrService.allUserIds();
+        Set<Long> iamUsers = baseServiceClientOperator.queryAllUserIds();
+
+        // 移除在devops中已有的数据
+        iamUsers.removeAll(devopsUsers);
+        LOGGER.info("There are {} users to be synced", iamUsers.size());
+        return iamUsers;
+    }
+
+    /**
+     * 停止认领上次同步剩余的分片, 等待仍持有租约的分片处理完, 然后清除上次同步的数据
+     * 剩余分片中的用户会在这次同步中重新计算
+     */
+    private void drainPreviousRun(SyncRun previousRun) throws InterruptedException {
+        stringRedisTemplate.delete(previousRun.shardsKey);
+        // 连续两次检查都没有租约的分片才放弃, 避免刚认领还没有设置租约的分片被同时处理
+        Set<String> suspected = new HashSet<>();
+        while (true) {
+            refreshLockIfOwned();
+            List<String> processing = stringRedisTemplate.opsForList().range(previousRun.processingKey, 0, -1);
+            if (processing == null || processing.isEmpty()) {
+                break;
+            }
+            Set<String> currentSuspected = new HashSet<>();
+            for (String shard : processing) {
+                if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(previousRun.leaseKey(shard)))) {
+                    continue;
+                }
+                if (!suspected.contains(shard)) {
+                    currentSuspected.add(shard);
+                } else {
+                    LOGGER.info("User sync: the lease of shard {} in the previous run expired, drop it", previousRun.leaseKey(shard));
+                    stringRedisTemplate.opsForList().remove(previousRun.processingKey, 1, shard);
+                }
+            }
+            suspected = currentSuspected;
+            LOGGER.info("User sync: waiting for {} shards of the previous run", processing.size());
+            TimeUnit.SECONDS.sleep(awaitIntervalSeconds);
+        }
+        stringRedisTemplate.delete(Arrays.asList(RUN_KEY, previousRun.processingKey, previousRun.errorsKey));
+    }
+
+    private void publishShards(SyncRun run, Set<Long> pendingUserIds) {
+        List<Long> userIds = new ArrayList<>(pendingUserIds);
+        Collections.sort(userIds);
+        List<String> shards = new ArrayList<>();
+        for (int from = 0, index = 0; from < userIds.size(); from += shardSize, index++) {
+            String ids = userIds.subList(from, Math.min(from + shardSize, userIds.size()))
+                    .stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(BaseConstants.Symbol.COMMA));
+            shards.add(index + SHARD_INDEX_SEPARATOR + ids);
+        }
+
+        Map<String, String> progress = new HashMap<>();
+        progress.put(USER_SYNC_PROCESSED_REDIS_KEY, "0");
+        progress.put(USER_SYNC_TOTAL_REDIS_KEY, String.valueOf(userIds.size()));
+        progress.put(USER_SYNC_START_REDIS_KEY, String.valueOf(System.currentTimeMillis()));
+        stringRedisTemplate.opsForValue().multiSet(progress);
+        devopsUserSyncRecordService.start(run.recordId, userIds.size());
+
+        stringRedisTemplate.opsForList().rightPushAll(run.shardsKey, shards);
+        stringRedisTemplate.opsForValue().set(RUN_KEY, run.toValue());
+        LOGGER.info("User sync: {} users are split into {} shards", userIds.size(), shards.size());
+        try {
+            stringRedisTemplate.convertAndSend(USER_SYNC_CHANNEL, String.valueOf(run.recordId));
+        } catch (Exception ex) {
+            // 通知失败时只由协调者处理
+            LOGGER.warn("Failed to publish user sync start", ex);
+        }
+    }
+
+    private void joinAsync() {
+        try {
+            userSyncExecutor.execute(() -> {
+                SyncRun run = SyncRun.parse(stringRedisTemplate.opsForValue().get(RUN_KEY));
+                if (run != null) {
+                    LOGGER.info("Join the user sync with record id {}", run.recordId);
+                    work(run);
+                }
+            });
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to join the user sync", ex);
+        }
+    }
+
+    /**
+     * 认领并处理分片, 直到队列中没有分片
+     */
+    private void work(SyncRun run) {
+        if (!working.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            String shard;
+            while ((shard = stringRedisTemplate.opsForList().rightPopAndLeftPush(run.shardsKey, run.processingKey)) != null) {
+                processShard(run, shard);
+                refreshLockIfOwned();
+            }
+        } finally {
+            working.set(false);
+        }
+    }
+
+    private void processShard(SyncRun run, String shard) {
+        int separatorIndex = shard.indexOf(SHARD_INDEX_SEPARATOR);
+        String leaseKey = run.leaseKey(shard);
+        renewLease(leaseKey);
+
+        Long[] userIds = Arrays.stream(shard.substring(separatorIndex + 1).split(BaseConstants.Symbol.COMMA))
+                .map(Long::valueOf)
+                .toArray(Long[]::new);
+        AtomicLong successCount = new AtomicLong();
+        List<String> errorLines = Collections.synchronizedList(new ArrayList<>());
+        try {
+            // 查询用户信息
+            List<IamUserDTO> users = baseServiceClientOperator.listUsersByIds(userIds, false);
+            List<Future<?>> futures = users.stream()
+                    .map(user -> workerPool.submit(() -> syncUser(user, leaseKey, successCount, errorLines)))
+                    .collect(Collectors.toList());
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.info("User sync: interrupted when processing shard {}", leaseKey);
+            return;
+        } catch (Exception ex) {
+            LOGGER.warn("User sync: failed to process shard {}", leaseKey, ex);
+            String errorMessage = LogUtil.deleteNewLine(LogUtil.cutOutString(LogUtil.readContentOfThrowable(ex), USER_ERROR_MAX_LENGTH));
+            errorLines.add(UserSyncErrorBuilder.buildErrorLine(null, null, null, errorMessage));
+        }
+
+        // 检查点: 累加这个分片的结果
+        devopsUserSyncRecordService.checkpoint(run.recordId, successCount.get(), errorLines.size());
+        if (!errorLines.isEmpty()) {
+            stringRedisTemplate.opsForList().rightPushAll(run.errorsKey, errorLines);
+        }
+        stringRedisTemplate.opsForValue().increment(USER_SYNC_PROCESSED_REDIS_KEY, userIds.length);
+        stringRedisTemplate.opsForList().remove(run.processingKey, 1, shard);
+        stringRedisTemplate.delete(leaseKey);
+    }
+
+    private void syncUser(IamUserDTO user, String leaseKey, AtomicLong successCount, List<String> errorLines) {
+        if (ANONYMOUS_USER_LOGIN_NAME.equals(user.getLoginName())) {
+            // 跳过匿名用户
+            return;
+        }
+        // 用户的邮箱不能为空
+        if (user.getEmail() == null) {
+            addErrorUser(errorLines, user, "The email for user can't be null");
+            return;
+        }
+
+        waitIfPaused();
+        rateLimiter.acquire();
+        long start = System.currentTimeMillis();
+        try {
+            // 这么调用, 是解决事务代理不生效问题
+            ApplicationContextHelper.getContext().getBean(GitlabUserService.class).syncUserInNewTx(user);
+            // 成功则将连续失败计数清0
+            consecutiveFailedCount.set(0);
+            successCount.incrementAndGet();
+            successCounter.increment();
+            LOGGER.debug("User sync: {} ms used for user {}", System.currentTimeMillis() - start, user.getLoginName());
+        } catch (Exception ex) {
+            addErrorUser(errorLines, user, handleExWhenSyncingUser(ex, user));
+        } finally {
+            renewLease(leaseKey);
+        }
+    }
+
+    private void addErrorUser(List<String> errorLines, IamUserDTO user, String errorMessage) {
+        errorLines.add(UserSyncErrorBuilder.buildErrorLine(user.getId(), user.getRealName(), user.getLoginName(), errorMessage));
+        failedCounter.increment();
+    }
+
+    private String handleExWhenSyncingUser(Exception ex, IamUserDTO user) {
+        // 吞掉并打印异常
+        String exTrace = LogUtil.readContentOfThrowable(ex);
+        // 这个错误信息在gitlab版本改变后，可能会变
+        if (exTrace.contains(GITLAB_USER_EMAIL_DUPLICATED_MESSAGE)) {
+            LOGGER.warn("User sync: user with name {} and id {} failed due to duplicated email", user.getLoginName(), user.getId());
+        } else {
+            LOGGER.warn("Failed to sync user: {}, and the id is : {}", user.getLoginName(), user.getId());
+            LOGGER.warn("The ex is : {}", exTrace);
+            // 如果连续失败不是因为邮箱重复且超过一个阈值，认为某个服务不可用了，所有工作线程暂停一会
+            if (consecutiveFailedCount.incrementAndGet() >= userFailureThreshold) {
+                LOGGER.info("User sync: After failed {} times, pause {} seconds.", userFailureThreshold, failureSleepSeconds);
+                pausedUntil = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(failureSleepSeconds);
+                // 给两次机会
+                consecutiveFailedCount.addAndGet(-2);
+            }
+        }
+        // 代替换行
+        return LogUtil.deleteNewLine(LogUtil.cutOutString(exTrace, USER_ERROR_MAX_LENGTH));
+    }
+
+    private void waitIfPaused() {
+        long waitMillis = pausedUntil - System.currentTimeMillis();
+        if (waitMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.info("InterruptedException: ", e);
+            }
+        }
+    }
+
+    /**
+     * 等待所有分片处理完成, 将租约过期的分片重新放回队列
+     */
+    private void awaitShards(SyncRun run) throws InterruptedException {
+        // 连续两次检查都没有租约的分片才重新分配, 避免刚认领还没有设置租约的分片被重复处理
+        Set<String> suspected = new HashSet<>();
+        while (true) {
+            refreshLockIfOwned();
+            Long pendingSize = stringRedisTemplate.opsForList().size(run.shardsKey);
+            List<String> processing = stringRedisTemplate.opsForList().range(run.processingKey, 0, -1);
+            if ((pendingSize == null || pendingSize == 0) && (processing == null || processing.isEmpty())) {
+                return;
+            }
+
+            Set<String> currentSuspected = new HashSet<>();
+            if (processing != null) {
+                for (String shard : processing) {
+                    String leaseKey = run.leaseKey(shard);
+                    if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(leaseKey))) {
+                        continue;
+                    }
+                    if (!suspected.contains(shard)) {
+                        currentSuspected.add(shard);
+                    } else if (Objects.equals(stringRedisTemplate.opsForList().remove(run.processingKey, 1, shard), 1L)) {
+                        LOGGER.info("User sync: the lease of shard {} expired, requeue it", leaseKey);
+                        stringRedisTemplate.opsForList().leftPush(run.shardsKey, shard);
+                    }
+                }
+            }
+            suspected = currentSuspected;
+
+            work(run);
+            TimeUnit.SECONDS.sleep(awaitIntervalSeconds);
+        }
+    }
+
+    private String collectErrors(SyncRun run) {
+        UserSyncErrorBuilder userSyncErrorBuilder = new UserSyncErrorBuilder();
+        List<String> errorLines = stringRedisTemplate.opsForList().range(run.errorsKey, 0, -1);
+        if (errorLines != null) {
+            errorLines.forEach(userSyncErrorBuilder::addErrorLine);
+        }
+        return userSyncErrorBuilder.build();
+    }
+
+    private void renewLease(String leaseKey) {
+        stringRedisTemplate.opsForValue().set(leaseKey, instanceId, leaseSeconds, TimeUnit.SECONDS);
+    }
+
+    private void refreshLockIfOwned() {
+        if (instanceId.equals(stringRedisTemplate.opsForValue().get(USER_SYNC_REDIS_KEY))) {
+            stringRedisTemplate.expire(USER_SYNC_REDIS_KEY, LOCK_HOLD_MINUTES, TimeUnit.MINUTES);
+        }
+    }
+
+    private double progressMetric(boolean eta) {
+        long now = System.currentTimeMillis();
+        ProgressSnapshot snapshot = progressSnapshot;
+        if (snapshot == null || now - snapshot.loadedMillis >= PROGRESS_CACHE_MILLIS) {
+            snapshot = loadProgress(now);
+            progressSnapshot = snapshot;
+        }
+        return eta ? snapshot.etaSeconds : snapshot.remaining;
+    }
+
+    private ProgressSnapshot loadProgress(long now) {
+        try {
+            List<String> values = stringRedisTemplate.opsForValue().multiGet(Arrays.asList(
+                    USER_SYNC_PROCESSED_REDIS_KEY, USER_SYNC_TOTAL_REDIS_KEY, USER_SYNC_START_REDIS_KEY));
+            if (values == null || values.get(0) == null || values.get(1) == null || values.get(2) == null) {
+                return new ProgressSnapshot(now, 0, 0);
+            }
+            long processed = Long.parseLong(values.get(0));
+            long total = Long.parseLong(values.get(1));
+            Long etaSeconds = estimateEtaSeconds(processed, total, Long.parseLong(values.get(2)));
+            return new ProgressSnapshot(now, Math.max(total - processed, 0), etaSeconds == null ? Double.NaN : etaSeconds);
+        } catch (Exception ex) {
+            LOGGER.debug("Failed to read user sync progress", ex);
+            return new ProgressSnapshot(now, Double.NaN, Double.NaN);
+        }
+    }
+
+    /**
+     * 一次同步的redis的key
+     */
+    private static class SyncRun {
+        private final Long recordId;
+        private final String runId;
+        private final String shardsKey;
+        private final String processingKey;
+        private final String errorsKey;
+        private final String leaseKeyPrefix;
+
+        SyncRun(Long recordId, String runId) {
+            this.recordId = recordId;
+            this.runId = runId;
+            String prefix = USER_SYNC_REDIS_KEY + ":" + runId;
+            this.shardsKey = prefix + ":shards";
+            this.processingKey = prefix + ":processing";
+            this.errorsKey = prefix + ":errors";
+            this.leaseKeyPrefix = prefix + ":lease:";
+        }
+
+        /**
+         * 解析 {@link #RUN_KEY} 的内容
+         *
+         * @return 没有正在进行的同步时为空
+         */
+        @Nullable
+        static SyncRun parse(@Nullable String value) {
+            int separatorIndex = value == null ? -1 : value.indexOf(SHARD_INDEX_SEPARATOR);
+            if (separatorIndex <= 0) {
+                return null;
+            }
+            return new SyncRun(Long.valueOf(value.substring(0, separatorIndex)), value.substring(separatorIndex + 1));
+        }
+
+        String toValue() {
+            return recordId + SHARD_INDEX_SEPARATOR + runId;
+        }
+
+        String leaseKey(String shard) {
+            return leaseKeyPrefix + shard.substring(0, shard.indexOf(SHARD_INDEX_SEPARATOR));
+        }
+    }
+
+    private static class ProgressSnapshot {
+        private final long loadedMillis;
+        private final double remaining;
+        private final double etaSeconds;
+
+        ProgressSnapshot(long loadedMillis, double remaining, double etaSeconds) {
+            this.loadedMillis = loadedMillis;
+            this.remaining = remaining;
+            this.etaSeconds = etaSeconds;
+        }
+    }
+}
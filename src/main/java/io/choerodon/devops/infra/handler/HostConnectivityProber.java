@@ -0,0 +1,216 @@
+package io.choerodon.devops.infra.handler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.devops.api.vo.DevopsHostConnectionTestResultVO;
+import io.choerodon.devops.infra.dto.DevopsHostDTO;
+import io.choerodon.devops.infra.enums.DevopsHostStatus;
+import io.choerodon.devops.infra.util.SshUtil;
+
+/**
+ * 主机连通性探测
+ * 多个主机的探测在独立的有界线程池中并发进行, 每个主机先进行TCP端口预检,
+ * 不可达的主机不再等待ssh的完整超时; 每个主机的探测有独立的截止时间, 超时即认为失败
+ *
+ * @author zmf
+ * @since 2021/8/7
+ */
+@Component
+public class HostConnectivityProber {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HostConnectivityProber.class);
+    private static final String SSH_FAILED_ERROR = "failed to check ssh, please ensure network and authentication is valid";
+    private static final String PORT_UNREACHABLE_ERROR_TEMPLATE = "failed to connect to %s:%s, please ensure network is valid";
+    private static final String DEADLINE_EXCEEDED_ERROR_TEMPLATE = "failed to check ssh in %s seconds";
+
+    /**
+     * 并发探测的主机数量
+     */
+    @Value("${devops.host.connectivity.parallelism:32}")
+    private Integer parallelism;
+    /**
+     * TCP端口预检的超时时间
+     */
+    @Value("${devops.host.connectivity.pre-check-timeout-millis:3000}")
+    private Integer preCheckTimeoutMillis;
+    /**
+     * 单个主机探测的截止时间
+     */
+    @Value("${devops.host.connectivity.deadline-seconds:30}")
+    private Long deadlineSeconds;
+
+    @Autowired
+    private SshUtil sshUtil;
+
+    private ExecutorService probeExecutor;
+    private ScheduledExecutorService deadlineScheduler;
+
+    @PostConstruct
+    public void initialize() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        probeExecutor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "host-connectivity-probe-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        deadlineScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "host-connectivity-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        probeExecutor.shutdownNow();
+        deadlineScheduler.shutdownNow();
+    }
+
+    /**
+     * 并发探测多个主机, 阻塞直到所有主机都有结果
+     * 回调在调用线程中按主机完成的先后顺序执行, 以便回调使用调用线程的上下文和事务
+     *
+     * @param hosts    主机, 需要包含id以及连接信息
+     * @param onResult 每个主机有结果时的回调, 可为空
+     * @return 主机id与探测结果的映射
+     */
+    public Map<Long, DevopsHostConnectionTestResultVO> probeAll(Collection<DevopsHostDTO> hosts,
+                                                                @Nullable BiConsumer<DevopsHostDTO, DevopsHostConnectionTestResultVO> onResult) {
+        Map<Long, DevopsHostConnectionTestResultVO> results = new HashMap<>(hosts.size());
+        if (hosts.isEmpty()) {
+            return results;
+        }
+
+        BlockingQueue<ProbeResult> completed = new LinkedBlockingQueue<>();
+        hosts.forEach(host -> submit(host, completed));
+
+        for (int i = 0; i < hosts.size(); i++) {
+            ProbeResult probeResult;
+            try {
+                probeResult = completed.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.warn("Interrupted while waiting for connectivity of hosts, {} of {} finished", results.size(), hosts.size());
+                return results;
+            }
+            results.put(probeResult.host.getId(), probeResult.result);
+            if (onResult != null) {
+                try {
+                    onResult.accept(probeResult.host, probeResult.result);
+                } catch (Exception ex) {
+                    LOGGER.warn("Failed to handle connectivity result for host with id {}", probeResult.host.getId(), ex);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 在当前线程中探测单个主机
+     *
+     * @param hostIp   主机ip
+     * @param sshPort  ssh端口
+     * @param authType 认证类型
+     * @param username 用户名
+     * @param password 密码或者秘钥
+     * @return 探测结果
+     */
+    public DevopsHostConnectionTestResultVO probe(String hostIp, Integer sshPort, String authType, String username, String password) {
+        return probe(hostIp, sshPort, authType, username, password, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(deadlineSeconds));
+    }
+
+    /**
+     * 探测单个主机, 预检和ssh检查的超时时间都由剩余的截止时间决定,
+     * 截止时间过后探测线程不会继续等待连接池或者ssh握手
+     */
+    private DevopsHostConnectionTestResultVO probe(String hostIp, Integer sshPort, String authType, String username, String password, long deadlineMillis) {
+        if (!isPortReachable(hostIp, sshPort, deadlineMillis)) {
+            return failed(String.format(PORT_UNREACHABLE_ERROR_TEMPLATE, hostIp, sshPort));
+        }
+        long remaining = deadlineMillis - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return failed(String.format(DEADLINE_EXCEEDED_ERROR_TEMPLATE, deadlineSeconds));
+        }
+        // 连接池中有可用的连接时不再重新握手
+        if (!sshUtil.sshConnectForOK(hostIp, sshPort, authType, username, password, remaining)) {
+            return failed(SSH_FAILED_ERROR);
+        }
+        DevopsHostConnectionTestResultVO result = new DevopsHostConnectionTestResultVO();
+        result.setHostStatus(DevopsHostStatus.SUCCESS.getValue());
+        return result;
+    }
+
+    private void submit(DevopsHostDTO host, BlockingQueue<ProbeResult> completed) {
+        CompletableFuture<DevopsHostConnectionTestResultVO> future = new CompletableFuture<>();
+        // 探测结果和超时结果先到者生效
+        future.thenAccept(result -> completed.add(new ProbeResult(host, result)));
+        try {
+            probeExecutor.execute(() -> {
+                // 截止时间从探测开始时计算, 不包括排队时间
+                long deadlineMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(deadlineSeconds);
+                ScheduledFuture<?> deadline = deadlineScheduler.schedule(
+                        () -> future.complete(failed(String.format(DEADLINE_EXCEEDED_ERROR_TEMPLATE, deadlineSeconds))),
+                        deadlineSeconds, TimeUnit.SECONDS);
+                try {
+                    future.complete(probe(host.getHostIp(), host.getSshPort(), host.getAuthType(), host.getUsername(), host.getPassword(), deadlineMillis));
+                } catch (Exception ex) {
+                    LOGGER.warn("Failed to probe connectivity of host with id {}", host.getId(), ex);
+                    future.complete(failed(SSH_FAILED_ERROR));
+                } finally {
+                    deadline.cancel(false);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            LOGGER.warn("Probe of host with id {} is rejected", host.getId(), ex);
+            future.complete(failed(SSH_FAILED_ERROR));
+        }
+    }
+
+    private boolean isPortReachable(String hostIp, Integer sshPort, long deadlineMillis) {
+        if (hostIp == null || sshPort == null) {
+            return false;
+        }
+        long remaining = deadlineMillis - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return false;
+        }
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(hostIp, sshPort), (int) Math.min(preCheckTimeoutMillis, remaining));
+            return true;
+        } catch (IOException | IllegalArgumentException ex) {
+            LOGGER.debug("Port {} of host {} is unreachable: {}", sshPort, hostIp, ex.getMessage());
+            return false;
+        }
+    }
+
+    private static DevopsHostConnectionTestResultVO failed(String error) {
+        DevopsHostConnectionTestResultVO result = new DevopsHostConnectionTestResultVO();
+        result.setHostStatus(DevopsHostStatus.FAILED.getValue());
+        result.setHostCheckError(error);
+        return result;
+    }
+
+    private static class ProbeResult {
+        private final DevopsHostDTO host;
+        private final DevopsHostConnectionTestResultVO result;
+
+        private ProbeResult(DevopsHostDTO host, DevopsHostConnectionTestResultVO result) {
+            this.host = host;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package io.choerodon.devops.infra.handler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.devops.infra.dto.iam.IamUserDTO;
+import io.choerodon.devops.infra.dto.iam.ProjectDTO;
+import io.choerodon.devops.infra.dto.iam.Tenant;
+import io.choerodon.devops.infra.util.RefreshAheadCache;
+import io.choerodon.devops.infra.util.TypeUtil;
+
+/**
+ * iam的项目、组织和用户查询结果的本地缓存
+ * 记录在过期前会在后台刷新, 不存在的记录也会缓存较短的时间;
+ * 收到iam的项目、用户变更事件后使对应的记录失效, 并通过redis的频道通知其它实例
+ * <p>
+ * 返回的是缓存对象的浅拷贝, 调用方修改返回对象的字段不会影响缓存
+ *
+ * @author zmf
+ * @since 2021/8/10
+ */
+@Component
+public class IamLookupCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IamLookupCache.class);
+
+    /**
+     * 缓存失效的通知频道, 消息格式为 类型:id
+     */
+    public static final String IAM_CACHE_EVICT_CHANNEL = "devops-service:iam-cache-evict";
+
+    private static final String PROJECT = "project";
+    private static final String TENANT = "tenant";
+    private static final String USER = "user";
+
+    private static final String METRIC_REQUESTS = "devops.iam.cache.requests";
+    private static final String METRIC_LOAD_FAILURES = "devops.iam.cache.load.failures";
+    private static final String METRIC_SIZE = "devops.iam.cache.size";
+    private static final String TAG_CACHE = "cache";
+    private static final String TAG_RESULT = "result";
+
+    @Value("${devops.iam.cache.enabled:true}")
+    private Boolean enabled;
+    @Value("${devops.iam.cache.maxSize:10000}")
+    private Integer maxSize;
+    @Value("${devops.iam.cache.expireSeconds:300}")
+    private Long expireSeconds;
+    @Value("${devops.iam.cache.refreshSeconds:240}")
+    private Long refreshSeconds;
+    @Value("${devops.iam.cache.negativeExpireSeconds:30}")
+    private Long negativeExpireSeconds;
+    @Value("${devops.iam.cache.refreshThreads:2}")
+    private Integer refreshThreads;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private RedisConnectionFactory redisConnectionFactory;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private ExecutorService refreshExecutor;
+    private RedisMessageListenerContainer listenerContainer;
+
+    private RefreshAheadCache<Long, ProjectDTO> projects;
+    private RefreshAheadCache<Long, Tenant> tenants;
+    private RefreshAheadCache<Long, IamUserDTO> usersById;
+    private RefreshAheadCache<String, IamUserDTO> usersByLoginName;
+    /**
+     * key为 项目id:邮箱
+     */
+    private RefreshAheadCache<String, IamUserDTO> usersByEmail;
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        // 队列满时放弃刷新, 记录过期后由调用方加载
+        refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(maxSize), runnable -> {
+            Thread thread = new Thread(runnable, "iam-cache-refresh-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        projects = newCache(PROJECT);
+        tenants = newCache(TENANT);
+        usersById = newCache("user-by-id");
+        usersByLoginName = newCache("user-by-login-name");
+        usersByEmail = newCache("user-by-email");
+
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(redisConnectionFactory);
+        listenerContainer.addMessageListener((message, pattern) -> evictLocally(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic(IAM_CACHE_EVICT_CHANNEL));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+    }
+
+    @PreDestroy
+    void destroy() throws Exception {
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+        refreshExecutor.shutdownNow();
+    }
+
+    @Nullable
+    public ProjectDTO getProject(Long projectId, Function<Long, ProjectDTO> loader) {
+        return get(projects, projectId, loader, source -> copy(source, new ProjectDTO()));
+    }
+
+    @Nullable
+    public Tenant getTenant(Long tenantId, Function<Long, Tenant> loader) {
+        return get(tenants, tenantId, loader, source -> copy(source, new Tenant()));
+    }
+
+    @Nullable
+    public IamUserDTO getUserById(Long userId, Function<Long, IamUserDTO> loader) {
+        return get(usersById, userId, loader, source -> copy(source, new IamUserDTO()));
+    }
+
+    @Nullable
+    public IamUserDTO getUserByLoginName(String loginName, Function<String, IamUserDTO> loader) {
+        return get(usersByLoginName, loginName, loader, source -> copy(source, new IamUserDTO()));
+    }
+
+    @Nullable
+    public IamUserDTO getUserByEmail(Long projectId, String email, Function<String, IamUserDTO> loader) {
+        return get(usersByEmail, projectId + ":" + email, loader, source -> copy(source, new IamUserDTO()));
+    }
+
+    /**
+     * 项目变更后调用, 使本实例和其它实例缓存的项目失效
+     *
+     * @param projectId 项目id
+     */
+    public void evictProject(Long projectId) {
+        evict(PROJECT, projectId);
+    }
+
+    /**
+     * 组织变更后调用, 使本实例和其它实例缓存的组织失效
+     *
+     * @param tenantId 组织id
+     */
+    public void evictTenant(Long tenantId) {
+        evict(TENANT, tenantId);
+    }
+
+    /**
+     * 用户创建或变更后调用, 使本实例和其它实例缓存的用户失效
+     * 按登录名和邮箱缓存的不存在的记录会在较短的时间后过期
+     *
+     * @param userId 用户id
+     */
+    public void evictUser(Long userId) {
+        evict(USER, userId);
+    }
+
+    private void evict(String type, Long id) {
+        if (id == null) {
+            return;
+        }
+        String message = type + ":" + id;
+        evictLocally(message);
+        try {
+            stringRedisTemplate.convertAndSend(IAM_CACHE_EVICT_CHANNEL, message);
+        } catch (Exception ex) {
+            // 通知失败时其它实例的记录在过期后更新
+            LOGGER.warn("Failed to publish iam cache eviction {}", message, ex);
+        }
+    }
+
+    private void evictLocally(String message) {
+        String[] parts = message.split(":", 2);
+        Long id = parts.length == 2 ? TypeUtil.objToLong(parts[1]) : null;
+        if (id == null) {
+            LOGGER.warn("Unexpected iam cache eviction message {}", message);
+            return;
+        }
+        switch (parts[0]) {
+            case PROJECT:
+                projects.invalidate(id);
+                break;
+            case TENANT:
+                tenants.invalidate(id);
+                break;
+            case USER:
+                usersById.invalidate(id);
+                usersByLoginName.invalidateValues(user -> id.equals(user.getId()));
+                usersByEmail.invalidateValues(user -> id.equals(user.getId()));
+                break;
+            default:
+                LOGGER.warn("Unexpected iam cache eviction message {}", message);
+        }
+    }
+
+    private <K, V> V get(RefreshAheadCache<K, V> cache, K key, Function<K, V> loader, Function<V, V> copier) {
+        if (!Boolean.TRUE.equals(enabled) || key == null) {
+            return loader.apply(key);
+        }
+        V value = cache.get(key, loader);
+        return value == null ? null : copier.apply(value);
+    }
+
+    private <K, V> RefreshAheadCache<K, V> newCache(String name) {
+        RefreshAheadCache<K, V> cache = new RefreshAheadCache<>(name, maxSize,
+                TimeUnit.SECONDS.toMillis(expireSeconds),
+                TimeUnit.SECONDS.toMillis(refreshSeconds),
+                TimeUnit.SECONDS.toMillis(negativeExpireSeconds),
+                refreshExecutor);
+        FunctionCounter.builder(METRIC_REQUESTS, cache, RefreshAheadCache::getHitCount)
+                .tag(TAG_CACHE, name)
+                .tag(TAG_RESULT, "hit")
+                .description("Iam lookups served by the local cache")
+                .register(meterRegistry);
+        FunctionCounter.builder(METRIC_REQUESTS, cache, RefreshAheadCache::getMissCount)
+                .tag(TAG_CACHE, name)
+                .tag(TAG_RESULT, "miss")
+                .description("Iam lookups loaded from iam")
+                .register(meterRegistry);
+        FunctionCounter.builder(METRIC_LOAD_FAILURES, cache, RefreshAheadCache::getLoadFailureCount)
+                .tag(TAG_CACHE, name)
+                .description("Iam lookups failed to load")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_SIZE, cache, RefreshAheadCache::size)
+                .tag(TAG_CACHE, name)
+                .description("Iam lookup results in the local cache")
+                .register(meterRegistry);
+        return cache;
+    }
+
+    private static <V> V copy(V source, V target) {
+        BeanUtils.copyProperties(source, target);
+        return target;
+    }
+}
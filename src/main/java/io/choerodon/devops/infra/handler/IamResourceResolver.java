@@ -0,0 +1,149 @@
+package io.choerodon.devops.infra.handler;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.infra.dto.iam.ProjectDTO;
+import io.choerodon.devops.infra.dto.iam.Tenant;
+import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator;
+
+/**
+ * 批量查询iam的项目和组织
+ * 同一个请求中查询过的项目和组织会被记住, 同一个请求中重复的查询不会再调用base-service;
+ * 不在请求中(比如定时任务、saga)调用时不会记住, 只合并同一次调用中的查询
+ * <p>
+ * 批量查询返回的项目不包含类别、用户等额外信息, 只用于名称、编码、所属组织这些基本信息,
+ * 需要额外信息的地方使用{@link BaseServiceClientOperator#queryIamProjectById(Long)}
+ *
+ * @author zmf
+ * @since 2021/8/10
+ */
+@Component
+public class IamResourceResolver {
+    private static final String PROJECTS_ATTRIBUTE = IamResourceResolver.class.getName() + ".projects";
+    private static final String TENANTS_ATTRIBUTE = IamResourceResolver.class.getName() + ".tenants";
+
+    @Autowired
+    private BaseServiceClientOperator baseServiceClientOperator;
+
+    /**
+     * 查询项目, 项目不存在时抛出异常
+     *
+     * @param projectId 项目id
+     * @return 项目
+     */
+    public ProjectDTO queryProject(Long projectId) {
+        ProjectDTO projectDTO = resolveProjects(Collections.singleton(Objects.requireNonNull(projectId))).get(projectId);
+        if (projectDTO == null) {
+            throw new CommonException("error.project.query.by.id", projectId);
+        }
+        return projectDTO;
+    }
+
+    /**
+     * 批量查询项目, 没有记住的项目一次查询
+     *
+     * @param projectIds 项目id, 可以重复
+     * @return 项目id -> 项目, 不存在的项目不在结果中
+     */
+    public Map<Long, ProjectDTO> resolveProjects(Collection<Long> projectIds) {
+        return resolve(cache(PROJECTS_ATTRIBUTE), projectIds, missing -> {
+            if (missing.size() == 1) {
+                Long projectId = missing.iterator().next();
+                return Collections.singletonList(baseServiceClientOperator.queryIamProjectById(projectId));
+            }
+            List<ProjectDTO> projectDTOS = baseServiceClientOperator.queryProjectsByIds(missing);
+            if (projectDTOS == null) {
+                // 批量接口失败时返回null, 逐个查询
+                return missing.stream().map(baseServiceClientOperator::queryIamProjectById).collect(Collectors.toList());
+            }
+            return projectDTOS;
+        }, ProjectDTO::getId);
+    }
+
+    /**
+     * 查询组织, 组织不存在时抛出异常
+     *
+     * @param tenantId 组织id
+     * @return 组织
+     */
+    public Tenant queryTenant(Long tenantId) {
+        Tenant tenant = resolveTenants(Collections.singleton(Objects.requireNonNull(tenantId))).get(tenantId);
+        if (tenant == null) {
+            throw new CommonException("error.organization.get", tenantId);
+        }
+        return tenant;
+    }
+
+    /**
+     * 批量查询组织, 没有记住的组织一次查询
+     *
+     * @param tenantIds 组织id, 可以重复
+     * @return 组织id -> 组织, 不存在的组织不在结果中
+     */
+    public Map<Long, Tenant> resolveTenants(Collection<Long> tenantIds) {
+        return resolve(cache(TENANTS_ATTRIBUTE), tenantIds, missing -> {
+            if (missing.size() == 1) {
+                return Collections.singletonList(baseServiceClientOperator.queryOrganizationById(missing.iterator().next()));
+            }
+            return baseServiceClientOperator.listOrganizationByIds(missing);
+        }, Tenant::getTenantId);
+    }
+
+    /**
+     * 查询项目所属的组织
+     *
+     * @param projectId 项目id
+     * @return 组织
+     */
+    public Tenant queryTenantOfProject(Long projectId) {
+        return queryTenant(queryProject(projectId).getOrganizationId());
+    }
+
+    private static <T> Map<Long, T> resolve(Map<Long, T> cache,
+                                            Collection<Long> ids,
+                                            Function<Set<Long>, List<T>> loader,
+                                            Function<T, Long> idGetter) {
+        Set<Long> missing = ids.stream()
+                .filter(Objects::nonNull)
+                .filter(id -> !cache.containsKey(id))
+                .collect(Collectors.toSet());
+        if (!missing.isEmpty()) {
+            List<T> loaded = loader.apply(missing);
+            if (loaded != null) {
+                loaded.stream()
+                        .filter(Objects::nonNull)
+                        .filter(resource -> idGetter.apply(resource) != null)
+                        .forEach(resource -> cache.put(idGetter.apply(resource), resource));
+            }
+        }
+        Map<Long, T> result = new HashMap<>();
+        ids.stream()
+                .filter(Objects::nonNull)
+                .filter(cache::containsKey)
+                .forEach(id -> result.put(id, cache.get(id)));
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Map<Long, T> cache(String attribute) {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes == null) {
+            return new HashMap<>();
+        }
+        Map<Long, T> cache = (Map<Long, T>) requestAttributes.getAttribute(attribute, RequestAttributes.SCOPE_REQUEST);
+        if (cache == null) {
+            cache = new ConcurrentHashMap<>();
+            requestAttributes.setAttribute(attribute, cache, RequestAttributes.SCOPE_REQUEST);
+        }
+        return cache;
+    }
+}
@@ -0,0 +1,430 @@
+package io.choerodon.devops.infra.handler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.common.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.infra.util.SshUtil;
+
+/**
+ * ssh连接池
+ * <p>
+ * 连接按 主机+端口+用户名+凭证指纹 复用, 同一个连接上可以同时开多个channel(session),
+ * 所以一个连接可以同时借给多个调用方; 每个主机(主机+端口)的连接数有上限, 达到上限时等待其它调用方归还.
+ * 借出空闲了一段时间的连接前会执行一次命令检查连接是否可用, 空闲超时的连接由定时任务关闭.
+ * <p>
+ * 借出的连接通过 {@link #release(SSHClient)} 归还, 调用方不能自己断开连接
+ *
+ * @author zmf
+ * @since 2021/8/10
+ */
+@Component
+public class SshSessionPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SshSessionPool.class);
+    private static final String METRIC_BORROWS = "devops.ssh.pool.borrows";
+    private static final String METRIC_HANDSHAKES = "devops.ssh.pool.handshakes";
+    private static final String METRIC_CONNECTIONS = "devops.ssh.pool.connections";
+    private static final String TAG_RESULT = "result";
+    private static final String HEALTH_CHECK_COMMAND = "true";
+    private static final int HEALTH_CHECK_TIMEOUT_MILLIS = 10000;
+    private static final String ERROR_POOL_EXHAUSTED = "error.ssh.pool.exhausted";
+
+    /**
+     * 是否复用连接, 关闭时每次借出都新建连接, 归还时断开
+     */
+    @Value("${devops.ssh.pool.enabled:true}")
+    private Boolean enabled;
+    /**
+     * 每个主机(主机+端口)最多的连接数
+     */
+    @Value("${devops.ssh.pool.maxSessionsPerHost:4}")
+    private Integer maxSessionsPerHost;
+    /**
+     * 一个连接最多同时借给多少个调用方, 每个调用方同一时间一般只开一个channel, 不能超过sshd的MaxSessions(默认10)
+     */
+    @Value("${devops.ssh.pool.maxChannelsPerSession:4}")
+    private Integer maxChannelsPerSession;
+    /**
+     * 连接空闲超过这个时间后关闭
+     */
+    @Value("${devops.ssh.pool.idleSeconds:300}")
+    private Long idleSeconds;
+    /**
+     * 连接空闲超过这个时间, 借出前先检查连接是否可用
+     */
+    @Value("${devops.ssh.pool.validateAfterIdleSeconds:30}")
+    private Long validateAfterIdleSeconds;
+    /**
+     * 达到主机的连接数上限时, 等待其它调用方归还连接的时间
+     */
+    @Value("${devops.ssh.pool.borrowTimeoutMillis:60000}")
+    private Long borrowTimeoutMillis;
+    /**
+     * 建立连接的超时时间
+     */
+    @Value("${devops.ssh.pool.connectTimeoutMillis:10000}")
+    private Integer connectTimeoutMillis;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 主机+端口 -> 这个主机的连接
+     */
+    private final ConcurrentMap<String, HostSessions> hostSessionsMap = new ConcurrentHashMap<>();
+    /**
+     * 池中所有的连接, 用于归还时找到连接
+     */
+    private final Map<SSHClient, PooledSession> pooledSessions = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    private Counter hitCounter;
+    private Counter missCounter;
+    private Counter handshakeSuccessCounter;
+    private Counter handshakeFailedCounter;
+
+    @PostConstruct
+    void init() {
+        hitCounter = Counter.builder(METRIC_BORROWS).tag(TAG_RESULT, "hit")
+                .description("Ssh sessions borrowed by reusing a pooled connection")
+                .register(meterRegistry);
+        missCounter = Counter.builder(METRIC_BORROWS).tag(TAG_RESULT, "miss")
+                .description("Ssh sessions borrowed by creating a new connection")
+                .register(meterRegistry);
+        handshakeSuccessCounter = Counter.builder(METRIC_HANDSHAKES).tag(TAG_RESULT, "success")
+                .description("Ssh key exchanges and authentications succeeded")
+                .register(meterRegistry);
+        handshakeFailedCounter = Counter.builder(METRIC_HANDSHAKES).tag(TAG_RESULT, "failed")
+                .description("Ssh key exchanges and authentications failed")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_CONNECTIONS, pooledSessions, Map::size)
+                .description("Ssh connections in the pool")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void destroy() {
+        List<SSHClient> clients;
+        synchronized (pooledSessions) {
+            clients = new ArrayList<>(pooledSessions.keySet());
+            pooledSessions.clear();
+        }
+        clients.forEach(IOUtils::closeQuietly);
+    }
+
+    /**
+     * 借出一个已认证的连接, 使用完后需要调用 {@link #release(SSHClient)} 归还
+     *
+     * @param hostIp     主机ip
+     * @param sshPort    ssh端口
+     * @param authType   {@link io.choerodon.devops.infra.enums.HostAuthType}
+     * @param username   用户名
+     * @param credential 密码或者秘钥(明文)
+     * @return 连接
+     * @throws IOException 建立连接或者认证失败
+     */
+    public SSHClient borrow(String hostIp, Integer sshPort, String authType, String username, String credential) throws IOException {
+        return borrow(hostIp, sshPort, authType, username, credential, borrowTimeoutMillis);
+    }
+
+    /**
+     * 在指定的时间内借出一个已认证的连接, 等待连接归还、建立连接和检查连接的时间都不超过这个时间
+     *
+     * @param hostIp        主机ip
+     * @param sshPort       ssh端口
+     * @param authType      {@link io.choerodon.devops.infra.enums.HostAuthType}
+     * @param username      用户名
+     * @param credential    密码或者秘钥(明文)
+     * @param timeoutMillis 超时时间, 超过 borrowTimeoutMillis 时以 borrowTimeoutMillis 为准
+     * @return 连接
+     * @throws IOException 建立连接或者认证失败
+     */
+    public SSHClient borrow(String hostIp, Integer sshPort, String authType, String username, String credential, long timeoutMillis) throws IOException {
+        String hostKey = hostIp + ":" + sshPort;
+        String sessionKey = hostKey + ":" + username + ":" + fingerprint(authType, credential);
+        HostSessions hostSessions = hostSessionsMap.computeIfAbsent(hostKey, k -> new HostSessions());
+        long deadline = System.currentTimeMillis() + Math.min(borrowTimeoutMillis, timeoutMillis);
+
+        while (true) {
+            PooledSession reused = null;
+            List<PooledSession> evicted = new ArrayList<>();
+            hostSessions.lock.lock();
+            try {
+                while (true) {
+                    if (Boolean.TRUE.equals(enabled)) {
+                        reused = selectReusable(hostSessions, sessionKey);
+                    }
+                    if (reused != null) {
+                        reused.leases++;
+                        break;
+                    }
+                    if (hostSessions.total() < maxSessionsPerHost) {
+                        // 占住一个连接数, 在锁外建立连接
+                        hostSessions.connecting++;
+                        break;
+                    }
+                    // 连接数已满, 优先关闭其它凭证的空闲连接
+                    PooledSession idle = selectIdleOfOtherKey(hostSessions, sessionKey);
+                    if (idle != null) {
+                        hostSessions.sessions.remove(idle);
+                        evicted.add(idle);
+                        continue;
+                    }
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new CommonException(ERROR_POOL_EXHAUSTED, hostKey);
+                    }
+                    try {
+                        hostSessions.released.await(remaining, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CommonException(ERROR_POOL_EXHAUSTED, hostKey);
+                    }
+                }
+            } finally {
+                hostSessions.lock.unlock();
+                evicted.forEach(this::close);
+            }
+
+            if (reused == null) {
+                return connect(hostSessions, sessionKey, hostIp, sshPort, authType, username, credential, remainingMillis(deadline, connectTimeoutMillis));
+            }
+            if (validate(reused, remainingMillis(deadline, HEALTH_CHECK_TIMEOUT_MILLIS))) {
+                hitCounter.increment();
+                return reused.client;
+            }
+            // 连接已经不可用, 移除后重新选择
+            LOGGER.info("Pooled ssh connection to {} is broken, discard it", hostKey);
+            hostSessions.lock.lock();
+            try {
+                hostSessions.sessions.remove(reused);
+                hostSessions.released.signalAll();
+            } finally {
+                hostSessions.lock.unlock();
+            }
+            close(reused);
+        }
+    }
+
+    /**
+     * 归还借出的连接
+     *
+     * @param client 连接, 可为空
+     * @return 是否是池中的连接, 不是池中的连接需要调用方自己断开
+     */
+    public boolean release(SSHClient client) {
+        if (client == null) {
+            return false;
+        }
+        PooledSession pooledSession = pooledSessions.get(client);
+        if (pooledSession == null) {
+            return false;
+        }
+        HostSessions hostSessions = pooledSession.hostSessions;
+        boolean discard;
+        hostSessions.lock.lock();
+        try {
+            pooledSession.leases = Math.max(0, pooledSession.leases - 1);
+            pooledSession.lastUsedMillis = System.currentTimeMillis();
+            // 连接中断或者不复用连接时, 最后一个调用方归还时关闭
+            discard = pooledSession.leases == 0 && (!Boolean.TRUE.equals(enabled) || !client.isConnected());
+            if (discard) {
+                hostSessions.sessions.remove(pooledSession);
+            }
+            hostSessions.released.signalAll();
+        } finally {
+            hostSessions.lock.unlock();
+        }
+        if (discard) {
+            close(pooledSession);
+        }
+        return true;
+    }
+
+    /**
+     * 关闭空闲超时或者已经中断的连接
+     */
+    @Scheduled(fixedDelayString = "${devops.ssh.pool.evictMilliSeconds:60000}")
+    public void evictIdleSessions() {
+        long idleBefore = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(idleSeconds);
+        List<PooledSession> evicted = new ArrayList<>();
+        hostSessionsMap.values().forEach(hostSessions -> {
+            hostSessions.lock.lock();
+            try {
+                Iterator<PooledSession> iterator = hostSessions.sessions.iterator();
+                while (iterator.hasNext()) {
+                    PooledSession pooledSession = iterator.next();
+                    if (pooledSession.leases == 0 && (pooledSession.lastUsedMillis < idleBefore || !pooledSession.client.isConnected())) {
+                        iterator.remove();
+                        evicted.add(pooledSession);
+                    }
+                }
+                if (!evicted.isEmpty()) {
+                    hostSessions.released.signalAll();
+                }
+            } finally {
+                hostSessions.lock.unlock();
+            }
+        });
+        evicted.forEach(this::close);
+        LOGGER.debug("Evicted {} idle ssh connections, {} connections remaining", evicted.size(), pooledSessions.size());
+    }
+
+    /**
+     * 新建连接并认证
+     */
+    protected SSHClient newClient(String hostIp, Integer sshPort, String authType, String username, String credential, int timeoutMillis) throws IOException {
+        return SshUtil.connectAndAuth(hostIp, sshPort, authType, username, credential, timeoutMillis);
+    }
+
+    private SSHClient connect(HostSessions hostSessions, String sessionKey, String hostIp, Integer sshPort, String authType, String username, String credential,
+                              int timeoutMillis) throws IOException {
+        SSHClient client = null;
+        PooledSession pooledSession = null;
+        try {
+            missCounter.increment();
+            client = newClient(hostIp, sshPort, authType, username, credential, timeoutMillis);
+            handshakeSuccessCounter.increment();
+            pooledSession = new PooledSession(hostSessions, sessionKey, client);
+            pooledSessions.put(client, pooledSession);
+            return client;
+        } catch (IOException | RuntimeException e) {
+            handshakeFailedCounter.increment();
+            IOUtils.closeQuietly(client);
+            throw e;
+        } finally {
+            hostSessions.lock.lock();
+            try {
+                hostSessions.connecting--;
+                if (pooledSession != null) {
+                    hostSessions.sessions.add(pooledSession);
+                } else {
+                    hostSessions.released.signalAll();
+                }
+            } finally {
+                hostSessions.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 同一凭证的可用连接中选择借出最少的, 使channel尽量分散在不同连接上
+     */
+    private PooledSession selectReusable(HostSessions hostSessions, String sessionKey) {
+        PooledSession selected = null;
+        for (PooledSession pooledSession : hostSessions.sessions) {
+            if (pooledSession.key.equals(sessionKey)
+                    && pooledSession.leases < maxChannelsPerSession
+                    && pooledSession.client.isConnected()
+                    && (selected == null || pooledSession.leases < selected.leases)) {
+                selected = pooledSession;
+            }
+        }
+        return selected;
+    }
+
+    private static PooledSession selectIdleOfOtherKey(HostSessions hostSessions, String sessionKey) {
+        return hostSessions.sessions.stream()
+                .filter(pooledSession -> pooledSession.leases == 0 && !pooledSession.key.equals(sessionKey))
+                .min(Comparator.comparingLong(pooledSession -> pooledSession.lastUsedMillis))
+                .orElse(null);
+    }
+
+    /**
+     * 检查借出的连接是否可用, 空闲时间较长的连接需要执行一次命令
+     */
+    private boolean validate(PooledSession pooledSession, int timeoutMillis) {
+        SSHClient client = pooledSession.client;
+        if (!client.isConnected() || !client.isAuthenticated()) {
+            return false;
+        }
+        long idleMillis = System.currentTimeMillis() - pooledSession.lastUsedMillis;
+        return idleMillis < TimeUnit.SECONDS.toMillis(validateAfterIdleSeconds) || SshUtil.execForOk(client, HEALTH_CHECK_COMMAND, timeoutMillis);
+    }
+
+    /**
+     * 距离截止时间的剩余时间, 不超过max, 至少为1毫秒(0对于socket表示不超时)
+     */
+    private static int remainingMillis(long deadline, int max) {
+        return (int) Math.max(1L, Math.min(max, deadline - System.currentTimeMillis()));
+    }
+
+    private void close(PooledSession pooledSession) {
+        pooledSessions.remove(pooledSession.client);
+        IOUtils.closeQuietly(pooledSession.client);
+    }
+
+    /**
+     * 凭证的指纹, 连接池中不保存凭证本身
+     */
+    private static String fingerprint(String authType, String credential) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(authType).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(credential).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 一个主机的连接, 由主机的锁保护
+     */
+    private static class HostSessions {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition released = lock.newCondition();
+        private final List<PooledSession> sessions = new ArrayList<>();
+        /**
+         * 正在建立的连接数
+         */
+        private int connecting;
+
+        int total() {
+            return sessions.size() + connecting;
+        }
+    }
+
+    private static class PooledSession {
+        private final HostSessions hostSessions;
+        private final String key;
+        private final SSHClient client;
+        /**
+         * 借出次数, 由主机的锁保护
+         */
+        private int leases = 1;
+        private long lastUsedMillis = System.currentTimeMillis();
+
+        PooledSession(HostSessions hostSessions, String key, SSHClient client) {
+            this.hostSessions = hostSessions;
+            this.key = key;
+            this.client = client;
+        }
+    }
+}
@@ -24,7 +24,8 @@ public interface AppServiceMapper extends BaseMapper<AppServiceDTO> {
                              @Param("type") String type,
                              @Param("searchParam") Map<String, Object> searchParam,
                              @Param("params") List<String> params,
-                             @Param("index") String index);
+                             @Param("index") String index,
+                             @Param("searchIds") Set<Long> searchIds);
 
     List<AppServiceDTO> listByProjectId(@Param("projectId") Long projectId,
                                         @Param("searchParam") Map<String, Object> searchParam,
@@ -106,7 +107,8 @@ public interface AppServiceMapper extends BaseMapper<AppServiceDTO> {
                                                      @Param("searchParam") Map<String, Object> searchParam,
                                                      @Param("params") List<String> params,
                                                      @Param("doSort") Boolean doSort,
-                                                     @Param("userId") Long userId);
+                                                     @Param("userId") Long userId,
+                                                     @Param("searchIds") Set<Long> searchIds);
 
 
     List<AppServiceDTO> listAppServiceByIds(@Param("ids") Set<Long> ids,
@@ -137,6 +139,14 @@ public interface AppServiceMapper extends BaseMapper<AppServiceDTO> {
 
     List<AppServiceDTO> listAll(@Param("projectId") Long projectId, @Param("appServiceName") String appServiceName);
 
+    /**
+     * 查询在这些项目的环境中有实例的应用服务id, 与{@link #listAll(Long, String)}的条件相同
+     *
+     * @param projectIds 项目id
+     * @return 应用服务id
+     */
+    List<Long> listDeployedIdsByProjectIds(@Param("projectIds") Collection<Long> projectIds);
+
     List<AppServiceDTO> queryAppServicesHavingVersions(@Param("projectId") Long projectId);
 
     /**
@@ -205,5 +215,9 @@ public interface AppServiceMapper extends BaseMapper<AppServiceDTO> {
     List<AppServiceSimpleVO> listByProjectIdsAndCodes(@Param("projectIds") List<Long> projectIds, @Param("codes") List<String> codes);
 
     List<AppServiceRepVO> queryApplicationCenter(@Param("projectId") Long projectId, @Param("envId") Long envId, @Param("type") String type, @Param("params") String params);
-}
 
+    /**
+     * 按id升序分批查询应用服务的名称和编码, 用于重建模糊搜索的索引
+     */
+    List<AppServiceDTO> listForSearchIndex(@Param("afterId") Long afterId, @Param("limit") int limit);
+}
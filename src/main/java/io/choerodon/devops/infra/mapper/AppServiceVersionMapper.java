@@ -121,4 +121,8 @@ public interface AppServiceVersionMapper extends BaseMapper<AppServiceVersionDTO
     void updateCustomHarborRecords(@Param("defaultHarborId") Long defaultHarborId);
 
     AppServiceVersionDTO queryByCommitShaAndRef(@Param("appServiceId") Long appServiceId, @Param("commitSha") String commitSha, @Param("ref") String ref);
+
+    int updateValueId(@Param("fromValueId") Long fromValueId, @Param("toValueId") Long toValueId);
+
+    int updateReadmeValueId(@Param("fromReadmeId") Long fromReadmeId, @Param("toReadmeId") Long toReadmeId);
 }
@@ -5,6 +5,9 @@ import io.choerodon.mybatis.common.BaseMapper;
 
 import org.apache.ibatis.annotations.Param;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -15,4 +18,23 @@ import java.util.Set;
  */
 public interface AppServiceVersionReadmeMapper extends BaseMapper<AppServiceVersionReadmeDTO> {
     void deleteByIds(@Param("readmeIds") Set<Long> readmeIds);
+
+    Long selectIdByContentHash(@Param("contentHash") String contentHash);
+
+    int increaseRefCountByHash(@Param("contentHash") String contentHash, @Param("delta") Long delta);
+
+    /**
+     * @param counts id -> 减少的引用数
+     */
+    void decreaseRefCounts(@Param("counts") Map<Long, Integer> counts);
+
+    List<Long> listUnreferencedIds(@Param("limit") Integer limit);
+
+    int deleteUnreferencedByIds(@Param("ids") Collection<Long> ids);
+
+    List<AppServiceVersionReadmeDTO> listWithoutContentHash(@Param("afterId") Long afterId, @Param("limit") Integer limit);
+
+    Long selectRefCountForUpdate(@Param("id") Long id);
+
+    int updateContentHash(@Param("id") Long id, @Param("contentHash") String contentHash);
 }
@@ -1,5 +1,8 @@
 package io.choerodon.devops.infra.mapper;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.ibatis.annotations.Param;
@@ -9,4 +12,23 @@ import io.choerodon.mybatis.common.BaseMapper;
 
 public interface AppServiceVersionValueMapper extends BaseMapper<AppServiceVersionValueDTO> {
     void deleteByIds(@Param("valueIds") Set<Long> valueIds);
+
+    Long selectIdByContentHash(@Param("contentHash") String contentHash);
+
+    int increaseRefCountByHash(@Param("contentHash") String contentHash, @Param("delta") Long delta);
+
+    /**
+     * @param counts id -> 减少的引用数
+     */
+    void decreaseRefCounts(@Param("counts") Map<Long, Integer> counts);
+
+    List<Long> listUnreferencedIds(@Param("limit") Integer limit);
+
+    int deleteUnreferencedByIds(@Param("ids") Collection<Long> ids);
+
+    List<AppServiceVersionValueDTO> listWithoutContentHash(@Param("afterId") Long afterId, @Param("limit") Integer limit);
+
+    Long selectRefCountForUpdate(@Param("id") Long id);
+
+    int updateContentHash(@Param("id") Long id, @Param("contentHash") String contentHash);
 }
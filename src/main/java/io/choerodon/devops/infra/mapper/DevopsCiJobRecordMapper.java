@@ -1,5 +1,10 @@
 package io.choerodon.devops.infra.mapper;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Param;
+
 import io.choerodon.devops.infra.dto.DevopsCiJobRecordDTO;
 import io.choerodon.mybatis.common.BaseMapper;
 
@@ -11,5 +16,11 @@ import io.choerodon.mybatis.common.BaseMapper;
  * @Date 2020/4/3 9:22
  */
 public interface DevopsCiJobRecordMapper extends BaseMapper<DevopsCiJobRecordDTO> {
-
+    /**
+     * 查询多条流水线纪录下的job纪录
+     *
+     * @param ciPipelineRecordIds 流水线纪录id
+     * @return job纪录
+     */
+    List<DevopsCiJobRecordDTO> listByCiPipelineRecordIds(@Param("ciPipelineRecordIds") Collection<Long> ciPipelineRecordIds);
 }
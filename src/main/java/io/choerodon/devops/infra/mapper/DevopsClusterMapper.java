@@ -65,6 +65,13 @@ public interface DevopsClusterMapper extends BaseMapper<DevopsClusterDTO> {
      */
     List<DevopsClusterDTO> listByClusterIds(@Param("clusterIds") List<Long> clusterIds);
 
+    /**
+     * 批量更新集群状态
+     *
+     * @param clusters 集群, 需要包含id和status
+     */
+    void batchUpdateStatus(@Param("clusters") List<DevopsClusterDTO> clusters);
+
     /**
      * 更新集群状态为操作中，（status 字段作为乐观锁）
      *
@@ -1,5 +1,7 @@
 package io.choerodon.devops.infra.mapper;
 
+import java.util.List;
+
 import org.apache.ibatis.annotations.Param;
 
 import io.choerodon.devops.infra.dto.DevopsClusterOperationRecordDTO;
@@ -14,4 +16,11 @@ public interface DevopsClusterOperationRecordMapper extends BaseMapper<DevopsClu
     Long updateStatusByClusterId(@Param("clusterId") Long clusterId, @Param("oldStatus") String oldStatus, @Param("newStatus") String newStatus);
 
     DevopsClusterOperationRecordDTO selectByClusterIdAndType(@Param("clusterId") Long clusterId, @Param("type") String type);
+
+    /**
+     * 批量更新操作记录的状态和错误信息
+     *
+     * @param records 操作记录, 需要包含id, status和errorMsg
+     */
+    void batchUpdateStatusAndErrorMsg(@Param("records") List<DevopsClusterOperationRecordDTO> records);
 }
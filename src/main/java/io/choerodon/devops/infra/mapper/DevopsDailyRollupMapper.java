@@ -0,0 +1,80 @@
+package io.choerodon.devops.infra.mapper;
+
+import java.sql.Date;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Param;
+
+import io.choerodon.devops.infra.dto.DevopsDailyRollupDTO;
+import io.choerodon.mybatis.common.BaseMapper;
+
+/**
+ * @author zmf
+ * @since 2021/8/8
+ */
+public interface DevopsDailyRollupMapper extends BaseMapper<DevopsDailyRollupDTO> {
+    /**
+     * 累加应用服务下一天的数量, 项目id从应用服务查询, 没有记录时插入
+     */
+    int increaseByAppService(@Param("metric") String metric,
+                             @Param("appServiceId") Long appServiceId,
+                             @Param("userId") Long userId,
+                             @Param("statDate") Date statDate,
+                             @Param("count") Long count);
+
+    /**
+     * 累加实例的部署次数, 项目和应用服务从实例查询
+     */
+    int increaseByInstance(@Param("metric") String metric,
+                           @Param("instanceId") Long instanceId,
+                           @Param("userId") Long userId,
+                           @Param("statDate") Date statDate);
+
+    /**
+     * 累加流水线的触发次数, 项目和应用服务从流水线查询, 没有关联应用服务的流水线不统计
+     */
+    int increaseByPipeline(@Param("metric") String metric,
+                           @Param("pipelineId") Long pipelineId,
+                           @Param("userId") Long userId,
+                           @Param("statDate") Date statDate);
+
+    /**
+     * 查询日期范围内每天的数量
+     *
+     * @param appServiceIds 为空时查询项目下所有应用服务
+     * @param groupByUser   是否同时按用户分组
+     * @return 按日期升序排列
+     */
+    List<DevopsDailyRollupDTO> listDailyCount(@Param("projectId") Long projectId,
+                                              @Param("metric") String metric,
+                                              @Param("appServiceIds") Collection<Long> appServiceIds,
+                                              @Param("startDate") Date startDate,
+                                              @Param("endDate") Date endDate,
+                                              @Param("groupByUser") boolean groupByUser);
+
+    int deleteByMetricAndDate(@Param("metric") String metric,
+                              @Param("startDate") Date startDate,
+                              @Param("endDate") Date endDate);
+
+    /**
+     * 从提交记录重新汇总日期范围内的数据
+     */
+    int rebuildCommit(@Param("metric") String metric,
+                      @Param("startDate") Date startDate,
+                      @Param("endDate") Date endDate);
+
+    /**
+     * 从环境部署指令重新汇总日期范围内的数据
+     */
+    int rebuildDeploy(@Param("metric") String metric,
+                      @Param("startDate") Date startDate,
+                      @Param("endDate") Date endDate);
+
+    /**
+     * 从流水线记录关系重新汇总日期范围内的数据, 没有关联应用服务的流水线不统计
+     */
+    int rebuildCi(@Param("metric") String metric,
+                  @Param("startDate") Date startDate,
+                  @Param("endDate") Date endDate);
+}
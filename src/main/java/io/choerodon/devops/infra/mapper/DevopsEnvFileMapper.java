@@ -1,5 +1,7 @@
 package io.choerodon.devops.infra.mapper;
 
+import java.util.Collection;
+
 import org.apache.ibatis.annotations.Param;
 
 import io.choerodon.devops.infra.dto.DevopsEnvFileDTO;
@@ -8,4 +10,20 @@ import io.choerodon.mybatis.common.BaseMapper;
 public interface DevopsEnvFileMapper extends BaseMapper<DevopsEnvFileDTO> {
 
     DevopsEnvFileDTO queryLatestByEnvAndPath(@Param("envId") Long envId, @Param("filePath") String filePath);
+
+    /**
+     * 批量更新文件的devops提交
+     *
+     * @param ids          文件纪录的id
+     * @param devopsCommit 提交sha
+     */
+    void batchUpdateDevopsCommit(@Param("ids") Collection<Long> ids, @Param("devopsCommit") String devopsCommit);
+
+    /**
+     * 删除环境下指定路径的文件纪录
+     *
+     * @param envId     环境id
+     * @param filePaths 文件路径
+     */
+    void batchDeleteByEnvIdAndPaths(@Param("envId") Long envId, @Param("filePaths") Collection<String> filePaths);
 }
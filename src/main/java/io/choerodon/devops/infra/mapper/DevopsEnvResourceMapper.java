@@ -1,5 +1,6 @@
 package io.choerodon.devops.infra.mapper;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.apache.ibatis.annotations.Param;
@@ -29,6 +30,10 @@ public interface DevopsEnvResourceMapper extends BaseMapper<DevopsEnvResourceDTO
 
     List<DevopsEnvResourceDTO> listEnvResourceByOptions(@Param("envId") Long envId, @Param("kind") String type, @Param("names") List<String> names);
 
+    List<DevopsEnvResourceDTO> listInstanceIdsByKindsAndNames(@Param("envId") Long envId,
+                                                              @Param("kinds") Collection<String> kinds,
+                                                              @Param("names") Collection<String> names);
+
     String getResourceDetailByEnvIdAndKindAndName(@Param("envId") Long envId, @Param("name") String name, @Param("kind") String type);
 
     String queryDetailsByKindAndName(@Param("envId") Long envId,
@@ -91,6 +91,11 @@ public interface DevopsEnvironmentMapper extends BaseMapper<DevopsEnvironmentDTO
 
     List<DevopsEnvironmentDTO> listByProjectId(@Param("projectId") Long projectId);
 
+    /**
+     * 查询项目下某个启用状态的用户环境, 包含集群名称
+     */
+    List<DevopsEnvironmentDTO> listByProjectIdAndActive(@Param("projectId") Long projectId, @Param("active") Boolean active);
+
     /**
      * 查询指定分组的相关环境
      *
@@ -1,6 +1,7 @@
 package io.choerodon.devops.infra.mapper;
 
 import java.sql.Date;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -30,16 +31,21 @@ public interface DevopsGitlabCommitMapper extends BaseMapper<DevopsGitlabCommitD
                                                               @Param("userId") Long userId,
                                                               @Param("time") java.util.Date time);
 
-    List<java.util.Date> queryCountByProjectIdAndDate(@Param("projectId") Long projectId,
-                                                      @Param("startDate") java.util.Date startDate,
-                                                      @Param("endDate") Date endDate);
-
     List<DevopsGitlabCommitDTO> listUserRecentCommits(@Param("projectIds") List<Long> projectIds,
                                                       @Param("userId") Long userId,
                                                       @Param("date") Date date);
 
     Set<Long> listIdsByCommitSha(@Param("commitSha") Set<String> commitSha);
 
+    /**
+     * 查询分支上已有的提交
+     *
+     * @param ref        分支
+     * @param commitShas 提交的sha
+     * @return 只有id和commitSha
+     */
+    List<DevopsGitlabCommitDTO> listByRefAndCommitShas(@Param("ref") String ref, @Param("commitShas") Collection<String> commitShas);
+
     void removeIssueAssociation(@Param("appServiceId") Long appServiceId, @Param("branchName") String branchName, @Param("issueId") Long issueId);
 
 
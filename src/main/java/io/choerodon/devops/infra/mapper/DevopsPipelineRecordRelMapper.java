@@ -16,10 +16,6 @@ import io.choerodon.mybatis.common.BaseMapper;
  * @since 2020/7/14 20:50
  */
 public interface DevopsPipelineRecordRelMapper extends BaseMapper<DevopsPipelineRecordRelDTO> {
-    List<DevopsPipelineRecordRelDTO> selectBySprint(@Param("pipeline_id") Long pipelineId,
-                                                    @Param("startDate") Date startDate,
-                                                    @Param("endDate") Date endDate);
-
     PipelineCompositeRecordVO queryLatestedPipelineRecord(@Param("id") Long id);
 
     List<DevopsPipelineRecordRelDTO> listByPipelineId(@Param("pipelineId") Long pipelineId, @Param("startTime") Date startTime, @Param("endTime") Date endTime);
@@ -0,0 +1,31 @@
+package io.choerodon.devops.infra.mapper;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Param;
+
+import io.choerodon.devops.infra.dto.DevopsSearchGramDTO;
+import io.choerodon.mybatis.common.BaseMapper;
+
+/**
+ * @author zmf
+ * @since 2021/8/8
+ */
+public interface DevopsSearchGramMapper extends BaseMapper<DevopsSearchGramDTO> {
+    int batchInsert(@Param("grams") List<DevopsSearchGramDTO> grams);
+
+    int deleteByObjectIds(@Param("objectType") String objectType,
+                          @Param("objectIds") Collection<Long> objectIds);
+
+    /**
+     * 查询包含所有三元组的对象id
+     *
+     * @param grams 去重后的三元组
+     * @param limit 最多返回的数量
+     */
+    List<Long> listObjectIdsContainingAll(@Param("objectType") String objectType,
+                                          @Param("projectId") Long projectId,
+                                          @Param("grams") Collection<String> grams,
+                                          @Param("limit") int limit);
+}
@@ -1,5 +1,7 @@
 package io.choerodon.devops.infra.mapper;
 
+import org.apache.ibatis.annotations.Param;
+
 import io.choerodon.devops.infra.dto.DevopsUserSyncRecordDTO;
 import io.choerodon.mybatis.common.BaseMapper;
 
@@ -9,4 +11,11 @@ import io.choerodon.mybatis.common.BaseMapper;
  */
 public interface DevopsUserSyncRecordMapper extends BaseMapper<DevopsUserSyncRecordDTO> {
     DevopsUserSyncRecordDTO queryLatestRecord();
+
+    /**
+     * 累加一个分片的同步结果, 多个实例并发更新时不会相互覆盖
+     */
+    int checkpoint(@Param("recordId") Long recordId,
+                   @Param("successCount") Long successCount,
+                   @Param("failCount") Long failCount);
 }
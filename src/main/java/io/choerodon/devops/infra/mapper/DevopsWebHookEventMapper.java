@@ -0,0 +1,77 @@
+package io.choerodon.devops.infra.mapper;
+
+import java.util.Date;
+import java.util.List;
+
+import org.apache.ibatis.annotations.Param;
+
+import io.choerodon.devops.infra.dto.DevopsWebHookEventDTO;
+import io.choerodon.mybatis.common.BaseMapper;
+
+/**
+ * 状态的取值见{@link io.choerodon.devops.infra.enums.WebHookEventStatus}
+ *
+ * @author zmf
+ * @since 2021/8/10
+ */
+public interface DevopsWebHookEventMapper extends BaseMapper<DevopsWebHookEventDTO> {
+    /**
+     * 查询到期需要处理的事件, 按id递增
+     * 每个分区只返回最早的未完成事件, 它之前还有未完成事件的不返回
+     *
+     * @return 只有id和partitionKey
+     */
+    List<DevopsWebHookEventDTO> listDueEvents(@Param("now") Date now, @Param("limit") Integer limit);
+
+    /**
+     * 查询同一个分区中这个事件之后的下一个待处理事件
+     */
+    Long selectNextPendingId(@Param("partitionKey") Long partitionKey, @Param("afterId") Long afterId);
+
+    /**
+     * 同一个分区中比这个事件更早且还没有处理完的事件数量
+     */
+    int countUnfinishedBefore(@Param("partitionKey") Long partitionKey, @Param("id") Long id);
+
+    /**
+     * 把到期的待处理或失败的事件改为处理中, 多个实例同时处理同一个事件时只有一个能成功
+     *
+     * @return 1表示成功
+     */
+    int claim(@Param("id") Long id, @Param("now") Date now);
+
+    int markSuccess(@Param("id") Long id);
+
+    int markFailed(@Param("id") Long id,
+                   @Param("status") String status,
+                   @Param("attempts") Integer attempts,
+                   @Param("nextAttemptAt") Date nextAttemptAt,
+                   @Param("errorMessage") String errorMessage);
+
+    /**
+     * 处理中超时的事件(实例停止等)按失败处理, 失败次数用完时进入死信
+     *
+     * @return 更新的数量
+     */
+    int failStaleProcessing(@Param("startedBefore") Date startedBefore,
+                            @Param("now") Date now,
+                            @Param("maxAttempts") Integer maxAttempts);
+
+    /**
+     * 重新处理事件, 处理中的事件不会被修改
+     *
+     * @param id 事件id, 为null时重新处理所有死信事件
+     * @return 更新的数量
+     */
+    int replay(@Param("id") Long id, @Param("now") Date now);
+
+    /**
+     * 删除一段时间之前的某个状态的事件
+     */
+    int deleteByStatusBefore(@Param("status") String status, @Param("before") Date before, @Param("limit") Integer limit);
+
+    /**
+     * 分页查询事件, 不包含请求体和token
+     */
+    List<DevopsWebHookEventDTO> listByOptions(@Param("status") String status, @Param("objectKind") String objectKind);
+}
@@ -0,0 +1,144 @@
+package io.choerodon.devops.infra.metrics;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.infra.enums.MetricResolution;
+
+/**
+ * 数据块存储在本地文件中: ${directory}/${seriesId}/${resolution}/${blockStart}.blk
+ * 文件的前8个字节是过期时间(毫秒), 过期的文件由定时任务删除
+ * 数据不在实例之间共享, 适用于单实例部署
+ *
+ * @author zmf
+ * @since 2021/8/9
+ */
+@Component
+@ConditionalOnProperty(value = "devops.metrics.storage", havingValue = "file")
+public class FileTimeSeriesStorage implements TimeSeriesStorage {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileTimeSeriesStorage.class);
+    private static final String BLOCK_FILE_SUFFIX = ".blk";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final int EXPIRE_AT_BYTES = 8;
+
+    /**
+     * 数据文件的根目录
+     */
+    @Value("${devops.metrics.file.directory:/choerodon/metrics}")
+    private String directory;
+
+    @Override
+    public void put(String seriesId, MetricResolution resolution, long blockStart, byte[] block, long ttlSeconds) {
+        Path file = blockFile(seriesId, resolution, blockStart);
+        Path tempFile = file.resolveSibling(file.getFileName() + TEMP_FILE_SUFFIX);
+        ByteBuffer content = ByteBuffer.allocate(EXPIRE_AT_BYTES + block.length)
+                .putLong(System.currentTimeMillis() + ttlSeconds * 1000)
+                .put(block);
+        content.flip();
+        try {
+            Files.createDirectories(file.getParent());
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+            }
+            // 先写临时文件再替换, 读取时不会读到写了一半的数据块
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new CommonException("error.metrics.block.write", e);
+        }
+    }
+
+    @Override
+    public Map<Long, byte[]> get(String seriesId, MetricResolution resolution, List<Long> blockStarts) {
+        Map<Long, byte[]> blocks = new HashMap<>();
+        long now = System.currentTimeMillis();
+        for (Long blockStart : blockStarts) {
+            Path file = blockFile(seriesId, resolution, blockStart);
+            if (!Files.exists(file)) {
+                continue;
+            }
+            try {
+                ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file));
+                if (content.remaining() >= EXPIRE_AT_BYTES && content.getLong() > now) {
+                    byte[] block = new byte[content.remaining()];
+                    content.get(block);
+                    blocks.put(blockStart, block);
+                }
+            } catch (NoSuchFileException e) {
+                // 读取前被清理任务删除
+            } catch (IOException e) {
+                LOGGER.warn("Failed to read metrics block {}", file, e);
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * 删除过期的数据块
+     */
+    @Scheduled(fixedDelayString = "${devops.metrics.file.cleanMilliSeconds:3600000}")
+    public void cleanExpiredBlocks() {
+        Path root = Paths.get(directory);
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int deleted = 0;
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files.filter(f -> f.toString().endsWith(BLOCK_FILE_SUFFIX))::iterator) {
+                if (isExpired(file, now)) {
+                    Files.deleteIfExists(file);
+                    deleted++;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to clean expired metrics blocks in {}", root, e);
+        }
+        LOGGER.debug("Deleted {} expired metrics blocks", deleted);
+    }
+
+    private static boolean isExpired(Path file, long now) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer expireAt = ByteBuffer.allocate(EXPIRE_AT_BYTES);
+            while (expireAt.hasRemaining() && channel.read(expireAt) >= 0) {
+                // 读满8个字节
+            }
+            return expireAt.hasRemaining() || expireAt.getLong(0) <= now;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private Path blockFile(String seriesId, MetricResolution resolution, long blockStart) {
+        return Paths.get(directory, encode(seriesId), resolution.getValue(), blockStart + BLOCK_FILE_SUFFIX);
+    }
+
+    /**
+     * 序列id中可能有文件名不允许的字符
+     */
+    private static String encode(String seriesId) {
+        try {
+            return URLEncoder.encode(seriesId, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package io.choerodon.devops.infra.metrics;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.devops.infra.enums.MetricResolution;
+
+/**
+ * 数据块存储在redis的字符串中, 每个数据块一个key, 由redis的过期时间清理
+ * 多个实例共享数据, 默认的存储
+ *
+ * @author zmf
+ * @since 2021/8/9
+ */
+@Component
+@ConditionalOnProperty(value = "devops.metrics.storage", havingValue = "redis", matchIfMissing = true)
+public class RedisTimeSeriesStorage implements TimeSeriesStorage {
+    /**
+     * devops-service:metrics:${seriesId}:${resolution}:${blockStart}
+     */
+    private static final String KEY_TEMPLATE = "devops-service:metrics:%s:%s:%s";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Override
+    public void put(String seriesId, MetricResolution resolution, long blockStart, byte[] block, long ttlSeconds) {
+        byte[] key = key(seriesId, resolution, blockStart);
+        stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.set(key, block, Expiration.seconds(ttlSeconds), RedisStringCommands.SetOption.upsert()));
+    }
+
+    @Override
+    public Map<Long, byte[]> get(String seriesId, MetricResolution resolution, List<Long> blockStarts) {
+        Map<Long, byte[]> blocks = new HashMap<>();
+        if (blockStarts.isEmpty()) {
+            return blocks;
+        }
+        byte[][] keys = blockStarts.stream().map(blockStart -> key(seriesId, resolution, blockStart)).toArray(byte[][]::new);
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(keys));
+        if (values == null) {
+            return blocks;
+        }
+        for (int i = 0; i < blockStarts.size(); i++) {
+            if (values.get(i) != null) {
+                blocks.put(blockStarts.get(i), values.get(i));
+            }
+        }
+        return blocks;
+    }
+
+    private static byte[] key(String seriesId, MetricResolution resolution, long blockStart) {
+        return String.format(KEY_TEMPLATE, seriesId, resolution.getValue(), blockStart).getBytes(StandardCharsets.UTF_8);
+    }
+}
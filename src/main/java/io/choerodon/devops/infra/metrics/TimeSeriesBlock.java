@@ -0,0 +1,297 @@
+package io.choerodon.devops.infra.metrics;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一个固定时间窗口内的压缩数据块
+ * 时间戳(秒)使用 delta-of-delta 编码, 值使用前一个值的 XOR 编码, 格式参考 Facebook Gorilla:
+ * <pre>
+ * 块 = [数据点数量: 4字节] [第一个时间戳: 64位] [第一个值: 64位] [后续数据点的比特流...]
+ * 时间戳: dod == 0 -> '0'; [-64, 63] -> '10' + 7位; [-256, 255] -> '110' + 9位; [-2048, 2047] -> '1110' + 12位; 其它 -> '1111' + 32位
+ * 值:     xor == 0 -> '0'; 有效位在上一个窗口内 -> '10' + 有效位; 其它 -> '11' + 5位前导0个数 + 6位有效位长度 + 有效位
+ * </pre>
+ * 数据点只能按时间递增追加, 非线程安全
+ *
+ * @author zmf
+ * @since 2021/8/9
+ */
+public class TimeSeriesBlock {
+    private static final int COUNT_BYTES = 4;
+    private static final int MAX_LEADING_ZEROS = 31;
+
+    private final BitOutput output = new BitOutput();
+    private int count;
+    private long previousTimestamp;
+    private long previousDelta;
+    private long previousValueBits;
+    private int previousLeadingZeros = Integer.MAX_VALUE;
+    private int previousTrailingZeros;
+
+    /**
+     * 由已有的数据点构建数据块, 用于继续追加持久化过的块
+     *
+     * @param points 按时间递增的数据点
+     * @return 数据块
+     */
+    public static TimeSeriesBlock of(List<DataPoint> points) {
+        TimeSeriesBlock block = new TimeSeriesBlock();
+        points.forEach(point -> block.append(point.getTimestamp(), point.getValue()));
+        return block;
+    }
+
+    /**
+     * 追加一个数据点
+     *
+     * @param timestamp 时间戳, 单位: 秒
+     * @param value     值
+     * @return 时间戳不大于最后一个数据点时不追加, 返回false
+     */
+    public boolean append(long timestamp, double value) {
+        long valueBits = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            output.writeBits(timestamp, 64);
+            output.writeBits(valueBits, 64);
+        } else {
+            if (timestamp <= previousTimestamp) {
+                return false;
+            }
+            long delta = timestamp - previousTimestamp;
+            writeDeltaOfDelta(delta - previousDelta);
+            writeValue(valueBits);
+            previousDelta = delta;
+        }
+        previousTimestamp = timestamp;
+        previousValueBits = valueBits;
+        count++;
+        return true;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * 最后一个数据点的时间戳
+     */
+    public long getLastTimestamp() {
+        return previousTimestamp;
+    }
+
+    /**
+     * @return 数据块的字节, 可以用 {@link #decode(byte[])} 解码
+     */
+    public byte[] toBytes() {
+        byte[] bits = output.toByteArray();
+        return ByteBuffer.allocate(COUNT_BYTES + bits.length).putInt(count).put(bits).array();
+    }
+
+    /**
+     * 解码数据块
+     *
+     * @param bytes {@link #toBytes()} 的结果
+     * @return 按时间递增的数据点
+     */
+    public static List<DataPoint> decode(byte[] bytes) {
+        if (bytes == null || bytes.length < COUNT_BYTES) {
+            return Collections.emptyList();
+        }
+        int count = ByteBuffer.wrap(bytes, 0, COUNT_BYTES).getInt();
+        if (count <= 0) {
+            return Collections.emptyList();
+        }
+        BitInput input = new BitInput(Arrays.copyOfRange(bytes, COUNT_BYTES, bytes.length));
+        List<DataPoint> points = new ArrayList<>(count);
+        long timestamp = input.readBits(64);
+        long valueBits = input.readBits(64);
+        points.add(new DataPoint(timestamp, Double.longBitsToDouble(valueBits)));
+
+        long delta = 0;
+        int leadingZeros = 0;
+        int trailingZeros = 0;
+        for (int i = 1; i < count; i++) {
+            delta += readDeltaOfDelta(input);
+            timestamp += delta;
+            if (input.readBit()) {
+                if (input.readBit()) {
+                    leadingZeros = (int) input.readBits(5);
+                    int significantBits = (int) input.readBits(6);
+                    if (significantBits == 0) {
+                        significantBits = 64;
+                    }
+                    trailingZeros = 64 - leadingZeros - significantBits;
+                }
+                int significantBits = 64 - leadingZeros - trailingZeros;
+                valueBits ^= input.readBits(significantBits) << trailingZeros;
+            }
+            points.add(new DataPoint(timestamp, Double.longBitsToDouble(valueBits)));
+        }
+        return points;
+    }
+
+    private void writeDeltaOfDelta(long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            output.writeBit(false);
+        } else if (deltaOfDelta >= -64 && deltaOfDelta <= 63) {
+            output.writeBits(0b10, 2);
+            output.writeBits(deltaOfDelta, 7);
+        } else if (deltaOfDelta >= -256 && deltaOfDelta <= 255) {
+            output.writeBits(0b110, 3);
+            output.writeBits(deltaOfDelta, 9);
+        } else if (deltaOfDelta >= -2048 && deltaOfDelta <= 2047) {
+            output.writeBits(0b1110, 4);
+            output.writeBits(deltaOfDelta, 12);
+        } else {
+            output.writeBits(0b1111, 4);
+            output.writeBits(deltaOfDelta, 32);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitInput input) {
+        if (!input.readBit()) {
+            return 0;
+        }
+        int bits;
+        if (!input.readBit()) {
+            bits = 7;
+        } else if (!input.readBit()) {
+            bits = 9;
+        } else if (!input.readBit()) {
+            bits = 12;
+        } else {
+            bits = 32;
+        }
+        return signExtend(input.readBits(bits), bits);
+    }
+
+    private void writeValue(long valueBits) {
+        long xor = valueBits ^ previousValueBits;
+        if (xor == 0) {
+            output.writeBit(false);
+            return;
+        }
+        output.writeBit(true);
+        int leadingZeros = Math.min(Long.numberOfLeadingZeros(xor), MAX_LEADING_ZEROS);
+        int trailingZeros = Long.numberOfTrailingZeros(xor);
+        if (previousLeadingZeros != Integer.MAX_VALUE
+                && leadingZeros >= previousLeadingZeros && trailingZeros >= previousTrailingZeros) {
+            // 有效位落在上一个窗口内, 复用上一个窗口
+            output.writeBit(false);
+            int significantBits = 64 - previousLeadingZeros - previousTrailingZeros;
+            output.writeBits(xor >>> previousTrailingZeros, significantBits);
+        } else {
+            output.writeBit(true);
+            int significantBits = 64 - leadingZeros - trailingZeros;
+            output.writeBits(leadingZeros, 5);
+            // 64个有效位用0表示
+            output.writeBits(significantBits == 64 ? 0 : significantBits, 6);
+            output.writeBits(xor >>> trailingZeros, significantBits);
+            previousLeadingZeros = leadingZeros;
+            previousTrailingZeros = trailingZeros;
+        }
+    }
+
+    private static long signExtend(long value, int bits) {
+        int shift = 64 - bits;
+        return (value << shift) >> shift;
+    }
+
+    /**
+     * 数据点
+     */
+    public static class DataPoint {
+        /**
+         * 时间戳, 单位: 秒
+         */
+        private final long timestamp;
+        private final double value;
+
+        public DataPoint(long timestamp, double value) {
+            this.timestamp = timestamp;
+            this.value = value;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return timestamp + "=" + value;
+        }
+    }
+
+    /**
+     * 按位写入的缓冲, 高位在前
+     */
+    private static class BitOutput {
+        private byte[] buffer = new byte[64];
+        private int bitLength;
+
+        void writeBit(boolean bit) {
+            ensureCapacity(1);
+            if (bit) {
+                buffer[bitLength >>> 3] |= (byte) (0x80 >>> (bitLength & 7));
+            }
+            bitLength++;
+        }
+
+        void writeBits(long value, int bits) {
+            ensureCapacity(bits);
+            for (int i = bits - 1; i >= 0; i--) {
+                if (((value >>> i) & 1L) != 0) {
+                    buffer[bitLength >>> 3] |= (byte) (0x80 >>> (bitLength & 7));
+                }
+                bitLength++;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, (bitLength + 7) >>> 3);
+        }
+
+        private void ensureCapacity(int bits) {
+            int requiredBytes = (bitLength + bits + 7) >>> 3;
+            if (requiredBytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, requiredBytes));
+            }
+        }
+    }
+
+    /**
+     * 按位读取, 高位在前
+     */
+    private static class BitInput {
+        private final byte[] buffer;
+        private int position;
+
+        BitInput(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        boolean readBit() {
+            boolean bit = (buffer[position >>> 3] & (0x80 >>> (position & 7))) != 0;
+            position++;
+            return bit;
+        }
+
+        long readBits(int bits) {
+            long value = 0;
+            for (int i = 0; i < bits; i++) {
+                value = (value << 1) | (readBit() ? 1L : 0L);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package io.choerodon.devops.infra.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+import io.choerodon.devops.infra.enums.MetricResolution;
+
+/**
+ * 时间序列数据块的存储
+ * 数据块由 {@link TimeSeriesStore} 整块写入和读取, 存储只需要按key保存字节, 并在过期后删除
+ *
+ * @author zmf
+ * @since 2021/8/9
+ */
+public interface TimeSeriesStorage {
+    /**
+     * 写入(覆盖)一个数据块
+     *
+     * @param seriesId   序列id
+     * @param resolution 精度
+     * @param blockStart 数据块的起始时间, 单位: 秒
+     * @param block      数据块的字节
+     * @param ttlSeconds 数据块的保留时间, 单位: 秒
+     */
+    void put(String seriesId, MetricResolution resolution, long blockStart, byte[] block, long ttlSeconds);
+
+    /**
+     * 读取数据块
+     *
+     * @param seriesId    序列id
+     * @param resolution  精度
+     * @param blockStarts 数据块的起始时间
+     * @return 起始时间 -> 数据块, 不存在或者已过期的数据块不在结果中
+     */
+    Map<Long, byte[]> get(String seriesId, MetricResolution resolution, List<Long> blockStarts);
+}
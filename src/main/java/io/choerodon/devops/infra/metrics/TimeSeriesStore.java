@@ -0,0 +1,360 @@
+package io.choerodon.devops.infra.metrics;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.choerodon.devops.infra.enums.MetricResolution;
+
+/**
+ * 资源指标的时间序列存储
+ * <p>
+ * 每个序列在内存中保留每种精度当前的数据块(head), 新的数据点追加到head中, head定时写入 {@link TimeSeriesStorage};
+ * 数据点进入下一个数据块时, 上一个数据块写入存储后不再修改. 实例重启或者序列转移到其它实例后,
+ * 第一个数据点会先从存储中读取已有的数据块再继续追加.
+ * <p>
+ * 原始数据之外的精度由原始数据按时间桶取平均值, 时间桶结束(下一个时间桶的数据点到达)时追加一个数据点;
+ * 每种精度的数据按各自的保留时间过期
+ * <p>
+ * 序列转移到其它实例后, 本实例的序列在空闲超时后移除; 如果存储中的数据块已经被其它实例改写,
+ * 直接丢弃本实例的head, 不再写入, 以免用过期的数据覆盖新实例的数据块
+ *
+ * @author zmf
+ * @since 2021/8/9
+ */
+@Component
+public class TimeSeriesStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimeSeriesStore.class);
+
+    /**
+     * 各精度的保留时间, 单位: 小时
+     */
+    @Value("${devops.metrics.retentionHours.raw:24}")
+    private Long rawRetentionHours;
+    @Value("${devops.metrics.retentionHours.minute:168}")
+    private Long minuteRetentionHours;
+    @Value("${devops.metrics.retentionHours.fiveMinutes:720}")
+    private Long fiveMinutesRetentionHours;
+    @Value("${devops.metrics.retentionHours.hour:8760}")
+    private Long hourRetentionHours;
+    /**
+     * 自动选择精度时, 一次查询最多返回的数据点数量
+     */
+    @Value("${devops.metrics.query.maxPoints:720}")
+    private Integer maxPoints;
+    /**
+     * 超过这个时间没有新的数据点, 序列从内存中移除, 单位: 分钟
+     */
+    @Value("${devops.metrics.idleMinutes:10}")
+    private Long idleMinutes;
+
+    @Autowired
+    private TimeSeriesStorage timeSeriesStorage;
+
+    private final ConcurrentMap<String, Series> seriesMap = new ConcurrentHashMap<>();
+
+    /**
+     * 记录一个数据点
+     *
+     * @param seriesId        序列id
+     * @param timestampMillis 采集时间, 单位: 毫秒, 存储精度为秒
+     * @param value           值
+     */
+    public void record(String seriesId, long timestampMillis, double value) {
+        long timestamp = TimeUnit.MILLISECONDS.toSeconds(timestampMillis);
+        while (true) {
+            Series series = seriesMap.computeIfAbsent(seriesId, Series::new);
+            synchronized (series) {
+                // 并发的清理任务可能刚好移除了这个序列
+                if (series.removed) {
+                    continue;
+                }
+                series.lastRecordMillis = System.currentTimeMillis();
+                append(series, MetricResolution.RAW, timestamp, value);
+                for (MetricResolution resolution : MetricResolution.values()) {
+                    if (!resolution.isRaw()) {
+                        addToBucket(series, resolution, timestamp, value);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 查询一段时间内的数据点
+     *
+     * @param seriesId    序列id
+     * @param startMillis 开始时间, 单位: 毫秒
+     * @param endMillis   结束时间, 单位: 毫秒
+     * @param resolution  精度
+     * @return 按时间递增的数据点, 时间戳单位为秒
+     */
+    public List<TimeSeriesBlock.DataPoint> query(String seriesId, long startMillis, long endMillis, MetricResolution resolution) {
+        long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        // 还没有未来的数据, 结束时间不超过当前时间
+        long end = Math.min(TimeUnit.MILLISECONDS.toSeconds(endMillis), now);
+        // 超过保留时间的数据块已经过期, 不需要查询; 查询的数据块数量因此不超过 保留时间/数据块窗口 + 1
+        long start = Math.max(TimeUnit.MILLISECONDS.toSeconds(startMillis), now - retentionSeconds(resolution));
+        if (start > end) {
+            return Collections.emptyList();
+        }
+
+        List<Long> blockStarts = new ArrayList<>();
+        for (long blockStart = resolution.blockStart(start); blockStart <= end; blockStart += resolution.getBlockSeconds()) {
+            blockStarts.add(blockStart);
+        }
+        Map<Long, byte[]> blocks = new HashMap<>(timeSeriesStorage.get(seriesId, resolution, blockStarts));
+        // 内存中的head比存储中的更新
+        Series series = seriesMap.get(seriesId);
+        if (series != null) {
+            synchronized (series) {
+                Head head = series.heads.get(resolution);
+                if (head != null && blockStarts.contains(head.blockStart)) {
+                    blocks.put(head.blockStart, head.block.toBytes());
+                }
+            }
+        }
+
+        List<TimeSeriesBlock.DataPoint> points = new ArrayList<>();
+        for (Long blockStart : blockStarts) {
+            byte[] block = blocks.get(blockStart);
+            if (block == null) {
+                continue;
+            }
+            for (TimeSeriesBlock.DataPoint point : TimeSeriesBlock.decode(block)) {
+                if (point.getTimestamp() >= start && point.getTimestamp() <= end) {
+                    points.add(point);
+                }
+            }
+        }
+        return points;
+    }
+
+    /**
+     * 写入有变化的head, 移除长时间没有数据的序列
+     */
+    @Scheduled(fixedDelayString = "${devops.metrics.flushMilliSeconds:30000}")
+    public void flush() {
+        long idleBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleMinutes);
+        int flushed = 0;
+        for (Series series : seriesMap.values()) {
+            synchronized (series) {
+                if (series.lastRecordMillis < idleBefore) {
+                    series.removed = true;
+                    seriesMap.remove(series.id, series);
+                    if (isTakenOver(series)) {
+                        // 序列已经转移到其它实例, 丢弃本实例的数据
+                        LOGGER.debug("Metrics series {} is taken over by another instance", series.id);
+                        continue;
+                    }
+                    // 序列不再有数据(比如pod已经删除), 结束未完成的时间桶后移除
+                    series.buckets.forEach((resolution, bucket) -> append(series, resolution, bucket.start, bucket.average()));
+                    series.buckets.clear();
+                }
+                for (Map.Entry<MetricResolution, Head> entry : series.heads.entrySet()) {
+                    if (entry.getValue().dirty) {
+                        persist(series.id, entry.getKey(), entry.getValue());
+                        flushed++;
+                    }
+                }
+            }
+        }
+        LOGGER.debug("Flushed {} metrics blocks of {} series", flushed, seriesMap.size());
+    }
+
+    @PreDestroy
+    void destroy() {
+        // 只写入head, 未结束的时间桶由重启后的数据继续
+        for (Series series : seriesMap.values()) {
+            synchronized (series) {
+                series.heads.forEach((resolution, head) -> {
+                    if (head.dirty) {
+                        persist(series.id, resolution, head);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 按时间范围选择精度: 保留时间覆盖开始时间, 并且数据点数量不超过上限的最高精度
+     *
+     * @param startMillis 开始时间, 单位: 毫秒
+     * @param endMillis   结束时间, 单位: 毫秒
+     * @return 精度
+     */
+    public MetricResolution chooseResolution(long startMillis, long endMillis) {
+        long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        long start = TimeUnit.MILLISECONDS.toSeconds(startMillis);
+        long range = Math.min(TimeUnit.MILLISECONDS.toSeconds(endMillis), now) - start;
+        for (MetricResolution resolution : MetricResolution.values()) {
+            if (start < now - retentionSeconds(resolution)) {
+                continue;
+            }
+            // 原始数据的间隔由上报方决定, 只用于不超过一个数据块的查询
+            if (resolution.isRaw() ? range <= resolution.getBlockSeconds() : range / resolution.getStepSeconds() <= maxPoints) {
+                return resolution;
+            }
+        }
+        return MetricResolution.HOUR;
+    }
+
+    private void addToBucket(Series series, MetricResolution resolution, long timestamp, double value) {
+        long bucketStart = resolution.bucketStart(timestamp);
+        Bucket bucket = series.buckets.get(resolution);
+        if (bucket != null && bucket.start != bucketStart) {
+            if (bucketStart < bucket.start) {
+                // 乱序的旧数据点, 时间桶已经结束
+                return;
+            }
+            append(series, resolution, bucket.start, bucket.average());
+            bucket = null;
+        }
+        if (bucket == null) {
+            bucket = new Bucket(bucketStart);
+            series.buckets.put(resolution, bucket);
+        }
+        bucket.sum += value;
+        bucket.count++;
+    }
+
+    private void append(Series series, MetricResolution resolution, long timestamp, double value) {
+        long blockStart = resolution.blockStart(timestamp);
+        Head head = series.heads.get(resolution);
+        if (head == null || head.blockStart != blockStart) {
+            if (head != null && blockStart < head.blockStart) {
+                // 乱序的旧数据点, 数据块已经结束
+                return;
+            }
+            if (head != null && head.dirty) {
+                persist(series.id, resolution, head);
+            }
+            byte[] existing = load(series.id, resolution, blockStart);
+            head = new Head(blockStart, existing == null ? new TimeSeriesBlock() : TimeSeriesBlock.of(TimeSeriesBlock.decode(existing)), existing);
+            series.heads.put(resolution, head);
+        }
+        if (head.block.append(timestamp, value)) {
+            head.dirty = true;
+        }
+    }
+
+    @Nullable
+    private byte[] load(String seriesId, MetricResolution resolution, long blockStart) {
+        try {
+            return timeSeriesStorage.get(seriesId, resolution, Collections.singletonList(blockStart)).get(blockStart);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to load metrics block {} of series {} in resolution {}", blockStart, seriesId, resolution.getValue(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 存储中的数据块和本实例最后一次读取或写入的不同, 说明其它实例在写入这个序列
+     * 读取失败时按被接管处理, 宁可丢弃最后一个未结束的时间桶, 也不覆盖其它实例的数据
+     */
+    private boolean isTakenOver(Series series) {
+        for (Map.Entry<MetricResolution, Head> entry : series.heads.entrySet()) {
+            Head head = entry.getValue();
+            byte[] stored;
+            try {
+                stored = timeSeriesStorage.get(series.id, entry.getKey(), Collections.singletonList(head.blockStart)).get(head.blockStart);
+            } catch (Exception e) {
+                LOGGER.warn("Failed to check metrics block {} of series {} in resolution {}", head.blockStart, series.id, entry.getKey().getValue(), e);
+                return true;
+            }
+            if (!Arrays.equals(stored, head.stored)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void persist(String seriesId, MetricResolution resolution, Head head) {
+        try {
+            byte[] bytes = head.block.toBytes();
+            // 数据块中最新的数据点到期后整个数据块过期
+            timeSeriesStorage.put(seriesId, resolution, head.blockStart, bytes,
+                    retentionSeconds(resolution) + resolution.getBlockSeconds());
+            head.stored = bytes;
+            head.dirty = false;
+        } catch (Exception e) {
+            LOGGER.warn("Failed to persist metrics block {} of series {} in resolution {}", head.blockStart, seriesId, resolution.getValue(), e);
+        }
+    }
+
+    private long retentionSeconds(MetricResolution resolution) {
+        switch (resolution) {
+            case RAW:
+                return TimeUnit.HOURS.toSeconds(rawRetentionHours);
+            case MINUTE:
+                return TimeUnit.HOURS.toSeconds(minuteRetentionHours);
+            case FIVE_MINUTES:
+                return TimeUnit.HOURS.toSeconds(fiveMinutesRetentionHours);
+            default:
+                return TimeUnit.HOURS.toSeconds(hourRetentionHours);
+        }
+    }
+
+    /**
+     * 一个序列在内存中的状态, 由序列本身的锁保护
+     */
+    private static class Series {
+        private final String id;
+        private final Map<MetricResolution, Head> heads = new EnumMap<>(MetricResolution.class);
+        private final Map<MetricResolution, Bucket> buckets = new EnumMap<>(MetricResolution.class);
+        private long lastRecordMillis = System.currentTimeMillis();
+        private boolean removed;
+
+        Series(String id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * 当前的数据块
+     */
+    private static class Head {
+        private final long blockStart;
+        private final TimeSeriesBlock block;
+        /**
+         * 本实例最后一次从存储读取或写入存储的字节, 用于判断序列是否被其它实例接管
+         */
+        @Nullable
+        private byte[] stored;
+        private boolean dirty;
+
+        Head(long blockStart, TimeSeriesBlock block, @Nullable byte[] stored) {
+            this.blockStart = blockStart;
+            this.block = block;
+            this.stored = stored;
+        }
+    }
+
+    /**
+     * 未结束的时间桶
+     */
+    private static class Bucket {
+        private final long start;
+        private double sum;
+        private int count;
+
+        Bucket(long start) {
+            this.start = start;
+        }
+
+        double average() {
+            return sum / count;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package io.choerodon.devops.infra.util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * 上传chart包的请求体
+ * <p>
+ * 发送请求体时只读取一遍上传的chart包, 读到的字节在发送给chart museum的同时解压,
+ * 在内存中取出chart根目录下的values.yaml和README.md, 不写本地文件
+ * <p>
+ * 发送失败重试时会重新读取上传的文件, 结果以最后一次发送为准
+ *
+ * @author zmf
+ * @since 2021/8/10
+ */
+public class ChartUploadRequestBody extends RequestBody {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChartUploadRequestBody.class);
+    private static final MediaType MEDIA_TYPE = MediaType.parse("multipart/form-data");
+    private static final String VALUES_FILE_NAME = "values.yaml";
+    private static final String README_FILE_NAME = "README.md";
+    private static final String CURRENT_DIR_PREFIX = "./";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final MultipartFile chart;
+    private final int maxValuesBytes;
+    private final int maxReadmeBytes;
+
+    private volatile ChartContent content;
+
+    /**
+     * @param chart          上传的chart包
+     * @param maxValuesBytes values.yaml的大小上限, 超过上限时视为没有values
+     * @param maxReadmeBytes README.md的大小上限, 超过上限的部分被截断
+     */
+    public ChartUploadRequestBody(MultipartFile chart, int maxValuesBytes, int maxReadmeBytes) {
+        this.chart = chart;
+        this.maxValuesBytes = maxValuesBytes;
+        this.maxReadmeBytes = maxReadmeBytes;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public long contentLength() {
+        return chart.getSize();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        try (InputStream inputStream = chart.getInputStream()) {
+            content = read(new TeeInputStream(inputStream, sink.outputStream(), false), maxValuesBytes, maxReadmeBytes);
+        }
+    }
+
+    /**
+     * 请求体发送后才有内容
+     *
+     * @return chart包中的内容, 请求体没有发送时为null
+     */
+    @Nullable
+    public ChartContent getContent() {
+        return content;
+    }
+
+    /**
+     * 读取chart包, 取出根目录下的values.yaml和README.md, 流会被读到末尾
+     *
+     * @param inputStream    tgz格式的chart包
+     * @param maxValuesBytes values.yaml的大小上限
+     * @param maxReadmeBytes README.md的大小上限
+     * @return chart包中的内容
+     * @throws IOException 读取失败或者不是tgz格式
+     */
+    public static ChartContent read(InputStream inputStream, int maxValuesBytes, int maxReadmeBytes) throws IOException {
+        ChartContent chartContent = new ChartContent();
+        // 不关闭解压的流, 以免关闭外部传入的流
+        // gzip解压会对支持mark的流调用reset回退多读的字节, 由缓冲区回退, 避免同一段字节被TeeInputStream发送两次
+        TarArchiveInputStream tarIn = new TarArchiveInputStream(new GzipCompressorInputStream(new BufferedInputStream(inputStream)));
+        TarArchiveEntry entry;
+        while ((entry = tarIn.getNextTarEntry()) != null) {
+            if (entry.isDirectory() || !isTopLevel(entry.getName())) {
+                continue;
+            }
+            String fileName = fileName(entry.getName());
+            if (VALUES_FILE_NAME.equals(fileName)) {
+                CappedBytes values = readAtMost(tarIn, maxValuesBytes);
+                if (values.truncated) {
+                    chartContent.valuesTooLarge = true;
+                    LOGGER.info("The values.yaml {} in the chart exceeds {} bytes", entry.getName(), maxValuesBytes);
+                } else {
+                    chartContent.values = new String(values.bytes, StandardCharsets.UTF_8);
+                }
+            } else if (README_FILE_NAME.equals(fileName)) {
+                CappedBytes readme = readAtMost(tarIn, maxReadmeBytes);
+                byte[] readmeBytes = readme.bytes;
+                if (readme.truncated) {
+                    LOGGER.info("The README.md {} in the chart exceeds {} bytes, truncate it", entry.getName(), maxReadmeBytes);
+                    readmeBytes = Arrays.copyOf(readmeBytes, utf8Boundary(readmeBytes));
+                }
+                chartContent.readme = normalizeLines(readmeBytes);
+            }
+        }
+        // tar包结束后的填充和gzip的尾部也需要读完, 保证完整地发送
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (inputStream.read(buffer) != -1) {
+            // 丢弃
+        }
+        return chartContent;
+    }
+
+    /**
+     * chart包的根目录下只有一个以chart名称命名的目录, 子chart在charts目录下
+     * 只取 ${chartName}/values.yaml 这一层的文件, 避免取到子chart的文件
+     */
+    private static boolean isTopLevel(String entryName) {
+        String name = entryName.startsWith(CURRENT_DIR_PREFIX) ? entryName.substring(CURRENT_DIR_PREFIX.length()) : entryName;
+        int firstSlash = name.indexOf('/');
+        return firstSlash == -1 || name.indexOf('/', firstSlash + 1) == -1;
+    }
+
+    /**
+     * 路径的最后一段, 如 demo/prod-values.yaml 的文件名是 prod-values.yaml
+     */
+    private static String fileName(String entryName) {
+        return entryName.substring(entryName.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * 按字节截断后末尾可能是不完整的UTF-8字符, 去掉这个不完整的字符
+     *
+     * @return 不超过bytes长度的、在字符边界上的长度
+     */
+    private static int utf8Boundary(byte[] bytes) {
+        int start = bytes.length;
+        // 找到最后一个字符的首字节, 后续字节的格式是10xxxxxx, 一个字符最多4个字节
+        while (start > 0 && bytes.length - start < 4 && (bytes[start - 1] & 0xC0) == 0x80) {
+            start--;
+        }
+        if (start == 0) {
+            return 0;
+        }
+        int lead = bytes[start - 1] & 0xFF;
+        int charLength;
+        if (lead < 0x80) {
+            charLength = 1;
+        } else if ((lead & 0xE0) == 0xC0) {
+            charLength = 2;
+        } else if ((lead & 0xF0) == 0xE0) {
+            charLength = 3;
+        } else {
+            charLength = 4;
+        }
+        return bytes.length - (start - 1) < charLength ? start - 1 : bytes.length;
+    }
+
+    /**
+     * 读取当前文件的前limit个字节, 剩余的部分由读取下一个文件时跳过
+     */
+    private static CappedBytes readAtMost(InputStream inputStream, int limit) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = inputStream.read(buffer)) != -1) {
+            if (output.size() + n > limit) {
+                output.write(buffer, 0, limit - output.size());
+                return new CappedBytes(output.toByteArray(), true);
+            }
+            output.write(buffer, 0, n);
+        }
+        return new CappedBytes(output.toByteArray(), false);
+    }
+
+    /**
+     * 与按行读取文件时一致, 每行以\n结尾
+     */
+    private static String normalizeLines(byte[] bytes) throws IOException {
+        StringBuilder content = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                content.append(line).append("\n");
+            }
+        }
+        return content.toString();
+    }
+
+    private static class CappedBytes {
+        private final byte[] bytes;
+        private final boolean truncated;
+
+        private CappedBytes(byte[] bytes, boolean truncated) {
+            this.bytes = bytes;
+            this.truncated = truncated;
+        }
+    }
+
+    /**
+     * chart包中的内容
+     */
+    public static class ChartContent {
+        private String values;
+        private boolean valuesTooLarge;
+        private String readme;
+
+        /**
+         * @return 根目录下的values.yaml, 没有或者超过大小上限时为null
+         */
+        @Nullable
+        public String getValues() {
+            return values;
+        }
+
+        public boolean isValuesTooLarge() {
+            return valuesTooLarge;
+        }
+
+        /**
+         * @return 根目录下的README.md, 没有时为null
+         */
+        @Nullable
+        public String getReadme() {
+            return readme;
+        }
+    }
+}
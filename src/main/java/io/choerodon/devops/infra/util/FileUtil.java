@@ -375,8 +375,10 @@ public class FileUtil {
         List<String> filesPath = new ArrayList<>();
         if (file != null) {
             if (file.isDirectory()) {
-                Arrays.stream(Objects.requireNonNull(file.listFiles())).parallel()
-                        .forEach(t -> filesPath.addAll(getFilesPath(t)));
+                // 并行流中不能向非线程安全的列表中添加元素, 由流负责合并结果
+                filesPath.addAll(Arrays.stream(Objects.requireNonNull(file.listFiles())).parallel()
+                        .flatMap(t -> getFilesPath(t).stream())
+                        .collect(Collectors.toList()));
             } else if (file.isFile()
                     && (file.getName().endsWith(".yml") || file.getName().endsWith("yaml"))) {
                 filesPath.add(file.getPath());
@@ -465,7 +467,9 @@ public class FileUtil {
      *
      * @param path 路径
      * @return 返回替换结果
+     * @deprecated 每次调用都会开启一个新进程, 使用 {@link HelmValuesMergeUtil#merge(String, String)}
      */
+    @Deprecated
     public static InstanceValueVO replaceNew(String path) {
         BufferedReader stdInput = null;
         BufferedReader stdError = null;
@@ -473,7 +477,6 @@ public class FileUtil {
         try {
 
             String command = EXEC_PATH + " " + path;
-            // TODO 这里每次执行都是开启了一个新进程，可能开销不小
             Process p = Runtime.getRuntime().exec(command);
 
             stdInput = new BufferedReader(new
@@ -516,21 +519,27 @@ public class FileUtil {
             throw new CommonException("error.value.illegal");
         }
         Yaml yaml = new Yaml();
-        Object map = yaml.load(strings[2]);
-        InstanceValueVO instanceValueVO = replaceNew(strings[0], (Map) map);
+        Map map = (Map) yaml.load(strings[2]);
+        InstanceValueVO instanceValueVO = locateChanges(strings[0], (List<List<String>>) map.get("add"), (List<List<String>>) map.get("update"));
         instanceValueVO.setDeltaYaml(strings[1]);
         return instanceValueVO;
     }
 
-    private static InstanceValueVO replaceNew(String yaml, Map map) {
+    /**
+     * 根据新增和修改的key的路径, 计算合并后的values中新增的行和修改的位置
+     *
+     * @param yaml    合并后的values
+     * @param adds    新增的key的路径
+     * @param updates 修改的key的路径
+     * @return 结果, 不包含差异的values
+     */
+    static InstanceValueVO locateChanges(String yaml, List<List<String>> adds, List<List<String>> updates) {
         Composer composer = new Composer(new ParserImpl(new StreamReader(yaml)), new Resolver());
         MappingNode mappingNode = (MappingNode) composer.getSingleNode();
         List<Integer> addLines = new ArrayList<>();
 
         //处理新增
-        ArrayList addLists = (ArrayList) map.get("add");
-        for (Object add : addLists) {
-            ArrayList<String> addList = (ArrayList<String>) add;
+        for (List<String> addList : adds) {
             Node node = getKeysNode(addList, mappingNode);
             if (node != null) {
                 appendLine(node.getStartMark().getLine(), node.getEndMark().getLine(), addLines);
@@ -540,10 +549,8 @@ public class FileUtil {
         List<HighlightMarker> highlightMarkers = new ArrayList<>();
 
         //处理修改
-        ArrayList updateList = (ArrayList) map.get("update");
-        for (Object add : updateList) {
-            ArrayList<String> addList = (ArrayList<String>) add;
-            Node node = getKeysNode(addList, mappingNode);
+        for (List<String> updateList : updates) {
+            Node node = getKeysNode(updateList, mappingNode);
             HighlightMarker highlightMarker = new HighlightMarker();
             if (node != null) {
                 highlightMarker.setLine(node.getStartMark().getLine());
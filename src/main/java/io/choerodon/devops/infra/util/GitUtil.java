@@ -2,9 +2,7 @@ package io.choerodon.devops.infra.util;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
 import java.util.regex.Pattern;
 
 import com.jcraft.jsch.JSch;
@@ -19,8 +17,13 @@ import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.*;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.eclipse.jgit.util.FS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -139,6 +142,78 @@ public class GitUtil {
         return "";
     }
 
+    /**
+     * 一次遍历提交历史, 批量获取多个文件的最新提交
+     * 从HEAD开始按提交时间倒序遍历只涉及这些文件的提交, 所有文件都找到最新提交后即停止,
+     * 避免每个文件都打开一次仓库并遍历一次提交历史
+     *
+     * @param path      本地仓库的.git目录
+     * @param filePaths 文件相对于仓库根目录的路径
+     * @return 文件路径 -> 最新提交的sha, 获取不到提交的文件不在结果中
+     */
+    public static Map<String, String> getFilesLatestCommit(String path, Collection<String> filePaths) {
+        Set<String> remaining = new HashSet<>();
+        for (String filePath : filePaths) {
+            if (!StringUtils.isEmpty(filePath)) {
+                remaining.add(filePath);
+            }
+        }
+        Map<String, String> latestCommits = new HashMap<>(remaining.size() * 2);
+        if (remaining.isEmpty()) {
+            return latestCommits;
+        }
+
+        try (Repository repository = new FileRepository(new File(path).getAbsolutePath());
+             RevWalk revWalk = new RevWalk(repository);
+             RevWalk parentWalk = new RevWalk(repository)) {
+            ObjectId head = repository.resolve(Constants.HEAD);
+            if (head == null) {
+                return latestCommits;
+            }
+            revWalk.sort(RevSort.COMMIT_TIME_DESC);
+            revWalk.setTreeFilter(AndTreeFilter.create(PathFilterGroup.createFromStrings(remaining), TreeFilter.ANY_DIFF));
+            revWalk.markStart(revWalk.parseCommit(head));
+
+            for (RevCommit commit : revWalk) {
+                // revWalk会改写父提交以简化历史, 比较文件时使用原始的父提交
+                RevCommit original = parentWalk.parseCommit(commit);
+                try (TreeWalk treeWalk = new TreeWalk(repository)) {
+                    treeWalk.setRecursive(true);
+                    treeWalk.setFilter(AndTreeFilter.create(PathFilterGroup.createFromStrings(remaining), TreeFilter.ANY_DIFF));
+                    treeWalk.addTree(original.getTree());
+                    for (RevCommit parent : original.getParents()) {
+                        treeWalk.addTree(parentWalk.parseCommit(parent).getTree());
+                    }
+                    while (treeWalk.next()) {
+                        String filePath = treeWalk.getPathString();
+                        if (remaining.contains(filePath) && differsFromAllParents(treeWalk)) {
+                            latestCommits.put(filePath, commit.getName());
+                            remaining.remove(filePath);
+                        }
+                    }
+                }
+                if (remaining.isEmpty()) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.info(e.getMessage());
+        }
+        return latestCommits;
+    }
+
+    /**
+     * 与git log的规则一致, 文件只要和任一父提交中的相同, 就认为这个提交没有修改这个文件
+     */
+    private static boolean differsFromAllParents(TreeWalk treeWalk) {
+        for (int i = 1; i < treeWalk.getTreeCount(); i++) {
+            if (treeWalk.idEqual(0, i) && treeWalk.getRawMode(0) == treeWalk.getRawMode(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public static String getGitlabSshUrl(Pattern pattern, String url, String orgCode, String proCode, String envCode, EnvironmentType environmentType, String clusterCode) {
         final String groupSuffix = GitOpsUtil.getGroupSuffixByEnvType(environmentType);
         String result = "";
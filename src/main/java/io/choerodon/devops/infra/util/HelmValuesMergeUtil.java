@@ -0,0 +1,385 @@
+package io.choerodon.devops.infra.util;
+
+import java.util.*;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.composer.Composer;
+import org.yaml.snakeyaml.error.Mark;
+import org.yaml.snakeyaml.nodes.*;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import io.choerodon.core.exception.CommonException;
+import io.choerodon.devops.api.vo.kubernetes.InstanceValueVO;
+
+/**
+ * 在JVM内合并chart的values和部署的values, 替代之前调用外部的 values_yaml 进程的方式
+ * <p>
+ * 合并的规则:
+ * 1. 部署values中有而版本values中没有的key, 作为新增
+ * 2. 两边都是map的key, 递归合并
+ * 3. 其余值不同的key(包括列表), 以部署values中的值整体替换
+ * <p>
+ * 合并结果是在版本values的原文上做局部的文本替换得到的, 以保留版本values中的注释和格式.
+ * 如果原文中有无法局部替换的结构(如锚点、flow风格的根节点等), 或者替换后的结果和结构化合并的结果不一致,
+ * 则退化为直接输出结构化合并的结果(不保留注释)
+ *
+ * @author zmf
+ * @since 2021/8/5
+ */
+public final class HelmValuesMergeUtil {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HelmValuesMergeUtil.class);
+
+    /**
+     * 两边没有差异时的差异values, 和之前外部进程的输出保持一致
+     */
+    public static final String EMPTY_DELTA = "{}\n";
+
+    private static final String NEW_LINE = "\n";
+
+    private HelmValuesMergeUtil() {
+    }
+
+    /**
+     * 合并values
+     *
+     * @param versionValues 版本的values
+     * @param deployValues  部署的values
+     * @return 合并的结果, 包括合并后的yaml, 差异的yaml, 新增的行以及修改的位置
+     */
+    public static InstanceValueVO merge(String versionValues, String deployValues) {
+        Map<Object, Object> baseMap = loadAsMap(versionValues);
+        Map<Object, Object> newMap = loadAsMap(deployValues);
+
+        MergeContext context = new MergeContext(versionValues);
+        MappingNode root = composeRoot(versionValues, context);
+        Map<Object, Object> delta = new LinkedHashMap<>();
+        mergeMapping(root, baseMap, newMap, new ArrayList<>(), delta, context);
+
+        Map<Object, Object> merged = deepMerge(baseMap, newMap);
+        String mergedYaml = context.spliceable ? splice(versionValues, root, newMap, merged, context) : null;
+        if (mergedYaml == null) {
+            mergedYaml = merged.isEmpty() ? versionValues : dumpBlock(merged);
+        }
+
+        InstanceValueVO instanceValueVO = FileUtil.locateChanges(mergedYaml, context.adds, context.updates);
+        instanceValueVO.setDeltaYaml(delta.isEmpty() ? EMPTY_DELTA : dumpBlock(delta));
+        return instanceValueVO;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Object, Object> loadAsMap(String content) {
+        Object loaded;
+        try {
+            loaded = new Yaml().load(content);
+        } catch (Exception ex) {
+            throw new CommonException("error.value.illegal", ex);
+        }
+        if (loaded == null) {
+            return new LinkedHashMap<>();
+        }
+        if (!(loaded instanceof Map)) {
+            throw new CommonException("error.value.illegal");
+        }
+        return (Map<Object, Object>) loaded;
+    }
+
+    /**
+     * 获取版本values的根节点, 根节点不是block风格的map时不做局部替换
+     */
+    private static MappingNode composeRoot(String versionValues, MergeContext context) {
+        Node node = new Composer(new ParserImpl(new StreamReader(versionValues)), new Resolver()).getSingleNode();
+        if (node == null) {
+            return null;
+        }
+        if (!(node instanceof MappingNode) || isFlow(node, context)) {
+            context.spliceable = false;
+            return null;
+        }
+        return (MappingNode) node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void mergeMapping(MappingNode node, Map<Object, Object> baseMap, Map<Object, Object> newMap,
+                                     List<String> path, Map<Object, Object> delta, MergeContext context) {
+        Map<Object, Object> added = new LinkedHashMap<>();
+        for (Map.Entry<Object, Object> entry : newMap.entrySet()) {
+            Object key = entry.getKey();
+            Object newValue = entry.getValue();
+            List<String> keyPath = new ArrayList<>(path);
+            keyPath.add(String.valueOf(key));
+
+            if (!baseMap.containsKey(key)) {
+                context.adds.add(keyPath);
+                delta.put(key, newValue);
+                added.put(key, newValue);
+                continue;
+            }
+
+            Object baseValue = baseMap.get(key);
+            NodeTuple tuple = node == null ? null : findTuple(node, key);
+            if (node != null && tuple == null) {
+                // key不是普通的标量或来自merge key, 无法定位原文
+                context.spliceable = false;
+            }
+
+            if (baseValue instanceof Map && newValue instanceof Map) {
+                Node valueNode = tuple == null ? null : tuple.getValueNode();
+                if (valueNode == null || (valueNode instanceof MappingNode && !isFlow(valueNode, context))) {
+                    Map<Object, Object> subDelta = new LinkedHashMap<>();
+                    mergeMapping((MappingNode) valueNode, (Map<Object, Object>) baseValue, (Map<Object, Object>) newValue, keyPath, subDelta, context);
+                    if (!subDelta.isEmpty()) {
+                        delta.put(key, subDelta);
+                    }
+                } else {
+                    // flow风格的map整体替换为合并后的结果
+                    Map<Object, Object> subDelta = new LinkedHashMap<>();
+                    mergeMapping(null, (Map<Object, Object>) baseValue, (Map<Object, Object>) newValue, keyPath, subDelta, new MergeContext(context.text));
+                    if (!subDelta.isEmpty()) {
+                        delta.put(key, subDelta);
+                        context.updates.add(keyPath);
+                        context.edits.add(replaceValue(tuple, deepMerge((Map<Object, Object>) baseValue, (Map<Object, Object>) newValue), path.size(), context));
+                    }
+                }
+            } else if (!Objects.equals(baseValue, newValue)) {
+                context.updates.add(keyPath);
+                delta.put(key, newValue);
+                if (tuple != null) {
+                    context.edits.add(replaceValue(tuple, newValue, path.size(), context));
+                }
+            }
+        }
+
+        if (node != null && !added.isEmpty()) {
+            context.edits.add(appendEntries(node, added, path.size(), context));
+        }
+    }
+
+    private static NodeTuple findTuple(MappingNode node, Object key) {
+        String keyString = String.valueOf(key);
+        for (NodeTuple tuple : node.getValue()) {
+            if (tuple.getKeyNode() instanceof ScalarNode && keyString.equals(((ScalarNode) tuple.getKeyNode()).getValue())) {
+                return tuple;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 替换一个key的值
+     */
+    private static Edit replaceValue(NodeTuple tuple, Object newValue, int depth, MergeContext context) {
+        Node keyNode = tuple.getKeyNode();
+        Node valueNode = tuple.getValueNode();
+        int keyEnd = context.charIndex(keyNode.getEndMark());
+        int valueStart = context.charIndex(valueNode.getStartMark());
+        int valueEnd = trimEnd(context.text, valueStart, context.charIndex(valueNode.getEndMark()));
+        int column = keyNode.getStartMark().getColumn();
+
+        boolean blockCollection = !(valueNode instanceof ScalarNode) && !isFlow(valueNode, context);
+        boolean emptyScalar = valueNode instanceof ScalarNode && valueStart >= valueEnd;
+
+        if (isInline(newValue)) {
+            String inline = dumpInline(newValue);
+            if (blockCollection || emptyScalar) {
+                return new Edit(keyEnd, emptyScalar ? colonEnd(context.text, keyEnd) : valueEnd, ": " + inline, depth);
+            }
+            return new Edit(valueStart, valueEnd, inline, depth);
+        }
+        String block = indent(dumpBlock(newValue), column + 2);
+        return new Edit(keyEnd, emptyScalar ? colonEnd(context.text, keyEnd) : valueEnd, ":" + NEW_LINE + stripTrailingNewLine(block), depth);
+    }
+
+    /**
+     * 在map的最后一个key之后追加新的key
+     */
+    private static Edit appendEntries(MappingNode node, Map<Object, Object> added, int depth, MergeContext context) {
+        String text = context.text;
+        List<NodeTuple> tuples = node.getValue();
+        NodeTuple last = tuples.get(tuples.size() - 1);
+        int column = tuples.get(0).getKeyNode().getStartMark().getColumn();
+        String block = indent(dumpBlock(added), column);
+
+        int end = context.charIndex(last.getValueNode().getEndMark());
+        int position = end;
+        while (position > 0 && (text.charAt(position - 1) == ' ' || text.charAt(position - 1) == '\t')) {
+            position--;
+        }
+        if (position == 0 || text.charAt(position - 1) == '\n') {
+            return new Edit(position, position, block, depth);
+        }
+        int lineEnd = text.indexOf('\n', end);
+        if (lineEnd < 0) {
+            return new Edit(text.length(), text.length(), NEW_LINE + block, depth);
+        }
+        return new Edit(lineEnd + 1, lineEnd + 1, block, depth);
+    }
+
+    /**
+     * 应用局部替换, 并校验结果和结构化合并的结果一致
+     *
+     * @return 替换后的文本, 无法替换时返回null
+     */
+    private static String splice(String versionValues, MappingNode root, Map<Object, Object> newMap, Map<Object, Object> merged, MergeContext context) {
+        String result;
+        if (root == null) {
+            // 版本values中没有内容(可能只有注释), 直接追加
+            if (newMap.isEmpty()) {
+                return versionValues;
+            }
+            String separator = versionValues.isEmpty() || versionValues.endsWith(NEW_LINE) ? "" : NEW_LINE;
+            result = versionValues + separator + dumpBlock(newMap);
+        } else {
+            List<Edit> edits = new ArrayList<>(context.edits);
+            // 从后往前替换, 前面的位置不受影响; 同一位置的插入(如嵌套map和外层map都在末尾追加)先应用外层的,
+            // 后插入的内层内容排在它前面, 保证内层的key仍在所属的map下
+            edits.sort(Comparator.comparingInt((Edit e) -> e.start).reversed().thenComparingInt(e -> e.depth));
+            StringBuilder builder = new StringBuilder(versionValues);
+            for (Edit edit : edits) {
+                builder.replace(edit.start, edit.end, edit.replacement);
+            }
+            result = builder.toString();
+        }
+
+        try {
+            if (merged.equals(loadAsMap(result))) {
+                return result;
+            }
+        } catch (Exception ex) {
+            LOGGER.debug("Failed to load spliced values", ex);
+        }
+        LOGGER.warn("The spliced values is not the same as the merged values, fall back to dump the merged values.");
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Object, Object> deepMerge(Map<Object, Object> base, Map<Object, Object> newMap) {
+        Map<Object, Object> result = new LinkedHashMap<>(base);
+        newMap.forEach((k, v) -> {
+            Object baseValue = result.get(k);
+            if (baseValue instanceof Map && v instanceof Map) {
+                result.put(k, deepMerge((Map<Object, Object>) baseValue, (Map<Object, Object>) v));
+            } else {
+                result.put(k, v);
+            }
+        });
+        return result;
+    }
+
+    private static boolean isFlow(Node node, MergeContext context) {
+        int start = context.charIndex(node.getStartMark());
+        if (start >= context.text.length()) {
+            return false;
+        }
+        char first = context.text.charAt(start);
+        return first == '{' || first == '[';
+    }
+
+    private static boolean isInline(Object value) {
+        if (value instanceof Map) {
+            return ((Map<?, ?>) value).isEmpty();
+        }
+        if (value instanceof Collection) {
+            return ((Collection<?>) value).isEmpty();
+        }
+        return true;
+    }
+
+    private static int trimEnd(String text, int start, int end) {
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * key之后的冒号的结束位置
+     */
+    private static int colonEnd(String text, int keyEnd) {
+        int colon = text.indexOf(':', keyEnd);
+        return colon < 0 ? keyEnd : colon + 1;
+    }
+
+    private static String indent(String block, int column) {
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < column; i++) {
+            prefix.append(' ');
+        }
+        StringBuilder builder = new StringBuilder();
+        for (String line : block.split(NEW_LINE)) {
+            builder.append(prefix).append(line).append(NEW_LINE);
+        }
+        return builder.toString();
+    }
+
+    private static String stripTrailingNewLine(String value) {
+        return value.endsWith(NEW_LINE) ? value.substring(0, value.length() - 1) : value;
+    }
+
+    private static String dumpInline(Object value) {
+        String inline = stripTrailingNewLine(newDumper(DumperOptions.ScalarStyle.PLAIN).dump(value));
+        if (inline.contains(NEW_LINE)) {
+            // 多行的字符串用双引号转义在一行内, 以免块风格的缩进和所在位置不一致
+            inline = stripTrailingNewLine(newDumper(DumperOptions.ScalarStyle.DOUBLE_QUOTED).dump(value));
+        }
+        return inline;
+    }
+
+    private static String dumpBlock(Object value) {
+        return newDumper(DumperOptions.ScalarStyle.PLAIN).dump(value);
+    }
+
+    private static Yaml newDumper(DumperOptions.ScalarStyle scalarStyle) {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        options.setDefaultScalarStyle(scalarStyle);
+        options.setIndent(2);
+        options.setWidth(Integer.MAX_VALUE);
+        return new Yaml(options);
+    }
+
+    private static class MergeContext {
+        private final String text;
+        private final boolean supplementary;
+        private final List<Edit> edits = new ArrayList<>();
+        private final List<List<String>> adds = new ArrayList<>();
+        private final List<List<String>> updates = new ArrayList<>();
+        private boolean spliceable = true;
+
+        private MergeContext(String text) {
+            this.text = text;
+            this.supplementary = text.length() != text.codePointCount(0, text.length());
+        }
+
+        /**
+         * snakeyaml的Mark中的index是以code point计算的
+         */
+        private int charIndex(Mark mark) {
+            if (!supplementary) {
+                return Math.min(mark.getIndex(), text.length());
+            }
+            return text.offsetByCodePoints(0, Math.min(mark.getIndex(), text.codePointCount(0, text.length())));
+        }
+    }
+
+    private static class Edit {
+        private final int start;
+        private final int end;
+        private final String replacement;
+        /**
+         * 所在map的层级, 根节点为0
+         */
+        private final int depth;
+
+        private Edit(int start, int end, String replacement, int depth) {
+            this.start = start;
+            this.end = end;
+            this.replacement = replacement;
+            this.depth = depth;
+        }
+    }
+}
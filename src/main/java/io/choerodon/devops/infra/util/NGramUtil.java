@@ -0,0 +1,65 @@
+package io.choerodon.devops.infra.util;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+import org.springframework.util.StringUtils;
+
+/**
+ * 模糊搜索的三元组切分
+ * 按码点(而不是char)切分, 中文和其它非BMP字符也是一个字符
+ *
+ * @author zmf
+ * @since 2021/8/8
+ */
+public final class NGramUtil {
+    /**
+     * 每个索引项的字符数
+     */
+    public static final int GRAM_SIZE = 3;
+
+    private NGramUtil() {
+    }
+
+    /**
+     * 索引字段的所有三元组, 每个字段单独切分, 不会产生跨字段的三元组
+     *
+     * @param values 被索引的字段, 可以为空
+     * @return 去重后的小写三元组
+     */
+    public static Set<String> indexGrams(String... values) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (String value : values) {
+            if (!StringUtils.isEmpty(value)) {
+                addGrams(value.toLowerCase(Locale.ROOT), grams);
+            }
+        }
+        return grams;
+    }
+
+    /**
+     * 搜索词的三元组, 包含这些三元组的对象才可能包含搜索词
+     *
+     * @param term 搜索词
+     * @return 为空表示不能使用索引: 搜索词少于三个字符, 或者包含LIKE的通配符
+     */
+    @Nullable
+    public static Set<String> queryGrams(@Nullable String term) {
+        if (term == null || term.codePointCount(0, term.length()) < GRAM_SIZE
+                || term.indexOf('%') >= 0 || term.indexOf('_') >= 0) {
+            return null;
+        }
+        Set<String> grams = new LinkedHashSet<>();
+        addGrams(term.toLowerCase(Locale.ROOT), grams);
+        return grams;
+    }
+
+    private static void addGrams(String value, Set<String> grams) {
+        int[] codePoints = value.codePoints().toArray();
+        for (int i = 0; i + GRAM_SIZE <= codePoints.length; i++) {
+            grams.add(new String(codePoints, i, GRAM_SIZE));
+        }
+    }
+}
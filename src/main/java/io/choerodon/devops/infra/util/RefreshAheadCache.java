@@ -0,0 +1,237 @@
+package io.choerodon.devops.infra.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 本地的有界缓存
+ * <ul>
+ * <li>超过数量上限时淘汰最久没有访问的记录</li>
+ * <li>记录超过过期时间后重新加载; 超过刷新时间但还没过期时返回旧值, 同时在后台重新加载</li>
+ * <li>加载结果为null(不存在)也会缓存, 使用单独的较短的过期时间</li>
+ * <li>同一个key同时只有一个线程加载, 其它线程等待它的结果</li>
+ * <li>加载抛出的异常不会缓存</li>
+ * </ul>
+ *
+ * @param <K> key的类型
+ * @param <V> 值的类型
+ * @author zmf
+ * @since 2021/8/10
+ */
+public class RefreshAheadCache<K, V> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RefreshAheadCache.class);
+
+    private final String name;
+    private final long expireMillis;
+    private final long refreshMillis;
+    private final long negativeExpireMillis;
+    private final Executor refreshExecutor;
+
+    /**
+     * 按访问顺序排列, 访问时也会修改结构, 所有操作都要加锁
+     */
+    private final LinkedHashMap<K, Entry<V>> entries;
+    /**
+     * 正在加载的key
+     */
+    private final ConcurrentMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+    /**
+     * 每次失效时增加, 加载期间有失效发生时加载的结果不放入缓存
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong loadFailureCount = new AtomicLong();
+
+    /**
+     * @param name                 缓存名称, 用于日志
+     * @param maxSize              最多缓存的记录数量
+     * @param expireMillis         记录的过期时间
+     * @param refreshMillis        记录超过这个时间后在后台刷新, 不小于过期时间时不刷新
+     * @param negativeExpireMillis 不存在的记录的过期时间
+     * @param refreshExecutor      后台刷新的线程池
+     */
+    public RefreshAheadCache(String name, int maxSize, long expireMillis, long refreshMillis, long negativeExpireMillis, Executor refreshExecutor) {
+        this.name = name;
+        this.expireMillis = expireMillis;
+        this.refreshMillis = refreshMillis;
+        this.negativeExpireMillis = negativeExpireMillis;
+        this.refreshExecutor = refreshExecutor;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * 获取缓存的值, 没有或已过期时在当前线程加载
+     *
+     * @param key    key
+     * @param loader 加载方法, 不存在时返回null
+     * @return 值, 不存在时为null
+     */
+    @Nullable
+    public V get(K key, Function<K, V> loader) {
+        Entry<V> entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        long now = System.currentTimeMillis();
+        if (entry != null && now < entry.expireAt) {
+            hitCount.incrementAndGet();
+            if (now >= entry.refreshAt && !loading.containsKey(key)) {
+                refreshAsync(key, loader);
+            }
+            return entry.value;
+        }
+        missCount.incrementAndGet();
+        return load(key, loader);
+    }
+
+    public void invalidate(K key) {
+        invalidations.incrementAndGet();
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * 使值满足条件的记录失效, 用于按值中的字段失效以其它字段为key的记录
+     *
+     * @param predicate 条件
+     */
+    public void invalidateValues(Predicate<V> predicate) {
+        invalidations.incrementAndGet();
+        synchronized (entries) {
+            Iterator<Entry<V>> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                V value = iterator.next().value;
+                if (value != null && predicate.test(value)) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount.get();
+    }
+
+    private V load(K key, Function<K, V> loader) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            return await(existing);
+        }
+        long invalidationsBeforeLoad = invalidations.get();
+        try {
+            V value = loader.apply(key);
+            put(key, value, invalidationsBeforeLoad);
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            loadFailureCount.incrementAndGet();
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    private void refreshAsync(K key, Function<K, V> loader) {
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    load(key, loader);
+                } catch (Exception e) {
+                    // 刷新失败时保留旧值直到过期
+                    LOGGER.debug("Failed to refresh {} cache for key {}", name, key, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("The refresh of {} cache for key {} is rejected", name, key);
+        }
+    }
+
+    private void put(K key, @Nullable V value, long invalidationsBeforeLoad) {
+        long now = System.currentTimeMillis();
+        Entry<V> entry = value == null
+                ? new Entry<>(null, now + negativeExpireMillis, Long.MAX_VALUE)
+                : new Entry<>(value, now + expireMillis, refreshMillis < expireMillis ? now + refreshMillis : Long.MAX_VALUE);
+        synchronized (entries) {
+            // 加载期间有记录失效, 加载的结果可能是失效前的数据
+            if (invalidations.get() != invalidationsBeforeLoad) {
+                return;
+            }
+            entries.put(key, entry);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static class Entry<V> {
+        @Nullable
+        private final V value;
+        private final long expireAt;
+        private final long refreshAt;
+
+        Entry(@Nullable V value, long expireAt, long refreshAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+            this.refreshAt = refreshAt;
+        }
+    }
+}
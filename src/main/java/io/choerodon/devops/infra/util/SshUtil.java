@@ -11,7 +11,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nonnull;
-import javax.annotation.Nullable;
 
 import net.schmizz.sshj.SSHClient;
 import net.schmizz.sshj.common.IOUtils;
@@ -35,6 +34,7 @@ import io.choerodon.devops.infra.dto.repo.C7nImageDeployDTO;
 import io.choerodon.devops.infra.dto.repo.C7nNexusDeployDTO;
 import io.choerodon.devops.infra.enums.HostAuthType;
 import io.choerodon.devops.infra.enums.HostSourceEnum;
+import io.choerodon.devops.infra.handler.SshSessionPool;
 import io.choerodon.devops.infra.mapper.DevopsHostMapper;
 
 /**
@@ -54,16 +54,19 @@ public class SshUtil {
     private static final String ERROR_DOCKER_RUN = "error.docker.run";
     private static final String ERROR_DOWNLOAD_JAY = "error.download.jar";
     private static final String CAT_FILE_TEMPLATE = "cat %s";
+    private static final String TEST_CONNECTION_COMMAND = "echo Hello World";
 
 
     @Autowired
     private DevopsHostMapper devopsHostMapper;
+    @Autowired
+    private SshSessionPool sshSessionPool;
 
     private SshUtil() {
     }
 
     /**
-     * 连接主机
+     * 从连接池借出主机连接, 使用完后调用 {@link #sshDisconnect(SSHClient)} 归还
      *
      * @param hostIp   主机ip
      * @param sshPort  ssh端口
@@ -71,30 +74,10 @@ public class SshUtil {
      * @param username 用户名
      * @param password 密码或者秘钥
      * @return 主机连接句柄
+     * @throws IOException 连接或者认证失败
      */
-    @Nullable
-    public static SSHClient sshConnect(String hostIp, Integer sshPort, String authType, String username, String password) {
-        SSHClient ssh = new SSHClient();
-        ssh.setConnectTimeout(DEFAULT_TIMEOUT_MILLISECONDS);
-        ssh.setTimeout(DEFAULT_TIMEOUT_MILLISECONDS);
-        Session session = null;
-        try {
-            addAuth(ssh, hostIp, sshPort, authType, username, password);
-
-            session = ssh.startSession();
-            Session.Command cmd = session.exec("echo Hello World");
-            LOGGER.info(IOUtils.readFully(cmd.getInputStream()).toString());
-            cmd.join(5, TimeUnit.SECONDS);
-            LOGGER.info("\n** exit status: " + cmd.getExitStatus());
-            if (cmd.getExitStatus() != 0) {
-                throw new CommonException("error.test.connection");
-            }
-        } catch (Exception ex) {
-            LOGGER.warn("Failed to connect to host by ssh, the host is {}, port is {}, username: {}", hostIp, sshPort, username);
-            LOGGER.warn("The ex is ", ex);
-            return null;
-        }
-        return ssh;
+    public SSHClient sshConnect(String hostIp, Integer sshPort, String authType, String username, String password) throws IOException {
+        return sshSessionPool.borrow(hostIp, sshPort, authType, username, password);
     }
 
     /**
@@ -107,35 +90,97 @@ public class SshUtil {
      * @param password 密码或者秘钥
      * @return true
      */
-    public static boolean sshConnectForOK(String hostIp, Integer sshPort, String authType, String username, String password) {
-        SSHClient ssh = sshConnect(hostIp, sshPort, authType, username, password);
-        boolean result = ssh != null;
-        if (result) {
-            IOUtils.closeQuietly(ssh);
+    public boolean sshConnectForOK(String hostIp, Integer sshPort, String authType, String username, String password) {
+        SSHClient ssh = null;
+        try {
+            ssh = sshConnect(hostIp, sshPort, authType, username, password);
+            return execForOk(ssh, TEST_CONNECTION_COMMAND);
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to connect to host by ssh, the host is {}, port is {}, username: {}", hostIp, sshPort, username);
+            LOGGER.warn("The ex is ", ex);
+            return false;
+        } finally {
+            sshDisconnect(ssh);
         }
-        return result;
     }
 
-    public void sshConnect(HostConnectionVO hostConnectionVO, SSHClient ssh) throws IOException {
-        // 根据主机来源获取主机连接信息
-        ssh.addHostKeyVerifier(new PromiscuousVerifier());
+    /**
+     * 在指定的时间内连接主机进行测试, 借出连接、建立连接和执行测试命令的总时间不超过这个时间
+     *
+     * @param hostIp        主机ip
+     * @param sshPort       ssh端口
+     * @param authType      {@link HostAuthType}
+     * @param username      用户名
+     * @param password      密码或者秘钥
+     * @param timeoutMillis 超时时间
+     * @return 成功返回true
+     */
+    public boolean sshConnectForOK(String hostIp, Integer sshPort, String authType, String username, String password, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        SSHClient ssh = null;
+        try {
+            ssh = sshSessionPool.borrow(hostIp, sshPort, authType, username, password, timeoutMillis);
+            long remaining = deadline - System.currentTimeMillis();
+            return remaining > 0 && execForOk(ssh, TEST_CONNECTION_COMMAND, remaining);
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to connect to host by ssh, the host is {}, port is {}, username: {}", hostIp, sshPort, username);
+            LOGGER.warn("The ex is ", ex);
+            return false;
+        } finally {
+            sshDisconnect(ssh);
+        }
+    }
+
+    /**
+     * 根据主机来源获取主机连接信息, 从连接池借出主机连接, 使用完后调用 {@link #sshDisconnect(SSHClient)} 归还
+     *
+     * @param hostConnectionVO 主机连接信息
+     * @return 主机连接句柄
+     * @throws IOException 连接或者认证失败
+     */
+    public SSHClient sshConnect(HostConnectionVO hostConnectionVO) throws IOException {
         if (HostSourceEnum.EXISTHOST.getValue().equalsIgnoreCase(hostConnectionVO.getHostSource())) {
             DevopsHostDTO devopsHostDTO = devopsHostMapper.selectByPrimaryKey(hostConnectionVO.getHostId());
             dtoToHostConnVo(hostConnectionVO, devopsHostDTO);
         }
 
-        ssh.connect(hostConnectionVO.getHostIp(), TypeUtil.objToInteger(hostConnectionVO.getHostPort()));
+        String password;
         if (hostConnectionVO.getAuthType().equals(HostAuthType.ACCOUNTPASSWORD.value())) {
-            ssh.authPassword(hostConnectionVO.getUsername(), hostConnectionVO.getPassword());
+            password = hostConnectionVO.getPassword();
+        } else if (HostSourceEnum.EXISTHOST.getValue().equalsIgnoreCase(hostConnectionVO.getHostSource())) {
+            password = StringUtils.isEmpty(hostConnectionVO.getAccountKey()) ? hostConnectionVO.getPassword() : hostConnectionVO.getAccountKey();
         } else {
-            String str;
-            if (HostSourceEnum.EXISTHOST.getValue().equalsIgnoreCase(hostConnectionVO.getHostSource())) {
-                str = StringUtils.isEmpty(hostConnectionVO.getAccountKey()) ? hostConnectionVO.getPassword() : hostConnectionVO.getAccountKey();
-            } else {
-                str = Base64Util.getBase64DecodedString(StringUtils.isEmpty(hostConnectionVO.getAccountKey()) ? hostConnectionVO.getPassword() : hostConnectionVO.getAccountKey());
-            }
-            KeyProvider keyProvider = ssh.loadKeys(str, null, null);
-            ssh.authPublickey(hostConnectionVO.getUsername(), keyProvider);
+            password = Base64Util.getBase64DecodedString(StringUtils.isEmpty(hostConnectionVO.getAccountKey()) ? hostConnectionVO.getPassword() : hostConnectionVO.getAccountKey());
+        }
+        return sshConnect(hostConnectionVO.getHostIp(), TypeUtil.objToInteger(hostConnectionVO.getHostPort()),
+                hostConnectionVO.getAuthType(), hostConnectionVO.getUsername(), password);
+    }
+
+    /**
+     * 新建连接并认证, 由连接池调用
+     *
+     * @param hostIp               主机ip
+     * @param sshPort              ssh端口
+     * @param authType             {@link HostAuthType}
+     * @param username             用户名
+     * @param password             密码或者秘钥
+     * @param connectTimeoutMillis 建立连接的超时时间
+     * @return 已认证的主机连接
+     * @throws IOException 连接或者认证失败
+     */
+    public static SSHClient connectAndAuth(String hostIp, Integer sshPort, String authType, String username, String password, int connectTimeoutMillis) throws IOException {
+        SSHClient ssh = new SSHClient();
+        ssh.setConnectTimeout(connectTimeoutMillis);
+        // 握手和认证的等待时间也不超过连接的超时时间, 完成后恢复默认值, 以免影响之后在这个连接上的操作
+        int transportTimeoutMillis = ssh.getTransport().getTimeoutMs();
+        ssh.getTransport().setTimeoutMs(connectTimeoutMillis);
+        try {
+            addAuth(ssh, hostIp, sshPort, authType, username, password);
+            ssh.getTransport().setTimeoutMs(transportTimeoutMillis);
+            return ssh;
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(ssh);
+            throw e;
         }
     }
 
@@ -414,18 +459,18 @@ public class SshUtil {
         }
     }
 
-    public static void closeSsh(SSHClient ssh, Session session) {
-        try {
-            if (session != null) {
-                session.close();
-            }
-            ssh.disconnect();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    public void closeSsh(SSHClient ssh, Session session) {
+        IOUtils.closeQuietly(session);
+        sshDisconnect(ssh);
     }
 
+    /**
+     * 归还连接池借出的连接, 不是连接池的连接直接断开
+     */
     public void sshDisconnect(SSHClient ssh) {
+        if (ssh == null || sshSessionPool.release(ssh)) {
+            return;
+        }
         try {
             ssh.disconnect();
         } catch (IOException e) {
@@ -483,6 +528,17 @@ public class SshUtil {
      * @return true表示执行成功
      */
     public static boolean execForOk(SSHClient sshClient, String command) {
+        return execForOk(sshClient, command, DEFAULT_TIMEOUT_MILLISECONDS);
+    }
+
+    /**
+     * 执行指令, 等待执行结果的时间不超过指定的时间
+     *
+     * @param command       指令
+     * @param timeoutMillis 超时时间
+     * @return true表示执行成功
+     */
+    public static boolean execForOk(SSHClient sshClient, String command, long timeoutMillis) {
         if (sshClient == null || StringUtils.isEmpty(command)) {
             return false;
         }
@@ -490,7 +546,7 @@ public class SshUtil {
         try {
             session = sshClient.startSession();
             Session.Command cmd = session.exec(command);
-            cmd.join(DEFAULT_TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS);
+            cmd.join(timeoutMillis, TimeUnit.MILLISECONDS);
             return isExitStatusOk(cmd.getExitStatus());
         } catch (Exception e) {
             return false;
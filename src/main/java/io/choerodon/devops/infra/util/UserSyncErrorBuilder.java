@@ -23,17 +23,34 @@ public class UserSyncErrorBuilder {
     }
 
     public UserSyncErrorBuilder addErrorUser(Long userId, String userRealName, String loginName, String errorMessage) {
-        stringBuilder.append(userId)
-                .append(BaseConstants.Symbol.COMMA)
-                .append(userRealName)
-                .append(BaseConstants.Symbol.COMMA)
-                .append(loginName)
-                .append(BaseConstants.Symbol.COMMA)
-                .append(errorMessage)
-                .append(NEW_LINE);
+        stringBuilder.append(buildErrorLine(userId, userRealName, loginName, errorMessage)).append(NEW_LINE);
         return this;
     }
 
+    /**
+     * 添加其他地方构建好的一行错误信息
+     *
+     * @param errorLine {@link #buildErrorLine(Long, String, String, String)} 的结果
+     * @return this
+     */
+    public UserSyncErrorBuilder addErrorLine(String errorLine) {
+        stringBuilder.append(errorLine).append(NEW_LINE);
+        return this;
+    }
+
+    /**
+     * 构建一行错误信息, 不包含换行符
+     */
+    public static String buildErrorLine(Long userId, String userRealName, String loginName, String errorMessage) {
+        return String.valueOf(userId) +
+                BaseConstants.Symbol.COMMA +
+                userRealName +
+                BaseConstants.Symbol.COMMA +
+                loginName +
+                BaseConstants.Symbol.COMMA +
+                errorMessage;
+    }
+
     public String build() {
         return stringBuilder.toString();
     }
@@ -0,0 +1,100 @@
+package io.choerodon.devops.infra.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import javax.annotation.Nullable;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import io.choerodon.core.exception.CommonException;
+
+/**
+ * 扫描gitlab webhook的请求体, 只读取事件类型和gitlab项目id, 不解析其它内容
+ * 两个字段都读到后不再读取剩余的部分
+ *
+ * @author zmf
+ * @since 2021/8/10
+ */
+public final class WebHookEventScanner {
+    private static final String OBJECT_KIND = "object_kind";
+    private static final String PROJECT_ID = "project_id";
+    private static final String PROJECT = "project";
+    private static final String ID = "id";
+
+    private WebHookEventScanner() {
+    }
+
+    /**
+     * @param body webhook的请求体
+     * @return 事件类型和gitlab项目id
+     */
+    public static ScanResult scan(String body) {
+        String objectKind = null;
+        Long projectId = null;
+        try (JsonReader reader = new JsonReader(new StringReader(body))) {
+            reader.beginObject();
+            while (reader.hasNext() && (objectKind == null || projectId == null)) {
+                String name = reader.nextName();
+                if (OBJECT_KIND.equals(name) && reader.peek() == JsonToken.STRING) {
+                    objectKind = reader.nextString();
+                } else if (PROJECT_ID.equals(name) && reader.peek() == JsonToken.NUMBER) {
+                    projectId = reader.nextLong();
+                } else if (PROJECT.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    // merge_request和pipeline事件只有project.id
+                    Long id = readId(reader);
+                    if (projectId == null) {
+                        projectId = id;
+                    }
+                } else {
+                    reader.skipValue();
+                }
+            }
+        } catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+            throw new CommonException("error.webhook.body.invalid", e);
+        }
+        if (objectKind == null) {
+            throw new CommonException("error.webhook.body.invalid");
+        }
+        return new ScanResult(objectKind, projectId);
+    }
+
+    @Nullable
+    private static Long readId(JsonReader reader) throws IOException {
+        Long id = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (ID.equals(reader.nextName()) && reader.peek() == JsonToken.NUMBER) {
+                id = reader.nextLong();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return id;
+    }
+
+    public static class ScanResult {
+        private final String objectKind;
+        @Nullable
+        private final Long projectId;
+
+        ScanResult(String objectKind, @Nullable Long projectId) {
+            this.objectKind = objectKind;
+            this.projectId = projectId;
+        }
+
+        public String getObjectKind() {
+            return objectKind;
+        }
+
+        /**
+         * @return gitlab项目id, 请求体中没有时为null
+         */
+        @Nullable
+        public Long getProjectId() {
+            return projectId;
+        }
+    }
+}
@@ -89,4 +89,14 @@ databaseChangeLog(logicalFilePath: 'dba/devops_app_versionion.groovy') {
             column(name: 'ref', type: 'VARCHAR(64)', afterColumn: 'commit', remarks: 'gitlab commit ref')
         }
     }
-}
\ No newline at end of file
+
+    changeSet(author: 'zmf', id: '2021-08-10-add-index-value-readme') {
+        // values和readme去重时按引用查询版本
+        createIndex(indexName: "idx_value_id", tableName: "devops_app_service_version") {
+            column(name: "value_id")
+        }
+        createIndex(indexName: "idx_readme_value_id", tableName: "devops_app_service_version") {
+            column(name: "readme_value_id")
+        }
+    }
+}
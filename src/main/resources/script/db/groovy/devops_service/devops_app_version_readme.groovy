@@ -51,4 +51,16 @@ databaseChangeLog(logicalFilePath: 'dba/devops_app_version_readme.groovy') {
     changeSet(author: 'sheep', id: '2019-8-05-rename-table') {
         renameTable(newTableName: 'devops_app_service_version_readme', oldTableName: 'devops_app_version_readme')
     }
-}
\ No newline at end of file
+
+    changeSet(author: 'zmf', id: '2021-08-10-add-column-content-hash') {
+        addColumn(tableName: 'devops_app_service_version_readme') {
+            column(name: 'content_hash', type: 'VARCHAR(64)', remarks: 'readme的SHA-256, 为空表示还未去重的旧数据')
+            // 旧数据每个版本一条, 引用数为1
+            column(name: 'ref_count', type: 'BIGINT', defaultValueNumeric: 1, remarks: '引用这个readme的版本数量') {
+                constraints(nullable: false)
+            }
+        }
+        addUniqueConstraint(tableName: 'devops_app_service_version_readme',
+                constraintName: 'uk_content_hash', columnNames: 'content_hash')
+    }
+}
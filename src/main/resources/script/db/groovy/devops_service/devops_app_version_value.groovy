@@ -32,4 +32,16 @@ databaseChangeLog(logicalFilePath: 'dba/devops_app_version_value.groovy') {
     changeSet(author: 'zmf', id: '2020-10-29-enlarge-values-length') {
         modifyDataType(tableName: 'devops_app_service_version_value', columnName: 'value', newDataType: 'MEDIUMTEXT')
     }
-}
\ No newline at end of file
+
+    changeSet(author: 'zmf', id: '2021-08-10-add-column-content-hash') {
+        addColumn(tableName: 'devops_app_service_version_value') {
+            column(name: 'content_hash', type: 'VARCHAR(64)', remarks: 'values的SHA-256, 为空表示还未去重的旧数据')
+            // 旧数据每个版本一条, 引用数为1
+            column(name: 'ref_count', type: 'BIGINT', defaultValueNumeric: 1, remarks: '引用这个values的版本数量') {
+                constraints(nullable: false)
+            }
+        }
+        addUniqueConstraint(tableName: 'devops_app_service_version_value',
+                constraintName: 'uk_content_hash', columnNames: 'content_hash')
+    }
+}
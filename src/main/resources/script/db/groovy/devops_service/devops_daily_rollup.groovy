@@ -0,0 +1,45 @@
+package script.db.groovy.devops_service
+
+databaseChangeLog(logicalFilePath: 'dba/devops_daily_rollup.groovy') {
+    changeSet(author: 'zmf', id: '2021-08-08-create-table-daily-rollup') {
+        createTable(tableName: "devops_daily_rollup", remarks: '项目概览和统计图表的按天汇总表') {
+            column(name: 'id', type: 'BIGINT UNSIGNED', remarks: '主键', autoIncrement: true) {
+                constraints(primaryKey: true)
+            }
+            column(name: 'project_id', type: 'BIGINT UNSIGNED', remarks: '项目id') {
+                constraints(nullable: false)
+            }
+            column(name: 'metric', type: 'VARCHAR(32)', remarks: '统计项 commit/deploy/ci') {
+                constraints(nullable: false)
+            }
+            column(name: 'stat_date', type: 'DATE', remarks: '统计的日期') {
+                constraints(nullable: false)
+            }
+            column(name: 'app_service_id', type: 'BIGINT UNSIGNED', remarks: '应用服务id, 没有时为0', defaultValue: 0) {
+                constraints(nullable: false)
+            }
+            column(name: 'user_id', type: 'BIGINT UNSIGNED', remarks: '用户id, 没有时为0', defaultValue: 0) {
+                constraints(nullable: false)
+            }
+            column(name: 'count', type: 'BIGINT UNSIGNED', remarks: '当天的数量', defaultValue: 0)
+
+            column(name: "object_version_number", type: "BIGINT UNSIGNED", defaultValue: "1")
+            column(name: "created_by", type: "BIGINT UNSIGNED", defaultValue: "0")
+            column(name: "creation_date", type: "DATETIME", defaultValueComputed: "CURRENT_TIMESTAMP")
+            column(name: "last_updated_by", type: "BIGINT UNSIGNED", defaultValue: "0")
+            column(name: "last_update_date", type: "DATETIME", defaultValueComputed: "CURRENT_TIMESTAMP")
+        }
+
+        // 图表按 项目+统计项+日期范围 查询, 唯一索引同时用于累加时的定位
+        addUniqueConstraint(tableName: 'devops_daily_rollup',
+                constraintName: 'uk_project_metric_date', columnNames: 'project_id,metric,stat_date,app_service_id,user_id')
+    }
+
+    changeSet(author: 'zmf', id: '2021-08-12-idx-metric-date') {
+        // 重新汇总时按 统计项+日期范围 删除, 不带项目id, 用不上唯一索引
+        createIndex(indexName: "idx_metric_date", tableName: "devops_daily_rollup") {
+            column(name: "metric")
+            column(name: "stat_date")
+        }
+    }
+}
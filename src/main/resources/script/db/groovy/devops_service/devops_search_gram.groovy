@@ -0,0 +1,37 @@
+package script.db.groovy.devops_service
+
+databaseChangeLog(logicalFilePath: 'dba/devops_search_gram.groovy') {
+    changeSet(author: 'zmf', id: '2021-08-08-create-table-search-gram') {
+        createTable(tableName: "devops_search_gram", remarks: '模糊搜索的三元组倒排索引') {
+            column(name: 'id', type: 'BIGINT UNSIGNED', remarks: '主键', autoIncrement: true) {
+                constraints(primaryKey: true)
+            }
+            column(name: 'object_type', type: 'VARCHAR(32)', remarks: '被索引的对象类型') {
+                constraints(nullable: false)
+            }
+            column(name: 'project_id', type: 'BIGINT UNSIGNED', remarks: '对象所属的项目id') {
+                constraints(nullable: false)
+            }
+            column(name: 'object_id', type: 'BIGINT UNSIGNED', remarks: '对象id') {
+                constraints(nullable: false)
+            }
+            column(name: 'gram', type: 'VARCHAR(16)', remarks: '小写的三个字符') {
+                constraints(nullable: false)
+            }
+
+            column(name: "object_version_number", type: "BIGINT UNSIGNED", defaultValue: "1")
+            column(name: "created_by", type: "BIGINT UNSIGNED", defaultValue: "0")
+            column(name: "creation_date", type: "DATETIME", defaultValueComputed: "CURRENT_TIMESTAMP")
+            column(name: "last_updated_by", type: "BIGINT UNSIGNED", defaultValue: "0")
+            column(name: "last_update_date", type: "DATETIME", defaultValueComputed: "CURRENT_TIMESTAMP")
+        }
+
+        // 搜索时按 类型+项目+三元组 查询对象id
+        addUniqueConstraint(tableName: 'devops_search_gram',
+                constraintName: 'uk_type_project_gram_object', columnNames: 'object_type,project_id,gram,object_id')
+        createIndex(indexName: "idx_type_object", tableName: "devops_search_gram") {
+            column(name: "object_type")
+            column(name: "object_id")
+        }
+    }
+}
@@ -26,4 +26,11 @@ databaseChangeLog(logicalFilePath: 'dba/devops_user_sync_record.groovy') {
             column(name: "last_update_date", type: "DATETIME", defaultValueComputed: "CURRENT_TIMESTAMP")
         }
     }
-}
\ No newline at end of file
+
+    changeSet(author: 'zmf', id: '2021-08-07-add-column-checkpoint') {
+        addColumn(tableName: 'devops_user_sync_record') {
+            column(name: 'total_count', type: 'BIGINT UNSIGNED', remarks: '要同步的用户总数', defaultValue: 0, afterColumn: 'fail_count')
+            column(name: 'processed_count', type: 'BIGINT UNSIGNED', remarks: '已处理的用户数量, 每处理完一个分片更新一次', defaultValue: 0, afterColumn: 'total_count')
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package script.db.groovy.devops_service
+
+databaseChangeLog(logicalFilePath: 'dba/devops_webhook_event.groovy') {
+    changeSet(author: 'zmf', id: '2021-08-10-create-table-webhook-event') {
+        createTable(tableName: "devops_webhook_event", remarks: 'gitlab webhook事件的待处理队列') {
+            column(name: 'id', type: 'BIGINT UNSIGNED', remarks: '主键', autoIncrement: true) {
+                constraints(primaryKey: true)
+            }
+            column(name: 'event_key', type: 'VARCHAR(64)', remarks: '去重的key, gitlab的事件uuid或者请求的摘要') {
+                constraints(nullable: false)
+            }
+            column(name: 'object_kind', type: 'VARCHAR(32)', remarks: '事件类型') {
+                constraints(nullable: false)
+            }
+            column(name: 'partition_key', type: 'BIGINT UNSIGNED', remarks: 'gitlab项目id, 同一个项目的事件按顺序处理, 没有时为0', defaultValue: 0) {
+                constraints(nullable: false)
+            }
+            column(name: 'token', type: 'VARCHAR(255)', remarks: 'webhook的token')
+            column(name: 'body', type: 'LONGTEXT', remarks: 'webhook的请求体') {
+                constraints(nullable: false)
+            }
+            column(name: 'status', type: 'VARCHAR(16)', remarks: '状态 pending/processing/success/failed/dead') {
+                constraints(nullable: false)
+            }
+            column(name: 'attempts', type: 'INT', remarks: '失败的次数', defaultValue: 0) {
+                constraints(nullable: false)
+            }
+            column(name: 'next_attempt_at', type: 'DATETIME', remarks: '下次处理的时间') {
+                constraints(nullable: false)
+            }
+            column(name: 'processing_started_at', type: 'DATETIME', remarks: '开始处理的时间')
+            column(name: 'error_message', type: 'VARCHAR(2000)', remarks: '最近一次失败的原因')
+
+            column(name: "object_version_number", type: "BIGINT UNSIGNED", defaultValue: "1")
+            column(name: "created_by", type: "BIGINT UNSIGNED", defaultValue: "0")
+            column(name: "creation_date", type: "DATETIME", defaultValueComputed: "CURRENT_TIMESTAMP")
+            column(name: "last_updated_by", type: "BIGINT UNSIGNED", defaultValue: "0")
+            column(name: "last_update_date", type: "DATETIME", defaultValueComputed: "CURRENT_TIMESTAMP")
+        }
+
+        addUniqueConstraint(tableName: 'devops_webhook_event',
+                constraintName: 'uk_event_key', columnNames: 'event_key')
+        // 轮询待处理的事件
+        createIndex(indexName: "idx_status_next_attempt_at", tableName: "devops_webhook_event") {
+            column(name: "status")
+            column(name: "next_attempt_at")
+        }
+        // 查询同一个项目更早的未完成事件
+        createIndex(indexName: "idx_partition_key_status", tableName: "devops_webhook_event") {
+            column(name: "partition_key")
+            column(name: "status")
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package io.choerodon.devops.api.ws.relay
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.web.socket.BinaryMessage
+import org.springframework.web.socket.WebSocketSession
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.util.concurrent.PollingConditions
+
+/**
+ *
+ * @author zmf* @since 2021/8/7
+ *
+ */
+@Subject(RelaySession)
+class RelaySessionSpec extends Specification {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor()
+    WebSocketSession session = Mock()
+    List<String> sent = Collections.synchronizedList([])
+
+    def setup() {
+        session.isOpen() >> true
+        session.sendMessage(_) >> { BinaryMessage message -> sent << StandardCharsets.UTF_8.decode(message.getPayload()).toString() }
+    }
+
+    def cleanup() {
+        flushScheduler.shutdownNow()
+    }
+
+    def "Small frames are coalesced into one frame"() {
+        given:
+        def relaySession = relaySession(WebSocketRelay.OverflowPolicy.DROP, 1000)
+
+        when:
+        ["a", "b", "c"].each { relaySession.offer(buffer(it)) }
+        relaySession.flush()
+
+        then:
+        sent == ["abc"]
+        meterRegistry.counter("sent").count() == 1
+    }
+
+    def "Pending frames are sent after the coalesce window"() {
+        given:
+        def relaySession = relaySession(WebSocketRelay.OverflowPolicy.DROP, 50)
+
+        when:
+        relaySession.offer(buffer("a"))
+        relaySession.offer(buffer("b"))
+
+        then:
+        new PollingConditions(timeout: 2).eventually {
+            assert sent == ["ab"]
+        }
+    }
+
+    def "Large frames are sent directly after the pending frames"() {
+        given:
+        def relaySession = relaySession(WebSocketRelay.OverflowPolicy.DROP, 1000)
+        def large = "x" * 16
+
+        when:
+        relaySession.offer(buffer("a"))
+        relaySession.offer(buffer(large))
+
+        then:
+        sent == ["a", large]
+    }
+
+    def "Frames over the buffer limit are dropped or block by the policy"() {
+        given:
+        def relaySession = relaySession(policy, 1000)
+
+        when:
+        ["1234", "5678", "9"].each { relaySession.offer(buffer(it)) }
+        relaySession.flush()
+
+        then:
+        sent.join() == expectedSent
+        meterRegistry.counter("dropped").count() == expectedDropped
+
+        where:
+        policy                                | expectedSent | expectedDropped
+        WebSocketRelay.OverflowPolicy.DROP    | "12349"      | 1
+        WebSocketRelay.OverflowPolicy.BLOCK   | "123456789"  | 0
+    }
+
+    private RelaySession relaySession(WebSocketRelay.OverflowPolicy policy, long coalesceMillis) {
+        // 单帧上限8字节, 缓冲上限6字节
+        return new RelaySession(session, policy, flushScheduler, coalesceMillis, 8, 6,
+                meterRegistry.counter("sent"), meterRegistry.counter("dropped"))
+    }
+
+    private static ByteBuffer buffer(String content) {
+        return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8))
+    }
+}
@@ -0,0 +1,48 @@
+package io.choerodon.devops.app.service.impl
+
+import io.choerodon.devops.api.vo.PodMetricsRedisInfoVO
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ *
+ * @author zmf* @since 2021/8/10
+ *
+ */
+@Subject(AgentPodInfoServiceImpl)
+class AgentPodInfoServiceImplSpec extends Specification {
+
+    def "Pod metrics are decoded as they were encoded"() {
+        given:
+        def pod = new PodMetricsRedisInfoVO()
+        pod.setCpu(cpu)
+        pod.setMemory(memory)
+
+        when:
+        def value = AgentPodInfoServiceImpl.encode(1628553600000L, pod)
+        def decoded = AgentPodInfoServiceImpl.decode(value, "pod", "ns", "cluster")
+
+        then:
+        value == encoded
+        decoded.cpu == cpu
+        decoded.memory == memory
+        decoded.snapShotTime.time == 1628553600000L
+        decoded.name == "pod"
+
+        where:
+        cpu   | memory  | encoded
+        "10m" | "128Mi" | "1628553600000,10m,128Mi"
+        null  | "128Mi" | "1628553600000,,128Mi"
+        "10m" | null    | "1628553600000,10m,"
+        null  | null    | "1628553600000,,"
+    }
+
+    def "Null fields written as text by earlier versions are decoded as null"() {
+        when:
+        def decoded = AgentPodInfoServiceImpl.decode("1628553600000,null,null", "pod", "ns", "cluster")
+
+        then:
+        decoded.cpu == null
+        decoded.memory == null
+    }
+}
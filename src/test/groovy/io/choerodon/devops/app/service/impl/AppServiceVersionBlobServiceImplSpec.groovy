@@ -0,0 +1,154 @@
+package io.choerodon.devops.app.service.impl
+
+import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
+
+import io.choerodon.core.exception.CommonException
+import io.choerodon.devops.infra.dto.AppServiceVersionReadmeDTO
+import io.choerodon.devops.infra.dto.AppServiceVersionValueDTO
+import io.choerodon.devops.infra.enums.ChartBlobType
+import io.choerodon.devops.infra.mapper.AppServiceVersionMapper
+import io.choerodon.devops.infra.mapper.AppServiceVersionReadmeMapper
+import io.choerodon.devops.infra.mapper.AppServiceVersionValueMapper
+import org.springframework.dao.DuplicateKeyException
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ *
+ * @author zmf* @since 2021/8/10
+ *
+ */
+@Subject(AppServiceVersionBlobServiceImpl)
+class AppServiceVersionBlobServiceImplSpec extends Specification {
+    private static final String VALUES = "replicaCount: 1\n"
+    private static final String VALUES_HASH = sha256(VALUES)
+
+    AppServiceVersionBlobServiceImpl appServiceVersionBlobService = new AppServiceVersionBlobServiceImpl()
+    AppServiceVersionValueMapper appServiceVersionValueMapper = Mock()
+    AppServiceVersionReadmeMapper appServiceVersionReadmeMapper = Mock()
+    AppServiceVersionMapper appServiceVersionMapper = Mock()
+
+    def setup() {
+        ReflectionTestUtils.setField(appServiceVersionBlobService, "gcBatchSize", 2)
+        ReflectionTestUtils.setField(appServiceVersionBlobService, "dedupBatchSize", 10)
+        ReflectionTestUtils.setField(appServiceVersionBlobService, "appServiceVersionValueMapper", appServiceVersionValueMapper)
+        ReflectionTestUtils.setField(appServiceVersionBlobService, "appServiceVersionReadmeMapper", appServiceVersionReadmeMapper)
+        ReflectionTestUtils.setField(appServiceVersionBlobService, "appServiceVersionMapper", appServiceVersionMapper)
+    }
+
+    def "Acquiring existing content increases its reference count"() {
+        when:
+        def id = appServiceVersionBlobService.acquire(ChartBlobType.VALUES, VALUES)
+
+        then:
+        1 * appServiceVersionValueMapper.increaseRefCountByHash(VALUES_HASH, 1L) >> 1
+        1 * appServiceVersionValueMapper.selectIdByContentHash(VALUES_HASH) >> 5L
+        0 * appServiceVersionValueMapper.insert(_)
+        id == 5L
+    }
+
+    def "Acquiring new content inserts it with one reference"() {
+        when:
+        def id = appServiceVersionBlobService.acquire(ChartBlobType.VALUES, VALUES)
+
+        then:
+        1 * appServiceVersionValueMapper.increaseRefCountByHash(VALUES_HASH, 1L) >> 0
+        1 * appServiceVersionValueMapper.insert({ it.value == VALUES && it.contentHash == VALUES_HASH && it.refCount == 1L }) >> { AppServiceVersionValueDTO dto ->
+            dto.setId(6L)
+            return 1
+        }
+        id == 6L
+    }
+
+    def "Content inserted concurrently is referenced on retry"() {
+        when:
+        def id = appServiceVersionBlobService.acquire(ChartBlobType.README, "# demo\n")
+
+        then:
+        2 * appServiceVersionReadmeMapper.increaseRefCountByHash(sha256("# demo\n"), 1L) >>> [0, 1]
+        1 * appServiceVersionReadmeMapper.insert(_ as AppServiceVersionReadmeDTO) >> { throw new DuplicateKeyException("uk_content_hash") }
+        1 * appServiceVersionReadmeMapper.selectIdByContentHash(sha256("# demo\n")) >> 7L
+        id == 7L
+    }
+
+    def "Acquiring fails after the retries are used up"() {
+        given:
+        appServiceVersionValueMapper.increaseRefCountByHash(*_) >> 0
+        appServiceVersionValueMapper.insert(_) >> { throw new DuplicateKeyException("uk_content_hash") }
+
+        when:
+        appServiceVersionBlobService.acquire(ChartBlobType.VALUES, VALUES)
+
+        then:
+        def e = thrown(CommonException)
+        e.code == "error.chart.blob.acquire"
+    }
+
+    def "Null content is not stored"() {
+        when:
+        def id = appServiceVersionBlobService.acquire(ChartBlobType.VALUES, null)
+
+        then:
+        id == null
+        0 * appServiceVersionValueMapper._
+    }
+
+    def "Repeated ids are released as many times as they appear"() {
+        when:
+        appServiceVersionBlobService.release(ChartBlobType.VALUES, [1L, 2L, 1L, null, 1L])
+
+        then:
+        1 * appServiceVersionValueMapper.decreaseRefCounts([1L: 3, 2L: 1])
+    }
+
+    def "Nothing is released without ids"() {
+        when:
+        appServiceVersionBlobService.release(ChartBlobType.README, [null])
+
+        then:
+        0 * appServiceVersionReadmeMapper._
+    }
+
+    def "Duplicated old content is merged into the existing record"() {
+        when:
+        def lastId = appServiceVersionBlobService.deduplicate(ChartBlobType.VALUES, 0L)
+
+        then: "记录1与已有记录内容相同, 记录2是新内容, 记录3已经被删除"
+        1 * appServiceVersionValueMapper.listWithoutContentHash(0L, 10) >> [value(1L, VALUES), value(2L, "other: true\n"), value(3L, "gone: true\n")]
+        1 * appServiceVersionValueMapper.selectRefCountForUpdate(1L) >> 4L
+        1 * appServiceVersionValueMapper.increaseRefCountByHash(VALUES_HASH, 4L) >> 1
+        1 * appServiceVersionValueMapper.selectIdByContentHash(VALUES_HASH) >> 9L
+        1 * appServiceVersionMapper.updateValueId(1L, 9L)
+        1 * appServiceVersionValueMapper.deleteByPrimaryKey(1L)
+
+        1 * appServiceVersionValueMapper.selectRefCountForUpdate(2L) >> 2L
+        1 * appServiceVersionValueMapper.increaseRefCountByHash(sha256("other: true\n"), 2L) >> 0
+        1 * appServiceVersionValueMapper.updateContentHash(2L, sha256("other: true\n")) >> 1
+
+        1 * appServiceVersionValueMapper.selectRefCountForUpdate(3L) >> null
+        0 * appServiceVersionValueMapper.updateContentHash(3L, _)
+        lastId == 3L
+    }
+
+    def "Deduplication ends when there is nothing left"() {
+        when:
+        def lastId = appServiceVersionBlobService.deduplicate(ChartBlobType.README, 3L)
+
+        then:
+        1 * appServiceVersionReadmeMapper.listWithoutContentHash(3L, 10) >> []
+        lastId == null
+    }
+
+    private static AppServiceVersionValueDTO value(Long id, String content) {
+        def appServiceVersionValueDTO = new AppServiceVersionValueDTO()
+        appServiceVersionValueDTO.setId(id)
+        appServiceVersionValueDTO.setValue(content)
+        return appServiceVersionValueDTO
+    }
+
+    private static String sha256(String content) {
+        return MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8)).encodeHex().toString()
+    }
+}
@@ -0,0 +1,92 @@
+package io.choerodon.devops.app.service.impl
+
+import io.choerodon.devops.api.vo.DevopsCiPipelineRecordVO
+import io.choerodon.devops.app.service.DevopsCiStageService
+import io.choerodon.devops.infra.dto.DevopsCiJobRecordDTO
+import io.choerodon.devops.infra.dto.DevopsCiStageDTO
+import io.choerodon.devops.infra.handler.CiPipelineSyncHandler
+import io.choerodon.devops.infra.mapper.DevopsCiJobRecordMapper
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Unroll
+
+/**
+ *
+ * @author zmf* @since 2021/8/6
+ *
+ */
+@Subject(DevopsCiPipelineRecordServiceImpl)
+class DevopsCiPipelineRecordServiceImplSpec extends Specification {
+    private static final Long CI_PIPELINE_ID = 1L
+
+    DevopsCiStageService devopsCiStageService = Mock()
+    DevopsCiJobRecordMapper devopsCiJobRecordMapper = Mock()
+    CiPipelineSyncHandler ciPipelineSyncHandler = Mock()
+
+    DevopsCiPipelineRecordServiceImpl devopsCiPipelineRecordService = new DevopsCiPipelineRecordServiceImpl(
+            null, null, devopsCiStageService, null, devopsCiJobRecordMapper, null, null, null, null, null, null,
+            null, null, ciPipelineSyncHandler, null, null, null, null, null, null, null, null)
+
+    @Unroll
+    def "Query count of filling stage records stays constant with page size #pageSize"() {
+        given:
+        def records = (1..pageSize).collect { record(it as Long) }
+        def jobs = (1..pageSize).collectMany { [job(it as Long, "build", "success"), job(it as Long, "test", "failed")] }
+
+        when:
+        devopsCiPipelineRecordService.fillStageRecords(CI_PIPELINE_ID, records)
+
+        then:
+        1 * devopsCiJobRecordMapper.listByCiPipelineRecordIds({ it.size() == pageSize }) >> jobs
+        1 * devopsCiStageService.listByPipelineId(CI_PIPELINE_ID) >> [stage("build", 1L), stage("test", 2L)]
+        0 * devopsCiJobRecordMapper.select(_)
+        pageSize * ciPipelineSyncHandler.syncPipeline(_, _, _, _, false)
+        records.every { it.getStageRecordVOList()*.getStatus() == ["success", "failed"] }
+
+        where:
+        pageSize << [1, 10, 100]
+    }
+
+    def "Records without jobs are reported to the sync handler"() {
+        given:
+        def records = [record(1L), record(2L)]
+
+        when:
+        devopsCiPipelineRecordService.fillStageRecords(CI_PIPELINE_ID, records)
+
+        then:
+        1 * devopsCiJobRecordMapper.listByCiPipelineRecordIds(_) >> [job(1L, "build", "running")]
+        1 * devopsCiStageService.listByPipelineId(CI_PIPELINE_ID) >> [stage("build", 1L)]
+        1 * ciPipelineSyncHandler.syncPipeline(_, _, 1L, _, false)
+        1 * ciPipelineSyncHandler.syncPipeline(_, _, 2L, _, true)
+        records[0].getStageRecordVOList()*.getStatus() == ["running"]
+        records[1].getStageRecordVOList().isEmpty()
+    }
+
+    private static DevopsCiPipelineRecordVO record(Long id) {
+        def record = new DevopsCiPipelineRecordVO()
+        record.setId(id)
+        record.setStatus("running")
+        record.setGitlabPipelineId(id)
+        record.setLastUpdateDate(new Date())
+        return record
+    }
+
+    private static DevopsCiJobRecordDTO job(Long ciPipelineRecordId, String stage, String status) {
+        def job = new DevopsCiJobRecordDTO()
+        job.setId(ciPipelineRecordId * 10 + stage.length())
+        job.setCiPipelineRecordId(ciPipelineRecordId)
+        job.setName(stage + "-job")
+        job.setStage(stage)
+        job.setStatus(status)
+        return job
+    }
+
+    private static DevopsCiStageDTO stage(String name, Long sequence) {
+        def stage = new DevopsCiStageDTO()
+        stage.setName(name)
+        stage.setSequence(sequence)
+        stage.setCiPipelineId(CI_PIPELINE_ID)
+        return stage
+    }
+}
@@ -0,0 +1,139 @@
+package io.choerodon.devops.app.service.impl
+
+import io.choerodon.devops.api.vo.ExecResultInfoVO
+import io.choerodon.devops.api.vo.HostConnectionVO
+import io.choerodon.devops.app.service.DevopsClusterOperatingRecordService
+import io.choerodon.devops.app.service.DevopsClusterService
+import io.choerodon.devops.infra.dto.DevopsClusterDTO
+import io.choerodon.devops.infra.dto.DevopsClusterNodeDTO
+import io.choerodon.devops.infra.dto.DevopsClusterOperationRecordDTO
+import io.choerodon.devops.infra.enums.ClusterNodeTypeEnum
+import io.choerodon.devops.infra.enums.ClusterOperationStatusEnum
+import io.choerodon.devops.infra.enums.ClusterOperationTypeEnum
+import io.choerodon.devops.infra.enums.ClusterStatusEnum
+import io.choerodon.devops.infra.handler.ClusterInstallStatusPoller
+import io.choerodon.devops.infra.mapper.DevopsClusterMapper
+import io.choerodon.devops.infra.mapper.DevopsClusterNodeMapper
+import io.choerodon.devops.infra.mapper.DevopsClusterOperationRecordMapper
+import io.choerodon.devops.infra.util.SshUtil
+import net.schmizz.sshj.SSHClient
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ *
+ * @author zmf* @since 2021/8/10
+ *
+ */
+@Subject(DevopsClusterNodeServiceImpl)
+class DevopsClusterNodeServiceImplSpec extends Specification {
+    DevopsClusterNodeServiceImpl devopsClusterNodeService = new DevopsClusterNodeServiceImpl()
+    ClusterInstallStatusPoller clusterInstallStatusPoller = new ClusterInstallStatusPoller()
+
+    SshUtil sshUtil = Mock()
+    DevopsClusterMapper devopsClusterMapper = Mock()
+    DevopsClusterNodeMapper devopsClusterNodeMapper = Mock()
+    DevopsClusterOperationRecordMapper devopsClusterOperationRecordMapper = Mock()
+    DevopsClusterService devopsClusterService = Mock()
+    DevopsClusterOperatingRecordService devopsClusterOperatingRecordService = Mock()
+
+    def setup() {
+        ReflectionTestUtils.setField(clusterInstallStatusPoller, "parallelism", 4)
+        ReflectionTestUtils.setField(clusterInstallStatusPoller, "timeoutSeconds", 1L)
+        ReflectionTestUtils.setField(clusterInstallStatusPoller, "lockLeaseSeconds", 60L)
+        clusterInstallStatusPoller.initialize()
+
+        ReflectionTestUtils.setField(devopsClusterNodeService, "helmDownloadUrl", "http://example.com/helm.tar.gz")
+        ReflectionTestUtils.setField(devopsClusterNodeService, "sshUtil", sshUtil)
+        ReflectionTestUtils.setField(devopsClusterNodeService, "devopsClusterMapper", devopsClusterMapper)
+        ReflectionTestUtils.setField(devopsClusterNodeService, "devopsClusterNodeMapper", devopsClusterNodeMapper)
+        ReflectionTestUtils.setField(devopsClusterNodeService, "devopsClusterOperationRecordMapper", devopsClusterOperationRecordMapper)
+        ReflectionTestUtils.setField(devopsClusterNodeService, "devopsClusterService", devopsClusterService)
+        ReflectionTestUtils.setField(devopsClusterNodeService, "devopsClusterOperatingRecordService", devopsClusterOperatingRecordService)
+        ReflectionTestUtils.setField(devopsClusterNodeService, "clusterInstallStatusPoller", clusterInstallStatusPoller)
+    }
+
+    def cleanup() {
+        clusterInstallStatusPoller.destroy()
+    }
+
+    def "Installed clusters are written even if installing the agent exceeds the deadline"() {
+        given: "集群1安装成功, 安装agent超过了截止时间; 集群2读取退出码超时"
+        SSHClient ssh1 = Mock()
+        SSHClient ssh2 = Mock()
+        devopsClusterOperationRecordMapper.select(_) >> [record(11L, 1L), record(12L, 2L)]
+        devopsClusterMapper.listByClusterIds(_) >> [cluster(1L, "c1"), cluster(2L, "c2")]
+        devopsClusterNodeMapper.listByClusterId(1L) >> [node("10.0.0.1")]
+        devopsClusterNodeMapper.listByClusterId(2L) >> [node("10.0.0.2")]
+        sshUtil.sshConnect(_ as HostConnectionVO) >> { HostConnectionVO hostConnectionVO -> hostConnectionVO.getHostIp() == "10.0.0.1" ? ssh1 : ssh2 }
+        devopsClusterService.getInstallString(_, _) >> "install agent"
+
+        when:
+        devopsClusterNodeService.syncInstallStatus()
+
+        then:
+        3 * sshUtil.execCommand(ssh1, _) >> { SSHClient ssh, String command ->
+            if (!command.contains("exit-code-c1")) {
+                Thread.sleep(800)
+            }
+            return execResult(0, "0")
+        }
+        1 * sshUtil.execCommand(ssh2, { it.contains("exit-code-c2") }) >> {
+            Thread.sleep(1500)
+            return execResult(0, "0")
+        }
+        0 * sshUtil.execCommand(ssh2, { !it.contains("exit-code-c2") })
+        1 * devopsClusterService.getInstallString({ it.getId() == 1L }, "")
+        1 * devopsClusterOperatingRecordService.batchUpdateStatus(
+                { it*.getId() == [11L] && it[0].getStatus() == ClusterOperationStatusEnum.SUCCESS.value() },
+                { it*.getId() == [1L] && it[0].getStatus() == ClusterStatusEnum.DISCONNECT.value() })
+    }
+
+    def "Clusters that are no longer operating are updated without polling"() {
+        given:
+        def failedCluster = cluster(1L, "c1")
+        failedCluster.setStatus(ClusterStatusEnum.FAILED.value())
+        devopsClusterOperationRecordMapper.select(_) >> [record(11L, 1L)]
+        devopsClusterMapper.listByClusterIds(_) >> [failedCluster]
+
+        when:
+        devopsClusterNodeService.syncInstallStatus()
+
+        then:
+        0 * sshUtil.sshConnect(*_)
+        1 * devopsClusterOperatingRecordService.batchUpdateStatus(
+                { it*.getId() == [11L] && it[0].getStatus() == ClusterOperationStatusEnum.FAILED.value() }, [])
+    }
+
+    private static DevopsClusterOperationRecordDTO record(Long id, Long clusterId) {
+        return new DevopsClusterOperationRecordDTO()
+                .setId(id)
+                .setClusterId(clusterId)
+                .setStatus(ClusterOperationStatusEnum.OPERATING.value())
+                .setType(ClusterOperationTypeEnum.INSTALL_K8S.getType())
+    }
+
+    private static DevopsClusterDTO cluster(Long id, String code) {
+        def devopsClusterDTO = new DevopsClusterDTO()
+        devopsClusterDTO.setId(id)
+        devopsClusterDTO.setCode(code)
+        devopsClusterDTO.setStatus(ClusterStatusEnum.OPERATING.value())
+        return devopsClusterDTO
+    }
+
+    private static DevopsClusterNodeDTO node(String hostIp) {
+        def devopsClusterNodeDTO = new DevopsClusterNodeDTO()
+        devopsClusterNodeDTO.setHostIp(hostIp)
+        devopsClusterNodeDTO.setType(ClusterNodeTypeEnum.INNER.getType())
+        return devopsClusterNodeDTO
+    }
+
+    private static ExecResultInfoVO execResult(int exitCode, String stdOut) {
+        def execResultInfoVO = new ExecResultInfoVO()
+        execResultInfoVO.setExitCode(exitCode)
+        execResultInfoVO.setStdOut(stdOut)
+        execResultInfoVO.setStdErr("")
+        return execResultInfoVO
+    }
+}
@@ -0,0 +1,50 @@
+package io.choerodon.devops.app.service.impl
+
+import io.choerodon.devops.infra.dto.DevopsClusterDTO
+import io.choerodon.devops.infra.dto.DevopsClusterOperationRecordDTO
+import io.choerodon.devops.infra.mapper.DevopsClusterMapper
+import io.choerodon.devops.infra.mapper.DevopsClusterOperationRecordMapper
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ *
+ * @author zmf* @since 2021/8/10
+ *
+ */
+@Subject(DevopsClusterOperatingRecordServiceImpl)
+class DevopsClusterOperatingRecordServiceImplSpec extends Specification {
+    DevopsClusterOperatingRecordServiceImpl devopsClusterOperatingRecordService = new DevopsClusterOperatingRecordServiceImpl()
+    DevopsClusterOperationRecordMapper devopsClusterOperationRecordMapper = Mock()
+    DevopsClusterMapper devopsClusterMapper = Mock()
+
+    def setup() {
+        ReflectionTestUtils.setField(devopsClusterOperatingRecordService, "devopsClusterOperationRecordMapper", devopsClusterOperationRecordMapper)
+        ReflectionTestUtils.setField(devopsClusterOperatingRecordService, "devopsClusterMapper", devopsClusterMapper)
+    }
+
+    def "Records and clusters are updated with one statement per table"() {
+        given:
+        def records = [new DevopsClusterOperationRecordDTO().setId(1L), new DevopsClusterOperationRecordDTO().setId(2L)]
+        def clusters = [new DevopsClusterDTO(id: 1L)]
+
+        when:
+        devopsClusterOperatingRecordService.batchUpdateStatus(records, clusters)
+
+        then:
+        1 * devopsClusterOperationRecordMapper.batchUpdateStatusAndErrorMsg(records)
+        1 * devopsClusterMapper.batchUpdateStatus(clusters)
+        0 * devopsClusterOperationRecordMapper.updateByPrimaryKeySelective(_)
+        0 * devopsClusterMapper.updateByPrimaryKeySelective(_)
+    }
+
+    def "Empty lists are not updated"() {
+        when:
+        devopsClusterOperatingRecordService.batchUpdateStatus([], null)
+
+        then:
+        0 * devopsClusterOperationRecordMapper._
+        0 * devopsClusterMapper._
+    }
+}
@@ -0,0 +1,122 @@
+package io.choerodon.devops.app.service.impl
+
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.time.ZoneId
+
+import io.choerodon.devops.infra.dto.DevopsEnvCommandDTO
+import io.choerodon.devops.infra.dto.DevopsGitlabCommitDTO
+import io.choerodon.devops.infra.dto.DevopsPipelineRecordRelDTO
+import io.choerodon.devops.infra.enums.CommandType
+import io.choerodon.devops.infra.enums.DailyRollupMetric
+import io.choerodon.devops.infra.enums.ObjectType
+import io.choerodon.devops.infra.mapper.DevopsDailyRollupMapper
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ *
+ * @author zmf* @since 2021/8/8
+ *
+ */
+@Subject(DevopsDailyRollupServiceImpl)
+class DevopsDailyRollupServiceImplSpec extends Specification {
+    private static final LocalDate DAY = LocalDate.of(2021, 8, 8)
+
+    DevopsDailyRollupServiceImpl devopsDailyRollupService = new DevopsDailyRollupServiceImpl()
+    DevopsDailyRollupMapper devopsDailyRollupMapper = Mock()
+
+    def setup() {
+        ReflectionTestUtils.setField(devopsDailyRollupService, "devopsDailyRollupMapper", devopsDailyRollupMapper)
+    }
+
+    def "A commit is counted on its commit date"() {
+        when:
+        devopsDailyRollupService.increaseCommit(commit(1L, 3L, DAY.atTime(23, 59)))
+
+        then:
+        1 * devopsDailyRollupMapper.increaseByAppService(DailyRollupMetric.COMMIT.getValue(), 1L, 3L, java.sql.Date.valueOf(DAY), 1L)
+    }
+
+    def "Commits of the same app service, user and day are counted together"() {
+        when:
+        devopsDailyRollupService.increaseCommits([
+                commit(1L, 3L, DAY.atTime(9, 0)),
+                commit(1L, 3L, DAY.atTime(18, 0)),
+                commit(1L, null, DAY.atTime(10, 0)),
+                commit(1L, 3L, DAY.plusDays(1).atTime(0, 1))
+        ])
+
+        then: "没有用户的提交计入用户0"
+        1 * devopsDailyRollupMapper.increaseByAppService(DailyRollupMetric.COMMIT.getValue(), 1L, 3L, java.sql.Date.valueOf(DAY), 2L)
+        1 * devopsDailyRollupMapper.increaseByAppService(DailyRollupMetric.COMMIT.getValue(), 1L, 0L, java.sql.Date.valueOf(DAY), 1L)
+        1 * devopsDailyRollupMapper.increaseByAppService(DailyRollupMetric.COMMIT.getValue(), 1L, 3L, java.sql.Date.valueOf(DAY.plusDays(1)), 1L)
+        0 * devopsDailyRollupMapper._
+    }
+
+    def "Only creating and updating instances are counted as deployments"() {
+        given:
+        def devopsEnvCommandDTO = new DevopsEnvCommandDTO()
+        devopsEnvCommandDTO.setObject(object)
+        devopsEnvCommandDTO.setObjectId(5L)
+        devopsEnvCommandDTO.setCommandType(commandType)
+        devopsEnvCommandDTO.setCreatedBy(3L)
+
+        when:
+        devopsDailyRollupService.increaseDeploy(devopsEnvCommandDTO)
+
+        then:
+        times * devopsDailyRollupMapper.increaseByInstance(DailyRollupMetric.DEPLOY.getValue(), 5L, 3L, java.sql.Date.valueOf(LocalDate.now()))
+
+        where:
+        object                        | commandType                  | times
+        ObjectType.INSTANCE.getType() | CommandType.CREATE.getType() | 1
+        ObjectType.INSTANCE.getType() | CommandType.UPDATE.getType() | 1
+        ObjectType.INSTANCE.getType() | CommandType.DELETE.getType() | 0
+        "service"                     | CommandType.CREATE.getType() | 0
+    }
+
+    def "A pipeline trigger is counted for its pipeline"() {
+        given:
+        def devopsPipelineRecordRelDTO = new DevopsPipelineRecordRelDTO()
+        devopsPipelineRecordRelDTO.setPipelineId(7L)
+
+        when:
+        devopsDailyRollupService.increaseCi(devopsPipelineRecordRelDTO)
+
+        then: "没有创建人时计入用户0"
+        1 * devopsDailyRollupMapper.increaseByPipeline(DailyRollupMetric.CI.getValue(), 7L, 0L, java.sql.Date.valueOf(LocalDate.now()))
+    }
+
+    def "Rebuilding replaces the data of every metric in the date range"() {
+        given:
+        def start = java.sql.Date.valueOf(DAY)
+        def end = java.sql.Date.valueOf(DAY.plusDays(30))
+
+        when:
+        devopsDailyRollupService.rebuild(toDate(DAY.atTime(12, 0)), toDate(DAY.plusDays(30).atTime(12, 0)))
+
+        then: "先删除范围内的数据"
+        1 * devopsDailyRollupMapper.deleteByMetricAndDate(DailyRollupMetric.COMMIT.getValue(), start, end)
+        1 * devopsDailyRollupMapper.deleteByMetricAndDate(DailyRollupMetric.DEPLOY.getValue(), start, end)
+        1 * devopsDailyRollupMapper.deleteByMetricAndDate(DailyRollupMetric.CI.getValue(), start, end)
+
+        then: "再从原始记录重新汇总"
+        1 * devopsDailyRollupMapper.rebuildCommit(DailyRollupMetric.COMMIT.getValue(), start, end)
+        1 * devopsDailyRollupMapper.rebuildDeploy(DailyRollupMetric.DEPLOY.getValue(), start, end)
+        1 * devopsDailyRollupMapper.rebuildCi(DailyRollupMetric.CI.getValue(), start, end)
+    }
+
+    private static DevopsGitlabCommitDTO commit(Long appServiceId, Long userId, LocalDateTime commitDate) {
+        def devopsGitlabCommitDTO = new DevopsGitlabCommitDTO()
+        devopsGitlabCommitDTO.setAppServiceId(appServiceId)
+        devopsGitlabCommitDTO.setUserId(userId)
+        devopsGitlabCommitDTO.setCommitDate(toDate(commitDate))
+        return devopsGitlabCommitDTO
+    }
+
+    private static Date toDate(LocalDateTime localDateTime) {
+        return Date.from(localDateTime.atZone(ZoneId.systemDefault()).toInstant())
+    }
+}
@@ -0,0 +1,145 @@
+package io.choerodon.devops.app.service.impl
+
+import io.choerodon.devops.app.service.DevopsClusterService
+import io.choerodon.devops.app.service.DevopsEnvGroupService
+import io.choerodon.devops.infra.dto.DevopsEnvGroupDTO
+import io.choerodon.devops.infra.dto.DevopsEnvironmentDTO
+import io.choerodon.devops.infra.dto.iam.ProjectDTO
+import io.choerodon.devops.infra.dto.iam.Tenant
+import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator
+import io.choerodon.devops.infra.handler.ClusterConnectionHandler
+import io.choerodon.devops.infra.handler.EnvSyncStatusPublisher
+import io.choerodon.devops.infra.mapper.DevopsEnvironmentMapper
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Unroll
+
+/**
+ *
+ * @author zmf* @since 2021/8/10
+ *
+ */
+@Subject(DevopsEnvironmentServiceImpl)
+class DevopsEnvironmentServiceImplSpec extends Specification {
+    private static final Long PROJECT_ID = 1L
+    private static final Long CONNECTED_CLUSTER_ID = 1L
+
+    DevopsEnvironmentMapper devopsEnvironmentMapper = Mock()
+    DevopsEnvGroupService devopsEnvGroupService = Mock()
+    DevopsClusterService devopsClusterService = Mock()
+    ClusterConnectionHandler clusterConnectionHandler = Mock()
+    BaseServiceClientOperator baseServiceClientOperator = Mock()
+    EnvSyncStatusPublisher envSyncStatusPublisher = Mock()
+
+    DevopsEnvironmentServiceImpl devopsEnvironmentService = new DevopsEnvironmentServiceImpl()
+
+    def setup() {
+        ReflectionTestUtils.setField(devopsEnvironmentService, "devopsEnvironmentMapper", devopsEnvironmentMapper)
+        ReflectionTestUtils.setField(devopsEnvironmentService, "devopsEnvGroupService", devopsEnvGroupService)
+        ReflectionTestUtils.setField(devopsEnvironmentService, "devopsClusterService", devopsClusterService)
+        ReflectionTestUtils.setField(devopsEnvironmentService, "clusterConnectionHandler", clusterConnectionHandler)
+        ReflectionTestUtils.setField(devopsEnvironmentService, "baseServiceClientOperator", baseServiceClientOperator)
+        ReflectionTestUtils.setField(devopsEnvironmentService, "envSyncStatusPublisher", envSyncStatusPublisher)
+        ReflectionTestUtils.setField(devopsEnvironmentService, "gitlabUrl", "http://gitlab.example.com/")
+    }
+
+    @Unroll
+    def "Query count of the env group tree stays constant with #envCount environments"() {
+        given:
+        def envs = (1..envCount).collect { env(it as Long) }
+
+        when:
+        def tree = devopsEnvironmentService.listDevopsEnvGroupEnvs(PROJECT_ID, true)
+
+        then:
+        1 * clusterConnectionHandler.getUpdatedClusterSet() >> ([CONNECTED_CLUSTER_ID] as Set)
+        1 * devopsEnvironmentMapper.listByProjectIdAndActive(PROJECT_ID, true) >> envs
+        1 * devopsEnvGroupService.baseListByProjectId(PROJECT_ID) >> groups()
+        0 * devopsEnvGroupService.baseQuery(_)
+        0 * devopsClusterService._
+        0 * devopsEnvironmentMapper._
+
+        and: "每个环境组一个节点, 没有环境的组在最后"
+        tree*.getDevopsEnvGroupId().toSet() == [null, 10L, 11L, 12L] as Set
+        tree.last().getDevopsEnvGroupId() == 12L
+        tree.last().getDevopsEnvironmentRepDTOs() == null
+        tree.collectMany { it.getDevopsEnvironmentRepDTOs() ?: [] }.size() == envCount
+        tree.find { it.getDevopsEnvGroupId() == 10L }.getDevopsEnvGroupName() == "group-10"
+        tree.collectMany { it.getDevopsEnvironmentRepDTOs() ?: [] }.every {
+            it.getClusterName() == "cluster-" + it.getClusterId() && it.getConnected() == (it.getClusterId() == CONNECTED_CLUSTER_ID)
+        }
+
+        where:
+        envCount << [3, 30, 150]
+    }
+
+    @Unroll
+    def "Query count of the env tree menu stays constant with #envCount environments"() {
+        given:
+        def envs = (1..envCount).collect { env(it as Long) }
+
+        when:
+        def tree = devopsEnvironmentService.listEnvTreeMenu(PROJECT_ID)
+
+        then:
+        1 * clusterConnectionHandler.getUpdatedClusterSet() >> ([CONNECTED_CLUSTER_ID] as Set)
+        1 * devopsEnvironmentMapper.listByProjectId(PROJECT_ID) >> envs
+        1 * devopsEnvGroupService.baseListByProjectId(PROJECT_ID) >> groups()
+        0 * devopsEnvGroupService.baseQuery(_)
+        0 * devopsClusterService._
+        0 * devopsEnvironmentMapper._
+
+        and:
+        tree*.getDevopsEnvGroupId().toSet() == [null, 10L, 11L, 12L] as Set
+        tree.collectMany { it.getDevopsEnvironmentRepDTOs() ?: [] }.size() == envCount
+
+        where:
+        envCount << [3, 30, 150]
+    }
+
+    def "Cached sync status links to the gitops repository of the project the env belongs to"() {
+        given: "请求路径中的项目不是环境所属的项目"
+        def project = new ProjectDTO()
+        project.setId(PROJECT_ID)
+        project.setCode("proj")
+        project.setOrganizationId(100L)
+
+        when:
+        def status = devopsEnvironmentService.queryEnvSyncStatus(2L, 5L)
+
+        then:
+        1 * envSyncStatusPublisher.get(5L) >> null
+        1 * devopsEnvironmentMapper.queryByIdWithClusterCode(5L) >> env(5L)
+        1 * baseServiceClientOperator.queryIamProjectById(PROJECT_ID) >> project
+        0 * baseServiceClientOperator.queryIamProjectById(2L)
+        1 * baseServiceClientOperator.queryOrganizationById(100L) >> new Tenant().setTenantNum("org")
+        1 * envSyncStatusPublisher.putLoaded(5L, { it.getCommitUrl() == "http://gitlab.example.com/org-proj-gitops/env-5/commit/" })
+        status.getCommitUrl() == "http://gitlab.example.com/org-proj-gitops/env-5/commit/"
+    }
+
+    private static DevopsEnvironmentDTO env(Long id) {
+        def env = new DevopsEnvironmentDTO()
+        env.setId(id)
+        env.setProjectId(PROJECT_ID)
+        env.setCode("env-" + id)
+        env.setClusterId(id % 2 + 1)
+        env.setClusterName("cluster-" + (id % 2 + 1))
+        // 环境按id轮流分到组10, 组11和不分组
+        env.setDevopsEnvGroupId([10L, 11L, null][(int) (id % 3)])
+        env.setActive(true)
+        env.setSynchro(true)
+        env.setFailed(false)
+        return env
+    }
+
+    private static List<DevopsEnvGroupDTO> groups() {
+        return [10L, 11L, 12L].collect {
+            def group = new DevopsEnvGroupDTO()
+            group.setId(it)
+            group.setProjectId(PROJECT_ID)
+            group.setName("group-" + it)
+            return group
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package io.choerodon.devops.app.service.impl
+
+import io.choerodon.devops.api.vo.AuthorVO
+import io.choerodon.devops.api.vo.CommitVO
+import io.choerodon.devops.api.vo.PushWebHookVO
+import io.choerodon.devops.app.service.AppServiceService
+import io.choerodon.devops.app.service.DevopsBranchService
+import io.choerodon.devops.app.service.DevopsDailyRollupService
+import io.choerodon.devops.app.service.DevopsGitlabCommitService
+import io.choerodon.devops.infra.constant.GitOpsConstants
+import io.choerodon.devops.infra.dto.AppServiceDTO
+import io.choerodon.devops.infra.dto.DevopsBranchDTO
+import io.choerodon.devops.infra.dto.DevopsGitlabCommitDTO
+import io.choerodon.devops.infra.dto.DevopsIssueRelDTO
+import io.choerodon.devops.infra.dto.iam.IamUserDTO
+import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator
+import io.choerodon.devops.infra.mapper.DevopsGitlabCommitMapper
+import org.hzero.mybatis.BatchInsertHelper
+import org.springframework.dao.DuplicateKeyException
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ *
+ * @author zmf* @since 2021/8/10
+ *
+ */
+@Subject(DevopsGitlabCommitServiceImpl)
+class DevopsGitlabCommitServiceImplSpec extends Specification {
+    private static final String REF = "master"
+
+    DevopsGitlabCommitServiceImpl devopsGitlabCommitService = new DevopsGitlabCommitServiceImpl()
+
+    BaseServiceClientOperator baseServiceClientOperator = Mock()
+    DevopsGitlabCommitMapper devopsGitlabCommitMapper = Mock()
+    AppServiceService applicationService = Mock()
+    DevopsGitlabCommitService selfService = Mock()
+    DevopsBranchService devopsBranchService = Mock()
+    BatchInsertHelper<DevopsGitlabCommitDTO> commitBatchInsertHelper = Mock()
+    BatchInsertHelper<DevopsIssueRelDTO> batchInsertHelper = Mock()
+    DevopsDailyRollupService devopsDailyRollupService = Mock()
+
+    def setup() {
+        ReflectionTestUtils.setField(devopsGitlabCommitService, "baseServiceClientOperator", baseServiceClientOperator)
+        ReflectionTestUtils.setField(devopsGitlabCommitService, "devopsGitlabCommitMapper", devopsGitlabCommitMapper)
+        ReflectionTestUtils.setField(devopsGitlabCommitService, "applicationService", applicationService)
+        ReflectionTestUtils.setField(devopsGitlabCommitService, "devopsGitlabCommitService", selfService)
+        ReflectionTestUtils.setField(devopsGitlabCommitService, "devopsBranchService", devopsBranchService)
+        ReflectionTestUtils.setField(devopsGitlabCommitService, "commitBatchInsertHelper", commitBatchInsertHelper)
+        ReflectionTestUtils.setField(devopsGitlabCommitService, "batchInsertHelper", batchInsertHelper)
+        ReflectionTestUtils.setField(devopsGitlabCommitService, "devopsDailyRollupService", devopsDailyRollupService)
+
+        def appServiceDTO = new AppServiceDTO()
+        appServiceDTO.setId(1L)
+        appServiceDTO.setProjectId(2L)
+        appServiceDTO.setCode("app")
+        applicationService.baseQueryByToken("token") >> appServiceDTO
+        devopsBranchService.baseQueryByAppAndBranchNameWithIssueIds(1L, REF) >> new DevopsBranchDTO()
+        def user = new IamUserDTO()
+        user.setId(3L)
+        baseServiceClientOperator.queryByEmail(2L, _) >> user
+    }
+
+    def "New commits are inserted in one batch and counted in the rollup"() {
+        when:
+        devopsGitlabCommitService.create(push("a", "b", "c"), "token", GitOpsConstants.COMMIT)
+
+        then: "已有的提交a被跳过"
+        1 * devopsGitlabCommitMapper.listByRefAndCommitShas(REF, ["a", "b", "c"] as Set) >> [commit("a")]
+        1 * commitBatchInsertHelper.batchInsert({ it*.commitSha == ["b", "c"] })
+        1 * devopsDailyRollupService.increaseCommits({ it*.commitSha == ["b", "c"] && it.every { c -> c.userId == 3L && c.appServiceId == 1L } })
+        0 * devopsGitlabCommitMapper.insert(_)
+        0 * selfService.baseCreate(_)
+    }
+
+    def "Commits inserted one by one after the batch failed are counted in the rollup"() {
+        when:
+        devopsGitlabCommitService.create(push("a", "b", "c"), "token", GitOpsConstants.COMMIT)
+
+        then: "批量插入时b已经被重复投递的请求插入"
+        2 * devopsGitlabCommitMapper.listByRefAndCommitShas(REF, _) >>> [[], [commit("b")]]
+        1 * commitBatchInsertHelper.batchInsert(_) >> { throw new DuplicateKeyException("uk_commit_sha_ref") }
+        1 * devopsGitlabCommitMapper.insert({ it.commitSha == "a" }) >> 1
+        0 * devopsGitlabCommitMapper.insert({ it.commitSha == "b" })
+        1 * devopsGitlabCommitMapper.insert({ it.commitSha == "c" }) >> { throw new DuplicateKeyException("uk_commit_sha_ref") }
+        1 * devopsDailyRollupService.increaseCommits({ it*.commitSha == ["a"] })
+        0 * devopsDailyRollupService.increaseCommit(_)
+    }
+
+    def "Only commits inserted by this request are related to the issues of the branch"() {
+        given:
+        def branch = new DevopsBranchDTO()
+        branch.setId(20L)
+        branch.setIssueIds([100L, 101L])
+        def inserted = commit("a")
+        inserted.setId(11L)
+
+        when:
+        devopsGitlabCommitService.create(push("a", "b"), "token", GitOpsConstants.COMMIT)
+
+        then: "b由重复投递的请求插入, 也由它关联"
+        1 * devopsBranchService.baseQueryByAppAndBranchNameWithIssueIds(1L, REF) >> branch
+        2 * devopsGitlabCommitMapper.listByRefAndCommitShas(REF, ["a", "b"] as Set) >>> [[], [commit("b")]]
+        1 * commitBatchInsertHelper.batchInsert(_) >> { throw new DuplicateKeyException("uk_commit_sha_ref") }
+        1 * devopsGitlabCommitMapper.insert({ it.commitSha == "a" }) >> 1
+        1 * devopsGitlabCommitMapper.listByRefAndCommitShas(REF, ["a"]) >> [inserted]
+        1 * batchInsertHelper.batchInsert({ List<DevopsIssueRelDTO> rels ->
+            rels*.issueId == [100L, 101L] && rels.every { it.objectId == 11L && it.branchId == 20L && it.appServiceCode == "app" }
+        })
+    }
+
+    def "No relations are created when the other request inserted every commit"() {
+        given:
+        def branch = new DevopsBranchDTO()
+        branch.setIssueIds([100L])
+
+        when:
+        devopsGitlabCommitService.create(push("a"), "token", GitOpsConstants.COMMIT)
+
+        then:
+        1 * devopsBranchService.baseQueryByAppAndBranchNameWithIssueIds(1L, REF) >> branch
+        2 * devopsGitlabCommitMapper.listByRefAndCommitShas(REF, _) >>> [[], [commit("a")]]
+        1 * commitBatchInsertHelper.batchInsert(_) >> { throw new DuplicateKeyException("uk_commit_sha_ref") }
+        0 * devopsGitlabCommitMapper.insert(_)
+        0 * batchInsertHelper._
+    }
+
+    def "Nothing is inserted or counted when all commits exist"() {
+        when:
+        devopsGitlabCommitService.create(push("a"), "token", GitOpsConstants.COMMIT)
+
+        then:
+        1 * devopsGitlabCommitMapper.listByRefAndCommitShas(REF, _) >> [commit("a")]
+        0 * commitBatchInsertHelper.batchInsert(_)
+        0 * devopsDailyRollupService._
+    }
+
+    private static PushWebHookVO push(String... shas) {
+        def pushWebHookVO = new PushWebHookVO()
+        pushWebHookVO.setRef("refs/heads/" + REF)
+        pushWebHookVO.setCommits(shas.collect { sha ->
+            def author = new AuthorVO()
+            author.setName("dev")
+            author.setEmail("dev@example.com")
+            def commitVO = new CommitVO()
+            commitVO.setId(sha)
+            commitVO.setMessage("commit " + sha)
+            commitVO.setAuthor(author)
+            commitVO.setTimestamp(new Date())
+            return commitVO
+        })
+        return pushWebHookVO
+    }
+
+    private static DevopsGitlabCommitDTO commit(String sha) {
+        def devopsGitlabCommitDTO = new DevopsGitlabCommitDTO()
+        devopsGitlabCommitDTO.setCommitSha(sha)
+        devopsGitlabCommitDTO.setRef(REF)
+        return devopsGitlabCommitDTO
+    }
+}
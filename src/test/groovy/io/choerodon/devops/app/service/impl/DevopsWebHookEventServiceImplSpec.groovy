@@ -0,0 +1,181 @@
+package io.choerodon.devops.app.service.impl
+
+import io.choerodon.devops.app.service.GitlabWebHookService
+import io.choerodon.devops.infra.dto.DevopsWebHookEventDTO
+import io.choerodon.devops.infra.enums.WebHookEventStatus
+import io.choerodon.devops.infra.mapper.DevopsWebHookEventMapper
+import org.springframework.dao.DuplicateKeyException
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.util.concurrent.BlockingVariable
+
+/**
+ *
+ * @author zmf* @since 2021/8/10
+ *
+ */
+@Subject(DevopsWebHookEventServiceImpl)
+class DevopsWebHookEventServiceImplSpec extends Specification {
+    private static final Long PARTITION_KEY = 7L
+
+    DevopsWebHookEventServiceImpl devopsWebHookEventService = new DevopsWebHookEventServiceImpl()
+    DevopsWebHookEventMapper devopsWebHookEventMapper = Mock()
+    GitlabWebHookService gitlabWebHookService = Mock()
+
+    def setup() {
+        ReflectionTestUtils.setField(devopsWebHookEventService, "enabled", true)
+        ReflectionTestUtils.setField(devopsWebHookEventService, "partitions", 1)
+        ReflectionTestUtils.setField(devopsWebHookEventService, "partitionCapacity", 10)
+        ReflectionTestUtils.setField(devopsWebHookEventService, "maxAttempts", 5)
+        ReflectionTestUtils.setField(devopsWebHookEventService, "retryBaseSeconds", 30L)
+        ReflectionTestUtils.setField(devopsWebHookEventService, "pollBatchSize", 200)
+        ReflectionTestUtils.setField(devopsWebHookEventService, "devopsWebHookEventMapper", devopsWebHookEventMapper)
+        ReflectionTestUtils.setField(devopsWebHookEventService, "gitlabWebHookService", gitlabWebHookService)
+        devopsWebHookEventService.init()
+    }
+
+    def cleanup() {
+        devopsWebHookEventService.destroy()
+    }
+
+    def "Claimed events are processed and marked as success"() {
+        when:
+        devopsWebHookEventService.process(1L)
+
+        then:
+        1 * devopsWebHookEventMapper.selectByPrimaryKey(1L) >> event(1L, 0)
+        1 * devopsWebHookEventMapper.countUnfinishedBefore(PARTITION_KEY, 1L) >> 0
+
+        then:
+        1 * devopsWebHookEventMapper.claim(1L, _) >> 1
+
+        then:
+        1 * gitlabWebHookService.processEvent("push", "body-1", "token")
+
+        then:
+        1 * devopsWebHookEventMapper.markSuccess(1L)
+        0 * devopsWebHookEventMapper.markFailed(*_)
+        1 * devopsWebHookEventMapper.selectNextPendingId(PARTITION_KEY, 1L) >> null
+    }
+
+    def "Events behind an unfinished event of the same partition are not claimed"() {
+        when:
+        devopsWebHookEventService.process(2L)
+
+        then:
+        1 * devopsWebHookEventMapper.selectByPrimaryKey(2L) >> event(2L, 0)
+        1 * devopsWebHookEventMapper.countUnfinishedBefore(PARTITION_KEY, 2L) >> 1
+        0 * devopsWebHookEventMapper.claim(*_)
+        0 * gitlabWebHookService._
+    }
+
+    def "Events claimed by another instance are skipped"() {
+        given:
+        devopsWebHookEventMapper.selectByPrimaryKey(1L) >> event(1L, 0)
+
+        when:
+        devopsWebHookEventService.process(1L)
+
+        then:
+        1 * devopsWebHookEventMapper.claim(1L, _) >> 0
+        0 * gitlabWebHookService._
+        0 * devopsWebHookEventMapper.markSuccess(_)
+    }
+
+    def "Failed events are retried with exponential backoff"() {
+        given:
+        devopsWebHookEventMapper.selectByPrimaryKey(1L) >> event(1L, 1)
+        devopsWebHookEventMapper.claim(1L, _) >> 1
+        gitlabWebHookService.processEvent(*_) >> { throw new IllegalStateException("gitlab is down") }
+        long start = System.currentTimeMillis()
+
+        when:
+        devopsWebHookEventService.process(1L)
+
+        then: "第二次失败, 60秒后重试"
+        1 * devopsWebHookEventMapper.markFailed(1L, WebHookEventStatus.FAILED.getValue(), 2,
+                { it.time >= start + 60000 && it.time <= System.currentTimeMillis() + 60000 },
+                { it.contains("gitlab is down") })
+        0 * devopsWebHookEventMapper.markSuccess(_)
+    }
+
+    def "Events failed max attempts times are moved to the dead letters"() {
+        given:
+        devopsWebHookEventMapper.selectByPrimaryKey(1L) >> event(1L, 4)
+        devopsWebHookEventMapper.claim(1L, _) >> 1
+        gitlabWebHookService.processEvent(*_) >> { throw new IllegalStateException("gitlab is down") }
+
+        when:
+        devopsWebHookEventService.process(1L)
+
+        then:
+        1 * devopsWebHookEventMapper.markFailed(1L, WebHookEventStatus.DEAD.getValue(), 5, _, _)
+    }
+
+    def "The next pending event of the partition is dispatched after the current one"() {
+        given:
+        List<String> processed = Collections.synchronizedList([])
+        def finished = new BlockingVariable<Boolean>(5)
+        devopsWebHookEventMapper.selectByPrimaryKey(1L) >> event(1L, 0)
+        devopsWebHookEventMapper.selectByPrimaryKey(2L) >> event(2L, 0)
+        devopsWebHookEventMapper.claim(_, _) >> 1
+        devopsWebHookEventMapper.selectNextPendingId(PARTITION_KEY, 1L) >> 2L
+        devopsWebHookEventMapper.selectNextPendingId(PARTITION_KEY, 2L) >> null
+        gitlabWebHookService.processEvent(*_) >> { String objectKind, String body, String token ->
+            processed << body
+            if (body == "body-2") {
+                finished.set(true)
+            }
+        }
+
+        when:
+        devopsWebHookEventService.process(1L)
+
+        then:
+        finished.get()
+        processed == ["body-1", "body-2"]
+    }
+
+    def "Due events are dispatched to their partitions"() {
+        given:
+        def finished = new BlockingVariable<Boolean>(5)
+        devopsWebHookEventMapper.selectByPrimaryKey(3L) >> event(3L, 0)
+        devopsWebHookEventMapper.claim(3L, _) >> 1
+        gitlabWebHookService.processEvent(*_) >> { finished.set(true) }
+
+        when:
+        devopsWebHookEventService.dispatchDueEvents()
+
+        then:
+        1 * devopsWebHookEventMapper.listDueEvents(_, 200) >> [event(3L, 0)]
+        finished.get()
+    }
+
+    def "Duplicated events are ignored"() {
+        given:
+        def body = '{"object_kind":"push","project_id":7}'
+
+        when:
+        devopsWebHookEventService.accept(body, "token", "uuid")
+
+        then:
+        1 * devopsWebHookEventMapper.insertSelective({
+            it.eventKey == "uuid" && it.partitionKey == PARTITION_KEY && it.status == WebHookEventStatus.PENDING.getValue()
+        }) >> { throw new DuplicateKeyException("uk_event_key") }
+        0 * devopsWebHookEventMapper.selectByPrimaryKey(_)
+        0 * gitlabWebHookService._
+    }
+
+    private static DevopsWebHookEventDTO event(Long id, int attempts) {
+        def devopsWebHookEventDTO = new DevopsWebHookEventDTO()
+        devopsWebHookEventDTO.setId(id)
+        devopsWebHookEventDTO.setObjectKind("push")
+        devopsWebHookEventDTO.setPartitionKey(PARTITION_KEY)
+        devopsWebHookEventDTO.setToken("token")
+        devopsWebHookEventDTO.setBody("body-" + id)
+        devopsWebHookEventDTO.setStatus(WebHookEventStatus.PENDING.getValue())
+        devopsWebHookEventDTO.setAttempts(attempts)
+        return devopsWebHookEventDTO
+    }
+}
@@ -0,0 +1,54 @@
+package io.choerodon.devops.app.task
+
+import java.sql.Date
+import java.time.LocalDate
+
+import io.choerodon.devops.app.service.DevopsDailyRollupService
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ *
+ * @author zmf* @since 2021/8/8
+ *
+ */
+@Subject(DevopsTask)
+class DevopsTaskSpec extends Specification {
+    DevopsTask devopsTask = new DevopsTask()
+    DevopsDailyRollupService devopsDailyRollupService = Mock()
+
+    def setup() {
+        ReflectionTestUtils.setField(devopsTask, "backfillDays", 10)
+        ReflectionTestUtils.setField(devopsTask, "backfillChunkDays", 4)
+        ReflectionTestUtils.setField(devopsTask, "devopsDailyRollupService", devopsDailyRollupService)
+    }
+
+    def "Daily rollup is rebuilt in chunks up to yesterday"() {
+        given:
+        def end = LocalDate.now().minusDays(1)
+        def start = end.minusDays(9)
+
+        when:
+        devopsTask.backfillDailyRollup([:])
+
+        then:
+        1 * devopsDailyRollupService.rebuild(Date.valueOf(start), Date.valueOf(start.plusDays(3)))
+
+        then:
+        1 * devopsDailyRollupService.rebuild(Date.valueOf(start.plusDays(4)), Date.valueOf(start.plusDays(7)))
+
+        then: "最后一段不超过昨天"
+        1 * devopsDailyRollupService.rebuild(Date.valueOf(start.plusDays(8)), Date.valueOf(end))
+        0 * devopsDailyRollupService._
+    }
+
+    def "A failed chunk does not stop the following chunks"() {
+        when:
+        devopsTask.backfillDailyRollup([:])
+
+        then:
+        3 * devopsDailyRollupService.rebuild(_, _) >> { throw new IllegalStateException("deadlock") } >> {} >> {}
+        noExceptionThrown()
+    }
+}
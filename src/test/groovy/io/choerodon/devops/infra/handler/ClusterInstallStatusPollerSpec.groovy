@@ -0,0 +1,107 @@
+package io.choerodon.devops.infra.handler
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+import org.springframework.data.redis.core.StringRedisTemplate
+import org.springframework.data.redis.core.ValueOperations
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ *
+ * @author zmf* @since 2021/8/10
+ *
+ */
+@Subject(ClusterInstallStatusPoller)
+class ClusterInstallStatusPollerSpec extends Specification {
+    ClusterInstallStatusPoller clusterInstallStatusPoller = new ClusterInstallStatusPoller()
+    StringRedisTemplate stringRedisTemplate = Mock()
+    ValueOperations<String, String> valueOperations = Mock()
+
+    def setup() {
+        stringRedisTemplate.opsForValue() >> valueOperations
+        ReflectionTestUtils.setField(clusterInstallStatusPoller, "parallelism", 4)
+        ReflectionTestUtils.setField(clusterInstallStatusPoller, "timeoutSeconds", 1L)
+        ReflectionTestUtils.setField(clusterInstallStatusPoller, "lockLeaseSeconds", 3L)
+        ReflectionTestUtils.setField(clusterInstallStatusPoller, "stringRedisTemplate", stringRedisTemplate)
+        clusterInstallStatusPoller.initialize()
+    }
+
+    def cleanup() {
+        clusterInstallStatusPoller.destroy()
+    }
+
+    def "Only polls finished before the deadline or committed are completed"() {
+        given:
+        List<String> committed = new CopyOnWriteArrayList<>()
+        Map<String, ClusterInstallStatusPoller.PollTask> tasks = [
+                fast         : { commit -> } as ClusterInstallStatusPoller.PollTask,
+                slow         : { commit ->
+                    sleepQuietly(3000)
+                    // 超时后提交失败, 不能再执行不可重复的操作
+                    if (commit.getAsBoolean()) {
+                        committed << "slow"
+                    }
+                } as ClusterInstallStatusPoller.PollTask,
+                committedSlow: { commit ->
+                    if (commit.getAsBoolean()) {
+                        committed << "committedSlow"
+                    }
+                    // 提交后超过截止时间也不会被中断
+                    Thread.sleep(1500)
+                } as ClusterInstallStatusPoller.PollTask,
+                failed       : { commit -> throw new IllegalStateException("ssh failed") } as ClusterInstallStatusPoller.PollTask
+        ]
+
+        when:
+        long start = System.currentTimeMillis()
+        def completed = clusterInstallStatusPoller.pollAll(tasks)
+        long elapsed = System.currentTimeMillis() - start
+
+        then:
+        completed == ["fast", "committedSlow", "failed"] as Set
+        committed == ["committedSlow"]
+        elapsed < 3000
+    }
+
+    def "Lock is renewed while the work is running and released afterwards"() {
+        given:
+        List<Object> scripts = new CopyOnWriteArrayList<>()
+        stringRedisTemplate.execute(*_) >> { args ->
+            scripts << args[0]
+            return 1L
+        }
+
+        when:
+        def executed = clusterInstallStatusPoller.runExclusively("lock", { Thread.sleep(2500) })
+
+        then:
+        1 * valueOperations.setIfAbsent("lock", _, 3L, _) >> true
+        executed
+        scripts.count { it.is(ClusterInstallStatusPoller.RENEW_LOCK_SCRIPT) } >= 2
+        scripts.last().is(ClusterInstallStatusPoller.RELEASE_LOCK_SCRIPT)
+    }
+
+    def "Work is skipped when the lock is held by another instance"() {
+        given:
+        boolean ran = false
+
+        when:
+        def executed = clusterInstallStatusPoller.runExclusively("lock", { ran = true })
+
+        then:
+        1 * valueOperations.setIfAbsent("lock", _, 3L, _) >> false
+        0 * stringRedisTemplate.execute(*_)
+        !executed
+        !ran
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis)
+        } catch (InterruptedException ignored) {
+            // 超时的轮询会被中断
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package io.choerodon.devops.infra.handler
+
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+
+import com.google.common.util.concurrent.RateLimiter
+import io.choerodon.core.convertor.ApplicationContextHelper
+import io.choerodon.devops.app.service.DevopsUserSyncRecordService
+import io.choerodon.devops.app.service.GitlabUserService
+import io.choerodon.devops.app.service.UserAttrService
+import io.choerodon.devops.infra.constant.MiscConstants
+import io.choerodon.devops.infra.dto.DevopsUserSyncRecordDTO
+import io.choerodon.devops.infra.dto.iam.IamUserDTO
+import io.choerodon.devops.infra.enums.UserSyncType
+import io.choerodon.devops.infra.feign.operator.BaseServiceClientOperator
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.context.ApplicationContext
+import org.springframework.data.redis.core.ListOperations
+import org.springframework.data.redis.core.StringRedisTemplate
+import org.springframework.data.redis.core.ValueOperations
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ *
+ * @author zmf* @since 2021/8/7
+ *
+ */
+@Subject(GitlabUserSyncEngine)
+class GitlabUserSyncEngineSpec extends Specification {
+    private static final String RUN_KEY = MiscConstants.USER_SYNC_REDIS_KEY + ":run"
+    private static final String RUN_PREFIX = MiscConstants.USER_SYNC_REDIS_KEY + ":r1"
+    private static final String PREVIOUS_RUN_PREFIX = MiscConstants.USER_SYNC_REDIS_KEY + ":r0"
+
+    GitlabUserSyncEngine gitlabUserSyncEngine = new GitlabUserSyncEngine()
+
+    StringRedisTemplate stringRedisTemplate = Mock()
+    ListOperations<String, String> listOperations = Mock()
+    ValueOperations<String, String> valueOperations = Mock()
+    UserAttrService userAttrService = Mock()
+    BaseServiceClientOperator baseServiceClientOperator = Mock()
+    DevopsUserSyncRecordService devopsUserSyncRecordService = Mock()
+    GitlabUserService gitlabUserService = Mock()
+    ExecutorService workerPool = Executors.newFixedThreadPool(2)
+
+    def setup() {
+        stringRedisTemplate.opsForList() >> listOperations
+        stringRedisTemplate.opsForValue() >> valueOperations
+        ApplicationContext applicationContext = Mock()
+        applicationContext.getBean(GitlabUserService) >> gitlabUserService
+        new ApplicationContextHelper().setApplicationContext(applicationContext)
+
+        def meterRegistry = new SimpleMeterRegistry()
+        ReflectionTestUtils.setField(gitlabUserSyncEngine, "shardSize", 2)
+        ReflectionTestUtils.setField(gitlabUserSyncEngine, "leaseSeconds", 120L)
+        ReflectionTestUtils.setField(gitlabUserSyncEngine, "awaitIntervalSeconds", 0L)
+        ReflectionTestUtils.setField(gitlabUserSyncEngine, "userFailureThreshold", 10)
+        ReflectionTestUtils.setField(gitlabUserSyncEngine, "failureSleepSeconds", 0)
+        ReflectionTestUtils.setField(gitlabUserSyncEngine, "stringRedisTemplate", stringRedisTemplate)
+        ReflectionTestUtils.setField(gitlabUserSyncEngine, "userAttrService", userAttrService)
+        ReflectionTestUtils.setField(gitlabUserSyncEngine, "baseServiceClientOperator", baseServiceClientOperator)
+        ReflectionTestUtils.setField(gitlabUserSyncEngine, "devopsUserSyncRecordService", devopsUserSyncRecordService)
+        ReflectionTestUtils.setField(gitlabUserSyncEngine, "meterRegistry", meterRegistry)
+        ReflectionTestUtils.setField(gitlabUserSyncEngine, "workerPool", workerPool)
+        ReflectionTestUtils.setField(gitlabUserSyncEngine, "rateLimiter", RateLimiter.create(1000d))
+        ReflectionTestUtils.setField(gitlabUserSyncEngine, "successCounter", meterRegistry.counter("success"))
+        ReflectionTestUtils.setField(gitlabUserSyncEngine, "failedCounter", meterRegistry.counter("failed"))
+    }
+
+    def cleanup() {
+        workerPool.shutdownNow()
+    }
+
+    def "Shards are claimed until the queue is empty and each shard is checkpointed"() {
+        given:
+        def run = GitlabUserSyncEngine.SyncRun.parse("1:r1")
+
+        when:
+        gitlabUserSyncEngine.work(run)
+
+        then:
+        3 * listOperations.rightPopAndLeftPush(RUN_PREFIX + ":shards", RUN_PREFIX + ":processing") >>> ["0:1,2", "1:3", null]
+        1 * baseServiceClientOperator.listUsersByIds({ it as List == [1L, 2L] }, false) >> [user(1L), user(2L)]
+        1 * baseServiceClientOperator.listUsersByIds({ it as List == [3L] }, false) >> [user(3L)]
+        3 * gitlabUserService.syncUserInNewTx(_)
+        1 * devopsUserSyncRecordService.checkpoint(1L, 2L, 0L)
+        1 * devopsUserSyncRecordService.checkpoint(1L, 1L, 0L)
+        1 * listOperations.remove(RUN_PREFIX + ":processing", 1, "0:1,2")
+        1 * listOperations.remove(RUN_PREFIX + ":processing", 1, "1:3")
+        1 * stringRedisTemplate.delete(RUN_PREFIX + ":lease:0")
+        1 * stringRedisTemplate.delete(RUN_PREFIX + ":lease:1")
+        0 * listOperations.rightPushAll(*_)
+    }
+
+    def "Failed users are counted in the checkpoint and their errors are kept"() {
+        given:
+        def run = GitlabUserSyncEngine.SyncRun.parse("1:r1")
+        def noEmail = user(2L)
+        noEmail.setEmail(null)
+
+        when:
+        gitlabUserSyncEngine.work(run)
+
+        then:
+        2 * listOperations.rightPopAndLeftPush(_, _) >>> ["0:1,2", null]
+        1 * baseServiceClientOperator.listUsersByIds(_, false) >> [user(1L), noEmail]
+        1 * gitlabUserService.syncUserInNewTx({ it.getId() == 1L }) >> { throw new RuntimeException("gitlab is down") }
+        1 * devopsUserSyncRecordService.checkpoint(1L, 0L, 2L)
+        1 * listOperations.rightPushAll(RUN_PREFIX + ":errors", { it.size() == 2 })
+    }
+
+    def "Shards whose lease expired are requeued"() {
+        given:
+        def run = GitlabUserSyncEngine.SyncRun.parse("1:r1")
+        listOperations.size(RUN_PREFIX + ":shards") >> 0L
+
+        when:
+        gitlabUserSyncEngine.awaitShards(run)
+
+        then: "连续两次检查都没有租约才重新放回队列"
+        3 * listOperations.range(RUN_PREFIX + ":processing", 0, -1) >>> [["0:1"], ["0:1"], []]
+        2 * stringRedisTemplate.hasKey(RUN_PREFIX + ":lease:0") >> false
+        1 * listOperations.remove(RUN_PREFIX + ":processing", 1, "0:1") >> 1L
+        1 * listOperations.leftPush(RUN_PREFIX + ":shards", "0:1")
+    }
+
+    def "Resumed sync waits for the leased shards of the previous run"() {
+        given:
+        def record = new DevopsUserSyncRecordDTO()
+        record.setId(1L)
+        devopsUserSyncRecordService.resumeOrInitRecord(UserSyncType.MANUAL) >> record
+        valueOperations.setIfAbsent(MiscConstants.USER_SYNC_REDIS_KEY, _, _, _) >> true
+        valueOperations.get(RUN_KEY) >> "1:r0"
+
+        when:
+        gitlabUserSyncEngine.sync(UserSyncType.MANUAL)
+
+        then: "先停止认领上次剩余的分片"
+        1 * stringRedisTemplate.delete(PREVIOUS_RUN_PREFIX + ":shards")
+
+        then: "上次的分片还持有租约时等待, 处理完后清除上次的数据"
+        3 * listOperations.range(PREVIOUS_RUN_PREFIX + ":processing", 0, -1) >>> [["0:1"], ["0:1"], []]
+        2 * stringRedisTemplate.hasKey(PREVIOUS_RUN_PREFIX + ":lease:0") >> true
+        0 * listOperations.remove(*_)
+        1 * stringRedisTemplate.delete([RUN_KEY, PREVIOUS_RUN_PREFIX + ":processing", PREVIOUS_RUN_PREFIX + ":errors"])
+
+        then: "之后才重新计算未同步的用户"
+        1 * baseServiceClientOperator.queryAllUserCount() >> 1
+        1 * userAttrService.allUserCount() >> 0
+        1 * devopsUserSyncRecordService.finishEmptyRecord(1L)
+        1 * stringRedisTemplate.delete(MiscConstants.USER_SYNC_REDIS_KEY)
+    }
+
+    def "Progress gauges are served from the cached snapshot"() {
+        when:
+        def remaining = gitlabUserSyncEngine.progressMetric(false)
+        def eta = gitlabUserSyncEngine.progressMetric(true)
+        gitlabUserSyncEngine.progressMetric(false)
+
+        then:
+        1 * valueOperations.multiGet(_) >> ["5", "10", String.valueOf(System.currentTimeMillis() - 10000)]
+        remaining == 5d
+        eta > 0d
+    }
+
+    private static IamUserDTO user(Long id) {
+        def user = new IamUserDTO()
+        user.setId(id)
+        user.setLoginName("user" + id)
+        user.setRealName("user" + id)
+        user.setEmail("user" + id + "@example.com")
+        return user
+    }
+}
@@ -0,0 +1,94 @@
+package io.choerodon.devops.infra.handler
+
+import io.choerodon.devops.api.vo.DevopsHostConnectionTestResultVO
+import io.choerodon.devops.infra.dto.DevopsHostDTO
+import io.choerodon.devops.infra.enums.DevopsHostStatus
+import io.choerodon.devops.infra.util.SshUtil
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ *
+ * @author zmf* @since 2021/8/7
+ *
+ */
+@Subject(HostConnectivityProber)
+class HostConnectivityProberSpec extends Specification {
+    HostConnectivityProber hostConnectivityProber = new HostConnectivityProber()
+    ServerSocket silentServer = new ServerSocket(0)
+    SshUtil sshUtil = Mock()
+
+    def setup() {
+        ReflectionTestUtils.setField(hostConnectivityProber, "sshUtil", sshUtil)
+        ReflectionTestUtils.setField(hostConnectivityProber, "parallelism", 4)
+        ReflectionTestUtils.setField(hostConnectivityProber, "preCheckTimeoutMillis", 500)
+        ReflectionTestUtils.setField(hostConnectivityProber, "deadlineSeconds", 1L)
+        hostConnectivityProber.initialize()
+    }
+
+    def cleanup() {
+        hostConnectivityProber.destroy()
+        silentServer.close()
+    }
+
+    def "Unreachable port fails in the pre-check"() {
+        given:
+        def closedPort = new ServerSocket(0).withCloseable { it.getLocalPort() }
+
+        when:
+        def result = hostConnectivityProber.probe("127.0.0.1", closedPort, "accountPassword", "root", "password")
+
+        then:
+        result.getHostStatus() == DevopsHostStatus.FAILED.getValue()
+        result.getHostCheckError().contains("127.0.0.1:" + closedPort)
+        0 * sshUtil.sshConnectForOK(*_)
+    }
+
+    def "Ssh check is given the remaining deadline as timeout"() {
+        when:
+        def result = hostConnectivityProber.probe("127.0.0.1", silentServer.getLocalPort(), "accountPassword", "root", "password")
+
+        then:
+        1 * sshUtil.sshConnectForOK("127.0.0.1", silentServer.getLocalPort(), "accountPassword", "root", "password", { it > 0 && it <= 1000 }) >> true
+        result.getHostStatus() == DevopsHostStatus.SUCCESS.getValue()
+    }
+
+    def "Hosts are probed concurrently and bounded by the deadline"() {
+        given: "监听但从不响应ssh握手的端口"
+        def hosts = (1L..8L).collect { host(it, silentServer.getLocalPort()) }
+        def handled = []
+        List<Long> timeouts = [].asSynchronized()
+        sshUtil.sshConnectForOK(*_) >> { args ->
+            // 模拟ssh握手一直等到超时
+            timeouts << (args[5] as Long)
+            Thread.sleep(args[5] as Long)
+            return false
+        }
+
+        when:
+        long start = System.currentTimeMillis()
+        Map<Long, DevopsHostConnectionTestResultVO> results = hostConnectivityProber.probeAll(hosts, { h, r -> handled << h.getId() })
+        long elapsed = System.currentTimeMillis() - start
+
+        then:
+        results.keySet() == (1L..8L) as Set
+        results.values().every { it.getHostStatus() == DevopsHostStatus.FAILED.getValue() }
+        handled.sort() == (1L..8L).toList()
+        timeouts.size() == 8
+        timeouts.every { it > 0 && it <= 1000 }
+        // 8个主机, 4个并发, 每个主机的ssh检查不超过1秒
+        elapsed < 8000
+    }
+
+    private static DevopsHostDTO host(Long id, int port) {
+        def host = new DevopsHostDTO()
+        host.setId(id)
+        host.setHostIp("127.0.0.1")
+        host.setSshPort(port)
+        host.setAuthType("accountPassword")
+        host.setUsername("root")
+        host.setPassword("password")
+        return host
+    }
+}
@@ -0,0 +1,137 @@
+package io.choerodon.devops.infra.handler
+
+import io.choerodon.core.exception.CommonException
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import net.schmizz.sshj.SSHClient
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ *
+ * @author zmf* @since 2021/8/10
+ *
+ */
+@Subject(SshSessionPool)
+class SshSessionPoolSpec extends Specification {
+    private static final String HOST = "127.0.0.1"
+    private static final int PORT = 22
+    private static final String AUTH_TYPE = "accountPassword"
+
+    SshSessionPool sshSessionPool = Spy()
+
+    def setup() {
+        ReflectionTestUtils.setField(sshSessionPool, "enabled", true)
+        ReflectionTestUtils.setField(sshSessionPool, "maxSessionsPerHost", 1)
+        ReflectionTestUtils.setField(sshSessionPool, "maxChannelsPerSession", 1)
+        ReflectionTestUtils.setField(sshSessionPool, "idleSeconds", 300L)
+        ReflectionTestUtils.setField(sshSessionPool, "validateAfterIdleSeconds", 30L)
+        ReflectionTestUtils.setField(sshSessionPool, "borrowTimeoutMillis", 60000L)
+        ReflectionTestUtils.setField(sshSessionPool, "connectTimeoutMillis", 10000)
+        ReflectionTestUtils.setField(sshSessionPool, "meterRegistry", new SimpleMeterRegistry())
+        sshSessionPool.init()
+    }
+
+    def "Released connections are reused by the same credential"() {
+        given:
+        def client = Mock(SSHClient)
+        client.isConnected() >> true
+        client.isAuthenticated() >> true
+
+        when:
+        def first = sshSessionPool.borrow(HOST, PORT, AUTH_TYPE, "root", "password")
+        sshSessionPool.release(first)
+        def second = sshSessionPool.borrow(HOST, PORT, AUTH_TYPE, "root", "password")
+
+        then:
+        1 * sshSessionPool.newClient(HOST, PORT, AUTH_TYPE, "root", "password", 10000) >> client
+        first.is(client)
+        second.is(client)
+        0 * client.close()
+    }
+
+    def "Idle connections of other credentials are closed when the host is full"() {
+        given:
+        def rootClient = Mock(SSHClient)
+        def adminClient = Mock(SSHClient)
+        rootClient.isConnected() >> true
+        adminClient.isConnected() >> true
+
+        when:
+        sshSessionPool.release(sshSessionPool.borrow(HOST, PORT, AUTH_TYPE, "root", "password"))
+        def borrowed = sshSessionPool.borrow(HOST, PORT, AUTH_TYPE, "admin", "password")
+
+        then:
+        1 * sshSessionPool.newClient(HOST, PORT, AUTH_TYPE, "root", "password", _) >> rootClient
+        1 * sshSessionPool.newClient(HOST, PORT, AUTH_TYPE, "admin", "password", _) >> adminClient
+        1 * rootClient.close()
+        borrowed.is(adminClient)
+    }
+
+    def "Borrow waits no longer than the given timeout when the host is full"() {
+        given:
+        def client = Mock(SSHClient)
+        client.isConnected() >> true
+        sshSessionPool.newClient(*_) >> client
+        sshSessionPool.borrow(HOST, PORT, AUTH_TYPE, "root", "password")
+
+        when:
+        long start = System.currentTimeMillis()
+        sshSessionPool.borrow(HOST, PORT, AUTH_TYPE, "root", "password", 200L)
+
+        then:
+        def e = thrown(CommonException)
+        e.code == "error.ssh.pool.exhausted"
+        System.currentTimeMillis() - start < 5000
+    }
+
+    def "Connect timeout is bounded by the given timeout"() {
+        given:
+        def client = Mock(SSHClient)
+
+        when:
+        sshSessionPool.borrow(HOST, PORT, AUTH_TYPE, "root", "password", 500L)
+
+        then:
+        1 * sshSessionPool.newClient(HOST, PORT, AUTH_TYPE, "root", "password", { it > 0 && it <= 500 }) >> client
+    }
+
+    def "Broken connections are discarded and a new connection is created"() {
+        given:
+        def broken = Mock(SSHClient)
+        def client = Mock(SSHClient)
+        client.isConnected() >> true
+        boolean authenticated = true
+        broken.isConnected() >> true
+        broken.isAuthenticated() >> { authenticated }
+
+        when:
+        sshSessionPool.release(sshSessionPool.borrow(HOST, PORT, AUTH_TYPE, "root", "password"))
+        authenticated = false
+        def borrowed = sshSessionPool.borrow(HOST, PORT, AUTH_TYPE, "root", "password")
+
+        then:
+        2 * sshSessionPool.newClient(*_) >>> [broken, client]
+        1 * broken.close()
+        borrowed.is(client)
+    }
+
+    def "Failed handshakes release the reserved slot"() {
+        given:
+        def client = Mock(SSHClient)
+
+        when:
+        sshSessionPool.borrow(HOST, PORT, AUTH_TYPE, "root", "password")
+
+        then:
+        1 * sshSessionPool.newClient(*_) >> { throw new IOException("auth failed") }
+        thrown(IOException)
+
+        when: "主机的连接数没有被失败的连接占住"
+        def borrowed = sshSessionPool.borrow(HOST, PORT, AUTH_TYPE, "root", "password", 200L)
+
+        then:
+        1 * sshSessionPool.newClient(*_) >> client
+        borrowed.is(client)
+    }
+}
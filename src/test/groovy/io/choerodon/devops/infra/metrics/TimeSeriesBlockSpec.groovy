@@ -0,0 +1,76 @@
+package io.choerodon.devops.infra.metrics
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ *
+ * @author zmf* @since 2021/8/9
+ *
+ */
+@Subject(TimeSeriesBlock)
+class TimeSeriesBlockSpec extends Specification {
+
+    def "Irregular points and special values survive a round trip"() {
+        given:
+        def random = new Random(1)
+        def block = new TimeSeriesBlock()
+        def expected = []
+        long timestamp = 1628000000L
+        double value = 100
+        2000.times { i ->
+            // 大部分间隔固定, 穿插不规则的间隔和跳变的值
+            timestamp += i % 7 == 0 ? 1000 + random.nextInt(100000) : 10
+            value = i % 5 == 0 ? random.nextDouble() * 1e9 : value + random.nextInt(20) - 10
+            block.append(timestamp, value)
+            expected << [timestamp, value]
+        }
+        [Double.NaN, -0.0d, Double.MAX_VALUE, 0.0d].each {
+            timestamp += 10
+            block.append(timestamp, it)
+            expected << [timestamp, it]
+        }
+
+        when:
+        def decoded = TimeSeriesBlock.decode(block.toBytes())
+
+        then:
+        decoded.size() == expected.size()
+        decoded.indexed().every { i, point ->
+            point.getTimestamp() == expected[i][0] && Double.doubleToRawLongBits(point.getValue()) == Double.doubleToRawLongBits(expected[i][1])
+        }
+    }
+
+    def "Regular samples take about one byte per point"() {
+        given:
+        def block = new TimeSeriesBlock()
+        360.times { block.append(1628000000L + it * 10, 12345678.0d + it % 4) }
+
+        expect:
+        block.toBytes().length < 400
+    }
+
+    def "Points not newer than the last one are ignored"() {
+        given:
+        def block = new TimeSeriesBlock()
+
+        expect:
+        block.append(100, 1)
+        !block.append(100, 2)
+        !block.append(90, 3)
+        TimeSeriesBlock.decode(block.toBytes()).collect { it.getValue() } == [1d]
+    }
+
+    def "A decoded block can be continued"() {
+        given:
+        def block = new TimeSeriesBlock()
+        (1..10).each { block.append(it * 10, it) }
+
+        when:
+        def continued = TimeSeriesBlock.of(TimeSeriesBlock.decode(block.toBytes()))
+        continued.append(110, 11)
+
+        then:
+        TimeSeriesBlock.decode(continued.toBytes()).collect { it.getValue() } == (1..11).collect { it as double }
+    }
+}
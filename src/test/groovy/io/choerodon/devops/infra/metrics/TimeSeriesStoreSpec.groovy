@@ -0,0 +1,130 @@
+package io.choerodon.devops.infra.metrics
+
+import java.util.concurrent.TimeUnit
+
+import io.choerodon.devops.infra.enums.MetricResolution
+import org.springframework.test.util.ReflectionTestUtils
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ *
+ * @author zmf* @since 2021/8/9
+ *
+ */
+@Subject(TimeSeriesStore)
+class TimeSeriesStoreSpec extends Specification {
+    private static final String SERIES_ID = "host:1:cpu"
+
+    MemoryStorage storage = new MemoryStorage()
+
+    def "Far-future end time is clamped and the number of blocks is bounded by retention"() {
+        given:
+        def store = newStore(storage)
+        long now = System.currentTimeMillis()
+        store.record(SERIES_ID, now - 1000, 1.0d)
+
+        when:
+        def points = store.query(SERIES_ID, 0L, Long.MAX_VALUE, resolution)
+        def chosen = store.chooseResolution(now - TimeUnit.HOURS.toMillis(2), Long.MAX_VALUE)
+
+        then:
+        storage.requestedBlocks.max() <= maxBlocks
+        resolution != MetricResolution.RAW || points*.value == [1.0d]
+        chosen == MetricResolution.MINUTE
+
+        where:
+        resolution                    | maxBlocks
+        MetricResolution.RAW          | 25
+        MetricResolution.MINUTE       | 8
+        MetricResolution.FIVE_MINUTES | 6
+        MetricResolution.HOUR         | 14
+    }
+
+    def "Idle series taken over by another instance are dropped without writing"() {
+        given:
+        def store = newStore(storage)
+        long base = halfPastLastHour()
+        store.record(SERIES_ID, base, 1.0d)
+        store.record(SERIES_ID, base + 1000, 2.0d)
+        store.flush()
+
+        and: "另一个实例接管了序列并写入了更新的数据块"
+        def newOwner = newStore(storage)
+        newOwner.record(SERIES_ID, base + 2000, 3.0d)
+        newOwner.flush()
+        def written = storage.snapshot()
+        idle(store)
+
+        when:
+        store.flush()
+
+        then:
+        storage.snapshot() == written
+        newOwner.query(SERIES_ID, base - 5000, base + 5000, MetricResolution.RAW)*.value == [1.0d, 2.0d, 3.0d]
+    }
+
+    def "Idle series still owned by this instance close their buckets"() {
+        given:
+        def store = newStore(storage)
+        long base = halfPastLastHour()
+        store.record(SERIES_ID, base, 4.0d)
+        store.flush()
+        idle(store)
+
+        when:
+        store.flush()
+
+        then:
+        newStore(storage).query(SERIES_ID, base - TimeUnit.MINUTES.toMillis(2), base + TimeUnit.MINUTES.toMillis(2), MetricResolution.MINUTE)*.value == [4.0d]
+    }
+
+    private static TimeSeriesStore newStore(TimeSeriesStorage storage) {
+        def store = new TimeSeriesStore()
+        ReflectionTestUtils.setField(store, "rawRetentionHours", 24L)
+        ReflectionTestUtils.setField(store, "minuteRetentionHours", 168L)
+        ReflectionTestUtils.setField(store, "fiveMinutesRetentionHours", 720L)
+        ReflectionTestUtils.setField(store, "hourRetentionHours", 8760L)
+        ReflectionTestUtils.setField(store, "maxPoints", 720)
+        ReflectionTestUtils.setField(store, "idleMinutes", 10L)
+        ReflectionTestUtils.setField(store, "timeSeriesStorage", storage)
+        return store
+    }
+
+    /**
+     * 上一个小时的中间, 测试的数据点都在同一个原始数据块中
+     */
+    private static long halfPastLastHour() {
+        long hour = TimeUnit.HOURS.toMillis(1)
+        return Math.floorDiv(System.currentTimeMillis(), hour) * hour - hour / 2
+    }
+
+    private static void idle(TimeSeriesStore store) {
+        ReflectionTestUtils.setField(store, "idleMinutes", -1L)
+    }
+
+    static class MemoryStorage implements TimeSeriesStorage {
+        Map<String, byte[]> blocks = [:]
+        List<Integer> requestedBlocks = []
+
+        @Override
+        void put(String seriesId, MetricResolution resolution, long blockStart, byte[] block, long ttlSeconds) {
+            blocks[key(seriesId, resolution, blockStart)] = block
+        }
+
+        @Override
+        Map<Long, byte[]> get(String seriesId, MetricResolution resolution, List<Long> blockStarts) {
+            requestedBlocks << blockStarts.size()
+            return blockStarts.findAll { blocks.containsKey(key(seriesId, resolution, it)) }
+                    .collectEntries { [(it): blocks[key(seriesId, resolution, it)]] }
+        }
+
+        Map<String, List<Byte>> snapshot() {
+            return blocks.collectEntries { k, v -> [(k): v.toList()] }
+        }
+
+        private static String key(String seriesId, MetricResolution resolution, long blockStart) {
+            return seriesId + ":" + resolution.getValue() + ":" + blockStart
+        }
+    }
+}
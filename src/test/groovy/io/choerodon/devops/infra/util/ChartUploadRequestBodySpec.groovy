@@ -0,0 +1,116 @@
+package io.choerodon.devops.infra.util
+
+import java.nio.charset.StandardCharsets
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream
+import org.apache.commons.io.input.TeeInputStream
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ *
+ * @author zmf* @since 2021/8/10
+ *
+ */
+@Subject(ChartUploadRequestBody)
+class ChartUploadRequestBodySpec extends Specification {
+
+    def "Only the top level values and readme are read"() {
+        given:
+        byte[] chart = tgz([
+                "demo/charts/sub/values.yaml": "sub: true\n",
+                "demo/values.yaml"           : "replicaCount: 1\n",
+                "demo/charts/sub/README.md"  : "# sub\n",
+                "demo/README.md"             : "# demo\r\nline"
+        ])
+
+        when:
+        def content = ChartUploadRequestBody.read(new ByteArrayInputStream(chart), 1024, 1024)
+
+        then:
+        content.values == "replicaCount: 1\n"
+        !content.valuesTooLarge
+        content.readme == "# demo\nline\n"
+    }
+
+    def "Entries with the current directory prefix are top level"() {
+        given:
+        byte[] chart = tgz(["./demo/values.yaml": "a: b\n"])
+
+        expect:
+        ChartUploadRequestBody.read(new ByteArrayInputStream(chart), 1024, 1024).values == "a: b\n"
+    }
+
+    def "Values over the limit are dropped and the readme is truncated"() {
+        given:
+        byte[] chart = tgz([
+                "demo/values.yaml": "a: " + "x" * 100 + "\n",
+                "demo/README.md"  : "abcdefghij"
+        ])
+
+        when:
+        def content = ChartUploadRequestBody.read(new ByteArrayInputStream(chart), 10, 4)
+
+        then:
+        content.values == null
+        content.valuesTooLarge
+        content.readme == "abcd\n"
+    }
+
+    def "Files whose names only end with values.yaml or README.md are ignored"() {
+        given:
+        byte[] chart = tgz([
+                "demo/values.yaml"     : "replicaCount: 1\n",
+                "demo/prod-values.yaml": "replicaCount: 3\n",
+                "demo/README.md"       : "# demo\n",
+                "demo/OLD-README.md"   : "# old\n"
+        ])
+
+        when:
+        def content = ChartUploadRequestBody.read(new ByteArrayInputStream(chart), 1024, 1024)
+
+        then:
+        content.values == "replicaCount: 1\n"
+        content.readme == "# demo\n"
+    }
+
+    def "Readme is truncated on a character boundary"() {
+        given: "每个汉字占3个字节, 上限落在第三个汉字中间"
+        byte[] chart = tgz(["demo/README.md": "说明文档"])
+
+        when:
+        def content = ChartUploadRequestBody.read(new ByteArrayInputStream(chart), 1024, 8)
+
+        then:
+        content.readme == "说明\n"
+    }
+
+    def "The whole chart passes through the tee"() {
+        given:
+        byte[] chart = tgz(["demo/values.yaml": "a: b\n", "demo/templates/deployment.yaml": "kind: Deployment\n"])
+        def sent = new ByteArrayOutputStream()
+
+        when:
+        ChartUploadRequestBody.read(new TeeInputStream(new ByteArrayInputStream(chart), sent), 1024, 1024)
+
+        then:
+        sent.toByteArray() == chart
+    }
+
+    private static byte[] tgz(Map<String, String> files) {
+        def output = new ByteArrayOutputStream()
+        def tarOut = new TarArchiveOutputStream(new GzipCompressorOutputStream(output))
+        files.each { name, text ->
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8)
+            def entry = new TarArchiveEntry(name)
+            entry.setSize(bytes.length)
+            tarOut.putArchiveEntry(entry)
+            tarOut.write(bytes)
+            tarOut.closeArchiveEntry()
+        }
+        tarOut.close()
+        return output.toByteArray()
+    }
+}
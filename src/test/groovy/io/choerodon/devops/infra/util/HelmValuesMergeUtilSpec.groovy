@@ -0,0 +1,102 @@
+package io.choerodon.devops.infra.util
+
+import org.yaml.snakeyaml.Yaml
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Unroll
+
+/**
+ *
+ * @author zmf* @since 2021/8/5
+ *
+ */
+@Subject(HelmValuesMergeUtil)
+class HelmValuesMergeUtilSpec extends Specification {
+    private static final String VERSION_VALUES = "# 副本数量\n" +
+            "replicaCount: 1  # replicas\n" +
+            "image:\n" +
+            "  repository: nginx\n" +
+            "  tag: \"1.0\"\n" +
+            "\n" +
+            "service:\n" +
+            "  enabled: true\n" +
+            "  ports:\n" +
+            "  - 80\n" +
+            "  annotations: {}\n" +
+            "env:\n" +
+            "  config:\n" +
+            "    A: a\n"
+
+    def "Merge keeps comments of the version values"() {
+        when:
+        def result = HelmValuesMergeUtil.merge(VERSION_VALUES, "replicaCount: 2\nimage:\n  tag: \"2.0\"\n")
+
+        then:
+        result.getYaml().contains("# 副本数量")
+        result.getYaml().contains("replicaCount: 2  # replicas")
+        result.getYaml().contains("tag: '2.0'")
+        new Yaml().load(result.getDeltaYaml()) == [replicaCount: 2, image: [tag: "2.0"]]
+        result.getNewLines().isEmpty()
+        result.getHighlightMarkers().size() == 2
+        result.getHighlightMarkers()[0].getLine() == 1
+    }
+
+    @Unroll
+    def "Merge result equals the structural merge: #description"() {
+        when:
+        def result = HelmValuesMergeUtil.merge(VERSION_VALUES, deployValues)
+        def expected = new Yaml().load(VERSION_VALUES) as Map
+        deepMerge(expected, new Yaml().load(deployValues) as Map)
+
+        then:
+        new Yaml().load(result.getYaml()) == expected
+        new Yaml().load(result.getDeltaYaml()) == delta
+
+        where:
+        description           | deployValues                                          | delta
+        "nested add"          | "env:\n  config:\n    B: b\n"                         | [env: [config: [B: "b"]]]
+        "top level add"       | "newKey:\n  k: v\n"                                   | [newKey: [k: "v"]]
+        "list replaced"       | "service:\n  ports: [8080, 8443]\n"                   | [service: [ports: [8080, 8443]]]
+        "flow map filled"     | "service:\n  annotations:\n    a: b\n"                | [service: [annotations: [a: "b"]]]
+        "map to scalar"       | "image: none\n"                                       | [image: "none"]
+        "scalar to map"       | "replicaCount:\n  min: 1\n  max: 3\n"                 | [replicaCount: [min: 1, max: 3]]
+        "multi-line string"   | "image:\n  tag: \"a\\nb\"\n"                          | [image: [tag: "a\nb"]]
+        "unchanged"           | "replicaCount: 1\n"                                   | [:]
+    }
+
+    def "Added keys are reported as new lines"() {
+        when:
+        def result = HelmValuesMergeUtil.merge(VERSION_VALUES, "env:\n  config:\n    B: b\n")
+
+        then:
+        result.getYaml().split("\n")[result.getNewLines()[0]] == "    B: b"
+    }
+
+    def "Merge into empty version values"() {
+        when:
+        def result = HelmValuesMergeUtil.merge("# only comments\n", "a: 1\n")
+
+        then:
+        result.getYaml() == "# only comments\na: 1\n"
+        result.getDeltaYaml() == "a: 1\n"
+    }
+
+    def "Nested and top level keys appended at the same position keep their parents"() {
+        when:
+        def result = HelmValuesMergeUtil.merge("# c\na:\n  b: 1\n", "a:\n  c: 2\nd: 3\n")
+
+        then:
+        result.getYaml() == "# c\na:\n  b: 1\n  c: 2\nd: 3\n"
+        new Yaml().load(result.getDeltaYaml()) == [a: [c: 2], d: 3]
+    }
+
+    private static void deepMerge(Map base, Map deploy) {
+        deploy.each { k, v ->
+            if (base[k] instanceof Map && v instanceof Map) {
+                deepMerge(base[k] as Map, v as Map)
+            } else {
+                base[k] = v
+            }
+        }
+    }
+}
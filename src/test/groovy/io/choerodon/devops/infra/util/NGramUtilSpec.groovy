@@ -0,0 +1,52 @@
+package io.choerodon.devops.infra.util
+
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Unroll
+
+/**
+ *
+ * @author zmf* @since 2021/8/8
+ *
+ */
+@Subject(NGramUtil)
+class NGramUtilSpec extends Specification {
+
+    def "Index grams are lower case and never span fields"() {
+        expect:
+        NGramUtil.indexGrams("Devops", "ab", null) == ["dev", "evo", "vop", "ops"] as LinkedHashSet
+    }
+
+    def "Grams are split by code point"() {
+        expect:
+        NGramUtil.indexGrams("应用服务") == ["应用服", "用服务"] as LinkedHashSet
+    }
+
+    @Unroll
+    def "Query grams for '#term'"() {
+        expect:
+        NGramUtil.queryGrams(term) == expected
+
+        where:
+        term    | expected
+        null    | null
+        "ab"    | null
+        "a_bc"  | null
+        "10%x"  | null
+        "Ops-1" | ["ops", "ps-", "s-1"] as LinkedHashSet
+        "aaaa"  | ["aaa"] as LinkedHashSet
+    }
+
+    def "Every query gram of a substring is an index gram of the value"() {
+        given:
+        def value = "choerodon-devops-service"
+        def indexGrams = NGramUtil.indexGrams(value)
+
+        expect:
+        (0..value.length() - 3).every { start ->
+            (start + 3..value.length()).every { end ->
+                indexGrams.containsAll(NGramUtil.queryGrams(value.substring(start, end).toUpperCase()))
+            }
+        }
+    }
+}
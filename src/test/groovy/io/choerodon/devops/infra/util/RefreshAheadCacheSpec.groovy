@@ -0,0 +1,94 @@
+package io.choerodon.devops.infra.util
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+/**
+ *
+ * @author zmf* @since 2021/8/10
+ *
+ */
+@Subject(RefreshAheadCache)
+class RefreshAheadCacheSpec extends Specification {
+    def executor = Executors.newFixedThreadPool(4)
+
+    def cleanup() {
+        executor.shutdownNow()
+    }
+
+    def "Missing values are cached until the negative expiry"() {
+        given:
+        def loads = new AtomicInteger()
+        def cache = new RefreshAheadCache<Long, String>("test", 10, 60000, 60000, 60000, executor)
+
+        when:
+        def first = cache.get(1L, { loads.incrementAndGet(); null })
+        def second = cache.get(1L, { loads.incrementAndGet(); null })
+
+        then:
+        first == null
+        second == null
+        loads.get() == 1
+        cache.hitCount == 1
+        cache.missCount == 1
+    }
+
+    def "Concurrent misses of the same key load once"() {
+        given:
+        def loads = new AtomicInteger()
+        def release = new CountDownLatch(1)
+        def cache = new RefreshAheadCache<Long, String>("test", 10, 60000, 60000, 60000, executor)
+        def loader = { Long key -> loads.incrementAndGet(); release.await(5, TimeUnit.SECONDS); "v" + key }
+
+        when:
+        def futures = (1..4).collect { executor.submit({ cache.get(1L, loader) } as Callable) }
+        Thread.sleep(100)
+        release.countDown()
+
+        then:
+        futures*.get() == ["v1", "v1", "v1", "v1"]
+        loads.get() == 1
+    }
+
+    def "Failures are not cached and invalidation removes the entry"() {
+        given:
+        def cache = new RefreshAheadCache<Long, String>("test", 10, 60000, 60000, 60000, executor)
+
+        when:
+        cache.get(1L, { throw new IllegalStateException("boom") })
+
+        then:
+        thrown(IllegalStateException)
+        cache.loadFailureCount == 1
+        cache.get(1L, { "v1" }) == "v1"
+
+        when:
+        cache.invalidateValues({ it == "v1" })
+
+        then:
+        cache.size() == 0
+        cache.get(1L, { "v2" }) == "v2"
+    }
+
+    def "The least recently used entry is evicted over the size limit"() {
+        given:
+        def cache = new RefreshAheadCache<Long, String>("test", 2, 60000, 60000, 60000, executor)
+        cache.get(1L, { "v1" })
+        cache.get(2L, { "v2" })
+        cache.get(1L, { "unused" })
+
+        when:
+        cache.get(3L, { "v3" })
+
+        then:
+        cache.size() == 2
+        cache.get(1L, { "reloaded" }) == "v1"
+        cache.get(2L, { "reloaded" }) == "reloaded"
+    }
+}
@@ -0,0 +1,41 @@
+package io.choerodon.devops.infra.util
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+import io.choerodon.core.exception.CommonException
+
+/**
+ *
+ * @author zmf* @since 2021/8/10
+ *
+ */
+@Subject(WebHookEventScanner)
+class WebHookEventScannerSpec extends Specification {
+    def "Object kind and project id are read from the body"() {
+        when:
+        def result = WebHookEventScanner.scan(body)
+
+        then:
+        result.objectKind == objectKind
+        result.projectId == projectId
+
+        where:
+        body                                                                                  | objectKind      | projectId
+        '{"object_kind":"push","before":"a","project_id":15,"commits":[{"id":"b"}]}'          | "push"          | 15L
+        '{"commits":[{"project_id":3}],"project_id":15,"object_kind":"tag_push"}'             | "tag_push"      | 15L
+        '{"object_kind":"merge_request","user":{"id":1},"project":{"name":"p","id":16}}'     | "merge_request" | 16L
+        '{"object_kind":"build","ref":"master"}'                                              | "build"         | null
+    }
+
+    def "Bodies without object kind are rejected"() {
+        when:
+        WebHookEventScanner.scan(body)
+
+        then:
+        thrown(CommonException)
+
+        where:
+        body << ['{"project_id":15}', '[]', '{"object_kind":']
+    }
+}